@@ -0,0 +1,92 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux;
+
+import com.theoriginalbit.faux.api.*;
+import com.theoriginalbit.faux.api.computercraft.IDevice;
+
+/**
+ * An emulator instance without a display for benchmarks, it only provides a canvas size, the
+ * time and a renderer; it has no managers, so windows must not be created or destroyed.
+ *
+ * @author theoriginalbit
+ */
+public final class HeadlessEmulator implements IEmulatorInstance {
+    private final IRenderer renderer;
+    private final int width, height;
+
+    public HeadlessEmulator(IRenderer r, int w, int h) {
+        renderer = r;
+        width = w;
+        height = h;
+        renderer.initialise(w, h);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return true;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public long getSystemTime() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    @Override
+    public IManager<IInputConsumer> getInputManager() {
+        return null;
+    }
+
+    @Override
+    public IManager<ITicking> getTickManager() {
+        return null;
+    }
+
+    @Override
+    public ITickStatistics getTickStatistics() {
+        return null;
+    }
+
+    @Override
+    public IManager<IRendered> getRenderManager() {
+        return null;
+    }
+
+    @Override
+    public IManager<IDevice> getDeviceManager() {
+        return null;
+    }
+
+    @Override
+    public IManager<IWindow> getWindowManager() {
+        return null;
+    }
+
+    @Override
+    public IRenderer getRenderer() {
+        return renderer;
+    }
+}
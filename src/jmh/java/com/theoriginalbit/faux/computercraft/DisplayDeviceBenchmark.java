@@ -0,0 +1,91 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft;
+
+import com.theoriginalbit.faux.HeadlessEmulator;
+import com.theoriginalbit.faux.api.IRenderer;
+import com.theoriginalbit.faux.computercraft.device.Computer;
+import com.theoriginalbit.faux.ui.CountingRenderer;
+import com.theoriginalbit.faux.ui.SoftwareRenderer;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Rectangle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures drawing a full screen of text on a device. With the counting renderer this is the
+ * cost of building the draw list, with the software renderer it includes rasterising it.
+ *
+ * @author theoriginalbit
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DisplayDeviceBenchmark {
+    @Param({"counting", "software"})
+    public String renderer;
+    private final Rectangle damage = new Rectangle();
+    private IRenderer target;
+    private Computer device;
+    private String line;
+    private int row;
+
+    @Setup
+    public void setup() {
+        target = "software".equals(renderer) ? new SoftwareRenderer() : new CountingRenderer();
+        device = new Computer(DeviceFamily.ADVANCED, new HeadlessEmulator(target, 1280, 800));
+
+        final Terminal terminal = device.terminal;
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < terminal.getWidth(); ++i) {
+            builder.append((char) ('!' + i % 90));
+        }
+        line = builder.toString();
+        for (int y = 0; y < terminal.getHeight(); ++y) {
+            terminal.setCursorPos(0, y);
+            terminal.setTextColour(y % 16);
+            terminal.setBackgroundColour(15 - y % 16);
+            terminal.write(line);
+        }
+        device.addDamage(damage);
+    }
+
+    /**
+     * Drawing a frame when nothing on the terminal has changed
+     */
+    @Benchmark
+    public IRenderer drawFrame() {
+        device.draw(null);
+        target.flush();
+        return target;
+    }
+
+    /**
+     * Drawing a frame after a row of the terminal has changed, which copies the row first
+     */
+    @Benchmark
+    public IRenderer drawAfterWrite() {
+        final Terminal terminal = device.terminal;
+        row = (row + 1) % terminal.getHeight();
+        terminal.setCursorPos(0, row);
+        terminal.write(line);
+        damage.setBounds(0, 0, 0, 0);
+        device.addDamage(damage);
+        device.draw(null);
+        target.flush();
+        return target;
+    }
+}
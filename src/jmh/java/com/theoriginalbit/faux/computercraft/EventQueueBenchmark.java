@@ -0,0 +1,68 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft;
+
+import com.theoriginalbit.faux.HeadlessEmulator;
+import com.theoriginalbit.faux.computercraft.device.Computer;
+import com.theoriginalbit.faux.ui.CountingRenderer;
+import com.theoriginalbit.faux.util.Events;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures queueing events for a device, through the typed overloads of
+ * {@link com.theoriginalbit.faux.api.computercraft.IDevice#queueEvent}, and the device draining
+ * them.
+ *
+ * @author theoriginalbit
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EventQueueBenchmark {
+    private final EventQueue.Event event = new EventQueue.Event();
+    private Computer device;
+
+    @Setup
+    public void setup() {
+        device = new Computer(DeviceFamily.ADVANCED, new HeadlessEmulator(new CountingRenderer(), 1280, 800));
+    }
+
+    @Benchmark
+    public boolean queueKey() {
+        device.queueEvent(Events.KEY, 28);
+        return device.eventQueue.poll(event);
+    }
+
+    @Benchmark
+    public boolean queueChar() {
+        device.queueEvent(Events.CHAR, "a");
+        return device.eventQueue.poll(event);
+    }
+
+    @Benchmark
+    public boolean queueMouse() {
+        device.queueEvent(Events.MOUSE_DRAG, 1, 10, 5);
+        return device.eventQueue.poll(event);
+    }
+
+    @Benchmark
+    public boolean queueVarargs() {
+        device.queueEvent(Events.PASTE, "text", 1.0);
+        return device.eventQueue.poll(event);
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the terminal operations programs perform most; writing a line and scrolling.
+ *
+ * @author theoriginalbit
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TerminalBenchmark {
+    private final BitSet dirty = new BitSet();
+    private Terminal terminal;
+    private String line;
+    private int row;
+
+    @Setup
+    public void setup() {
+        terminal = new Terminal(DeviceType.COMPUTER, DeviceFamily.ADVANCED);
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < terminal.getWidth(); ++i) {
+            builder.append((char) ('a' + i % 26));
+        }
+        line = builder.toString();
+    }
+
+    @Benchmark
+    public boolean writeLine() {
+        row = (row + 1) % terminal.getHeight();
+        terminal.setCursorPos(0, row);
+        terminal.write(line);
+        // the renderer polls the dirty rows each frame, so they do not only accumulate
+        return terminal.pollDirtyRows(dirty);
+    }
+
+    @Benchmark
+    public boolean scroll() {
+        terminal.scroll(1);
+        return terminal.pollDirtyRows(dirty);
+    }
+}
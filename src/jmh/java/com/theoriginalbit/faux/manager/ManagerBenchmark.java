@@ -0,0 +1,92 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.manager;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures registering and unregistering with a manager, and iterating its items, which every
+ * manager does each frame or tick.
+ *
+ * @author theoriginalbit
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ManagerBenchmark {
+    @Param({"10", "1000"})
+    public int size;
+    private TestManager manager;
+    private Object[] items;
+    private Object extra;
+
+    @Setup
+    public void setup() {
+        manager = new TestManager();
+        items = new Object[size];
+        for (int i = 0; i < size; ++i) {
+            items[i] = new Object();
+            manager.register(items[i]);
+        }
+        extra = new Object();
+    }
+
+    @Benchmark
+    public boolean registerUnregister() {
+        manager.register(extra);
+        return manager.unregister(extra);
+    }
+
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        for (Object item : manager.items()) {
+            blackhole.consume(item);
+        }
+    }
+
+    /**
+     * The cost of the first iteration after a change, which rebuilds the snapshot of the items
+     */
+    @Benchmark
+    public void iterateAfterChange(Blackhole blackhole) {
+        manager.register(extra);
+        manager.unregister(extra);
+        for (Object item : manager.items()) {
+            blackhole.consume(item);
+        }
+    }
+
+    private static final class TestManager extends Manager<Object> {
+        TestManager() {
+            super("Benchmark", Object.class);
+        }
+
+        @Override
+        public void manage() {
+        }
+
+        @Override
+        public void manage(Object item) {
+        }
+
+        Object[] items() {
+            return getItems();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.ui;
+
+import com.theoriginalbit.faux.api.IRenderer;
+
+/**
+ * A renderer which only counts what it is asked to draw, so that benchmarks measure building
+ * the draw list rather than rasterising it.
+ *
+ * @author theoriginalbit
+ */
+public final class CountingRenderer implements IRenderer {
+    private long quads, glyphs, blocks;
+
+    @Override
+    public void initialise(int width, int height) {
+    }
+
+    @Override
+    public void resize(int width, int height) {
+    }
+
+    @Override
+    public void clear() {
+    }
+
+    @Override
+    public void setClip(int x, int y, int w, int h) {
+    }
+
+    @Override
+    public void setColor(Color color) {
+    }
+
+    @Override
+    public void drawQuad(int x, int y, int w, int h) {
+        ++quads;
+    }
+
+    @Override
+    public void drawBlock(VertexBlock block, int x, int y) {
+        ++blocks;
+    }
+
+    @Override
+    public void drawGlyph(int x, int y, int w, int h, int ch) {
+        ++glyphs;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * @return the number of draw calls made, which benchmarks return so the calls are not
+     * eliminated
+     */
+    public long getCount() {
+        return quads + glyphs + blocks;
+    }
+}
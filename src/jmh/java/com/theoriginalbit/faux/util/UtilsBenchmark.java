@@ -0,0 +1,64 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the text and scaling utilities used on the input and render paths.
+ *
+ * @author theoriginalbit
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UtilsBenchmark {
+    /**
+     * A line which is entirely allowed, and one with characters that must be removed
+     */
+    private String clean, dirty;
+    private int pixels;
+
+    @Setup
+    public void setup() {
+        final StringBuilder cleanBuilder = new StringBuilder();
+        final StringBuilder dirtyBuilder = new StringBuilder();
+        for (int i = 0; i < 128; ++i) {
+            cleanBuilder.append((char) ('a' + i % 26));
+            dirtyBuilder.append(i % 8 == 0 ? '\t' : (char) ('a' + i % 26));
+        }
+        clean = cleanBuilder.toString();
+        dirty = dirtyBuilder.toString();
+        pixels = 51 * 6;
+    }
+
+    @Benchmark
+    public String filterClean() {
+        return ChatUtils.filerAllowedCharacters(clean);
+    }
+
+    @Benchmark
+    public String filterDirty() {
+        return ChatUtils.filerAllowedCharacters(dirty);
+    }
+
+    @Benchmark
+    public int toScaledPixels() {
+        return GuiUtils.toScaledPixels(pixels);
+    }
+}
@@ -17,9 +17,13 @@ package com.theoriginalbit.faux;
 
 import com.apple.eawt.AboutHandler;
 import com.apple.eawt.AppEvent;
+import com.apple.eawt.Application;
 import com.apple.eawt.QuitHandler;
 import com.apple.eawt.QuitResponse;
+import com.theoriginalbit.faux.computercraft.DeviceFamily;
+import com.theoriginalbit.faux.computercraft.device.Computer;
 import com.theoriginalbit.faux.log.Log;
+import com.theoriginalbit.faux.lua.PrototypeCache;
 import com.theoriginalbit.faux.ui.EmulatorMenuBar;
 import com.theoriginalbit.faux.util.DialogUtils;
 import com.theoriginalbit.faux.util.OperatingSystem;
@@ -28,13 +32,12 @@ import org.lwjgl.Sys;
 import org.lwjgl.input.Keyboard;
 import org.lwjgl.input.Mouse;
 import org.lwjgl.opengl.Display;
-import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.Util;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
 
 /**
  * @author theoriginalbit
@@ -50,7 +53,11 @@ public final class Bootstrap {
     }
 
     private static void initialiseGame(final Emulator emulator) {
-        // TODO: initialise emulator
+        // compiled programs are shared by every device, and kept between runs
+        PrototypeCache.getInstance().setDirectory(new File(Emulator.DATASTORE, "cache/lua"));
+
+        // start with a single computer, which boots once the tick manager executes it
+        new Computer(DeviceFamily.ADVANCED, emulator).onCreate();
     }
 
     private static void setLookAndFeel() {
@@ -132,7 +139,8 @@ public final class Bootstrap {
             System.setProperty("apple.laf.useScreenMenuBar", "true");
 
             // setup the about menu item
-            Emulator.APP.setAboutHandler(new AboutHandler() {
+            final Application app = Application.getApplication();
+            app.setAboutHandler(new AboutHandler() {
                 @Override
                 public void handleAbout(AppEvent.AboutEvent aboutEvent) {
                     DialogUtils.showAboutDialog(emulator.getWindow());
@@ -140,7 +148,7 @@ public final class Bootstrap {
             });
 
             // setup the quit menu item so it confirms before quitting
-            Emulator.APP.setQuitHandler(new QuitHandler() {
+            app.setQuitHandler(new QuitHandler() {
                 @Override
                 public void handleQuitRequestWith(AppEvent.QuitEvent quitEvent, QuitResponse quitResponse) {
                     // if the user selected the ok option, we must shut everything down
@@ -165,22 +173,8 @@ public final class Bootstrap {
             Display.setResizable(true);
             Display.create();
 
-            GL11.glEnable(GL11.GL_TEXTURE_2D); // enable textures
-            Util.checkGLError();
-            GL11.glDisable(GL11.GL_DEPTH_TEST); // 2D textures don't have depth
-
-            GL11.glEnable(GL11.GL_BLEND);
-            GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
-            Util.checkGLError();
-
-            GL11.glMatrixMode(GL11.GL_PROJECTION);
-            GL11.glLoadIdentity();
-
-            GL11.glOrtho(0, emulator.getWidth(), emulator.getHeight(), 0, -1, 1);
-            GL11.glMatrixMode(GL11.GL_MODELVIEW);
-
-            GL11.glClearColor(0.275F, 0.275F, 0.275F, 1.0F);
-            GL11.glViewport(0, 0, emulator.getWidth(), emulator.getHeight());
+            // setup the renderer now that its context exists
+            emulator.getRenderer().initialise(emulator.getWidth(), emulator.getHeight());
 
             // setup the input
             Mouse.create();
@@ -15,14 +15,15 @@
  */
 package com.theoriginalbit.faux;
 
-import com.apple.eawt.Application;
 import com.theoriginalbit.faux.api.*;
 import com.theoriginalbit.faux.api.computercraft.IDevice;
+import com.theoriginalbit.faux.computercraft.InputRecorder;
 import com.theoriginalbit.faux.log.Log;
 import com.theoriginalbit.faux.manager.*;
+import com.theoriginalbit.faux.ui.GLRenderer;
+import com.theoriginalbit.faux.util.GuiUtils;
 import com.theoriginalbit.faux.util.OperatingSystem;
 import org.lwjgl.opengl.Display;
-import org.lwjgl.opengl.GL11;
 
 import javax.swing.*;
 import java.awt.*;
@@ -35,7 +36,6 @@ import java.util.concurrent.atomic.AtomicReference;
  * @author theoriginalbit
  */
 public final class Emulator implements IEmulatorInstance {
-    public static final Application APP = Application.getApplication();
     public static final File DATASTORE = OperatingSystem.getDataStore();
     public static final EmulatorSettings SETTINGS = new EmulatorSettings();
     private static final AtomicReference<Dimension> newCanvasSize = new AtomicReference<Dimension>();
@@ -48,24 +48,38 @@ public final class Emulator implements IEmulatorInstance {
     private final InputManager inputManager;
     private final WindowManager windowManager;
     private final TickManager tickManager;
+    private final FrameStatistics frameStatistics = new FrameStatistics();
+    private final IRenderer renderer;
+    /*
+       the area changed since the last frame, and the area drawn by the frame before; as the display
+       is double buffered the back buffer is missing both
+     */
+    private final Rectangle damage = new Rectangle();
+    private final Rectangle lastDamage = new Rectangle();
+    private final Rectangle clip = new Rectangle();
 
     private final Thread tickThread;
+    private final MetricsServer metricsServer;
 
     private boolean running;
 
     public Emulator(JFrame frame) {
         window = frame;
         contentCanvas = new Canvas();
+        renderer = new GLRenderer();
 
         renderManager = new RenderManager();
         deviceManager = new DeviceManager();
-        inputManager = new InputManager(this);
-        windowManager = new WindowManager();
+        windowManager = new WindowManager(this);
+        inputManager = new InputManager(this, windowManager);
         tickManager = new TickManager(this);
 
         tickThread = new Thread(tickManager, "Pseudo-World Tick");
         tickThread.start();
 
+        final int metricsPort = SETTINGS.getMetricsPort();
+        metricsServer = metricsPort > 0 ? MetricsServer.start(this, deviceManager, metricsPort) : null;
+
         running = true;
         Bootstrap.initialise(this);
         contentCanvas.addComponentListener(new ComponentAdapter() {
@@ -130,6 +144,22 @@ public final class Emulator implements IEmulatorInstance {
         return tickManager;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ITickStatistics getTickStatistics() {
+        return tickManager.getStatistics();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IRenderer getRenderer() {
+        return renderer;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -162,6 +192,13 @@ public final class Emulator implements IEmulatorInstance {
         return tickManager.getSystemTime();
     }
 
+    /**
+     * @return the live statistics of the main loop
+     */
+    public FrameStatistics getFrameStatistics() {
+        return frameStatistics;
+    }
+
     public static EmulatorSettings getEmulatorSettings() {
         return SETTINGS;
     }
@@ -171,29 +208,63 @@ public final class Emulator implements IEmulatorInstance {
         try {
             try {
                 Dimension newDim;
+                // nothing has been drawn yet
+                damage.setBounds(0, 0, getWidth(), getHeight());
                 while (isRunning()) {
+                    frameStatistics.begin();
+
                     // if the canvas was re-sized, inform OpenGL/LWJGL
                     newDim = newCanvasSize.getAndSet(null);
                     if (newDim != null) {
                         Log.debug("Canvas has been re-sized to W: %d H: %d", contentCanvas.getWidth(), contentCanvas.getHeight());
-                        GL11.glViewport(0, 0, newDim.width, newDim.height);
+                        renderer.resize(newDim.width, newDim.height);
                     }
 
-                    // clear the display
-                    GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
-
-                    // render any windows
-                    windowManager.manage();
-                    // render everything else
-                    renderManager.manage();
-
-                    // update the display
-                    Display.update();
+                    // everything must be redrawn when the canvas is re-sized or its content was
+                    // lost
+                    if (newDim != null || Display.isDirty()) {
+                        GuiUtils.union(damage, 0, 0, getWidth(), getHeight());
+                    }
+                    frameStatistics.mark(FrameStatistics.Phase.UPDATE);
+                    windowManager.collectDamage(damage);
+                    frameStatistics.mark(FrameStatistics.Phase.WINDOWS);
+                    renderManager.collectDamage(damage);
+                    frameStatistics.mark(FrameStatistics.Phase.RENDER);
+
+                    if (damage.isEmpty()) {
+                        // nothing has changed, the last frame is still on the display
+                        Display.processMessages();
+                        frameStatistics.mark(FrameStatistics.Phase.UPDATE);
+                    } else {
+                        clip.setBounds(damage);
+                        GuiUtils.union(clip, lastDamage.x, lastDamage.y, lastDamage.width, lastDamage.height);
+                        clipToCanvas(clip);
+                        renderer.setClip(clip.x, clip.y, clip.width, clip.height);
+
+                        // clear the display
+                        renderer.clear();
+
+                        // render any windows
+                        windowManager.draw(clip);
+                        frameStatistics.mark(FrameStatistics.Phase.WINDOWS);
+                        // render everything else
+                        renderManager.draw(clip);
+                        frameStatistics.mark(FrameStatistics.Phase.RENDER);
+
+                        // update the display
+                        Display.update();
+                        frameStatistics.mark(FrameStatistics.Phase.UPDATE);
+
+                        lastDamage.setBounds(damage);
+                        damage.setBounds(0, 0, 0, 0);
+                    }
 
                     // process input
                     inputManager.manage();
+                    frameStatistics.mark(FrameStatistics.Phase.INPUT);
 
                     Display.sync(MAX_FPS);
+                    frameStatistics.mark(FrameStatistics.Phase.SYNC);
                 }
             } catch (OutOfMemoryError e) {
                 Log.fatal("Out of memory! Running garbage collector");
@@ -214,8 +285,28 @@ public final class Emulator implements IEmulatorInstance {
         Log.info("Shutting down %s...", AppInfo.NAME);
         running = false;
         window.dispose();
-        deviceManager.stopDevices();
+        // devices are only stopped once nothing is executing them
         stopThread(tickThread);
+        InputRecorder.finish();
+        deviceManager.stopDevices();
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        deviceManager.close();
+    }
+
+    /**
+     * Shrinks an area to the part of it that is on the canvas
+     *
+     * @param area the area to shrink
+     */
+    private void clipToCanvas(Rectangle area) {
+        final int right = Math.min(area.x + area.width, getWidth());
+        final int bottom = Math.min(area.y + area.height, getHeight());
+        area.x = Math.max(area.x, 0);
+        area.y = Math.max(area.y, 0);
+        area.width = Math.max(right - area.x, 0);
+        area.height = Math.max(bottom - area.y, 0);
     }
 
     private void stopThread(final Thread thread) {
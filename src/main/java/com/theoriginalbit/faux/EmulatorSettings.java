@@ -15,14 +15,36 @@
  */
 package com.theoriginalbit.faux;
 
+import com.theoriginalbit.faux.manager.TickPolicy;
+
 /**
  * @author theoriginalbit
  */
 public final class EmulatorSettings {
     private float guiScale;
+    private int workerThreads;
+    private long timeSlice;
+    private TickPolicy tickPolicy;
+    private int maxTickBacklog;
+    private long instructionBudget;
+    private long computerSpaceLimit;
+    private boolean hibernateOnExit;
+    private int mouseDragRate;
+    private int metricsPort;
+    private long randomSeed;
 
     public EmulatorSettings() {
         guiScale = 2.0f;
+        workerThreads = Runtime.getRuntime().availableProcessors();
+        timeSlice = 5L;
+        tickPolicy = TickPolicy.CATCH_UP;
+        maxTickBacklog = 10;
+        instructionBudget = 100000L;
+        computerSpaceLimit = 1000000L;
+        hibernateOnExit = true;
+        mouseDragRate = 20;
+        metricsPort = 0;
+        randomSeed = 0L;
     }
 
     public float getGuiScale() {
@@ -32,4 +54,117 @@ public final class EmulatorSettings {
     public void setGuiScale(float scale) {
         guiScale = scale;
     }
+
+    /**
+     * @return the number of threads devices are executed on, read when the tick manager starts
+     */
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int threads) {
+        workerThreads = Math.max(threads, 1);
+    }
+
+    /**
+     * @return the time in milliseconds a device may execute before others get a turn
+     */
+    public long getTimeSlice() {
+        return timeSlice;
+    }
+
+    public void setTimeSlice(long millis) {
+        timeSlice = Math.max(millis, 1L);
+    }
+
+    /**
+     * @return what the tick manager does when it falls behind
+     */
+    public TickPolicy getTickPolicy() {
+        return tickPolicy;
+    }
+
+    public void setTickPolicy(TickPolicy policy) {
+        tickPolicy = policy;
+    }
+
+    /**
+     * @return the most ticks the tick manager will catch up on before skipping them instead
+     */
+    public int getMaxTickBacklog() {
+        return maxTickBacklog;
+    }
+
+    public void setMaxTickBacklog(int ticks) {
+        maxTickBacklog = Math.max(ticks, 0);
+    }
+
+    /**
+     * @return the steps, counted at calls and backward jumps, a device may run before others get
+     * a turn
+     */
+    public long getInstructionBudget() {
+        return instructionBudget;
+    }
+
+    public void setInstructionBudget(long steps) {
+        instructionBudget = Math.max(steps, 1L);
+    }
+
+    /**
+     * @return the bytes each device may store, read when a device is first turned on
+     */
+    public long getComputerSpaceLimit() {
+        return computerSpaceLimit;
+    }
+
+    public void setComputerSpaceLimit(long bytes) {
+        computerSpaceLimit = Math.max(bytes, 0L);
+    }
+
+    /**
+     * @return whether devices are saved when the emulator exits, and resumed when next turned on
+     */
+    public boolean isHibernateOnExit() {
+        return hibernateOnExit;
+    }
+
+    public void setHibernateOnExit(boolean hibernate) {
+        hibernateOnExit = hibernate;
+    }
+
+    /**
+     * @return the most mouse_drag events a device queues each second, later drags are merged
+     */
+    public int getMouseDragRate() {
+        return mouseDragRate;
+    }
+
+    public void setMouseDragRate(int perSecond) {
+        mouseDragRate = Math.max(perSecond, 1);
+    }
+
+    /**
+     * @return the local port the metrics are served on in the Prometheus format, or 0 when they
+     * are not served
+     */
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public void setMetricsPort(int port) {
+        metricsPort = port;
+    }
+
+    /**
+     * @return the seed of each device's random numbers, mixed with its ID, or 0 when they are
+     * seeded randomly
+     */
+    public long getRandomSeed() {
+        return randomSeed;
+    }
+
+    public void setRandomSeed(long seed) {
+        randomSeed = seed;
+    }
 }
@@ -0,0 +1,510 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux;
+
+import com.theoriginalbit.faux.api.*;
+import com.theoriginalbit.faux.api.computercraft.IDevice;
+import com.theoriginalbit.faux.api.computercraft.IDeviceStatistics;
+import com.theoriginalbit.faux.computercraft.DeviceFamily;
+import com.theoriginalbit.faux.computercraft.DisplayDevice;
+import com.theoriginalbit.faux.computercraft.InputReplayer;
+import com.theoriginalbit.faux.computercraft.device.Computer;
+import com.theoriginalbit.faux.computercraft.device.Pocket;
+import com.theoriginalbit.faux.computercraft.device.Turtle;
+import com.theoriginalbit.faux.log.Log;
+import com.theoriginalbit.faux.lua.PrototypeCache;
+import com.theoriginalbit.faux.manager.DeviceManager;
+import com.theoriginalbit.faux.manager.MetricsServer;
+import com.theoriginalbit.faux.manager.SystemClock;
+import com.theoriginalbit.faux.manager.TickManager;
+import com.theoriginalbit.faux.manager.TickPolicy;
+import com.theoriginalbit.faux.manager.VirtualClock;
+import com.theoriginalbit.faux.ui.SoftwareRenderer;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An emulator without a display, for running many devices on a server. It has only the tick and
+ * device managers; devices run and handle their events, such as timers, as they would in the
+ * emulator with a display, but nothing is drawn each frame and there is no mouse or keyboard input.
+ * The devices can be watched through the metrics, see
+ * {@link com.theoriginalbit.faux.manager.MetricsServer}, and with {@code --snapshotDir=<dir>} each
+ * device is drawn by the {@link com.theoriginalbit.faux.ui.SoftwareRenderer} to
+ * {@code <dir>/<id>.png} when the fleet shuts down, so screens can be compared pixel for pixel.
+ * <p/>
+ * The fleet is configured with {@code --key=value} arguments, which override the keys of a
+ * properties file given with {@code --config=<file>}. The keys are {@code computers},
+ * {@code turtles} and {@code pockets}, the number of each device to run, {@code family},
+ * {@code firstId}, the ID given to the first device, and the emulator settings
+ * {@code workerThreads}, {@code timeSlice}, {@code instructionBudget}, {@code computerSpaceLimit},
+ * {@code tickPolicy}, {@code maxTickBacklog}, {@code hibernateOnExit}, {@code metricsPort} and
+ * {@code randomSeed}.
+ * <p/>
+ * With {@code --replay=<log>} the fleet is instead the devices of an input log, see
+ * {@link com.theoriginalbit.faux.computercraft.InputRecorder}, given their recorded input. The
+ * ticks follow a {@link com.theoriginalbit.faux.manager.VirtualClock}, so they run as fast as they
+ * can and each runs until the devices have finished their work, and the random numbers are seeded,
+ * so every replay of a log does the same work and leaves the same screens, which are printed to
+ * the standard output, not the log, with the time the replay took once the log ends. Replays run
+ * in a new data store, holding only the ROM and files from the log, which is deleted afterwards,
+ * and the devices are never hibernated.
+ *
+ * @author theoriginalbit
+ */
+public final class FleetEmulator implements IEmulatorInstance {
+    private static final String USAGE = "Usage: FleetEmulator [--config=<file>] [--computers=<n>] [--turtles=<n>] " +
+            "[--pockets=<n>] [--family=normal|advanced] [--firstId=<id>] [--replay=<log>] [--snapshotDir=<dir>] [--<setting>=<value>]...";
+    /**
+     * The data store made for a replay, which is deleted once the replay is over
+     */
+    private static File replayStore;
+    private final TickManager tickManager;
+    private final DeviceManager deviceManager;
+    private final Thread tickThread;
+    private final SoftwareRenderer renderer = new SoftwareRenderer();
+    private MetricsServer metricsServer;
+    private File snapshotDirectory;
+    private volatile boolean running;
+
+    /**
+     * Constructs an emulator without any devices, the settings must already be applied as they
+     * are read by the tick manager
+     */
+    public FleetEmulator() {
+        this(SystemClock.INSTANCE);
+    }
+
+    /**
+     * @param clock the clock the ticks are scheduled by
+     * @see #FleetEmulator()
+     */
+    public FleetEmulator(IClock clock) {
+        deviceManager = new DeviceManager();
+        tickManager = new TickManager(this, clock);
+        tickThread = new Thread(tickManager, "Pseudo-World Tick");
+    }
+
+    public static void main(String[] args) {
+        final Properties config = new Properties();
+        try {
+            parseArguments(args, config);
+            if (config.getProperty("replay") != null) {
+                prepareReplay(config);
+            }
+            applySettings(config, Emulator.getEmulatorSettings());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+
+        Log.info("%s starting without a display...", AppInfo.NAME);
+        PrototypeCache.getInstance().setDirectory(new File(Emulator.DATASTORE, "cache/lua"));
+        final String snapshots = config.getProperty("snapshotDir");
+        if (config.getProperty("replay") != null) {
+            replay(new File(config.getProperty("replay")), snapshots != null ? new File(snapshots) : null);
+            return;
+        }
+
+        final FleetEmulator fleet = new FleetEmulator();
+        if (snapshots != null) {
+            fleet.setSnapshotDirectory(new File(snapshots));
+        }
+        final DeviceFamily family = DeviceFamily.valueOf(config.getProperty("family", "advanced").toUpperCase());
+        int id = getInt(config, "firstId", 0);
+        for (int i = getInt(config, "computers", 1); i > 0; --i) {
+            fleet.addDevice(new Computer(family, id++, fleet));
+        }
+        for (int i = getInt(config, "turtles", 0); i > 0; --i) {
+            fleet.addDevice(new Turtle(family, id++, fleet));
+        }
+        for (int i = getInt(config, "pockets", 0); i > 0; --i) {
+            fleet.addDevice(new Pocket(family, id++, fleet));
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread("Fleet Shutdown") {
+            @Override
+            public void run() {
+                fleet.shutdown();
+            }
+        });
+        fleet.start();
+        Log.info("Running %d devices", fleet.deviceManager.getRegisteredItems().size());
+    }
+
+    /**
+     * Adds a device to the fleet, it is turned on once the fleet is started
+     *
+     * @param device the device
+     */
+    public void addDevice(DisplayDevice device) {
+        device.onCreate();
+    }
+
+    /**
+     * Starts ticking the devices, and serves the metrics when a metrics port is set
+     */
+    public void start() {
+        running = true;
+        tickThread.start();
+        final int metricsPort = Emulator.getEmulatorSettings().getMetricsPort();
+        if (metricsPort > 0) {
+            metricsServer = MetricsServer.start(this, deviceManager, metricsPort);
+        }
+    }
+
+    /**
+     * Sets where each device is drawn to when the fleet shuts down
+     *
+     * @param directory the directory, or null to draw nothing
+     */
+    public void setSnapshotDirectory(File directory) {
+        snapshotDirectory = directory;
+    }
+
+    /**
+     * Draws each device with the software renderer and writes it to {@code <id>.png} in the
+     * directory, the tick must not be running
+     *
+     * @param directory the directory to write to
+     * @throws IOException when an image cannot be written
+     */
+    public void writeSnapshots(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        final Rectangle bounds = new Rectangle();
+        for (IDevice device : deviceManager.getRegisteredItems()) {
+            if (device instanceof DisplayDevice) {
+                final DisplayDevice display = (DisplayDevice) device;
+                display.getBounds(bounds);
+                renderer.initialise(bounds.width, bounds.height);
+                display.drawAtOrigin();
+                renderer.writePng(new File(directory, display.getID() + ".png"));
+            }
+        }
+    }
+
+    /**
+     * Waits for the tick to stop, which it does on shutdown or once its input source has ended
+     *
+     * @throws InterruptedException when interrupted while waiting
+     */
+    public void awaitTickEnd() throws InterruptedException {
+        tickThread.join();
+    }
+
+    /**
+     * Stops ticking, and then stops or hibernates every device and removes their MBeans
+     */
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        Log.info("Shutting down %s...", AppInfo.NAME);
+        running = false;
+        try {
+            tickThread.join();
+        } catch (InterruptedException e) {
+            Log.warn("Interrupted while waiting for the tick to stop");
+        }
+        if (snapshotDirectory != null) {
+            try {
+                writeSnapshots(snapshotDirectory);
+            } catch (IOException e) {
+                Log.error("Failed to write the snapshots to %s: %s", snapshotDirectory, e.getMessage());
+            }
+        }
+        deviceManager.stopDevices();
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        deviceManager.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getWidth() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getHeight() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSystemTime() {
+        return tickManager.getSystemTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IManager<IInputConsumer> getInputManager() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IManager<ITicking> getTickManager() {
+        return tickManager;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ITickStatistics getTickStatistics() {
+        return tickManager.getStatistics();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IManager<IRendered> getRenderManager() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IManager<IDevice> getDeviceManager() {
+        return deviceManager;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IManager<IWindow> getWindowManager() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IRenderer getRenderer() {
+        return renderer;
+    }
+
+    /**
+     * Replays an input log, and then prints the screens and how long the replay took
+     */
+    private static void replay(File log, File snapshots) {
+        final FleetEmulator fleet = new FleetEmulator(new VirtualClock());
+        fleet.setSnapshotDirectory(snapshots);
+        final InputReplayer replayer;
+        try {
+            replayer = new InputReplayer(log, fleet);
+        } catch (IOException e) {
+            Log.error("Cannot replay %s: %s", log, e.getMessage());
+            deleteDataStore();
+            System.exit(1);
+            return;
+        }
+        for (DisplayDevice device : replayer.getDevices()) {
+            fleet.addDevice(device);
+        }
+        fleet.tickManager.setInputSource(replayer);
+        Runtime.getRuntime().addShutdownHook(new Thread("Fleet Shutdown") {
+            @Override
+            public void run() {
+                fleet.shutdown();
+            }
+        });
+
+        final long start = System.nanoTime();
+        fleet.start();
+        try {
+            fleet.awaitTickEnd();
+        } catch (InterruptedException e) {
+            Log.warn("Interrupted while replaying %s", log);
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        // the screens are printed before the devices are stopped, which clears them, and
+        // straight to the console rather than through the log, so they are exactly as they were
+        final PrintStream out = Log.getConsole();
+        final ITickStatistics ticks = fleet.getTickStatistics();
+        out.println(String.format("Replayed %d ticks of %s in %d ms, %.1f times as fast as they were recorded",
+                ticks.getTickCount(), log, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                ticks.getTickCount() * 50.0e6 / Math.max(elapsed, 1L)));
+        for (DisplayDevice device : replayer.getDevices()) {
+            final IDeviceStatistics statistics = device.getStatistics();
+            out.println(String.format("Device %d: %d instructions, %d yields, %d events, %d bytes read, %d bytes written",
+                    device.getID(), statistics.getInstructions(), statistics.getYields(),
+                    statistics.getEventsQueued(), statistics.getBytesRead(), statistics.getBytesWritten()));
+        }
+        replayer.printScreens(out);
+        out.flush();
+
+        fleet.shutdown();
+        try {
+            replayer.close();
+        } catch (IOException e) {
+            Log.warn("Failed to close %s: %s", log, e.getMessage());
+        }
+        deleteDataStore();
+    }
+
+    /**
+     * Points the data store at a new, empty, directory for the replay, which must be done before
+     * the emulator's settings are first used as that is when the data store is found, and sets
+     * the settings a replay requires
+     */
+    private static void prepareReplay(Properties config) {
+        try {
+            replayStore = Files.createTempDirectory(AppInfo.NAME.toLowerCase() + "-replay").toFile();
+            System.setProperty("com.theoriginalbit." + AppInfo.NAME + ".path", replayStore.getPath());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot create a data store for the replay: " + e.getMessage());
+        }
+        config.setProperty("hibernateOnExit", "false");
+        if (config.getProperty("randomSeed") == null) {
+            config.setProperty("randomSeed", "1");
+        }
+    }
+
+    private static void deleteDataStore() {
+        if (replayStore != null) {
+            delete(replayStore);
+        }
+    }
+
+    private static void delete(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (!file.delete()) {
+            Log.warn("Failed to delete %s", file);
+        }
+    }
+
+    /**
+     * Reads the arguments into the configuration, after the properties file they name
+     */
+    private static void parseArguments(String[] args, Properties config) {
+        final Properties overrides = new Properties();
+        for (String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+            overrides.setProperty(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        final String file = overrides.getProperty("config");
+        if (file != null) {
+            try {
+                final InputStream in = new FileInputStream(file);
+                try {
+                    config.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Cannot read " + file + ": " + e.getMessage());
+            }
+        }
+        config.putAll(overrides);
+    }
+
+    private static void applySettings(Properties config, EmulatorSettings settings) {
+        for (String key : config.stringPropertyNames()) {
+            final String value = config.getProperty(key).trim();
+            if (key.equals("workerThreads")) {
+                settings.setWorkerThreads(getInt(config, key, 0));
+            } else if (key.equals("timeSlice")) {
+                settings.setTimeSlice(getInt(config, key, 0));
+            } else if (key.equals("instructionBudget")) {
+                settings.setInstructionBudget(getInt(config, key, 0));
+            } else if (key.equals("computerSpaceLimit")) {
+                settings.setComputerSpaceLimit(getLong(config, key, 0L));
+            } else if (key.equals("tickPolicy")) {
+                settings.setTickPolicy(TickPolicy.valueOf(value.toUpperCase()));
+            } else if (key.equals("maxTickBacklog")) {
+                settings.setMaxTickBacklog(getInt(config, key, 0));
+            } else if (key.equals("hibernateOnExit")) {
+                settings.setHibernateOnExit(Boolean.parseBoolean(value));
+            } else if (key.equals("metricsPort")) {
+                settings.setMetricsPort(getInt(config, key, 0));
+            } else if (key.equals("randomSeed")) {
+                settings.setRandomSeed(getLong(config, key, 0L));
+            } else if (key.equals("family")) {
+                DeviceFamily.valueOf(value.toUpperCase());
+            } else if (!key.equals("config") && !key.equals("computers") && !key.equals("turtles") &&
+                    !key.equals("pockets") && !key.equals("firstId") && !key.equals("replay") &&
+                    !key.equals("snapshotDir")) {
+                throw new IllegalArgumentException("Unknown setting " + key);
+            }
+        }
+    }
+
+    private static int getInt(Properties config, String key, int defaultValue) {
+        final long value = getLong(config, key, defaultValue);
+        if (value != (int) value) {
+            throw new IllegalArgumentException("The value of " + key + " is too large: " + value);
+        }
+        return (int) value;
+    }
+
+    private static long getLong(Properties config, String key, long defaultValue) {
+        final String value = config.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The value of " + key + " must be a whole number: " + value);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.api;
+
+/**
+ * A common interface to the clock the pseudo-world tick is scheduled by. The tick normally follows
+ * the system clock, a replay gives it a clock that moves on whenever it would wait, so the ticks
+ * run back to back and each tick runs until its work is done.
+ *
+ * @author theoriginalbit
+ */
+public interface IClock {
+    /**
+     * @return the current time in nanoseconds, only meaningful compared to other times from this
+     * clock
+     */
+    public long nanoTime();
+
+    /**
+     * Waits for the specified time to pass on this clock
+     *
+     * @param nanos the time to wait in nanoseconds
+     * @throws InterruptedException when interrupted while waiting
+     */
+    public void sleep(long nanos) throws InterruptedException;
+}
@@ -19,6 +19,10 @@ import com.theoriginalbit.faux.api.computercraft.IDevice;
 
 /**
  * A common interface defining the accessible methods within the emulator instance
+ * <p/>
+ * An instance without a display, such as one running devices on a server, has a drawable area
+ * of 0 by 0, and no input manager, render manager, window manager, or renderer; those methods
+ * return null.
  *
  * @author theoriginalbit
  */
@@ -44,7 +48,7 @@ public interface IEmulatorInstance {
     public long getSystemTime();
 
     /**
-     * @return the input manager for the emulator application
+     * @return the input manager for the emulator application, or null without a display
      */
     public IManager<IInputConsumer> getInputManager();
 
@@ -55,6 +59,11 @@ public interface IEmulatorInstance {
      */
     public IManager<ITicking> getTickManager();
 
+    /**
+     * @return the live statistics of the pseudo-world tick
+     */
+    public ITickStatistics getTickStatistics();
+
     /**
      * The render manager maintains all rendered elements within the Emulator with the exception
      * of a {@link com.theoriginalbit.faux.api.IWindow} which have their own manager since they
@@ -68,7 +77,7 @@ public interface IEmulatorInstance {
      * they're registered to the manager, meaning newly registered elements will be rendered over
      * the top of older registered elements.
      *
-     * @return the render manager for the emulator application
+     * @return the render manager for the emulator application, or null without a display
      */
     public IManager<IRendered> getRenderManager();
 
@@ -89,7 +98,15 @@ public interface IEmulatorInstance {
      * Objects that are an {@link com.theoriginalbit.faux.api.IWindow} are rendered before
      * any {@link com.theoriginalbit.faux.api.IRendered} objects.
      *
-     * @return the window manager for the emulator application
+     * @return the window manager for the emulator application, or null without a display
      */
     public IManager<IWindow> getWindowManager();
+
+    /**
+     * The renderer draws everything to the canvas, it is flushed by the window manager once each
+     * window has been drawn.
+     *
+     * @return the renderer for the emulator application, or null without a display
+     */
+    public IRenderer getRenderer();
 }
@@ -0,0 +1,35 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.api;
+
+/**
+ * A common interface for ticking objects that have more work than fits in a single tick, such as
+ * a running computer. Each pseudo-world tick the tick manager gives the object one or more time
+ * slices, interleaved with the slices of other objects, until it has no more work or the tick is
+ * over. An object is never executed by more than one thread at a time.
+ *
+ * @author theoriginalbit
+ * @see com.theoriginalbit.faux.api.ITicking
+ */
+public interface IExecutable extends ITicking {
+    /**
+     * Invoked when the object may perform work, it should return once the time slice is used up
+     *
+     * @param timeSlice the time available in nanoseconds
+     * @return whether the object has more work it could do this tick
+     */
+    public boolean execute(long timeSlice);
+}
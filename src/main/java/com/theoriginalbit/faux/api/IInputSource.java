@@ -0,0 +1,35 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.api;
+
+/**
+ * A common interface for a source of input that is delivered to devices by the pseudo-world tick,
+ * rather than by the input manager, such as a recorded session being replayed. The tick manager
+ * gives the source the chance to deliver its input before each tick, on the tick thread, so the
+ * input always arrives at the same point in the ticks.
+ *
+ * @author theoriginalbit
+ */
+public interface IInputSource {
+    /**
+     * Delivers the input that is due before the next tick
+     *
+     * @param tick the number of ticks run so far
+     * @return whether the tick should run, false once the source has ended and no more ticks
+     * should run
+     */
+    public boolean deliver(long tick);
+}
@@ -15,7 +15,7 @@
  */
 package com.theoriginalbit.faux.api;
 
-import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A common interface that defines the functionality of a generic registry within the Faux context.
@@ -42,7 +42,7 @@ public interface IRegistry<E> {
     public boolean unregister(E item);
 
     /**
-     * @return a list of all the registered items
+     * @return an unmodifiable list of all the registered items
      */
-    public ArrayList<E> getRegisteredItems();
+    public List<E> getRegisteredItems();
 }
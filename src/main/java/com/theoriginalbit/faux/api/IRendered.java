@@ -15,8 +15,13 @@
  */
 package com.theoriginalbit.faux.api;
 
+import java.awt.Rectangle;
+
 /**
  * A interface to define the common functionality of a rendered object within the Faux GUI context
+ * <p/>
+ * Elements report the areas of the screen they have changed, so that the screen is only redrawn
+ * where, and when, something has changed.
  *
  * @author theoriginalbit
  */
@@ -51,4 +56,24 @@ public interface IRendered {
      * @param manager the render manager
      */
     public void draw(IManager<IRendered> manager);
+
+    /**
+     * @return whether the element has changed since its damage was last added, and so must be
+     * drawn again
+     */
+    public boolean isDirty();
+
+    /**
+     * Adds the areas of the screen the element has changed since its damage was last added, both
+     * where it was and where it now is, to the supplied damage. The element is no longer dirty
+     * afterwards, as it will be drawn before its damage is next added.
+     *
+     * @param damage the area to grow to include the damage of this element
+     */
+    public void addDamage(Rectangle damage);
+
+    /**
+     * @param into set to the area of the screen the element covers
+     */
+    public void getBounds(Rectangle into);
 }
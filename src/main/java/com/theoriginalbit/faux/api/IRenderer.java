@@ -0,0 +1,106 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.api;
+
+import com.theoriginalbit.faux.ui.Color;
+import com.theoriginalbit.faux.ui.VertexBlock;
+
+/**
+ * A common interface for the backends that draw the emulator canvas. All drawing performed by
+ * windows and the main loop goes through a renderer, meaning the emulator does not require an
+ * OpenGL display in order to render.
+ * <p/>
+ * Drawing may be deferred by the renderer until it is flushed, however the result must always be
+ * as if every call had been drawn in the order it was made.
+ *
+ * @author theoriginalbit
+ */
+public interface IRenderer {
+    /**
+     * Invoked once the render surface exists, before anything is drawn
+     *
+     * @param width  the width of the drawable area
+     * @param height the height of the drawable area
+     */
+    public void initialise(int width, int height);
+
+    /**
+     * Invoked when the drawable area has changed size
+     *
+     * @param width  the new width
+     * @param height the new height
+     */
+    public void resize(int width, int height);
+
+    /**
+     * Clears the drawable area, within the clip, to the background colour
+     */
+    public void clear();
+
+    /**
+     * Restricts clearing and everything subsequently drawn to an area, until the clip is next set
+     *
+     * @param x the x position
+     * @param y the y position
+     * @param w the width of the area
+     * @param h the height of the area
+     */
+    public void setClip(int x, int y, int w, int h);
+
+    /**
+     * Sets the colour of everything subsequently drawn
+     *
+     * @param color the colour to set
+     */
+    public void setColor(Color color);
+
+    /**
+     * Draws a quad in the current colour
+     *
+     * @param x the x position
+     * @param y the y position
+     * @param w the width of the quad
+     * @param h the height of the quad
+     */
+    public void drawQuad(int x, int y, int w, int h);
+
+    /**
+     * Draws the quads of a pre-built block, in their own colours, with the origin of the block
+     * at the specified location
+     *
+     * @param block the block to draw
+     * @param x     the x position
+     * @param y     the y position
+     */
+    public void drawBlock(VertexBlock block, int x, int y);
+
+    /**
+     * Draws a glyph from the {@link com.theoriginalbit.faux.ui.GlyphAtlas} in the current colour,
+     * stretched to the specified location and dimensions
+     *
+     * @param x  the x position
+     * @param y  the y position
+     * @param w  the width of the glyph
+     * @param h  the height of the glyph
+     * @param ch the character to draw, 0 to 255
+     */
+    public void drawGlyph(int x, int y, int w, int h, int ch);
+
+    /**
+     * Ensures everything drawn so far has reached the drawable area
+     */
+    public void flush();
+}
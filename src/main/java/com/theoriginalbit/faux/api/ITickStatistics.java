@@ -0,0 +1,76 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.api;
+
+import java.util.List;
+
+/**
+ * A common interface to the live statistics of the pseudo-world tick, allowing anyone to see
+ * when the emulator is falling behind. The statistics cover a rolling window of recent ticks.
+ *
+ * @author theoriginalbit
+ */
+public interface ITickStatistics {
+    /**
+     * @return the number of ticks completed per second of the clock the ticks are scheduled by,
+     * ideally 20; while input is replayed on a virtual clock this is virtual time too
+     */
+    public double getTicksPerSecond();
+
+    /**
+     * @return the mean time taken to process a tick, in nanoseconds
+     */
+    public long getMeanTickTime();
+
+    /**
+     * @return the 99th percentile of the time taken to process a tick, in nanoseconds
+     */
+    public long getP99TickTime();
+
+    /**
+     * @return the total number of ticks processed
+     */
+    public long getTickCount();
+
+    /**
+     * @return the total number of ticks skipped because the emulator could not keep up
+     */
+    public long getSkippedTicks();
+
+    /**
+     * Copies the time taken to process the most recent ticks, oldest first. When there are more
+     * ticks than fit, the oldest are left out.
+     *
+     * @param into the array to copy into, in nanoseconds
+     * @return the number of ticks copied
+     */
+    public int getRecentTickTimes(long[] into);
+
+    /**
+     * Gets the time an object takes each tick, including any time slices it is given, smoothed
+     * over recent ticks
+     *
+     * @param item the ticked object
+     * @return the time taken, in nanoseconds, or 0 if the object is not ticked
+     */
+    public long getMeanTickTime(ITicking item);
+
+    /**
+     * @param count the maximum number of objects to return
+     * @return the objects which take the most time each tick, slowest first
+     */
+    public List<ITicking> getSlowest(int count);
+}
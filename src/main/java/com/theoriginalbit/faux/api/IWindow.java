@@ -15,6 +15,8 @@
  */
 package com.theoriginalbit.faux.api;
 
+import java.awt.Rectangle;
+
 /**
  * A common interface to define the standard functionality of a Window element within the GUI context
  *
@@ -60,4 +62,13 @@ public interface IWindow extends IRendered, IInputConsumer, ITicking {
      * @return whether it was in the bounds
      */
     public boolean wasClickInBounds(int x, int y);
+
+    /**
+     * Gets an area which the window entirely covers when drawn, so that windows below it there
+     * need not be drawn. The area may be smaller than what the window really covers, but never
+     * larger.
+     *
+     * @param into set to the area, or to an empty area if the window covers nothing entirely
+     */
+    public void getOpaqueBounds(Rectangle into);
 }
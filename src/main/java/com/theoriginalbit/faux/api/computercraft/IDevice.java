@@ -21,7 +21,58 @@ package com.theoriginalbit.faux.api.computercraft;
 public interface IDevice {
     public void stop();
 
+    /**
+     * Saves the state of the device and stops it, the device resumes from the saved state the
+     * next time it is turned on
+     */
+    public void hibernate();
+
     public int getID();
 
+    /**
+     * @return the performance counters of the device
+     */
+    public IDeviceStatistics getStatistics();
+
+    /**
+     * Queues an event for the device with any number of arguments, this is the slowest way to
+     * queue an event as the arguments must be boxed into an array
+     *
+     * @param event the name of the event
+     * @param args  the arguments of the event
+     */
     public void queueEvent(String event, Object... args);
+
+    /**
+     * Queues an event for the device without any arguments
+     *
+     * @param event the name of the event
+     */
+    public void queueEvent(String event);
+
+    /**
+     * Queues an event for the device with a single numeric argument
+     *
+     * @param event the name of the event
+     * @param arg   the argument of the event
+     */
+    public void queueEvent(String event, double arg);
+
+    /**
+     * Queues an event for the device with a single argument
+     *
+     * @param event the name of the event
+     * @param arg   the argument of the event
+     */
+    public void queueEvent(String event, Object arg);
+
+    /**
+     * Queues an event for the device with three numeric arguments, e.g. a mouse event
+     *
+     * @param event the name of the event
+     * @param arg1  the first argument of the event
+     * @param arg2  the second argument of the event
+     * @param arg3  the third argument of the event
+     */
+    public void queueEvent(String event, double arg1, double arg2, double arg3);
 }
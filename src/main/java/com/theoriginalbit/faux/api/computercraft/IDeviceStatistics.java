@@ -0,0 +1,69 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.api.computercraft;
+
+/**
+ * The performance counters of a device, or the totals of every device. All of the counters only
+ * ever increase while the emulator runs, they are not kept when a device hibernates.
+ *
+ * @author theoriginalbit
+ */
+public interface IDeviceStatistics {
+    /**
+     * @return the number of events queued for the device
+     */
+    public long getEventsQueued();
+
+    /**
+     * @return the number of events dropped because the device's queue was full
+     */
+    public long getEventsDropped();
+
+    /**
+     * @return the number of Lua instructions the device has executed
+     */
+    public long getInstructions();
+
+    /**
+     * @return the number of times the device yielded to wait for an event
+     */
+    public long getYields();
+
+    /**
+     * @return the number of times the device ran for longer than the time slice it was given
+     */
+    public long getOverruns();
+
+    /**
+     * @return the number of bytes the device has read from files
+     */
+    public long getBytesRead();
+
+    /**
+     * @return the number of bytes the device has written to files
+     */
+    public long getBytesWritten();
+
+    /**
+     * @return the number of times the device has been drawn
+     */
+    public long getRenders();
+
+    /**
+     * @return the total time spent drawing the device, in nanoseconds
+     */
+    public long getRenderTime();
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.api.computercraft;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+
+/**
+ * A directory tree which can be mounted into a device's file system. Paths are relative to the
+ * root of the mount, use {@code /} as the separator, and have already been sanitised, so they
+ * never contain {@code .} or {@code ..} components. The root of a mount is the empty path.
+ *
+ * @author theoriginalbit
+ * @see com.theoriginalbit.faux.api.computercraft.IWritableMount
+ */
+public interface IMount {
+    /**
+     * @param path the path to check
+     * @return whether a file or directory exists at the path
+     * @throws IOException when the mount cannot be accessed
+     */
+    public boolean exists(String path) throws IOException;
+
+    /**
+     * @param path the path to check
+     * @return whether a directory exists at the path
+     * @throws IOException when the mount cannot be accessed
+     */
+    public boolean isDirectory(String path) throws IOException;
+
+    /**
+     * Adds the names of the entries in a directory to the list
+     *
+     * @param path     the directory
+     * @param contents the list to add the names to
+     * @throws IOException when the path is not a directory, or the mount cannot be accessed
+     */
+    public void list(String path, List<String> contents) throws IOException;
+
+    /**
+     * @param path the file
+     * @return the size of the file in bytes, directories have a size of 0
+     * @throws IOException when the path does not exist, or the mount cannot be accessed
+     */
+    public long getSize(String path) throws IOException;
+
+    /**
+     * Opens a file for reading, the caller is responsible for closing the channel
+     *
+     * @param path the file
+     * @return the channel to read the file from
+     * @throws IOException when the path is not a file, or the mount cannot be accessed
+     */
+    public ReadableByteChannel openForRead(String path) throws IOException;
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.api.computercraft;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A mount which a device can modify. Writable mounts have a fixed capacity, the writes that
+ * would exceed it fail with an {@link IOException} whose message is {@code Out of space}.
+ *
+ * @author theoriginalbit
+ * @see com.theoriginalbit.faux.api.computercraft.IMount
+ */
+public interface IWritableMount extends IMount {
+    /**
+     * Creates a directory, and any missing parent directories
+     *
+     * @param path the directory
+     * @throws IOException when a file is in the way, the mount is out of space, or it cannot be
+     *                     accessed
+     */
+    public void makeDirectory(String path) throws IOException;
+
+    /**
+     * Deletes a file, or a directory and everything within it
+     *
+     * @param path the file or directory
+     * @throws IOException when the mount cannot be accessed
+     */
+    public void delete(String path) throws IOException;
+
+    /**
+     * Opens a file for writing, replacing any existing contents, the caller is responsible for
+     * closing the channel
+     *
+     * @param path the file
+     * @return the channel to write the file with
+     * @throws IOException when the path is a directory, the mount is out of space, or it cannot
+     *                     be accessed
+     */
+    public WritableByteChannel openForWrite(String path) throws IOException;
+
+    /**
+     * Opens a file for writing after its existing contents, the caller is responsible for closing
+     * the channel
+     *
+     * @param path the file
+     * @return the channel to write the file with
+     * @throws IOException when the path is a directory, the mount is out of space, or it cannot
+     *                     be accessed
+     */
+    public WritableByteChannel openForAppend(String path) throws IOException;
+
+    /**
+     * @return the number of bytes which can still be written
+     * @throws IOException when the mount cannot be accessed
+     */
+    public long getRemainingSpace() throws IOException;
+}
@@ -0,0 +1,624 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft;
+
+import com.theoriginalbit.faux.Emulator;
+import com.theoriginalbit.faux.api.computercraft.IDevice;
+import com.theoriginalbit.faux.computercraft.filesystem.ArchiveMount;
+import com.theoriginalbit.faux.computercraft.filesystem.FileMount;
+import com.theoriginalbit.faux.computercraft.filesystem.FileSystem;
+import com.theoriginalbit.faux.computercraft.filesystem.FileSystemException;
+import com.theoriginalbit.faux.log.Log;
+import com.theoriginalbit.faux.lua.HeapReader;
+import com.theoriginalbit.faux.lua.HeapWriter;
+import com.theoriginalbit.faux.lua.Lua;
+import com.theoriginalbit.faux.lua.LuaClosure;
+import com.theoriginalbit.faux.lua.LuaError;
+import com.theoriginalbit.faux.lua.LuaMachine;
+import com.theoriginalbit.faux.lua.LuaTable;
+import com.theoriginalbit.faux.lua.lib.BaseLib;
+import com.theoriginalbit.faux.lua.lib.CoroutineLib;
+import com.theoriginalbit.faux.lua.lib.MathLib;
+import com.theoriginalbit.faux.lua.lib.StringLib;
+import com.theoriginalbit.faux.lua.lib.TableLib;
+import com.theoriginalbit.faux.util.Events;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Runs the Lua side of a device. The device's machine is resumed for a time slice each time the
+ * device executes, and is given the events from the device's queue whenever it is waiting for
+ * one. The machine counts its own instructions, so a program that never yields is paused at the
+ * end of its budget and eventually aborted, rather than stalling the devices sharing its worker.
+ * <p/>
+ * {@link #tick()} and {@link #execute(long)} must be invoked by whichever thread is ticking the
+ * device; the power controls may be invoked from any thread and are applied on the next execute.
+ * <p/>
+ * A device can be hibernated rather than shut down, which saves its terminal, timers, pending
+ * events and the entire state of its machine to {@code snapshots/<id>.fxs} in the data store.
+ * The next time the device is turned on it resumes from the snapshot, exactly where it stopped,
+ * instead of booting.
+ *
+ * @author theoriginalbit
+ */
+public final class DeviceRuntime {
+    /**
+     * The ticks in a Minecraft day, and the tick at which a Minecraft day starts
+     */
+    private static final int DAY_LENGTH = 24000, DAY_START = 6000;
+    /**
+     * The colour index of red, used for errors that stop the device
+     */
+    private static final int ERROR_COLOUR = 14;
+    private static final int NONE = 0, TURN_ON = 1, SHUTDOWN = 2, REBOOT = 3;
+    /**
+     * Identifies a snapshot file, and the version of its format
+     */
+    private static final int SNAPSHOT_MAGIC = 0x46585353, SNAPSHOT_VERSION = 2;
+    private static String biosSource;
+    private static ArchiveMount rom;
+    private static boolean romLoaded;
+    private final IDevice device;
+    private final Terminal terminal;
+    private final EventQueue eventQueue;
+    private final DeviceStatistics statistics;
+    private final EventQueue.Event event = new EventQueue.Event();
+    /**
+     * The ticks remaining of each running timer, by the timer ID
+     */
+    private final Map<Integer, Integer> timers = new HashMap<Integer, Integer>();
+    /**
+     * The power control to apply on the next execute, set by any thread
+     */
+    private final AtomicInteger request = new AtomicInteger(NONE);
+    /**
+     * The machine while the device is on, which other threads read to see whether it is on
+     */
+    private volatile LuaMachine machine;
+    private FileMount mount;
+    private FileSystem fileSystem;
+    private long ticks;
+    private int nextTimerID;
+
+    /**
+     * @param device   the device the runtime belongs to
+     * @param terminal the terminal of the device
+     * @param events   the event queue of the device
+     * @param stats    the counters of the device
+     */
+    DeviceRuntime(IDevice device, Terminal terminal, EventQueue events, DeviceStatistics stats) {
+        this.device = device;
+        this.terminal = terminal;
+        eventQueue = events;
+        statistics = stats;
+    }
+
+    /**
+     * @return whether the device is on
+     */
+    public boolean isOn() {
+        return machine != null;
+    }
+
+    /**
+     * Requests that the device be turned on, if it is not already
+     */
+    public void turnOn() {
+        request.set(TURN_ON);
+    }
+
+    /**
+     * Requests that the device be turned off
+     */
+    public void shutdown() {
+        request.set(SHUTDOWN);
+    }
+
+    /**
+     * Requests that the device be turned off and on again
+     */
+    public void reboot() {
+        request.set(REBOOT);
+    }
+
+    /**
+     * Advances the device's clock and timers by one tick, queueing an event for each timer that
+     * has finished
+     */
+    public synchronized void tick() {
+        if (machine == null) {
+            return;
+        }
+
+        ++ticks;
+        final Iterator<Map.Entry<Integer, Integer>> iterator = timers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Integer, Integer> timer = iterator.next();
+            final int remaining = timer.getValue() - 1;
+            if (remaining <= 0) {
+                device.queueEvent(Events.TIMER, timer.getKey().doubleValue());
+                iterator.remove();
+            } else {
+                timer.setValue(remaining);
+            }
+        }
+    }
+
+    /**
+     * Runs the device's machine for up to the time slice
+     *
+     * @param timeSlice the time available in nanoseconds
+     * @return whether the machine could run further
+     */
+    public synchronized boolean execute(long timeSlice) {
+        applyRequest();
+        if (machine == null) {
+            return false;
+        }
+
+        final LuaMachine.State state;
+        final long steps = machine.getSteps();
+        final long start = System.nanoTime();
+        switch (machine.getState()) {
+            case READY:
+            case PAUSED:
+                state = machine.resume(Lua.NONE, timeSlice);
+                break;
+            case YIELDED: {
+                final Object[] args = pollEvent();
+                if (args == null) {
+                    return false;
+                }
+                state = machine.resume(args, timeSlice);
+                break;
+            }
+            default:
+                return false;
+        }
+        statistics.recordExecution(machine.getSteps() - steps, state == LuaMachine.State.YIELDED, System.nanoTime() - start > timeSlice);
+
+        switch (state) {
+            case ERRORED:
+                printError(Lua.toStringRaw(machine.getError()));
+                return false;
+            case FINISHED:
+                // like ComputerCraft, a device turns off once its BIOS returns
+                powerOff();
+                return false;
+            case YIELDED:
+                return request.get() != NONE || eventQueue.size() > 0;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Saves the state of the device to its snapshot and turns it off. Nothing is saved when the
+     * device is off, has stopped with an error, or cannot be saved, such as while a program is
+     * waiting on a metamethod; the device is turned off regardless. Open files are closed.
+     */
+    public synchronized void hibernate() {
+        request.set(NONE);
+        if (machine != null) {
+            final LuaMachine.State state = machine.getState();
+            if (state != LuaMachine.State.ERRORED && state != LuaMachine.State.FINISHED) {
+                final File snapshot = getSnapshotFile();
+                final File temp = new File(snapshot.getPath() + ".tmp");
+                try {
+                    writeSnapshot(temp);
+                    if (!temp.renameTo(snapshot) && !(snapshot.delete() && temp.renameTo(snapshot))) {
+                        throw new IOException("Cannot replace " + snapshot);
+                    }
+                    Log.debug("Hibernated device %d to %s", device.getID(), snapshot);
+                } catch (IOException e) {
+                    Log.error("Failed to hibernate device %d: %s", device.getID(), e.getMessage());
+                    if (temp.exists() && !temp.delete()) {
+                        Log.warn("Failed to delete %s", temp);
+                    }
+                }
+            }
+        }
+        powerOff();
+    }
+
+    /**
+     * @return the number of seconds the device has been on, in whole ticks
+     */
+    double getClock() {
+        return ticks * 0.05;
+    }
+
+    /**
+     * @return the time of day in hours, as a Minecraft clock would show
+     */
+    double getTimeOfDay() {
+        return ((ticks + DAY_START) % DAY_LENGTH) / 1000.0;
+    }
+
+    /**
+     * @return the day, starting from day 1 when the device was turned on
+     */
+    int getDay() {
+        return (int) ((ticks + DAY_START) / DAY_LENGTH) + 1;
+    }
+
+    /**
+     * Starts a timer that queues a {@code timer} event after at least the specified time
+     *
+     * @param seconds the time to wait
+     * @return the ID of the timer
+     */
+    int startTimer(double seconds) {
+        final int id = nextTimerID++;
+        timers.put(id, Math.max((int) Math.ceil(seconds / 0.05), 1));
+        return id;
+    }
+
+    /**
+     * @param id the ID of the timer to cancel
+     */
+    void cancelTimer(int id) {
+        timers.remove(id);
+    }
+
+    IDevice getDevice() {
+        return device;
+    }
+
+    Terminal getTerminal() {
+        return terminal;
+    }
+
+    FileSystem getFileSystem() {
+        return fileSystem;
+    }
+
+    DeviceStatistics getStatistics() {
+        return statistics;
+    }
+
+    private void applyRequest() {
+        // taken in one step, so a control requested meanwhile is applied next time rather than lost
+        final int pending = request.getAndSet(NONE);
+        if (pending == NONE) {
+            return;
+        }
+
+        if (pending != TURN_ON || machine == null) {
+            powerOff();
+        }
+        if (pending == TURN_ON || pending == REBOOT) {
+            powerOn();
+        }
+    }
+
+    private void powerOn() {
+        if (mount == null) {
+            // the mount outlives reboots, so the space it uses is only counted once
+            mount = new FileMount(new File(Emulator.DATASTORE, "computer/" + device.getID()),
+                    Emulator.getEmulatorSettings().getComputerSpaceLimit());
+        }
+        fileSystem = new FileSystem(mount);
+        final ArchiveMount romMount = getRom();
+        if (romMount != null) {
+            try {
+                fileSystem.mount("rom", "rom", romMount);
+            } catch (FileSystemException e) {
+                Log.error("Failed to mount the ROM: %s", e.getMessage());
+            }
+        }
+
+        final LuaMachine created = new LuaMachine(new LuaTable());
+        BaseLib.install(created);
+        StringLib.install(created);
+        TableLib.install(created);
+        MathLib.install(created);
+        CoroutineLib.install(created);
+        OSAPI.install(created, this);
+        TermAPI.install(created, this);
+        FSAPI.install(created, this);
+
+        final File snapshot = getSnapshotFile();
+        if (snapshot.isFile()) {
+            try {
+                // the restored machine is given the functions just installed, bound to this boot
+                machine = readSnapshot(snapshot, created);
+            } catch (IOException e) {
+                Log.error("Failed to restore device %d, booting instead: %s", device.getID(), e.getMessage());
+                reset();
+            } catch (RuntimeException e) {
+                Log.error("Failed to restore device %d, booting instead: %s", device.getID(), e.toString());
+                reset();
+            }
+            if (!snapshot.delete()) {
+                Log.warn("Failed to delete %s", snapshot);
+            }
+            if (machine != null) {
+                machine.setInstructionBudget(Emulator.getEmulatorSettings().getInstructionBudget());
+                return;
+            }
+        }
+
+        try {
+            final LuaClosure bios = BaseLib.load(getBiosSource(), "@bios", created.getGlobals());
+            created.load(bios);
+        } catch (LuaError e) {
+            printError(e.getMessage());
+            return;
+        } catch (IOException e) {
+            Log.error("Failed to read the BIOS: %s", e.getMessage());
+            printError("Failed to read the BIOS");
+            return;
+        }
+        created.setInstructionBudget(Emulator.getEmulatorSettings().getInstructionBudget());
+        final long seed = Emulator.getEmulatorSettings().getRandomSeed();
+        if (seed != 0L) {
+            // every boot of a device draws the same numbers, which a replay relies on
+            created.getRandom().setSeed(seed * 31L + device.getID());
+        }
+        machine = created;
+    }
+
+    private void powerOff() {
+        machine = null;
+        if (fileSystem != null) {
+            fileSystem.close();
+            fileSystem = null;
+        }
+        reset();
+    }
+
+    /**
+     * Resets the clock, timers, events and terminal to how they are when the device is off
+     */
+    private void reset() {
+        ticks = 0;
+        timers.clear();
+        nextTimerID = 0;
+        eventQueue.clear();
+        synchronized (terminal) {
+            terminal.setTextColour(Terminal.DEFAULT_TEXT_COLOUR);
+            terminal.setBackgroundColour(Terminal.DEFAULT_BACKGROUND_COLOUR);
+            terminal.setCursorBlink(false);
+            terminal.setCursorPos(0, 0);
+            terminal.clear();
+        }
+    }
+
+    private File getSnapshotFile() {
+        return new File(Emulator.DATASTORE, "snapshots/" + device.getID() + ".fxs");
+    }
+
+    /**
+     * Writes the state of the device; its clock and timers, terminal, machine, and then the
+     * pending events, which are removed from the queue
+     *
+     * @param file the file to write
+     * @throws IOException when the file cannot be written, or the machine cannot be saved
+     */
+    private void writeSnapshot(File file) throws IOException {
+        final File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new DeflaterOutputStream(new FileOutputStream(file), deflater)));
+        try {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(device.getID());
+            out.writeLong(ticks);
+            out.writeInt(nextTimerID);
+            out.writeInt(timers.size());
+            for (Map.Entry<Integer, Integer> timer : timers.entrySet()) {
+                out.writeInt(timer.getKey());
+                out.writeInt(timer.getValue());
+            }
+            terminal.save(out);
+
+            final HeapWriter writer = new HeapWriter(out);
+            writer.writeMachine(machine);
+            final List<Object[]> events = new ArrayList<Object[]>();
+            while (eventQueue.poll(event)) {
+                events.add(toArguments(event));
+            }
+            out.writeInt(events.size());
+            for (Object[] args : events) {
+                writer.writeValues(args);
+            }
+            writer.finish();
+        } finally {
+            out.close();
+            deflater.end();
+        }
+    }
+
+    /**
+     * Reads the state written by {@link #writeSnapshot(File)}, queueing the events it held
+     *
+     * @param file      the file to read
+     * @param libraries a machine with the libraries of this boot installed
+     * @return the restored machine
+     * @throws IOException when the file cannot be read, or was saved by another device
+     */
+    private LuaMachine readSnapshot(File file, LuaMachine libraries) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(new FileInputStream(file))));
+        try {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Not a snapshot, or from another version");
+            }
+            if (in.readInt() != device.getID()) {
+                throw new IOException("Snapshot belongs to another device");
+            }
+            ticks = in.readLong();
+            nextTimerID = in.readInt();
+            for (int i = in.readInt(); i > 0; --i) {
+                final int id = in.readInt();
+                timers.put(id, in.readInt());
+            }
+            terminal.load(in);
+
+            final HeapReader reader = new HeapReader(in, libraries);
+            final LuaMachine restored = reader.readMachine();
+            final Object[][] events = new Object[in.readInt()][];
+            for (int i = 0; i < events.length; ++i) {
+                events[i] = reader.readValues();
+            }
+            reader.finish();
+
+            for (Object[] args : events) {
+                final Object[] rest = new Object[args.length - 1];
+                System.arraycopy(args, 1, rest, 0, rest.length);
+                eventQueue.offer((String) args[0], rest);
+            }
+            return restored;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @param polled the event
+     * @return the name and then the arguments of the event, as they are given to the machine
+     */
+    private static Object[] toArguments(EventQueue.Event polled) {
+        final Object[] args = new Object[polled.getArgumentCount() + 1];
+        args[0] = polled.getName();
+        for (int i = 1; i < args.length; ++i) {
+            args[i] = polled.isNumber(i - 1) ? Lua.valueOf(polled.getNumber(i - 1)) : polled.getArgument(i - 1);
+        }
+        return args;
+    }
+
+    /**
+     * Polls events until one passes the filter the machine yielded with; every event passes when
+     * there is no filter, and a terminate event always passes.
+     *
+     * @return the event as the results of the yield, or null if there is none
+     */
+    private Object[] pollEvent() {
+        final Object[] yielded = machine.getYielded();
+        final Object filter = yielded.length > 0 ? yielded[0] : null;
+        while (eventQueue.poll(event)) {
+            final String name = event.getName();
+            if (filter == null || filter.equals(name) || Events.TERMINATE.equals(name)) {
+                return toArguments(event);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes an error in red on the line below the cursor, scrolling if needed
+     *
+     * @param message the error
+     */
+    private void printError(String message) {
+        synchronized (terminal) {
+            terminal.setTextColour(terminal.isColour() ? ERROR_COLOUR : Terminal.DEFAULT_TEXT_COLOUR);
+            terminal.setBackgroundColour(Terminal.DEFAULT_BACKGROUND_COLOUR);
+            terminal.setCursorBlink(false);
+            for (String line : message.split("\n")) {
+                int y = terminal.getCursorX() > 0 ? terminal.getCursorY() + 1 : terminal.getCursorY();
+                for (int start = 0; start == 0 || start < line.length(); start += terminal.getWidth()) {
+                    if (y >= terminal.getHeight()) {
+                        terminal.scroll(y - terminal.getHeight() + 1);
+                        y = terminal.getHeight() - 1;
+                    }
+                    terminal.setCursorPos(0, y);
+                    terminal.write(line.substring(start, Math.min(start + terminal.getWidth(), line.length())));
+                    ++y;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the ROM shared by every device. The ROM is the archive {@code rom.far} in the data
+     * store; when there is a {@code rom} directory in the data store in which anything has changed
+     * since the archive was packed, it is packed into the archive first. When the ROM fails to
+     * load it is tried again by the next device turned on.
+     *
+     * @return the ROM, or null if there is none
+     */
+    static synchronized ArchiveMount getRom() {
+        if (!romLoaded) {
+            final File archive = new File(Emulator.DATASTORE, "rom.far");
+            final File directory = new File(Emulator.DATASTORE, "rom");
+            try {
+                if (directory.isDirectory() && ArchiveMount.getLastModified(directory) > archive.lastModified()) {
+                    Log.info("Packing the ROM into %s", archive);
+                    ArchiveMount.pack(directory, archive);
+                }
+                if (archive.isFile()) {
+                    rom = ArchiveMount.open(archive);
+                }
+                romLoaded = true;
+            } catch (IOException e) {
+                Log.error("Failed to load the ROM: %s", e.getMessage());
+            }
+        }
+        return rom;
+    }
+
+    /**
+     * Reads the BIOS once, as it never changes while the emulator is running
+     *
+     * @return the source of the BIOS
+     * @throws IOException if the BIOS could not be read
+     */
+    private static synchronized String getBiosSource() throws IOException {
+        if (biosSource == null) {
+            final InputStream stream = DeviceRuntime.class.getResourceAsStream("/lua/bios.lua");
+            if (stream == null) {
+                throw new IOException("/lua/bios.lua is missing");
+            }
+            try {
+                final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                final byte[] chunk = new byte[4096];
+                int read;
+                while ((read = stream.read(chunk)) != -1) {
+                    buffer.write(chunk, 0, read);
+                }
+                biosSource = buffer.toString("ISO-8859-1");
+            } finally {
+                stream.close();
+            }
+        }
+        return biosSource;
+    }
+}
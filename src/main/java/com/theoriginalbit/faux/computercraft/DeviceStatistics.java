@@ -0,0 +1,112 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft;
+
+import com.theoriginalbit.faux.api.computercraft.IDeviceStatistics;
+
+/**
+ * The performance counters of a single device. Each counter only ever has one writer at a time;
+ * the runtime, while holding its own lock, or the main thread when drawing. So the counters are
+ * plain volatile fields, updated without any further locking or atomic operations, that can be
+ * read from any thread. The event counts are those of the device's queue.
+ *
+ * @author theoriginalbit
+ */
+final class DeviceStatistics implements IDeviceStatistics {
+    private final EventQueue eventQueue;
+    private volatile long instructions, yields, overruns;
+    private volatile long bytesRead, bytesWritten;
+    private volatile long renders, renderTime;
+
+    DeviceStatistics(EventQueue events) {
+        eventQueue = events;
+    }
+
+    /**
+     * Records the machine running for a time slice
+     *
+     * @param steps   the instructions executed
+     * @param yielded whether it yielded to wait for an event
+     * @param overran whether it ran for longer than the time slice
+     */
+    void recordExecution(long steps, boolean yielded, boolean overran) {
+        instructions += steps;
+        if (yielded) {
+            ++yields;
+        }
+        if (overran) {
+            ++overruns;
+        }
+    }
+
+    void recordRead(long bytes) {
+        bytesRead += bytes;
+    }
+
+    void recordWrite(long bytes) {
+        bytesWritten += bytes;
+    }
+
+    void recordRender(long nanos) {
+        ++renders;
+        renderTime += nanos;
+    }
+
+    @Override
+    public long getEventsQueued() {
+        return eventQueue.getQueuedCount();
+    }
+
+    @Override
+    public long getEventsDropped() {
+        return eventQueue.getDroppedCount();
+    }
+
+    @Override
+    public long getInstructions() {
+        return instructions;
+    }
+
+    @Override
+    public long getYields() {
+        return yields;
+    }
+
+    @Override
+    public long getOverruns() {
+        return overruns;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public long getRenders() {
+        return renders;
+    }
+
+    @Override
+    public long getRenderTime() {
+        return renderTime;
+    }
+}
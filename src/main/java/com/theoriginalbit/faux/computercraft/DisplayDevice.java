@@ -15,22 +15,35 @@
  */
 package com.theoriginalbit.faux.computercraft;
 
+import com.theoriginalbit.faux.Emulator;
 import com.theoriginalbit.faux.api.IEmulatorInstance;
+import com.theoriginalbit.faux.api.IExecutable;
 import com.theoriginalbit.faux.api.IManager;
 import com.theoriginalbit.faux.api.IRendered;
 import com.theoriginalbit.faux.api.computercraft.IDevice;
+import com.theoriginalbit.faux.api.computercraft.IDeviceStatistics;
+import com.theoriginalbit.faux.log.Log;
 import com.theoriginalbit.faux.manager.InputManager;
 import com.theoriginalbit.faux.ui.Color;
+import com.theoriginalbit.faux.ui.VertexBlock;
 import com.theoriginalbit.faux.ui.Window;
 import com.theoriginalbit.faux.util.ChatUtils;
 import com.theoriginalbit.faux.util.Events;
 import com.theoriginalbit.faux.util.GuiUtils;
 import org.lwjgl.input.Keyboard;
 
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * @author theoriginalbit
  */
-public abstract class DisplayDevice extends Window implements IDevice {
+public abstract class DisplayDevice extends Window implements IDevice, IExecutable {
     /**
      * The width of the border in unscaled display pixels
      */
@@ -43,10 +56,65 @@ public abstract class DisplayDevice extends Window implements IDevice {
      * The height of a Computer pixel in unscaled display pixels
      */
     private static final int PIXEL_HEIGHT = 9;
+    /**
+     * The size of the rounded corners of the border in unscaled display pixels, which are not
+     * entirely drawn over
+     */
+    private static final int CORNER_SIZE = 4;
     private static final float MAX_TIMER = 20.0f;
+    /**
+     * The time in milliseconds the cursor spends in each blink state
+     */
+    private static final long CURSOR_BLINK_RATE = 400L;
+    /**
+     * The border geometry of each device type and family, built at the GUI scale below
+     */
+    private static final VertexBlock[][] bezelCache = new VertexBlock[DeviceType.values().length][DeviceFamily.values().length];
+    private static float bezelScale;
     protected final DeviceFamily deviceFamily;
     protected final DeviceType deviceType;
+    protected final int deviceID;
     protected final Terminal terminal;
+    protected final EventQueue eventQueue = new EventQueue();
+    protected final DeviceStatistics statistics = new DeviceStatistics(eventQueue);
+    protected final DeviceRuntime runtime;
+    /**
+     * The terminal rows that have changed since they were last copied for rendering
+     */
+    private final BitSet dirtyRows = new BitSet();
+    /*
+       the render thread's copy of the terminal, only rows reported dirty are copied each frame
+     */
+    private final byte[] rowText, rowTextColour, rowBackgroundColour;
+    /**
+     * The merged background runs of each row, packed as start | length << 8 | colour << 16
+     */
+    private final int[] backgroundRuns;
+    private final int[] backgroundRunCount;
+    /*
+       the cursor as of the last time damage was added, which is where it is drawn
+     */
+    private boolean cursorShown;
+    private int cursorX, cursorY, cursorColour;
+    /*
+       the mouse is handled on the main thread and pending drags are delivered by the tick, so
+       the state of the mouse is guarded by this lock
+     */
+    private final Object mouseLock = new Object();
+    /**
+     * The ComputerCraft button held since it was pressed on the screen, 0 if there is none, and
+     * the cell the mouse is in, which a pending drag is queued for
+     */
+    private int mouseButton, mouseCellX, mouseCellY;
+    private boolean dragPending;
+    private long lastDragTime;
+    private long coalescedDrags;
+    /**
+     * The text to type in next, handed from whichever thread started it to the tick, and the text
+     * the tick is typing in
+     */
+    private final AtomicReference<PasteStream> pendingPaste = new AtomicReference<PasteStream>();
+    private PasteStream paste;
     private float timerReboot = 0.0F;
     private float timerShutdown = 0.0F;
     private float timerTerminate = 0.0F;
@@ -56,13 +124,23 @@ public abstract class DisplayDevice extends Window implements IDevice {
      *
      * @param type     the device type for terminal size
      * @param family   the device family for render colour
+     * @param id       the ID of the device, which its files and snapshot are kept under
      * @param instance the emulator instance
      */
-    public DisplayDevice(DeviceType type, DeviceFamily family, IEmulatorInstance instance) {
+    public DisplayDevice(DeviceType type, DeviceFamily family, int id, IEmulatorInstance instance) {
         super(10, 10, getDeviceWindowWidth(type), getDeviceWindowHeight(type), instance);
         deviceType = type;
         deviceFamily = family;
+        deviceID = id;
         terminal = new Terminal(type, family);
+        runtime = new DeviceRuntime(this, terminal, eventQueue, statistics);
+
+        final int cells = type.getWidth() * type.getHeight();
+        rowText = new byte[cells];
+        rowTextColour = new byte[cells];
+        rowBackgroundColour = new byte[cells];
+        backgroundRuns = new int[cells];
+        backgroundRunCount = new int[type.getHeight()];
 
         // position this window in the centre of the screen when first created
         xPos = (emulator.getWidth() - width) / 2;
@@ -93,6 +171,114 @@ public abstract class DisplayDevice extends Window implements IDevice {
         return GuiUtils.toScaledPixels((BORDER_WIDTH * 2) + (type.getHeight() * PIXEL_HEIGHT));
     }
 
+    /**
+     * Gets the border geometry of a device type and family at the current GUI scale, building
+     * it if it has not been built since the GUI scale last changed.
+     *
+     * @param type   the device type for the window size
+     * @param family the device family for the border colours
+     * @return the border geometry relative to the window origin
+     */
+    private static VertexBlock getBezel(DeviceType type, DeviceFamily family) {
+        final float scale = Emulator.getEmulatorSettings().getGuiScale();
+        if (scale != bezelScale) {
+            // every cached border is now the wrong size
+            for (VertexBlock[] bezels : bezelCache) {
+                Arrays.fill(bezels, null);
+            }
+            bezelScale = scale;
+        }
+
+        VertexBlock bezel = bezelCache[type.ordinal()][family.ordinal()];
+        if (bezel == null) {
+            bezel = buildBezel(type, family);
+            bezelCache[type.ordinal()][family.ordinal()] = bezel;
+        }
+        return bezel;
+    }
+
+    /**
+     * Builds the border geometry of a device type and family at the current GUI scale. To keep
+     * it readable the quads are added in colour groups.
+     *
+     * @param type   the device type for the window size
+     * @param family the device family for the border colours
+     * @return the border geometry relative to the window origin
+     */
+    private static VertexBlock buildBezel(DeviceType type, DeviceFamily family) {
+        final int SP_1 = GuiUtils.toScaledPixels(1);
+        final int SP_2 = GuiUtils.toScaledPixels(2);
+        final int SP_3 = GuiUtils.toScaledPixels(3);
+        final int SP_4 = GuiUtils.toScaledPixels(4);
+        final int SP_5 = GuiUtils.toScaledPixels(5);
+        final int SP_7 = GuiUtils.toScaledPixels(7);
+        final int SP_8 = GuiUtils.toScaledPixels(8);
+        final int SP_10 = GuiUtils.toScaledPixels(10);
+        final int SP_11 = GuiUtils.toScaledPixels(11);
+        final int SP_20 = GuiUtils.toScaledPixels(20);
+        final int SP_21 = GuiUtils.toScaledPixels(21);
+        final int SP_22 = GuiUtils.toScaledPixels(22);
+        final int SP_BDR = GuiUtils.toScaledPixels(BORDER_WIDTH);
+        final int width = getDeviceWindowWidth(type);
+        final int height = getDeviceWindowHeight(type);
+        final VertexBlock.Builder bezel = new VertexBlock.Builder();
+
+        /* **************
+         * BLACK BORDER *
+         ************** */
+        bezel.setColor(Color.BLACK);
+        // render the inner black border
+        bezel.addQuad(SP_11, SP_11, width - SP_22, SP_1); // top
+        bezel.addQuad(SP_11, SP_11, SP_1, height - SP_22); // left
+        bezel.addQuad(SP_11, height - SP_BDR, width - SP_22, SP_1); // bottom
+        bezel.addQuad(width - SP_BDR, SP_11, SP_1, height - SP_22); // right
+        // render the outer black border
+        bezel.addQuad(SP_2, 0, width - SP_5, SP_1); // top
+        bezel.addQuad(0, SP_2, SP_1, height - SP_5); // left
+        bezel.addQuad(SP_3, height - SP_1, width - SP_5, SP_1); // bottom
+        bezel.addQuad(width - SP_1, SP_3, SP_1, height - SP_5); // right
+        // black borders to form corners
+        bezel.addQuad(SP_1, SP_1, SP_1, SP_1); // top-left
+        bezel.addQuad(width - SP_3, SP_1, SP_1, SP_1); // top-right
+        bezel.addQuad(width - SP_2, SP_2, SP_1, SP_1); // top-right
+        bezel.addQuad(width - SP_2, height - SP_2, SP_1, SP_1); // bottom-right
+        bezel.addQuad(SP_1, height - SP_3, SP_1, SP_1); // bottom-left
+        bezel.addQuad(SP_2, height - SP_2, SP_1, SP_1); // bottom-left
+
+        /* **************
+         * SHADOW BEVEL *
+         ************** */
+        bezel.setColor(family.getDarkColor());
+        bezel.addQuad(SP_10, SP_10, width - SP_20, SP_1); // top
+        bezel.addQuad(SP_10, SP_11, SP_1, height - SP_21); // left
+        bezel.addQuad(SP_3, height - SP_3, width - SP_5, SP_2); // bottom
+        bezel.addQuad(width - SP_3, SP_3, SP_2, height - SP_5); // right
+        bezel.addQuad(width - SP_4, height - SP_4, SP_1, SP_1); // bottom-right corner
+
+        /* *************
+         * LIGHT BEVEL *
+         ************* */
+        bezel.setColor(family.getLightColor());
+        bezel.addQuad(SP_11, height - SP_11, width - SP_21, SP_1); // bottom
+        bezel.addQuad(width - SP_11, SP_11, SP_1, height - SP_22); // right
+        bezel.addQuad(SP_2, SP_1, width - SP_5, SP_2); // top
+        bezel.addQuad(SP_1, SP_2, SP_2, height - SP_5); // left
+        bezel.addQuad(SP_3, SP_3, SP_1, SP_1); // top-left corner
+        bezel.addQuad(width - SP_3, SP_2, SP_1, SP_1); // top-right corner
+
+        /* *************
+         * MAIN BORDER *
+         ************* */
+        bezel.setColor(family.getPrimaryColor());
+        bezel.addQuad(SP_4, SP_3, width - SP_8, SP_7); // top
+        bezel.addQuad(SP_3, SP_4, SP_7, height - SP_8); // left
+        bezel.addQuad(SP_3, height - SP_10, width - SP_7, SP_7); // bottom
+        bezel.addQuad(width - SP_10, SP_3, SP_7, height - SP_7); // right
+        bezel.addQuad(SP_2, height - SP_3, SP_1, SP_1); // bottom-left corner
+
+        return bezel.build();
+    }
+
     /**
      * @return the type of this device, e.g. Pocket Computer
      */
@@ -114,6 +300,7 @@ public abstract class DisplayDevice extends Window implements IDevice {
     public void onCreate() {
         super.onCreate();
         emulator.getDeviceManager().register(this);
+        runtime.turnOn();
     }
 
     /**
@@ -130,7 +317,31 @@ public abstract class DisplayDevice extends Window implements IDevice {
      */
     @Override
     public void stop() {
-        // NO-OP
+        runtime.shutdown();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void hibernate() {
+        runtime.hibernate();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getID() {
+        return deviceID;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IDeviceStatistics getStatistics() {
+        return statistics;
     }
 
     /**
@@ -138,8 +349,8 @@ public abstract class DisplayDevice extends Window implements IDevice {
      */
     @Override
     public void onKeyPressed(int key, char ch) {
-        // if the key was escape we don't do anything
-        if (key == 1) {
+        // if the key was escape, or another device is being typed into, we don't do anything
+        if (key == 1 || !hasFocus()) {
             return;
         }
 
@@ -150,8 +361,14 @@ public abstract class DisplayDevice extends Window implements IDevice {
             timerTerminate = Keyboard.isKeyDown(Keyboard.KEY_T) ? timerTerminate + 1.0f : 0.0f;
         }
 
-        // it was a paste key combo
-        if (ch == '\026') {
+        // it was a paste key combo, with shift the whole clipboard is typed in
+        if (ch == '\026' && (Keyboard.isKeyDown(Keyboard.KEY_LSHIFT) || Keyboard.isKeyDown(Keyboard.KEY_RSHIFT))) {
+            final String clipboard = InputManager.getClipboardContents();
+            if (clipboard != null && !clipboard.isEmpty()) {
+                typeIn(new StringReader(clipboard));
+            }
+            return;
+        } else if (ch == '\026') {
             String clipboard = InputManager.getClipboardContents();
             if (clipboard != null) {
                 int newLineIndex1 = clipboard.indexOf("\r");
@@ -167,19 +384,51 @@ public abstract class DisplayDevice extends Window implements IDevice {
                 clipboard = ChatUtils.filerAllowedCharacters(clipboard);
 
                 if (!clipboard.isEmpty()) {
-                    if (clipboard.length() > 128) {
-                        clipboard = clipboard.substring(0, 128);
+                    if (clipboard.length() > PasteStream.MAX_PASTE_LENGTH) {
+                        clipboard = clipboard.substring(0, PasteStream.MAX_PASTE_LENGTH);
                     }
 
-                    queueEvent(Events.PASTE, clipboard);
+                    queueInput(Events.PASTE, clipboard);
                 }
             }
         }
 
         // queue the key and possible char event
-        queueEvent(Events.KEY, key);
+        queueInput(Events.KEY, key);
         if (ChatUtils.isAllowedCharacter(ch) && ch < '\256') {
-            queueEvent(Events.CHAR, Character.toString(ch));
+            queueInput(Events.CHAR, ChatUtils.toString(ch));
+        }
+    }
+
+    /**
+     * Types text into the device line by line, as though each line were pasted and entered,
+     * replacing anything still being typed. The text is read as it is typed, so it may be of
+     * any length.
+     *
+     * @param text the text to type, which is closed once it has all been typed
+     */
+    public void typeIn(Reader text) {
+        final PasteStream previous = pendingPaste.getAndSet(new PasteStream(text));
+        if (previous != null) {
+            closePaste(previous);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onMouseClick(int x, int y, int button) {
+        super.onMouseClick(x, y, button);
+        if (acceptsMouse() && wasClickInContentBounds(x, y)) {
+            synchronized (mouseLock) {
+                // ComputerCraft numbers the buttons from 1, and the cells from 1
+                mouseButton = button + 1;
+                mouseCellX = toCellX(x);
+                mouseCellY = toCellY(y);
+                dragPending = false;
+                queueInput(Events.MOUSE_CLICK, mouseButton, mouseCellX + 1, mouseCellY + 1);
+            }
         }
     }
 
@@ -188,11 +437,208 @@ public abstract class DisplayDevice extends Window implements IDevice {
      */
     @Override
     public void onMouseMoved(int x, int y) {
-        // if the click is in the window
-        if (hasFocus() && wasClickInContentBounds(x, y)) {
-            // TODO: queue event with ComputerCraft pixel coordinates
+        synchronized (mouseLock) {
+            if (mouseButton != 0) {
+                // a drag is only reported when it reaches another cell, clamped to the screen
+                final int cellX = toCellX(x);
+                final int cellY = toCellY(y);
+                if (cellX == mouseCellX && cellY == mouseCellY) {
+                    ++coalescedDrags;
+                    return;
+                }
+                if (dragPending) {
+                    // the drag that was waiting is replaced, as the mouse has moved on
+                    ++coalescedDrags;
+                }
+                mouseCellX = cellX;
+                mouseCellY = cellY;
+                dragPending = true;
+                queuePendingDrag(false);
+                return;
+            }
+        }
+        super.onMouseMoved(x, y);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onMouseRelease(int x, int y, int button) {
+        super.onMouseRelease(x, y, button);
+        synchronized (mouseLock) {
+            if (mouseButton != 0) {
+                // the program sees where the drag ended before the button is released
+                queuePendingDrag(true);
+                queueInput(Events.MOUSE_UP, mouseButton, toCellX(x) + 1, toCellY(y) + 1);
+                mouseButton = 0;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onMouseScrolled(int x, int y, int direction) {
+        if (acceptsMouse() && wasClickInContentBounds(x, y)) {
+            // ComputerCraft reports scrolling up as -1, and down as 1
+            queueInput(Events.MOUSE_SCROLL, direction > 0 ? -1 : 1, toCellX(x) + 1, toCellY(y) + 1);
+        }
+    }
+
+    /**
+     * @return the number of mouse_drag events which were not queued, as they were in the same cell
+     * or were replaced by a later drag before the rate limit allowed them
+     */
+    public long getCoalescedDragCount() {
+        synchronized (mouseLock) {
+            return coalescedDrags;
+        }
+    }
+
+    /**
+     * Queues the pending drag, if the device has not queued a drag too recently; the lock on the
+     * mouse must be held
+     *
+     * @param force whether to queue it regardless of the rate limit
+     */
+    private void queuePendingDrag(boolean force) {
+        if (!dragPending) {
+            return;
+        }
+        final long now = emulator.getSystemTime();
+        if (!force && now - lastDragTime < 1000L / Emulator.getEmulatorSettings().getMouseDragRate()) {
+            return;
+        }
+        dragPending = false;
+        lastDragTime = now;
+        queueInput(Events.MOUSE_DRAG, mouseButton, mouseCellX + 1, mouseCellY + 1);
+    }
+
+    /**
+     * Queues the next events of the text being typed in, this must be invoked by the tick
+     */
+    private void typePaste() {
+        final PasteStream next = pendingPaste.getAndSet(null);
+        if (next != null) {
+            if (paste != null) {
+                closePaste(paste);
+            }
+            paste = next;
+        }
+        if (paste == null || !runtime.isOn()) {
+            return;
+        }
+
+        try {
+            if (!paste.deliver(this, eventQueue)) {
+                closePaste(paste);
+                paste = null;
+            }
+        } catch (IOException e) {
+            Log.error("Failed to type into device %d: %s", getID(), e.getMessage());
+            closePaste(paste);
+            paste = null;
+        }
+    }
+
+    private static void closePaste(PasteStream stream) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            Log.warn("Failed to close typed text: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * @return whether mouse events are queued for the device, only devices with colour have a mouse
+     */
+    private boolean acceptsMouse() {
+        return runtime.isOn() && terminal.isColour();
+    }
+
+    /**
+     * @param x the x position on the canvas
+     * @return the column of the terminal at the position, clamped to the screen
+     */
+    private int toCellX(int x) {
+        final float cell = (translateX(x) - GuiUtils.toScaledPixels(BORDER_WIDTH)) /
+                (PIXEL_WIDTH * Emulator.getEmulatorSettings().getGuiScale());
+        return Math.max(0, Math.min((int) cell, terminal.getWidth() - 1));
+    }
+
+    /**
+     * @param y the y position on the canvas
+     * @return the row of the terminal at the position, clamped to the screen
+     */
+    private int toCellY(int y) {
+        final float cell = (translateY(y) - GuiUtils.toScaledPixels(BORDER_WIDTH)) /
+                (PIXEL_HEIGHT * Emulator.getEmulatorSettings().getGuiScale());
+        return Math.max(0, Math.min((int) cell, terminal.getHeight() - 1));
+    }
+
+    /**
+     * Queues an event caused by the user, recording it if input is being recorded
+     *
+     * @param event the name of the event
+     */
+    void queueInput(String event) {
+        final InputRecorder recorder = InputRecorder.getActive();
+        if (recorder != null) {
+            recorder.recordEvent(deviceID, event);
+        }
+        eventQueue.offer(event);
+    }
+
+    /**
+     * @see #queueInput(String)
+     */
+    void queueInput(String event, double arg) {
+        final InputRecorder recorder = InputRecorder.getActive();
+        if (recorder != null) {
+            recorder.recordEvent(deviceID, event, arg);
+        }
+        eventQueue.offer(event, arg);
+    }
+
+    /**
+     * @see #queueInput(String)
+     */
+    void queueInput(String event, Object arg) {
+        final InputRecorder recorder = InputRecorder.getActive();
+        if (recorder != null) {
+            recorder.recordEvent(deviceID, event, arg);
+        }
+        eventQueue.offer(event, arg);
+    }
+
+    /**
+     * @see #queueInput(String)
+     */
+    void queueInput(String event, double arg1, double arg2, double arg3) {
+        final InputRecorder recorder = InputRecorder.getActive();
+        if (recorder != null) {
+            recorder.recordEvent(deviceID, event, arg1, arg2, arg3);
+        }
+        eventQueue.offer(event, arg1, arg2, arg3);
+    }
+
+    /**
+     * Applies a power control used by the user, recording it if input is being recorded
+     *
+     * @param control {@link com.theoriginalbit.faux.computercraft.InputRecorder#SHUTDOWN} or
+     *                {@link com.theoriginalbit.faux.computercraft.InputRecorder#REBOOT}
+     */
+    private void powerInput(int control) {
+        final InputRecorder recorder = InputRecorder.getActive();
+        if (recorder != null) {
+            recorder.recordPower(deviceID, control);
+        }
+        if (control == InputRecorder.SHUTDOWN) {
+            runtime.shutdown();
         } else {
-            super.onMouseMoved(x, y);
+            runtime.reboot();
         }
     }
 
@@ -201,7 +647,39 @@ public abstract class DisplayDevice extends Window implements IDevice {
      */
     @Override
     public void queueEvent(String event, Object... args) {
-        // TODO: implement
+        eventQueue.offer(event, args);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void queueEvent(String event) {
+        eventQueue.offer(event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void queueEvent(String event, double arg) {
+        eventQueue.offer(event, arg);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void queueEvent(String event, Object arg) {
+        eventQueue.offer(event, arg);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void queueEvent(String event, double arg1, double arg2, double arg3) {
+        eventQueue.offer(event, arg1, arg2, arg3);
     }
 
     /**
@@ -209,23 +687,7 @@ public abstract class DisplayDevice extends Window implements IDevice {
      */
     @Override
     public void draw(IManager<IRendered> manager) {
-        /*
-           common calculations though-out the render, done once to save calculations during render
-           ideally this would not be calculated during render, but there is no better place to do
-           so for now
-         */
-        final int SP_1 = GuiUtils.toScaledPixels(1);
-        final int SP_2 = GuiUtils.toScaledPixels(2);
-        final int SP_3 = GuiUtils.toScaledPixels(3);
-        final int SP_4 = GuiUtils.toScaledPixels(4);
-        final int SP_5 = GuiUtils.toScaledPixels(5);
-        final int SP_7 = GuiUtils.toScaledPixels(7);
-        final int SP_8 = GuiUtils.toScaledPixels(8);
-        final int SP_10 = GuiUtils.toScaledPixels(10);
-        final int SP_11 = GuiUtils.toScaledPixels(11);
-        final int SP_20 = GuiUtils.toScaledPixels(20);
-        final int SP_21 = GuiUtils.toScaledPixels(21);
-        final int SP_22 = GuiUtils.toScaledPixels(22);
+        final long drawStart = System.nanoTime();
         final int SP_BDR = GuiUtils.toScaledPixels(BORDER_WIDTH);
 
         /* ****************
@@ -236,67 +698,182 @@ public abstract class DisplayDevice extends Window implements IDevice {
         setColor(Color.D_BLACK);
         drawQuad(xPos + SP_BDR, yPos + SP_BDR, GuiUtils.toScaledPixels(terminal.getWidth() * PIXEL_WIDTH), GuiUtils.toScaledPixels(terminal.getHeight() * PIXEL_HEIGHT));
 
-        // TODO: render terminal
+        // cell backgrounds, rendered as one quad per run of the same colour
+        for (int y = 0; y < terminal.getHeight(); ++y) {
+            final int top = yPos + SP_BDR + GuiUtils.toScaledPixels(y * PIXEL_HEIGHT);
+            final int bottom = yPos + SP_BDR + GuiUtils.toScaledPixels((y + 1) * PIXEL_HEIGHT);
+            final int row = y * terminal.getWidth();
+            for (int i = 0; i < backgroundRunCount[y]; ++i) {
+                final int run = backgroundRuns[row + i];
+                final int start = run & 0xFF;
+                final int end = start + ((run >> 8) & 0xFF);
+                final int left = xPos + SP_BDR + GuiUtils.toScaledPixels(start * PIXEL_WIDTH);
+                setColor(Color.fromIndex(run >> 16));
+                drawQuad(left, top, xPos + SP_BDR + GuiUtils.toScaledPixels(end * PIXEL_WIDTH) - left, bottom - top);
+            }
+        }
+
+        // cell text, one textured quad per visible glyph
+        for (int y = 0; y < terminal.getHeight(); ++y) {
+            final int top = yPos + SP_BDR + GuiUtils.toScaledPixels(y * PIXEL_HEIGHT);
+            final int bottom = yPos + SP_BDR + GuiUtils.toScaledPixels((y + 1) * PIXEL_HEIGHT);
+            final int row = y * terminal.getWidth();
+            for (int x = 0; x < terminal.getWidth(); ++x) {
+                final int ch = rowText[row + x] & 0xFF;
+                if (ch == ' ' || ch == 0) {
+                    continue;
+                }
+                final int left = xPos + SP_BDR + GuiUtils.toScaledPixels(x * PIXEL_WIDTH);
+                setColor(Color.fromIndex(rowTextColour[row + x]));
+                drawGlyph(left, top, xPos + SP_BDR + GuiUtils.toScaledPixels((x + 1) * PIXEL_WIDTH) - left, bottom - top, ch);
+            }
+        }
+
+        // blinking cursor
+        if (cursorShown) {
+            final int left = xPos + SP_BDR + GuiUtils.toScaledPixels(cursorX * PIXEL_WIDTH);
+            final int top = yPos + SP_BDR + GuiUtils.toScaledPixels(cursorY * PIXEL_HEIGHT);
+            setColor(Color.fromIndex(cursorColour));
+            drawGlyph(left, top, xPos + SP_BDR + GuiUtils.toScaledPixels((cursorX + 1) * PIXEL_WIDTH) - left,
+                    yPos + SP_BDR + GuiUtils.toScaledPixels((cursorY + 1) * PIXEL_HEIGHT) - top, '_');
+        }
 
         /* ********************************************************************************
          *                               BORDER RENDER                                    *
          *                                                                                *
-         *  To save every millisecond possible during rendering, switching colours with   *
-         *  OpenGL often is avoided and quads are rendered in colour groups,              *
+         *  The border never changes for a device type and family at a given GUI scale,   *
+         *  so it is built once and only translated to the window position each frame.    *
          ******************************************************************************** */
+        drawBlock(getBezel(deviceType, deviceFamily), xPos, yPos);
 
-        /* **************
-         * BLACK BORDER *
-         ************** */
-        setColor(Color.BLACK);
-        // render the inner black border
-        drawQuad(xPos + SP_11, yPos + SP_11, width - SP_22, SP_1); // top
-        drawQuad(xPos + SP_11, yPos + SP_11, SP_1, height - SP_22); // left
-        drawQuad(xPos + SP_11, yPos + height - SP_BDR, width - SP_22, SP_1); // bottom
-        drawQuad(xPos + width - SP_BDR, yPos + SP_11, SP_1, height - SP_22); // right
-        // render the outer black border
-        drawQuad(xPos + SP_2, yPos, width - SP_5, SP_1); // top
-        drawQuad(xPos, yPos + SP_2, SP_1, height - SP_5); // left
-        drawQuad(xPos + SP_3, yPos + height - SP_1, width - SP_5, SP_1); // bottom
-        drawQuad(xPos + width - SP_1, yPos + SP_3, SP_1, height - SP_5); // right
-        // black borders to form corners
-        drawQuad(xPos + SP_1, yPos + SP_1, SP_1, SP_1); // top-left
-        drawQuad(xPos + width - SP_3, yPos + SP_1, SP_1, SP_1); // top-right
-        drawQuad(xPos + width - SP_2, yPos + SP_2, SP_1, SP_1); // top-right
-        drawQuad(xPos + width - SP_2, yPos + height - SP_2, SP_1, SP_1); // bottom-right
-        drawQuad(xPos + SP_1, yPos + height - SP_3, SP_1, SP_1); // bottom-left
-        drawQuad(xPos + SP_2, yPos + height - SP_2, SP_1, SP_1); // bottom-left
+        statistics.recordRender(System.nanoTime() - drawStart);
+    }
 
-        /* **************
-         * SHADOW BEVEL *
-         ************** */
-        setColor(deviceFamily.getDarkColor());
-        drawQuad(xPos + SP_10, yPos + SP_10, width - SP_20, SP_1); // top
-        drawQuad(xPos + SP_10, yPos + SP_11, SP_1, height - SP_21); // left
-        drawQuad(xPos + SP_3, yPos + height - SP_3, width - SP_5, SP_2); // bottom
-        drawQuad(xPos + width - SP_3, yPos + SP_3, SP_2, height - SP_5); // right
-        drawQuad(xPos + width - SP_4, yPos + height - SP_4, SP_1, SP_1); // bottom-right corner
+    /**
+     * Draws the device with its window at the origin, such as into an image of its own size for a
+     * device without a display; the tick must not be running the device
+     */
+    public void drawAtOrigin() {
+        final int x = xPos, y = yPos;
+        xPos = 0;
+        yPos = 0;
+        try {
+            addDamage(new Rectangle());
+            draw(null);
+        } finally {
+            xPos = x;
+            yPos = y;
+        }
+    }
 
-        /* *************
-         * LIGHT BEVEL *
-         ************* */
-        setColor(deviceFamily.getLightColor());
-        drawQuad(xPos + SP_11, yPos + height - SP_11, width - SP_21, SP_1); // bottom
-        drawQuad(xPos + width - SP_11, yPos + SP_11, SP_1, height - SP_22); // right
-        drawQuad(xPos + SP_2, yPos + SP_1, width - SP_5, SP_2); // top
-        drawQuad(xPos + SP_1, yPos + SP_2, SP_2, height - SP_5); // left
-        drawQuad(xPos + SP_3, yPos + SP_3, SP_1, SP_1); // top-left corner
-        drawQuad(xPos + width - SP_3, yPos + SP_2, SP_1, SP_1); // top-right corner
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDirty() {
+        return super.isDirty() || terminal.isDirty() || isCursorChanged();
+    }
 
-        /* *************
-         * MAIN BORDER *
-         ************* */
-        setColor(deviceFamily.getPrimaryColor());
-        drawQuad(xPos + SP_4, yPos + SP_3, width - SP_8, SP_7); // top
-        drawQuad(xPos + SP_3, yPos + SP_4, SP_7, height - SP_8); // left
-        drawQuad(xPos + SP_3, yPos + height - SP_10, width - SP_7, SP_7); // bottom
-        drawQuad(xPos + width - SP_10, yPos + SP_3, SP_7, height - SP_7); // right
-        drawQuad(xPos + SP_2, yPos + height - SP_3, SP_1, SP_1); // bottom-left corner
+    /**
+     * Adds the rows of the terminal that have changed, and the cells the cursor moved between,
+     * along with any damage to the window itself. The changed rows are copied for rendering.
+     *
+     * @param damage the area to grow to include the damage of this device
+     */
+    @Override
+    public void addDamage(Rectangle damage) {
+        super.addDamage(damage);
+
+        // copy, and rebuild the runs of, only the rows that have changed since the last frame
+        if (terminal.pollDirtyRows(dirtyRows)) {
+            final int first = dirtyRows.nextSetBit(0);
+            int last = first;
+            for (int y = first; y >= 0; y = dirtyRows.nextSetBit(y + 1)) {
+                terminal.copyRow(y, rowText, rowTextColour, rowBackgroundColour, y * terminal.getWidth());
+                buildBackgroundRuns(y);
+                last = y;
+            }
+            dirtyRows.clear();
+            addCellDamage(damage, 0, first, terminal.getWidth(), last + 1);
+        }
+
+        if (isCursorChanged()) {
+            if (cursorShown) {
+                addCellDamage(damage, cursorX, cursorY, cursorX + 1, cursorY + 1);
+            }
+            cursorShown = isCursorShown();
+            cursorX = terminal.getCursorX();
+            cursorY = terminal.getCursorY();
+            cursorColour = terminal.getTextColour();
+            if (cursorShown) {
+                addCellDamage(damage, cursorX, cursorY, cursorX + 1, cursorY + 1);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getOpaqueBounds(Rectangle into) {
+        // everything but the rounded corners of the border is drawn over
+        final int inset = GuiUtils.toScaledPixels(CORNER_SIZE);
+        into.setBounds(xPos + inset, yPos + inset, width - inset * 2, height - inset * 2);
+    }
+
+    /**
+     * @return whether the cursor is in the blink state where it is visible, and is on the screen
+     */
+    private boolean isCursorShown() {
+        final int x = terminal.getCursorX();
+        final int y = terminal.getCursorY();
+        return terminal.getCursorBlink() && (emulator.getSystemTime() / CURSOR_BLINK_RATE) % 2 == 0 &&
+                x >= 0 && x < terminal.getWidth() && y >= 0 && y < terminal.getHeight();
+    }
+
+    /**
+     * @return whether the cursor must be drawn differently to when damage was last added
+     */
+    private boolean isCursorChanged() {
+        final boolean shown = isCursorShown();
+        return shown != cursorShown || (shown && (terminal.getCursorX() != cursorX ||
+                terminal.getCursorY() != cursorY || terminal.getTextColour() != cursorColour));
+    }
+
+    /**
+     * Grows the damage to include a block of cells
+     *
+     * @param damage the damage to grow
+     * @param x0     the first column
+     * @param y0     the first row
+     * @param x1     the column after the last
+     * @param y1     the row after the last
+     */
+    private void addCellDamage(Rectangle damage, int x0, int y0, int x1, int y1) {
+        final int SP_BDR = GuiUtils.toScaledPixels(BORDER_WIDTH);
+        final int left = xPos + SP_BDR + GuiUtils.toScaledPixels(x0 * PIXEL_WIDTH);
+        final int top = yPos + SP_BDR + GuiUtils.toScaledPixels(y0 * PIXEL_HEIGHT);
+        GuiUtils.union(damage, left, top, xPos + SP_BDR + GuiUtils.toScaledPixels(x1 * PIXEL_WIDTH) - left,
+                yPos + SP_BDR + GuiUtils.toScaledPixels(y1 * PIXEL_HEIGHT) - top);
+    }
+
+    /**
+     * Merges the backgrounds of the supplied row into runs of the same colour, so that each run
+     * only needs a single quad when rendering.
+     *
+     * @param y the row to rebuild
+     */
+    private void buildBackgroundRuns(int y) {
+        final int row = y * terminal.getWidth();
+        int count = 0;
+        int start = 0;
+        for (int x = 1; x <= terminal.getWidth(); ++x) {
+            if (x == terminal.getWidth() || rowBackgroundColour[row + x] != rowBackgroundColour[row + start]) {
+                backgroundRuns[row + count++] = start | ((x - start) << 8) | (rowBackgroundColour[row + start] << 16);
+                start = x;
+            }
+        }
+        backgroundRunCount[y] = count;
     }
 
     /**
@@ -304,24 +881,40 @@ public abstract class DisplayDevice extends Window implements IDevice {
      */
     @Override
     public void onTick() {
+        runtime.tick();
+        typePaste();
+        synchronized (mouseLock) {
+            // a drag held back by the rate limit is queued once it is allowed, even if the mouse
+            // stopped
+            queuePendingDrag(false);
+        }
+
         if (!hasFocus()) {
             return;
         }
 
         if (timerTerminate >= MAX_TIMER) {
-            // TODO: terminate computer
+            queueInput(Events.TERMINATE);
             timerTerminate = 0.0f;
         }
         if (timerReboot >= MAX_TIMER) {
-            // TODO: reboot computer
+            powerInput(InputRecorder.REBOOT);
             timerReboot = 0.0f;
         }
         if (timerShutdown >= MAX_TIMER) {
-            // TODO: shutdown computer
+            powerInput(InputRecorder.SHUTDOWN);
             timerShutdown = 0.0f;
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean execute(long timeSlice) {
+        return runtime.execute(timeSlice);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -336,10 +929,10 @@ public abstract class DisplayDevice extends Window implements IDevice {
     @Override
     public boolean wasClickInContentBounds(int x, int y) {
         int spb = GuiUtils.toScaledPixels(BORDER_WIDTH);
-        x = translateX(x);
-        y = translateY(y);
+        x = translateX(x) - spb;
+        y = translateY(y) - spb;
 
-        return x > spb && x < GuiUtils.toScaledPixels(terminal.getWidth() * PIXEL_WIDTH) &&
-                y > spb && y < GuiUtils.toScaledPixels(terminal.getHeight() * PIXEL_HEIGHT);
+        return x >= 0 && x < GuiUtils.toScaledPixels(terminal.getWidth() * PIXEL_WIDTH) &&
+                y >= 0 && y < GuiUtils.toScaledPixels(terminal.getHeight() * PIXEL_HEIGHT);
     }
 }
@@ -0,0 +1,321 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free queue of the events waiting to be handled by a device. Any number of
+ * threads, such as input, timers and peripherals, may queue events while a single thread, the
+ * one running the device, polls them.
+ * <p/>
+ * Each event slot is allocated the first time it is used and then reused, and numeric arguments
+ * are stored as primitives, so queueing an event does not otherwise allocate or box. A device
+ * which rarely receives events, such as an idle device without a display, only holds the few
+ * slots it has used. Like ComputerCraft the queue holds at most
+ * {@link #CAPACITY} events; an event queued while the queue is full is dropped and counted.
+ *
+ * @author theoriginalbit
+ */
+public final class EventQueue {
+    /**
+     * The maximum number of events waiting to be handled, the same limit as ComputerCraft
+     */
+    public static final int CAPACITY = 256;
+    /**
+     * The maximum number of arguments of an event queued without a varargs array
+     */
+    public static final int MAX_ARGUMENTS = 5;
+    private static final int MASK = CAPACITY - 1;
+    private final Event[] slots = new Event[CAPACITY];
+    /**
+     * The sequence of each slot; equal to the position when the slot is free to be claimed by a
+     * producer, and one past the position once the producer has published the event
+     */
+    private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long head;
+
+    public EventQueue() {
+        for (int i = 0; i < CAPACITY; ++i) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Queues an event without arguments
+     *
+     * @param name the name of the event
+     * @return whether the event was queued, or dropped because the queue was full
+     */
+    public boolean offer(String name) {
+        final Event slot = claim();
+        if (slot == null) {
+            return false;
+        }
+        slot.name = name;
+        publish(slot);
+        return true;
+    }
+
+    /**
+     * Queues an event with a single numeric argument
+     *
+     * @param name the name of the event
+     * @param arg  the argument
+     * @return whether the event was queued, or dropped because the queue was full
+     */
+    public boolean offer(String name, double arg) {
+        final Event slot = claim();
+        if (slot == null) {
+            return false;
+        }
+        slot.name = name;
+        slot.putNumber(arg);
+        publish(slot);
+        return true;
+    }
+
+    /**
+     * Queues an event with a single argument
+     *
+     * @param name the name of the event
+     * @param arg  the argument
+     * @return whether the event was queued, or dropped because the queue was full
+     */
+    public boolean offer(String name, Object arg) {
+        final Event slot = claim();
+        if (slot == null) {
+            return false;
+        }
+        slot.name = name;
+        slot.putObject(arg);
+        publish(slot);
+        return true;
+    }
+
+    /**
+     * Queues an event with three numeric arguments, e.g. a mouse event
+     *
+     * @param name the name of the event
+     * @param arg1 the first argument
+     * @param arg2 the second argument
+     * @param arg3 the third argument
+     * @return whether the event was queued, or dropped because the queue was full
+     */
+    public boolean offer(String name, double arg1, double arg2, double arg3) {
+        final Event slot = claim();
+        if (slot == null) {
+            return false;
+        }
+        slot.name = name;
+        slot.putNumber(arg1);
+        slot.putNumber(arg2);
+        slot.putNumber(arg3);
+        publish(slot);
+        return true;
+    }
+
+    /**
+     * Queues an event with any number of arguments, the array is stored by reference and must
+     * not be modified once queued
+     *
+     * @param name the name of the event
+     * @param args the arguments
+     * @return whether the event was queued, or dropped because the queue was full
+     */
+    public boolean offer(String name, Object[] args) {
+        final Event slot = claim();
+        if (slot == null) {
+            return false;
+        }
+        slot.name = name;
+        slot.varargs = args;
+        publish(slot);
+        return true;
+    }
+
+    /**
+     * Removes the oldest event from the queue, copying it into the supplied event. This must only
+     * be invoked by the thread running the device.
+     *
+     * @param into the event to copy the oldest event into
+     * @return whether there was an event to poll
+     */
+    public boolean poll(Event into) {
+        final long position = head;
+        final int index = (int) position & MASK;
+        if (sequences.get(index) != position + 1) {
+            return false;
+        }
+
+        final Event slot = slots[index];
+        into.copy(slot);
+        slot.reset();
+        sequences.lazySet(index, position + CAPACITY);
+        head = position + 1;
+        return true;
+    }
+
+    /**
+     * Discards every event currently in the queue. This must only be invoked by the thread
+     * running the device.
+     */
+    public void clear() {
+        final Event discard = new Event();
+        while (poll(discard)) {
+            discard.reset();
+        }
+    }
+
+    /**
+     * @return the number of events waiting, this is only an estimate while events are queued
+     */
+    public int size() {
+        return (int) Math.max(0L, Math.min(tail.get() - head, CAPACITY));
+    }
+
+    /**
+     * @return the total number of events that have been queued
+     */
+    public long getQueuedCount() {
+        return tail.get();
+    }
+
+    /**
+     * @return the total number of events dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private Event claim() {
+        while (true) {
+            final long position = tail.get();
+            final int index = (int) position & MASK;
+            final long difference = sequences.get(index) - position;
+            if (difference == 0L) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    // only the producer which claimed the slot can see it until it is published
+                    Event slot = slots[index];
+                    if (slot == null) {
+                        slot = new Event();
+                        slots[index] = slot;
+                    }
+                    slot.position = position;
+                    return slot;
+                }
+            } else if (difference < 0L) {
+                // the consumer has not yet freed this slot, the queue is full
+                dropped.incrementAndGet();
+                return null;
+            }
+            // otherwise another producer claimed the slot first, try the next position
+        }
+    }
+
+    private void publish(Event slot) {
+        sequences.lazySet((int) slot.position & MASK, slot.position + 1);
+    }
+
+    /**
+     * An event and its arguments. Instances are reused, by the queue for its slots and by the
+     * device for the events it polls, so the values are only valid until the next poll.
+     */
+    public static final class Event {
+        private final double[] numbers = new double[MAX_ARGUMENTS];
+        private final Object[] objects = new Object[MAX_ARGUMENTS];
+        private String name;
+        private Object[] varargs;
+        private int count;
+        private int numberMask;
+        private long position;
+
+        /**
+         * @return the name of the event
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the number of arguments of the event
+         */
+        public int getArgumentCount() {
+            return varargs != null ? varargs.length : count;
+        }
+
+        /**
+         * @param index the index of the argument
+         * @return whether the argument is stored as a number
+         */
+        public boolean isNumber(int index) {
+            return varargs != null ? varargs[index] instanceof Number : (numberMask & (1 << index)) != 0;
+        }
+
+        /**
+         * @param index the index of an argument that is a number
+         * @return the value of the argument
+         */
+        public double getNumber(int index) {
+            return varargs != null ? ((Number) varargs[index]).doubleValue() : numbers[index];
+        }
+
+        /**
+         * Gets an argument as an object, boxing it if it was stored as a number
+         *
+         * @param index the index of the argument
+         * @return the value of the argument
+         */
+        public Object getArgument(int index) {
+            if (varargs != null) {
+                return varargs[index];
+            }
+            return (numberMask & (1 << index)) != 0 ? Double.valueOf(numbers[index]) : objects[index];
+        }
+
+        private void putNumber(double value) {
+            numberMask |= 1 << count;
+            numbers[count++] = value;
+        }
+
+        private void putObject(Object value) {
+            objects[count++] = value;
+        }
+
+        private void copy(Event other) {
+            name = other.name;
+            varargs = other.varargs;
+            count = other.count;
+            numberMask = other.numberMask;
+            System.arraycopy(other.numbers, 0, numbers, 0, count);
+            System.arraycopy(other.objects, 0, objects, 0, count);
+        }
+
+        private void reset() {
+            // release the references so the slot doesn't keep them from being collected
+            for (int i = 0; i < count; ++i) {
+                objects[i] = null;
+            }
+            name = null;
+            varargs = null;
+            count = 0;
+            numberMask = 0;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft;
+
+import com.theoriginalbit.faux.computercraft.filesystem.FileSystem;
+import com.theoriginalbit.faux.computercraft.filesystem.FileSystemException;
+import com.theoriginalbit.faux.lua.LibFunction;
+import com.theoriginalbit.faux.lua.Lua;
+import com.theoriginalbit.faux.lua.LuaError;
+import com.theoriginalbit.faux.lua.LuaMachine;
+import com.theoriginalbit.faux.lua.LuaTable;
+
+/**
+ * The ComputerCraft fs API, operating on the device's {@link FileSystem}
+ *
+ * @author theoriginalbit
+ */
+final class FSAPI extends LibFunction {
+    private static final String[] NAMES = {"list", "combine", "getName", "getDir", "getSize", "exists", "isDir",
+            "isReadOnly", "makeDir", "move", "copy", "delete", "open", "getDrive", "getFreeSpace"};
+    private static final int LIST = 0, COMBINE = 1, GET_NAME = 2, GET_DIR = 3, GET_SIZE = 4, EXISTS = 5, IS_DIR = 6,
+            IS_READ_ONLY = 7, MAKE_DIR = 8, MOVE = 9, COPY = 10, DELETE = 11, OPEN = 12, GET_DRIVE = 13,
+            GET_FREE_SPACE = 14;
+    private final DeviceRuntime runtime;
+    private final int opcode;
+
+    private FSAPI(DeviceRuntime owner, String name, int op) {
+        super("fs." + name);
+        runtime = owner;
+        opcode = op;
+    }
+
+    /**
+     * Installs the API into the machine's globals
+     *
+     * @param machine the machine
+     * @param runtime the runtime of the device the machine belongs to
+     */
+    static void install(LuaMachine machine, DeviceRuntime runtime) {
+        final LuaTable api = new LuaTable();
+        for (int i = 0; i < NAMES.length; ++i) {
+            api.rawset(NAMES[i], new FSAPI(runtime, NAMES[i], i));
+        }
+        machine.getGlobals().rawset("fs", api);
+    }
+
+    @Override
+    public Object[] invoke(LuaMachine machine, Object[] args) {
+        final FileSystem fs = runtime.getFileSystem();
+        try {
+            switch (opcode) {
+                case LIST: {
+                    final String[] names = fs.list(checkString(args, 0));
+                    final LuaTable list = new LuaTable(names.length, 0);
+                    for (int i = 0; i < names.length; ++i) {
+                        list.rawset(i + 1, names[i]);
+                    }
+                    return results(list);
+                }
+                case COMBINE:
+                    return results(FileSystem.combine(checkString(args, 0), checkString(args, 1)));
+                case GET_NAME:
+                    return results(FileSystem.getName(checkString(args, 0)));
+                case GET_DIR:
+                    return results(FileSystem.getDirectory(checkString(args, 0)));
+                case GET_SIZE:
+                    return results(Lua.valueOf(fs.getSize(checkString(args, 0))));
+                case EXISTS:
+                    return results(Lua.valueOf(fs.exists(checkString(args, 0))));
+                case IS_DIR:
+                    return results(Lua.valueOf(fs.isDirectory(checkString(args, 0))));
+                case IS_READ_ONLY:
+                    return results(Lua.valueOf(fs.isReadOnly(checkString(args, 0))));
+                case MAKE_DIR:
+                    fs.makeDirectory(checkString(args, 0));
+                    return Lua.NONE;
+                case MOVE:
+                    fs.move(checkString(args, 0), checkString(args, 1));
+                    return Lua.NONE;
+                case COPY:
+                    fs.copy(checkString(args, 0), checkString(args, 1));
+                    return Lua.NONE;
+                case DELETE:
+                    fs.delete(checkString(args, 0));
+                    return Lua.NONE;
+                case OPEN:
+                    return open(fs, runtime.getStatistics(), checkString(args, 0), checkString(args, 1));
+                case GET_DRIVE:
+                    return results(fs.getDrive(checkString(args, 0)));
+                case GET_FREE_SPACE:
+                    return results(Lua.valueOf(fs.getFreeSpace(checkString(args, 0))));
+                default:
+                    throw new IllegalStateException("Unknown function " + getName());
+            }
+        } catch (FileSystemException e) {
+            throw new LuaError(e.getMessage());
+        }
+    }
+
+    /**
+     * Opens a file, like ComputerCraft a file that cannot be opened results in nil rather than
+     * an error
+     */
+    private static Object[] open(FileSystem fs, DeviceStatistics stats, String path, String mode) {
+        try {
+            if (mode.equals("r")) {
+                return results(FileHandle.reader(fs, stats, fs.openForRead(path), false));
+            } else if (mode.equals("rb")) {
+                return results(FileHandle.reader(fs, stats, fs.openForRead(path), true));
+            } else if (mode.equals("w") || mode.equals("a")) {
+                return results(FileHandle.writer(fs, stats, fs.openForWrite(path, mode.equals("a")), false));
+            } else if (mode.equals("wb") || mode.equals("ab")) {
+                return results(FileHandle.writer(fs, stats, fs.openForWrite(path, mode.equals("ab")), true));
+            }
+        } catch (FileSystemException e) {
+            return results(null);
+        }
+        throw new LuaError("Unsupported mode");
+    }
+}
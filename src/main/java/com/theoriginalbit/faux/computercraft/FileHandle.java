@@ -0,0 +1,271 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft;
+
+import com.theoriginalbit.faux.computercraft.filesystem.ByteBufferChannel;
+import com.theoriginalbit.faux.computercraft.filesystem.FileSystem;
+import com.theoriginalbit.faux.lua.LibFunction;
+import com.theoriginalbit.faux.lua.Lua;
+import com.theoriginalbit.faux.lua.LuaError;
+import com.theoriginalbit.faux.lua.LuaMachine;
+import com.theoriginalbit.faux.lua.LuaTable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The functions of a file handle returned by {@code fs.open}. Lua strings hold a byte per
+ * character, so text is read and written a byte per character too.
+ * <p/>
+ * The bytes moved to and from the file are counted in the device's statistics as each block is
+ * read or written; a file already in memory is counted when it is opened.
+ *
+ * @author theoriginalbit
+ */
+final class FileHandle extends LibFunction {
+    private static final int READ_LINE = 0, READ_ALL = 1, READ = 2, WRITE = 3, WRITE_LINE = 4, WRITE_BYTE = 5, FLUSH = 6,
+            CLOSE = 7;
+    private static final int BUFFER_SIZE = 8192;
+    private final Stream stream;
+    private final int opcode;
+
+    private FileHandle(Stream stream, String name, int op) {
+        super("handle." + name);
+        this.stream = stream;
+        opcode = op;
+    }
+
+    /**
+     * @param fs      the file system the file was opened by
+     * @param stats   the statistics of the device opening the file
+     * @param channel the file
+     * @param binary  whether the file is read a byte at a time rather than as text
+     * @return the handle
+     */
+    static LuaTable reader(FileSystem fs, DeviceStatistics stats, ReadableByteChannel channel, boolean binary) {
+        final Stream stream;
+        if (channel instanceof ByteBufferChannel) {
+            // the whole file is already in memory, such as a slice of the ROM, so read it in place
+            stream = new Stream(fs, stats, channel, ((ByteBufferChannel) channel).getBuffer());
+            stream.eof = true;
+            stats.recordRead(stream.buffer.remaining());
+        } else {
+            stream = new Stream(fs, stats, channel, ByteBuffer.allocate(BUFFER_SIZE));
+            stream.buffer.flip();
+        }
+        final LuaTable handle = new LuaTable(0, 3);
+        if (binary) {
+            handle.rawset("read", new FileHandle(stream, "read", READ));
+        } else {
+            handle.rawset("readLine", new FileHandle(stream, "readLine", READ_LINE));
+            handle.rawset("readAll", new FileHandle(stream, "readAll", READ_ALL));
+        }
+        handle.rawset("close", new FileHandle(stream, "close", CLOSE));
+        return handle;
+    }
+
+    /**
+     * @param fs      the file system the file was opened by
+     * @param stats   the statistics of the device opening the file
+     * @param channel the file
+     * @param binary  whether the file is written a byte at a time rather than as text
+     * @return the handle
+     */
+    static LuaTable writer(FileSystem fs, DeviceStatistics stats, WritableByteChannel channel, boolean binary) {
+        final Stream stream = new Stream(fs, stats, channel, ByteBuffer.allocate(BUFFER_SIZE));
+        stream.writing = true;
+        final LuaTable handle = new LuaTable(0, 4);
+        if (binary) {
+            handle.rawset("write", new FileHandle(stream, "write", WRITE_BYTE));
+        } else {
+            handle.rawset("write", new FileHandle(stream, "write", WRITE));
+            handle.rawset("writeLine", new FileHandle(stream, "writeLine", WRITE_LINE));
+        }
+        handle.rawset("flush", new FileHandle(stream, "flush", FLUSH));
+        handle.rawset("close", new FileHandle(stream, "close", CLOSE));
+        return handle;
+    }
+
+    @Override
+    public Object[] getState() {
+        // the file is closed when the device hibernates, so the handle can only be restored closed
+        return Lua.NONE;
+    }
+
+    @Override
+    public Object[] invoke(LuaMachine machine, Object[] args) {
+        if (stream.closed) {
+            throw new LuaError("Stream closed");
+        }
+        try {
+            switch (opcode) {
+                case READ_LINE:
+                    return results(stream.readLine());
+                case READ_ALL:
+                    return results(stream.readAll());
+                case READ: {
+                    final int b = stream.read();
+                    return results(b < 0 ? null : Lua.valueOf(b));
+                }
+                case WRITE: {
+                    final Object value = arg(args, 0);
+                    stream.write(value instanceof String || value instanceof Double ? Lua.toStringRaw(value) : "");
+                    return Lua.NONE;
+                }
+                case WRITE_LINE: {
+                    final Object value = arg(args, 0);
+                    stream.write(value instanceof String || value instanceof Double ? Lua.toStringRaw(value) : "");
+                    stream.write('\n');
+                    return Lua.NONE;
+                }
+                case WRITE_BYTE:
+                    stream.write(checkInt(args, 0) & 0xFF);
+                    return Lua.NONE;
+                case FLUSH:
+                    stream.flush();
+                    return Lua.NONE;
+                case CLOSE:
+                    stream.close();
+                    return Lua.NONE;
+                default:
+                    throw new IllegalStateException("Unknown function " + getName());
+            }
+        } catch (IOException e) {
+            throw new LuaError(e.getMessage());
+        }
+    }
+
+    /**
+     * The buffered state of an open file, shared by the functions of its handle
+     */
+    private static final class Stream {
+        private final FileSystem fs;
+        private final DeviceStatistics stats;
+        private final Channel channel;
+        private final ByteBuffer buffer;
+        private boolean closed, eof, writing;
+
+        private Stream(FileSystem fileSystem, DeviceStatistics statistics, Channel file, ByteBuffer contents) {
+            fs = fileSystem;
+            stats = statistics;
+            channel = file;
+            buffer = contents;
+        }
+
+        /**
+         * @return the next byte, or -1 at the end of the file
+         * @throws IOException when the file cannot be read
+         */
+        private int read() throws IOException {
+            if (!buffer.hasRemaining() && !fill()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        /**
+         * @return the next line without its line ending, or null at the end of the file
+         * @throws IOException when the file cannot be read
+         */
+        private String readLine() throws IOException {
+            final StringBuilder line = new StringBuilder();
+            int b = read();
+            if (b < 0) {
+                return null;
+            }
+            while (b >= 0 && b != '\n') {
+                line.append((char) b);
+                b = read();
+            }
+            final int last = line.length() - 1;
+            if (last >= 0 && line.charAt(last) == '\r') {
+                line.setLength(last);
+            }
+            return line.toString();
+        }
+
+        private String readAll() throws IOException {
+            final StringBuilder all = new StringBuilder();
+            while (buffer.hasRemaining() || fill()) {
+                while (buffer.hasRemaining()) {
+                    all.append((char) (buffer.get() & 0xFF));
+                }
+            }
+            return all.toString();
+        }
+
+        private void write(String str) throws IOException {
+            for (int i = 0; i < str.length(); ++i) {
+                final char ch = str.charAt(i);
+                write(ch < 256 ? ch : '?');
+            }
+        }
+
+        private void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put((byte) b);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            try {
+                stats.recordWrite(((WritableByteChannel) channel).write(buffer));
+            } finally {
+                buffer.clear();
+            }
+        }
+
+        private void close() throws IOException {
+            closed = true;
+            try {
+                // a file opened for reading may still be a writable channel, such as a FileChannel
+                if (writing) {
+                    flush();
+                }
+            } finally {
+                fs.close(channel);
+            }
+        }
+
+        /**
+         * Reads the next block of the file into the buffer
+         *
+         * @return whether anything was read
+         * @throws IOException when the file cannot be read
+         */
+        private boolean fill() throws IOException {
+            if (eof) {
+                return false;
+            }
+            buffer.clear();
+            int read;
+            do {
+                read = ((ReadableByteChannel) channel).read(buffer);
+            } while (read == 0);
+            buffer.flip();
+            eof = read < 0;
+            if (!eof) {
+                stats.recordRead(read);
+            }
+            return !eof;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft;
+
+import com.theoriginalbit.faux.Emulator;
+import com.theoriginalbit.faux.api.IEmulatorInstance;
+import com.theoriginalbit.faux.api.ITickStatistics;
+import com.theoriginalbit.faux.api.computercraft.IDevice;
+import com.theoriginalbit.faux.computercraft.filesystem.ArchiveMount;
+import com.theoriginalbit.faux.log.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the input the user gives to devices, so the session can be replayed exactly by an
+ * {@link com.theoriginalbit.faux.computercraft.InputReplayer}. The input is recorded as the events
+ * it queues and the power controls it uses, after the mouse has been mapped to cells and pastes
+ * split into lines, so a replay needs no display or windows. Each is recorded with the number of
+ * ticks since recording started.
+ * <p/>
+ * The log starts with the ROM, then the devices and the files each has, and recording reboots the
+ * devices so they start from those files, as they do in a replay. The ROM is the whole archive
+ * the devices mount, so a replay runs the same programs however the ROM has changed since. The
+ * rest of the log is the records, each a kind, then the ticks since the previous record, then for
+ * all but the end the device ID. An event record follows this with the event name, written in full
+ * the first time and by its index after, and the arguments. Numbers are variable length, so most
+ * records are only a few bytes.
+ * <p/>
+ * Only one session is recorded at a time.
+ *
+ * @author theoriginalbit
+ */
+public final class InputRecorder {
+    /**
+     * Identifies an input log, and the version of its format
+     */
+    static final int MAGIC = 0x46584952, VERSION = 2;
+    /**
+     * The kinds of record
+     */
+    static final int END = 0, EVENT = 1, SHUTDOWN = 2, REBOOT = 3;
+    /**
+     * The types of event argument, whole numbers are written as variable length integers
+     */
+    static final int NIL = 0, FALSE = 1, TRUE = 2, INTEGER = 3, NUMBER = 4, STRING = 5;
+    private static InputRecorder active;
+    private final DataOutputStream out;
+    private final ITickStatistics statistics;
+    private final long firstTick;
+    /**
+     * The index of each event name written so far
+     */
+    private final Map<String, Integer> names = new HashMap<String, Integer>();
+    private long lastTick;
+    private boolean closed;
+
+    private InputRecorder(DataOutputStream stream, ITickStatistics ticks) {
+        out = stream;
+        statistics = ticks;
+        firstTick = ticks.getTickCount();
+    }
+
+    /**
+     * Starts recording the input of the emulator's devices, which are rebooted
+     *
+     * @param file     the file to write the log to
+     * @param instance the emulator instance
+     * @throws IOException           when the log cannot be written
+     * @throws IllegalStateException when a session is already being recorded
+     */
+    public static synchronized void start(File file, IEmulatorInstance instance) throws IOException {
+        if (active != null) {
+            throw new IllegalStateException("Input is already being recorded");
+        }
+
+        final List<DisplayDevice> devices = new ArrayList<DisplayDevice>();
+        for (IDevice device : instance.getDeviceManager().getRegisteredItems()) {
+            if (device instanceof DisplayDevice) {
+                devices.add((DisplayDevice) device);
+            }
+        }
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            final ArchiveMount rom = DeviceRuntime.getRom();
+            writeVarLong(out, rom != null ? rom.getLength() : 0);
+            if (rom != null) {
+                rom.writeTo(out);
+            }
+            writeVarLong(out, devices.size());
+            for (DisplayDevice device : devices) {
+                writeVarLong(out, device.getID());
+                out.writeByte(device.deviceType.ordinal());
+                out.writeByte(device.deviceFamily.ordinal());
+                writeFiles(out, new File(Emulator.DATASTORE, "computer/" + device.getID()));
+            }
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+
+        active = new InputRecorder(out, instance.getTickStatistics());
+        for (DisplayDevice device : devices) {
+            device.runtime.reboot();
+        }
+        Log.info("Recording the input of %d devices to %s", devices.size(), file);
+    }
+
+    /**
+     * Stops recording, if a session is being recorded, and closes the log
+     */
+    public static void finish() {
+        final InputRecorder recorder;
+        synchronized (InputRecorder.class) {
+            recorder = active;
+            active = null;
+        }
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
+
+    /**
+     * @return whether a session is being recorded
+     */
+    public static synchronized boolean isRecording() {
+        return active != null;
+    }
+
+    /**
+     * @return the recorder of the session being recorded, or null if there is none
+     */
+    static synchronized InputRecorder getActive() {
+        return active;
+    }
+
+    /**
+     * Records an event the user has queued for a device
+     *
+     * @param device the ID of the device
+     * @param event  the name of the event
+     * @param args   the arguments of the event
+     */
+    synchronized void recordEvent(int device, String event, Object... args) {
+        if (closed) {
+            return;
+        }
+        try {
+            out.writeByte(EVENT);
+            writeTick();
+            writeVarLong(out, device);
+            final Integer index = names.get(event);
+            if (index != null) {
+                writeVarLong(out, index);
+            } else {
+                writeVarLong(out, names.size());
+                out.writeUTF(event);
+                names.put(event, names.size());
+            }
+            out.writeByte(args.length);
+            for (Object arg : args) {
+                writeArgument(arg);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Records a power control the user has used on a device
+     *
+     * @param device  the ID of the device
+     * @param control {@link #SHUTDOWN} or {@link #REBOOT}
+     */
+    synchronized void recordPower(int device, int control) {
+        if (closed) {
+            return;
+        }
+        try {
+            out.writeByte(control);
+            writeTick();
+            writeVarLong(out, device);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            try {
+                out.writeByte(END);
+                writeTick();
+            } finally {
+                out.close();
+            }
+            Log.info("Recorded %d ticks of input", lastTick);
+        } catch (IOException e) {
+            Log.error("Failed to finish the input log: %s", e.getMessage());
+        }
+    }
+
+    private void fail(IOException e) {
+        Log.error("Failed to record input, recording has stopped: %s", e.getMessage());
+        synchronized (InputRecorder.class) {
+            if (active == this) {
+                active = null;
+            }
+        }
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException ignored) {
+            // the log is already broken
+        }
+    }
+
+    private void writeTick() throws IOException {
+        final long tick = statistics.getTickCount() - firstTick;
+        writeVarLong(out, tick - lastTick);
+        lastTick = tick;
+    }
+
+    private void writeArgument(Object arg) throws IOException {
+        if (arg instanceof Number) {
+            final double value = ((Number) arg).doubleValue();
+            if (value == (int) value) {
+                out.writeByte(INTEGER);
+                // zig-zag encoded, so small negative numbers are short too
+                final int whole = (int) value;
+                writeVarLong(out, (whole << 1) ^ (whole >> 31));
+            } else {
+                out.writeByte(NUMBER);
+                out.writeDouble(value);
+            }
+        } else if (arg instanceof Boolean) {
+            out.writeByte((Boolean) arg ? TRUE : FALSE);
+        } else if (arg == null) {
+            out.writeByte(NIL);
+        } else {
+            out.writeByte(STRING);
+            out.writeUTF(arg.toString());
+        }
+    }
+
+    /**
+     * Writes every file under a device's directory, with its path relative to the directory
+     */
+    private static void writeFiles(DataOutputStream out, File directory) throws IOException {
+        final List<String> paths = new ArrayList<String>();
+        listFiles(directory, "", paths);
+        writeVarLong(out, paths.size());
+        final byte[] buffer = new byte[8192];
+        for (String path : paths) {
+            final File file = new File(directory, path);
+            out.writeUTF(path);
+            writeVarLong(out, file.length());
+            final InputStream in = new FileInputStream(file);
+            try {
+                long remaining = file.length();
+                while (remaining > 0) {
+                    final int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        throw new IOException(file + " was shortened while being recorded");
+                    }
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private static void listFiles(File directory, String prefix, List<String> into) {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                listFiles(file, prefix + file.getName() + "/", into);
+            } else if (file.isFile()) {
+                into.add(prefix + file.getName());
+            }
+        }
+    }
+
+    /**
+     * Writes an unsigned number in as few bytes as it needs, seven bits to a byte
+     */
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+}
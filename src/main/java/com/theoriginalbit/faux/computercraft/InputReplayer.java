@@ -0,0 +1,331 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft;
+
+import com.theoriginalbit.faux.Emulator;
+import com.theoriginalbit.faux.api.IEmulatorInstance;
+import com.theoriginalbit.faux.api.IInputSource;
+import com.theoriginalbit.faux.computercraft.device.Computer;
+import com.theoriginalbit.faux.computercraft.device.Pocket;
+import com.theoriginalbit.faux.computercraft.device.Turtle;
+import com.theoriginalbit.faux.log.Log;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Replays a log written by an {@link com.theoriginalbit.faux.computercraft.InputRecorder}. Opening
+ * the log writes its ROM into the data store, creates its devices and writes their files, and
+ * then, as the input source of the tick manager, the recorded input is given to each device before
+ * the tick it was recorded at. The source ends at the tick recording stopped at.
+ * <p/>
+ * Devices which do not share anything run the same way each time they are given the same input at
+ * the same ticks, from the same files, so long as their random numbers are seeded; see
+ * {@link com.theoriginalbit.faux.EmulatorSettings#getRandomSeed()}.
+ *
+ * @author theoriginalbit
+ */
+public final class InputReplayer implements IInputSource, Closeable {
+    private final DataInputStream in;
+    private final List<DisplayDevice> devices = new ArrayList<DisplayDevice>();
+    private final Map<Integer, DisplayDevice> devicesByID = new HashMap<Integer, DisplayDevice>();
+    private final List<String> names = new ArrayList<String>();
+    /**
+     * The kind of the next record, and the tick it is due before
+     */
+    private int nextKind;
+    private long nextTick;
+
+    /**
+     * Opens a log, creating its devices, which must then be added to the emulator. The data store
+     * must not have a ROM, nor a directory for any of the devices, as they are replaced by those
+     * in the log.
+     *
+     * @param file     the log
+     * @param instance the emulator instance the devices belong to
+     * @throws IOException when the log cannot be read, or the files cannot be written
+     */
+    public InputReplayer(File file, IEmulatorInstance instance) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != InputRecorder.MAGIC) {
+                throw new IOException(file + " is not an input log");
+            }
+            final int version = in.readUnsignedByte();
+            if (version != InputRecorder.VERSION) {
+                throw new IOException("Unsupported input log version " + version);
+            }
+            readRom();
+            for (long count = readVarLong(); count > 0; --count) {
+                final int id = (int) readVarLong();
+                final DeviceType type = readEnum(DeviceType.values());
+                final DeviceFamily family = readEnum(DeviceFamily.values());
+                readFiles(new File(Emulator.DATASTORE, "computer/" + id));
+                final DisplayDevice device;
+                switch (type) {
+                    case TURTLE:
+                        device = new Turtle(family, id, instance);
+                        break;
+                    case POCKET:
+                        device = new Pocket(family, id, instance);
+                        break;
+                    default:
+                        device = new Computer(family, id, instance);
+                }
+                devices.add(device);
+                devicesByID.put(id, device);
+            }
+            readKind();
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the devices of the log
+     */
+    public List<DisplayDevice> getDevices() {
+        return Collections.unmodifiableList(devices);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean deliver(long tick) {
+        try {
+            while (nextTick <= tick) {
+                if (nextKind == InputRecorder.END) {
+                    return false;
+                }
+                replay();
+                readKind();
+            }
+            return true;
+        } catch (IOException e) {
+            Log.error("Failed to read the input log, the replay has ended: %s", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Prints the text on each device's screen, then a checksum of every screen including its
+     * colours, so that replays can be compared at a glance
+     *
+     * @param out the stream to print to
+     */
+    public void printScreens(PrintStream out) {
+        final CRC32 checksum = new CRC32();
+        for (DisplayDevice device : devices) {
+            final Terminal terminal = device.terminal;
+            final byte[] chars = new byte[terminal.getWidth()];
+            final byte[] textColours = new byte[chars.length], backgroundColours = new byte[chars.length];
+            out.println(String.format("%s %d:", device.deviceType.getDisplayName(), device.getID()));
+            for (int y = 0; y < terminal.getHeight(); ++y) {
+                terminal.copyRow(y, chars, textColours, backgroundColours, 0);
+                checksum.update(chars);
+                checksum.update(textColours);
+                checksum.update(backgroundColours);
+                int end = chars.length;
+                while (end > 0 && chars[end - 1] == ' ') {
+                    --end;
+                }
+                final StringBuilder line = new StringBuilder(end);
+                for (int x = 0; x < end; ++x) {
+                    line.append((char) (chars[x] & 0xFF));
+                }
+                out.println(line);
+            }
+        }
+        out.println(String.format("Screen checksum: %08x", checksum.getValue()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readKind() throws IOException {
+        final int next = in.read();
+        if (next < 0) {
+            // the recording was never finished, the replay ends after the last input
+            Log.warn("The input log ends without finishing");
+            nextKind = InputRecorder.END;
+            return;
+        }
+        nextKind = next;
+        nextTick += readVarLong();
+    }
+
+    /**
+     * Gives the next record's input to its device
+     */
+    private void replay() throws IOException {
+        final int id = (int) readVarLong();
+        final DisplayDevice device = devicesByID.get(id);
+        if (device == null) {
+            throw new IOException("Input for unknown device " + id);
+        }
+        switch (nextKind) {
+            case InputRecorder.EVENT:
+                final String event = readName();
+                final int count = in.readUnsignedByte();
+                if (count == 0) {
+                    device.queueEvent(event);
+                } else {
+                    final Object[] args = new Object[count];
+                    for (int i = 0; i < count; ++i) {
+                        args[i] = readArgument();
+                    }
+                    device.queueEvent(event, args);
+                }
+                break;
+            case InputRecorder.SHUTDOWN:
+                device.runtime.shutdown();
+                break;
+            case InputRecorder.REBOOT:
+                device.runtime.reboot();
+                break;
+            default:
+                throw new IOException("Unknown record " + nextKind);
+        }
+    }
+
+    private String readName() throws IOException {
+        final int index = (int) readVarLong();
+        if (index == names.size()) {
+            names.add(in.readUTF());
+        } else if (index > names.size()) {
+            throw new IOException("Unknown event name " + index);
+        }
+        return names.get(index);
+    }
+
+    private Object readArgument() throws IOException {
+        final int type = in.readUnsignedByte();
+        switch (type) {
+            case InputRecorder.NIL:
+                return null;
+            case InputRecorder.FALSE:
+                return Boolean.FALSE;
+            case InputRecorder.TRUE:
+                return Boolean.TRUE;
+            case InputRecorder.INTEGER: {
+                final int zigzag = (int) readVarLong();
+                return (double) ((zigzag >>> 1) ^ -(zigzag & 1));
+            }
+            case InputRecorder.NUMBER:
+                return in.readDouble();
+            case InputRecorder.STRING:
+                return in.readUTF();
+            default:
+                throw new IOException("Unknown argument type " + type);
+        }
+    }
+
+    /**
+     * Writes the ROM the devices were recorded with as the ROM of the data store, which must not
+     * have one already, so that it is neither replaced nor repacked from a {@code rom} directory
+     */
+    private void readRom() throws IOException {
+        final File archive = new File(Emulator.DATASTORE, "rom.far");
+        final File directory = new File(Emulator.DATASTORE, "rom");
+        if (archive.exists() || directory.exists()) {
+            throw new IOException("The data store already has a ROM, replays must start from an empty data store");
+        }
+        final long length = readVarLong();
+        if (length > 0) {
+            if (!archive.getParentFile().isDirectory() && !archive.getParentFile().mkdirs()) {
+                throw new IOException("Cannot create " + archive.getParentFile());
+            }
+            readFile(archive, length, new byte[8192]);
+        }
+    }
+
+    /**
+     * Writes the files of a device into its directory, which must not exist
+     */
+    private void readFiles(File directory) throws IOException {
+        if (directory.exists()) {
+            throw new IOException(directory + " already exists, replays must start from an empty data store");
+        }
+        final byte[] buffer = new byte[8192];
+        for (long count = readVarLong(); count > 0; --count) {
+            final String path = in.readUTF();
+            if (path.startsWith("/") || path.equals("..") || path.startsWith("../") || path.contains("/../") ||
+                    path.endsWith("/..")) {
+                throw new IOException("Invalid path " + path);
+            }
+            final File file = new File(directory, path);
+            final File parent = file.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Cannot create " + parent);
+            }
+            readFile(file, readVarLong(), buffer);
+        }
+    }
+
+    private void readFile(File file, long length, byte[] buffer) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            for (long remaining = length; remaining > 0; ) {
+                final int read = (int) Math.min(buffer.length, remaining);
+                in.readFully(buffer, 0, read);
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private <T> T readEnum(T[] values) throws IOException {
+        final int ordinal = in.readUnsignedByte();
+        if (ordinal >= values.length) {
+            throw new IOException("Unknown " + values.getClass().getComponentType().getSimpleName() + " " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed number");
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft;
+
+import com.theoriginalbit.faux.lua.LibFunction;
+import com.theoriginalbit.faux.lua.Lua;
+import com.theoriginalbit.faux.lua.LuaMachine;
+import com.theoriginalbit.faux.lua.LuaTable;
+
+import java.util.Arrays;
+
+/**
+ * The native functions of the ComputerCraft os API. The functions built on top of these, such as
+ * {@code os.pullEvent}, are defined by the BIOS.
+ *
+ * @author theoriginalbit
+ */
+final class OSAPI extends LibFunction {
+    private static final String[] NAMES = {"getComputerID", "getComputerLabel", "clock", "time", "day",
+            "startTimer", "cancelTimer", "queueEvent", "shutdown", "reboot"};
+    private static final int GET_COMPUTER_ID = 0, GET_COMPUTER_LABEL = 1, CLOCK = 2, TIME = 3, DAY = 4,
+            START_TIMER = 5, CANCEL_TIMER = 6, QUEUE_EVENT = 7, SHUTDOWN = 8, REBOOT = 9;
+    private final DeviceRuntime runtime;
+    private final int opcode;
+
+    private OSAPI(DeviceRuntime owner, String name, int op) {
+        super("os." + name);
+        runtime = owner;
+        opcode = op;
+    }
+
+    /**
+     * Installs the API into the machine's globals
+     *
+     * @param machine the machine
+     * @param runtime the runtime of the device the machine belongs to
+     */
+    static void install(LuaMachine machine, DeviceRuntime runtime) {
+        final LuaTable api = new LuaTable();
+        for (int i = 0; i < NAMES.length; ++i) {
+            api.rawset(NAMES[i], new OSAPI(runtime, NAMES[i], i));
+        }
+        machine.getGlobals().rawset("os", api);
+    }
+
+    @Override
+    public Object[] invoke(LuaMachine machine, Object[] args) {
+        switch (opcode) {
+            case GET_COMPUTER_ID:
+                return results(Lua.valueOf(runtime.getDevice().getID()));
+            case GET_COMPUTER_LABEL:
+                return Lua.NONE;
+            case CLOCK:
+                return results(Lua.valueOf(runtime.getClock()));
+            case TIME:
+                return results(Lua.valueOf(runtime.getTimeOfDay()));
+            case DAY:
+                return results(Lua.valueOf(runtime.getDay()));
+            case START_TIMER:
+                return results(Lua.valueOf(runtime.startTimer(checkNumber(args, 0))));
+            case CANCEL_TIMER:
+                runtime.cancelTimer(checkInt(args, 0));
+                return Lua.NONE;
+            case QUEUE_EVENT: {
+                final String name = checkString(args, 0);
+                runtime.getDevice().queueEvent(name, args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : Lua.NONE);
+                return Lua.NONE;
+            }
+            case SHUTDOWN:
+                runtime.shutdown();
+                return Lua.NONE;
+            case REBOOT:
+                runtime.reboot();
+                return Lua.NONE;
+            default:
+                throw new IllegalStateException("Unknown function " + getName());
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft;
+
+import com.theoriginalbit.faux.util.ChatUtils;
+import com.theoriginalbit.faux.util.Events;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streams text of any length into a device as though it were typed, such as a script from the
+ * clipboard or a file. Each line is queued as {@code paste} events, split to the length
+ * ComputerCraft allows a paste, followed by the enter key.
+ * <p/>
+ * The text is read a buffer at a time, and filtered in place within the buffer; line endings
+ * become the enter key, tabs become spaces, and characters the device could not type are
+ * dropped. Events are only queued while the device's queue is nearly empty, and at most a few
+ * each tick, so delivery is paced by how fast the device handles them.
+ *
+ * @author theoriginalbit
+ */
+final class PasteStream implements Closeable {
+    /**
+     * The longest text ComputerCraft queues in a single paste event
+     */
+    static final int MAX_PASTE_LENGTH = 128;
+    /**
+     * The most events queued each tick, and the queue size at which no more are queued
+     */
+    private static final int EVENTS_PER_TICK = 8, QUEUE_LIMIT = 16;
+    private static final int KEY_ENTER = 28;
+    private final Reader reader;
+    private final char[] buffer = new char[4096];
+    private int position, limit;
+    private boolean endOfStream;
+    /**
+     * Whether the last character read was a carriage return, so a line feed after it is ignored
+     */
+    private boolean carriageReturn;
+    private boolean enterPending;
+
+    /**
+     * @param text the text to type, which is closed once it has all been typed
+     */
+    PasteStream(Reader text) {
+        reader = text;
+    }
+
+    /**
+     * Queues the next events, if the device's queue has room for them
+     *
+     * @param device the device to queue the events for
+     * @param queue  the event queue of the device
+     * @return whether there is more to type
+     * @throws IOException when the text cannot be read
+     */
+    boolean deliver(DisplayDevice device, EventQueue queue) throws IOException {
+        for (int i = 0; i < EVENTS_PER_TICK && queue.size() < QUEUE_LIMIT; ++i) {
+            if (!queueNext(device)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * @return whether an event was queued, false once everything has been typed
+     */
+    private boolean queueNext(DisplayDevice device) throws IOException {
+        if (enterPending) {
+            enterPending = false;
+            device.queueInput(Events.KEY, KEY_ENTER);
+            return true;
+        }
+        if (position == limit && !fill()) {
+            return false;
+        }
+
+        // the rest of the line in the buffer, up to the length of a paste
+        final int max = Math.min(limit, position + MAX_PASTE_LENGTH);
+        int end = position;
+        while (end < max && buffer[end] != '\n') {
+            ++end;
+        }
+        final int start = position;
+        position = end;
+        if (end < limit && buffer[end] == '\n') {
+            enterPending = true;
+            ++position;
+        }
+
+        if (end > start) {
+            device.queueInput(Events.PASTE, new String(buffer, start, end - start));
+        } else {
+            // an empty line is just the enter key
+            enterPending = false;
+            device.queueInput(Events.KEY, KEY_ENTER);
+        }
+        return true;
+    }
+
+    /**
+     * Reads and filters the next characters into the buffer, which must be empty
+     *
+     * @return whether anything was read, false at the end of the text
+     */
+    private boolean fill() throws IOException {
+        position = limit = 0;
+        while (limit == 0 && !endOfStream) {
+            final int read = reader.read(buffer, 0, buffer.length);
+            if (read < 0) {
+                endOfStream = true;
+                break;
+            }
+
+            int i = 0;
+            while (i < read) {
+                final char ch = buffer[i];
+                if (ch == '\r' || ch == '\n') {
+                    // \r\n, \r and \n are each a single line ending
+                    if (ch == '\r' || !carriageReturn) {
+                        buffer[limit++] = '\n';
+                    }
+                    carriageReturn = ch == '\r';
+                    ++i;
+                    continue;
+                }
+                carriageReturn = false;
+
+                // the text up to the next line ending is moved after what was kept, then filtered
+                int end = i;
+                while (end < read && buffer[end] != '\r' && buffer[end] != '\n') {
+                    final char c = buffer[end];
+                    // dropping tabs would join the words either side of them, while anything
+                    // outside the device charset becomes a character the filter drops
+                    buffer[limit + end - i] = c == '\t' ? ' ' : c < 256 ? c : '\u0000';
+                    ++end;
+                }
+                limit += ChatUtils.filterAllowedCharacters(buffer, limit, end - i);
+                i = end;
+            }
+        }
+        return limit > 0;
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft;
+
+import com.theoriginalbit.faux.lua.LibFunction;
+import com.theoriginalbit.faux.lua.Lua;
+import com.theoriginalbit.faux.lua.LuaError;
+import com.theoriginalbit.faux.lua.LuaMachine;
+import com.theoriginalbit.faux.lua.LuaTable;
+
+/**
+ * The ComputerCraft term API, drawing onto the device's {@link Terminal}. Positions are one-based
+ * in Lua and zero-based on the terminal, and colours are bit flags in Lua and indices on the
+ * terminal.
+ *
+ * @author theoriginalbit
+ */
+final class TermAPI extends LibFunction {
+    private static final String[] NAMES = {"write", "blit", "clear", "clearLine", "getCursorPos", "setCursorPos",
+            "setCursorBlink", "getSize", "scroll", "isColour", "isColor", "getTextColour", "getTextColor",
+            "setTextColour", "setTextColor", "getBackgroundColour", "getBackgroundColor", "setBackgroundColour",
+            "setBackgroundColor"};
+    private static final int[] OPCODES = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+    private static final int WRITE = 0, BLIT = 1, CLEAR = 2, CLEAR_LINE = 3, GET_CURSOR_POS = 4, SET_CURSOR_POS = 5,
+            SET_CURSOR_BLINK = 6, GET_SIZE = 7, SCROLL = 8, IS_COLOUR = 9, GET_TEXT_COLOUR = 10, SET_TEXT_COLOUR = 11,
+            GET_BACKGROUND_COLOUR = 12, SET_BACKGROUND_COLOUR = 13;
+    private final Terminal terminal;
+    private final int opcode;
+
+    private TermAPI(Terminal owner, String name, int op) {
+        super("term." + name);
+        terminal = owner;
+        opcode = op;
+    }
+
+    /**
+     * Installs the API into the machine's globals
+     *
+     * @param machine the machine
+     * @param runtime the runtime of the device the machine belongs to
+     */
+    static void install(LuaMachine machine, DeviceRuntime runtime) {
+        final LuaTable api = new LuaTable();
+        for (int i = 0; i < NAMES.length; ++i) {
+            api.rawset(NAMES[i], new TermAPI(runtime.getTerminal(), NAMES[i], OPCODES[i]));
+        }
+        machine.getGlobals().rawset("term", api);
+    }
+
+    @Override
+    public Object[] invoke(LuaMachine machine, Object[] args) {
+        switch (opcode) {
+            case WRITE: {
+                final Object value = arg(args, 0);
+                terminal.write(value instanceof String || value instanceof Double ? Lua.toStringRaw(value) : "");
+                return Lua.NONE;
+            }
+            case BLIT:
+                blit(checkString(args, 0), checkString(args, 1), checkString(args, 2));
+                return Lua.NONE;
+            case CLEAR:
+                terminal.clear();
+                return Lua.NONE;
+            case CLEAR_LINE:
+                terminal.clearLine();
+                return Lua.NONE;
+            case GET_CURSOR_POS:
+                synchronized (terminal) {
+                    return results(Lua.valueOf(terminal.getCursorX() + 1), Lua.valueOf(terminal.getCursorY() + 1));
+                }
+            case SET_CURSOR_POS:
+                terminal.setCursorPos(checkInt(args, 0) - 1, checkInt(args, 1) - 1);
+                return Lua.NONE;
+            case SET_CURSOR_BLINK:
+                if (!(arg(args, 0) instanceof Boolean)) {
+                    throw typeError(args, 0, "boolean");
+                }
+                terminal.setCursorBlink((Boolean) args[0]);
+                return Lua.NONE;
+            case GET_SIZE:
+                return results(Lua.valueOf(terminal.getWidth()), Lua.valueOf(terminal.getHeight()));
+            case SCROLL:
+                terminal.scroll(checkInt(args, 0));
+                return Lua.NONE;
+            case IS_COLOUR:
+                return results(Lua.valueOf(terminal.isColour()));
+            case GET_TEXT_COLOUR:
+                return results(Lua.valueOf(1 << terminal.getTextColour()));
+            case SET_TEXT_COLOUR:
+                terminal.setTextColour(checkColour(args, 0));
+                return Lua.NONE;
+            case GET_BACKGROUND_COLOUR:
+                return results(Lua.valueOf(1 << terminal.getBackgroundColour()));
+            case SET_BACKGROUND_COLOUR:
+                terminal.setBackgroundColour(checkColour(args, 0));
+                return Lua.NONE;
+            default:
+                throw new IllegalStateException("Unknown function " + getName());
+        }
+    }
+
+    /**
+     * Converts a colour argument, a single bit flag, to its colour index
+     *
+     * @param args  the arguments
+     * @param index the index of the colour argument
+     * @return the colour index, 0 to 15
+     */
+    private int checkColour(Object[] args, int index) {
+        final int colour = checkInt(args, index);
+        if (colour <= 0 || colour > 0xFFFF) {
+            throw new LuaError("Colour out of range");
+        }
+        final int colourIndex = Integer.numberOfTrailingZeros(Integer.highestOneBit(colour));
+        if (!terminal.isColour() && colourIndex != Terminal.DEFAULT_TEXT_COLOUR && colourIndex != Terminal.DEFAULT_BACKGROUND_COLOUR) {
+            throw new LuaError("Colour not supported");
+        }
+        return colourIndex;
+    }
+
+    private void blit(String text, String textColours, String backgroundColours) {
+        final int length = text.length();
+        if (textColours.length() != length || backgroundColours.length() != length) {
+            throw new LuaError("Arguments must be the same length");
+        }
+        final byte[] chars = new byte[length];
+        final byte[] fg = new byte[length];
+        final byte[] bg = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            final char ch = text.charAt(i);
+            chars[i] = (byte) (ch < 256 ? ch : '?');
+            fg[i] = (byte) hexDigit(textColours.charAt(i), terminal.getTextColour());
+            bg[i] = (byte) hexDigit(backgroundColours.charAt(i), terminal.getBackgroundColour());
+        }
+        terminal.blit(chars, fg, bg);
+    }
+
+    private static int hexDigit(char ch, int fallback) {
+        final int digit = Character.digit(ch, 16);
+        return digit >= 0 ? digit : fallback;
+    }
+}
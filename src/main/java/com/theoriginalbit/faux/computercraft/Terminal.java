@@ -15,23 +15,314 @@
  */
 package com.theoriginalbit.faux.computercraft;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
 /**
+ * The framebuffer of a ComputerCraft device. Characters and colour indices are stored in packed
+ * row-major arrays so that writes, blits, clears and scrolls are bulk array operations, and any
+ * row that is modified is marked dirty so that the renderer only has to rebuild changed rows.
+ * <p/>
+ * The terminal is written by the device and read by the render thread, as such all access is
+ * synchronized on the terminal instance.
+ *
  * @author theoriginalbit
  */
 public class Terminal {
+    /**
+     * The colour index of white, the default text colour
+     */
+    public static final byte DEFAULT_TEXT_COLOUR = 0;
+    /**
+     * The colour index of black, the default background colour
+     */
+    public static final byte DEFAULT_BACKGROUND_COLOUR = 15;
+    private static final byte BLANK = ' ';
+
     private final DeviceType type;
     private final DeviceFamily family;
+    private final int width, height;
+    private final byte[] text;
+    private final byte[] textColour;
+    private final byte[] backgroundColour;
+    private final BitSet dirtyRows;
+    private int cursorX, cursorY;
+    private boolean cursorBlink;
+    private byte currentTextColour = DEFAULT_TEXT_COLOUR;
+    private byte currentBackgroundColour = DEFAULT_BACKGROUND_COLOUR;
 
     public Terminal(DeviceType type, DeviceFamily family) {
         this.type = type;
         this.family = family;
+        width = type.getWidth();
+        height = type.getHeight();
+        text = new byte[width * height];
+        textColour = new byte[width * height];
+        backgroundColour = new byte[width * height];
+        dirtyRows = new BitSet(height);
+        clear();
     }
 
     public int getWidth() {
-        return type.getWidth();
+        return width;
     }
 
     public int getHeight() {
-        return type.getHeight();
+        return height;
+    }
+
+    /**
+     * @return the type of the device this terminal belongs to
+     */
+    public DeviceType getDeviceType() {
+        return type;
+    }
+
+    /**
+     * @return whether this terminal is able to display colours other than black and white
+     */
+    public boolean isColour() {
+        return family == DeviceFamily.ADVANCED;
+    }
+
+    public synchronized int getCursorX() {
+        return cursorX;
+    }
+
+    public synchronized int getCursorY() {
+        return cursorY;
+    }
+
+    public synchronized void setCursorPos(int x, int y) {
+        markDirty(cursorY);
+        cursorX = x;
+        cursorY = y;
+        markDirty(y);
+    }
+
+    public synchronized boolean getCursorBlink() {
+        return cursorBlink;
+    }
+
+    public synchronized void setCursorBlink(boolean blink) {
+        cursorBlink = blink;
+        markDirty(cursorY);
+    }
+
+    public synchronized int getTextColour() {
+        return currentTextColour;
+    }
+
+    /**
+     * @param colour the colour index, 0 to 15, to use for subsequent writes
+     */
+    public synchronized void setTextColour(int colour) {
+        currentTextColour = (byte) (colour & 0xF);
+    }
+
+    public synchronized int getBackgroundColour() {
+        return currentBackgroundColour;
+    }
+
+    /**
+     * @param colour the colour index, 0 to 15, to use for subsequent writes and clears
+     */
+    public synchronized void setBackgroundColour(int colour) {
+        currentBackgroundColour = (byte) (colour & 0xF);
+    }
+
+    /**
+     * Writes the text at the cursor in the current colours, advancing the cursor by the length of
+     * the text. Any characters outside the terminal are clipped, and characters outside of the
+     * ComputerCraft charset are replaced with a '?'.
+     *
+     * @param str the text to write
+     */
+    public synchronized void write(String str) {
+        final int length = str.length();
+        final int start = Math.max(cursorX, 0);
+        final int end = Math.min(cursorX + length, width);
+        if (cursorY >= 0 && cursorY < height && start < end) {
+            final int row = cursorY * width;
+            for (int x = start; x < end; ++x) {
+                final char ch = str.charAt(x - cursorX);
+                text[row + x] = (byte) (ch < 256 ? ch : '?');
+            }
+            Arrays.fill(textColour, row + start, row + end, currentTextColour);
+            Arrays.fill(backgroundColour, row + start, row + end, currentBackgroundColour);
+            dirtyRows.set(cursorY);
+        }
+        cursorX += length;
+    }
+
+    /**
+     * Writes the characters and their colour indices at the cursor, advancing the cursor by the
+     * number of characters. The three arrays must be the same length.
+     *
+     * @param chars       the characters to write
+     * @param textColours the text colour index of each character
+     * @param bgColours   the background colour index of each character
+     */
+    public synchronized void blit(byte[] chars, byte[] textColours, byte[] bgColours) {
+        if (chars.length != textColours.length || chars.length != bgColours.length) {
+            throw new IllegalArgumentException("Arguments must be the same length");
+        }
+
+        final int start = Math.max(cursorX, 0);
+        final int end = Math.min(cursorX + chars.length, width);
+        if (cursorY >= 0 && cursorY < height && start < end) {
+            final int row = cursorY * width;
+            System.arraycopy(chars, start - cursorX, text, row + start, end - start);
+            System.arraycopy(textColours, start - cursorX, textColour, row + start, end - start);
+            System.arraycopy(bgColours, start - cursorX, backgroundColour, row + start, end - start);
+            dirtyRows.set(cursorY);
+        }
+        cursorX += chars.length;
+    }
+
+    /**
+     * Clears the entire terminal to the current background colour
+     */
+    public synchronized void clear() {
+        fill(0, text.length);
+        dirtyRows.set(0, height);
+    }
+
+    /**
+     * Clears the row the cursor is on to the current background colour
+     */
+    public synchronized void clearLine() {
+        if (cursorY >= 0 && cursorY < height) {
+            fill(cursorY * width, (cursorY + 1) * width);
+            dirtyRows.set(cursorY);
+        }
+    }
+
+    /**
+     * Scrolls the content of the terminal, the rows that are revealed are cleared to the current
+     * background colour.
+     *
+     * @param lines the number of lines to scroll; positive moves the content up
+     */
+    public synchronized void scroll(int lines) {
+        if (lines == 0) {
+            return;
+        }
+
+        if (Math.abs(lines) >= height) {
+            fill(0, text.length);
+        } else {
+            final int shift = Math.abs(lines) * width;
+            final int length = text.length - shift;
+            if (lines > 0) {
+                System.arraycopy(text, shift, text, 0, length);
+                System.arraycopy(textColour, shift, textColour, 0, length);
+                System.arraycopy(backgroundColour, shift, backgroundColour, 0, length);
+                fill(length, text.length);
+            } else {
+                System.arraycopy(text, 0, text, shift, length);
+                System.arraycopy(textColour, 0, textColour, shift, length);
+                System.arraycopy(backgroundColour, 0, backgroundColour, shift, length);
+                fill(0, shift);
+            }
+        }
+        dirtyRows.set(0, height);
+    }
+
+    /**
+     * Copies a row of the terminal into the supplied arrays, each of which must be able to hold
+     * at least {@link #getWidth()} elements from the offset.
+     *
+     * @param y           the row to copy
+     * @param chars       the destination of the characters
+     * @param textColours the destination of the text colour indices
+     * @param bgColours   the destination of the background colour indices
+     * @param offset      the offset into the destination arrays
+     */
+    public synchronized void copyRow(int y, byte[] chars, byte[] textColours, byte[] bgColours, int offset) {
+        final int row = y * width;
+        System.arraycopy(text, row, chars, offset, width);
+        System.arraycopy(textColour, row, textColours, offset, width);
+        System.arraycopy(backgroundColour, row, bgColours, offset, width);
+    }
+
+    /**
+     * @return whether any row has been modified since the dirty rows were last polled
+     */
+    public synchronized boolean isDirty() {
+        return !dirtyRows.isEmpty();
+    }
+
+    /**
+     * Adds the rows that have been modified since the last poll to the supplied set, and then
+     * resets the dirty state of the terminal.
+     *
+     * @param into the set to add the dirty row indices to
+     * @return whether any rows were dirty
+     */
+    public synchronized boolean pollDirtyRows(BitSet into) {
+        if (dirtyRows.isEmpty()) {
+            return false;
+        }
+        into.or(dirtyRows);
+        dirtyRows.clear();
+        return true;
+    }
+
+    /**
+     * Writes the contents, cursor and colours of the terminal
+     *
+     * @param out the stream to write to
+     * @throws IOException when the stream cannot be written
+     */
+    public synchronized void save(DataOutputStream out) throws IOException {
+        out.writeShort(width);
+        out.writeShort(height);
+        out.write(text);
+        out.write(textColour);
+        out.write(backgroundColour);
+        out.writeShort(cursorX);
+        out.writeShort(cursorY);
+        out.writeBoolean(cursorBlink);
+        out.writeByte(currentTextColour);
+        out.writeByte(currentBackgroundColour);
+    }
+
+    /**
+     * Reads the contents, cursor and colours written by {@link #save(DataOutputStream)}, the
+     * terminal must be the same size as the one that was saved
+     *
+     * @param in the stream to read from
+     * @throws IOException when the stream cannot be read, or was saved from a different size
+     */
+    public synchronized void load(DataInputStream in) throws IOException {
+        final int w = in.readShort(), h = in.readShort();
+        if (w != width || h != height) {
+            throw new IOException("Terminal size " + w + "x" + h + " does not match " + width + "x" + height);
+        }
+        in.readFully(text);
+        in.readFully(textColour);
+        in.readFully(backgroundColour);
+        cursorX = in.readShort();
+        cursorY = in.readShort();
+        cursorBlink = in.readBoolean();
+        currentTextColour = in.readByte();
+        currentBackgroundColour = in.readByte();
+        dirtyRows.set(0, height);
+    }
+
+    private void markDirty(int y) {
+        if (y >= 0 && y < height) {
+            dirtyRows.set(y);
+        }
+    }
+
+    private void fill(int from, int to) {
+        Arrays.fill(text, from, to, BLANK);
+        Arrays.fill(textColour, from, to, currentTextColour);
+        Arrays.fill(backgroundColour, from, to, currentBackgroundColour);
     }
 }
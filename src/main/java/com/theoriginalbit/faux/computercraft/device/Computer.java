@@ -25,20 +25,23 @@ import com.theoriginalbit.faux.computercraft.DisplayDevice;
  */
 public class Computer extends DisplayDevice {
     /**
-     * Constructs a ComputerCraft Computer
+     * Constructs a ComputerCraft Computer with the ID 0
      *
      * @param family   the device family for render colour
      * @param instance the emulator instance
      */
     public Computer(DeviceFamily family, IEmulatorInstance instance) {
-        super(DeviceType.COMPUTER, family, instance);
+        this(family, 0, instance);
     }
 
     /**
-     * {@inheritDoc}
+     * Constructs a ComputerCraft Computer
+     *
+     * @param family   the device family for render colour
+     * @param id       the ID of the device
+     * @param instance the emulator instance
      */
-    @Override
-    public int getID() {
-        return 0;
+    public Computer(DeviceFamily family, int id, IEmulatorInstance instance) {
+        super(DeviceType.COMPUTER, family, id, instance);
     }
 }
@@ -25,20 +25,23 @@ import com.theoriginalbit.faux.computercraft.DisplayDevice;
  */
 public class Pocket extends DisplayDevice {
     /**
-     * Constructs a ComputerCraft Pocket Computer
+     * Constructs a ComputerCraft Pocket with the ID 0
      *
      * @param family   the device family for render colour
      * @param instance the emulator instance
      */
     public Pocket(DeviceFamily family, IEmulatorInstance instance) {
-        super(DeviceType.POCKET, family, instance);
+        this(family, 0, instance);
     }
 
     /**
-     * {@inheritDoc}
+     * Constructs a ComputerCraft Pocket
+     *
+     * @param family   the device family for render colour
+     * @param id       the ID of the device
+     * @param instance the emulator instance
      */
-    @Override
-    public int getID() {
-        return 0;
+    public Pocket(DeviceFamily family, int id, IEmulatorInstance instance) {
+        super(DeviceType.POCKET, family, id, instance);
     }
 }
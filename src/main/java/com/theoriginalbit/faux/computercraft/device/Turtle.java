@@ -25,20 +25,23 @@ import com.theoriginalbit.faux.computercraft.DisplayDevice;
  */
 public class Turtle extends DisplayDevice {
     /**
-     * Constructs a ComputerCraft Turtle
+     * Constructs a ComputerCraft Turtle with the ID 0
      *
      * @param family   the device family for render colour
      * @param instance the emulator instance
      */
     public Turtle(DeviceFamily family, IEmulatorInstance instance) {
-        super(DeviceType.TURTLE, family, instance);
+        this(family, 0, instance);
     }
 
     /**
-     * {@inheritDoc}
+     * Constructs a ComputerCraft Turtle
+     *
+     * @param family   the device family for render colour
+     * @param id       the ID of the device
+     * @param instance the emulator instance
      */
-    @Override
-    public int getID() {
-        return 0;
+    public Turtle(DeviceFamily family, int id, IEmulatorInstance instance) {
+        super(DeviceType.TURTLE, family, id, instance);
     }
 }
@@ -0,0 +1,312 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft.filesystem;
+
+import com.theoriginalbit.faux.api.computercraft.IMount;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A read-only mount of a single archive file, such as the ROM. The archive is memory-mapped once
+ * per archive file and the instance shared by every device mounting it, so the contents are
+ * only held once however many devices are running.
+ * <p/>
+ * The archive's index is read into a map when the archive is opened, giving constant time
+ * lookups, and each directory's listing is built once. Files are read as slices of the mapping
+ * rather than copied.
+ * <p/>
+ * An archive is a header, {@code FXRA} and a version, followed by the entry count and then each
+ * entry's path, whether it is a directory, and the offset and length of its contents. The
+ * contents of the files follow the index.
+ *
+ * @author theoriginalbit
+ */
+public final class ArchiveMount implements IMount {
+    private static final int MAGIC = 0x46585241, VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final ConcurrentMap<File, ArchiveMount> archives = new ConcurrentHashMap<File, ArchiveMount>();
+    private final Map<String, Entry> entries;
+    private final MappedByteBuffer mapping;
+
+    private ArchiveMount(MappedByteBuffer data) throws IOException {
+        mapping = data;
+        final ByteBuffer header = data.duplicate();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Not an archive, or an unsupported version");
+        }
+
+        final int count = header.getInt();
+        entries = new HashMap<String, Entry>(count * 2);
+        final Map<String, List<String>> children = new HashMap<String, List<String>>();
+        for (int i = 0; i < count; ++i) {
+            final byte[] name = new byte[header.getShort() & 0xFFFF];
+            header.get(name);
+            final String path = new String(name, UTF_8);
+            final boolean directory = header.get() != 0;
+            final int offset = (int) header.getLong();
+            final int length = (int) header.getLong();
+            if (offset < 0 || length < 0 || offset + length > data.capacity()) {
+                throw new IOException("Entry " + path + " is outside of the archive");
+            }
+            entries.put(path, new Entry(directory, offset, length));
+
+            if (!path.isEmpty()) {
+                final int separator = path.lastIndexOf('/');
+                final String parent = separator < 0 ? "" : path.substring(0, separator);
+                List<String> siblings = children.get(parent);
+                if (siblings == null) {
+                    siblings = new ArrayList<String>();
+                    children.put(parent, siblings);
+                }
+                siblings.add(path.substring(separator + 1));
+            }
+        }
+
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().directory) {
+                final List<String> names = children.get(entry.getKey());
+                entry.getValue().children = names == null ? new String[0] : names.toArray(new String[names.size()]);
+            }
+        }
+        if (!entries.containsKey("")) {
+            throw new IOException("The archive has no root directory");
+        }
+    }
+
+    /**
+     * Opens an archive, mapping it if no device has opened it yet
+     *
+     * @param archive the archive file
+     * @return the mount shared by every device
+     * @throws IOException when the archive cannot be read
+     */
+    public static ArchiveMount open(File archive) throws IOException {
+        final File key = archive.getCanonicalFile();
+        ArchiveMount mount = archives.get(key);
+        if (mount == null) {
+            final FileChannel channel = FileChannel.open(key.toPath(), StandardOpenOption.READ);
+            try {
+                // the mapping stays valid after the channel is closed
+                mount = new ArchiveMount(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } finally {
+                channel.close();
+            }
+            final ArchiveMount existing = archives.putIfAbsent(key, mount);
+            if (existing != null) {
+                mount = existing;
+            }
+        }
+        return mount;
+    }
+
+    /**
+     * Packs a directory on the host into an archive
+     *
+     * @param directory the directory to pack
+     * @param archive   the archive to write, replacing any existing one
+     * @throws IOException when the directory cannot be read or the archive written
+     */
+    public static void pack(File directory, File archive) throws IOException {
+        final List<String> paths = new ArrayList<String>();
+        final List<File> files = new ArrayList<File>();
+        collect(directory, "", paths, files);
+
+        // the index size is known up front, so the offsets of the contents can be written with it
+        long offset = 12;
+        for (String path : paths) {
+            offset += 2 + path.getBytes(UTF_8).length + 1 + 8 + 8;
+        }
+
+        final File temp = new File(archive.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(paths.size());
+            for (int i = 0; i < paths.size(); ++i) {
+                final byte[] name = paths.get(i).getBytes(UTF_8);
+                final File file = files.get(i);
+                final long length = file.isDirectory() ? 0L : file.length();
+                out.writeShort(name.length);
+                out.write(name);
+                out.writeBoolean(file.isDirectory());
+                out.writeLong(offset);
+                out.writeLong(length);
+                offset += length;
+            }
+            for (File file : files) {
+                if (file.isFile()) {
+                    Files.copy(file.toPath(), out);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (offset > Integer.MAX_VALUE) {
+            temp.delete();
+            throw new IOException("The archive is too large to map");
+        }
+        if (archive.exists() && !archive.delete() || !temp.renameTo(archive)) {
+            temp.delete();
+            throw new IOException("Failed to replace " + archive);
+        }
+    }
+
+    /**
+     * Gets when a directory last changed, which is when any file or directory in it last did, as
+     * a directory's own time only changes when entries are added to or removed from it
+     *
+     * @param directory the directory on the host
+     * @return the time of the latest change, in milliseconds since the epoch
+     * @throws IOException when the directory cannot be read
+     */
+    public static long getLastModified(File directory) throws IOException {
+        final List<String> paths = new ArrayList<String>();
+        final List<File> files = new ArrayList<File>();
+        collect(directory, "", paths, files);
+        long latest = 0L;
+        for (File file : files) {
+            latest = Math.max(latest, file.lastModified());
+        }
+        return latest;
+    }
+
+    /**
+     * @return the size of the archive in bytes
+     */
+    public int getLength() {
+        return mapping.capacity();
+    }
+
+    /**
+     * Writes the whole archive, such as to keep a copy of it
+     *
+     * @param out the stream to write to
+     * @throws IOException when the stream cannot be written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        final ByteBuffer data = mapping.duplicate();
+        data.clear();
+        final byte[] buffer = new byte[8192];
+        while (data.hasRemaining()) {
+            final int length = Math.min(buffer.length, data.remaining());
+            data.get(buffer, 0, length);
+            out.write(buffer, 0, length);
+        }
+    }
+
+    private static void collect(File file, String path, List<String> paths, List<File> files) throws IOException {
+        paths.add(path);
+        files.add(file);
+        if (file.isDirectory()) {
+            final String[] names = file.list();
+            if (names == null) {
+                throw new IOException("Failed to list " + file);
+            }
+            Arrays.sort(names);
+            for (String name : names) {
+                collect(new File(file, name), path.isEmpty() ? name : path + "/" + name, paths, files);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean exists(String path) {
+        return entries.containsKey(path);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDirectory(String path) {
+        final Entry entry = entries.get(path);
+        return entry != null && entry.directory;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void list(String path, List<String> contents) throws IOException {
+        final Entry entry = entries.get(path);
+        if (entry == null || !entry.directory) {
+            throw new IOException("Not a directory");
+        }
+        Collections.addAll(contents, entry.children);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSize(String path) throws IOException {
+        final Entry entry = entries.get(path);
+        if (entry == null) {
+            throw new IOException("No such file");
+        }
+        return entry.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ReadableByteChannel openForRead(String path) throws IOException {
+        final Entry entry = entries.get(path);
+        if (entry == null || entry.directory) {
+            throw new IOException("No such file");
+        }
+        final ByteBuffer slice = mapping.duplicate();
+        slice.position(entry.offset).limit(entry.offset + entry.length);
+        return new ByteBufferChannel(slice.slice().asReadOnlyBuffer());
+    }
+
+    private static final class Entry {
+        private final boolean directory;
+        private final int offset, length;
+        private String[] children;
+
+        private Entry(boolean directory, int offset, int length) {
+            this.directory = directory;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
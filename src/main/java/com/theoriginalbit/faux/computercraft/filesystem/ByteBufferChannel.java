@@ -0,0 +1,68 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft.filesystem;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A channel reading from a buffer, such as a slice of a memory-mapped file. Readers that can
+ * work on the buffer directly may use {@link #getBuffer()} rather than copying from the channel.
+ *
+ * @author theoriginalbit
+ */
+public final class ByteBufferChannel implements ReadableByteChannel {
+    private final ByteBuffer buffer;
+    private boolean open = true;
+
+    /**
+     * @param contents the contents to read, from its position to its limit; the buffer is
+     *                 read directly rather than copied, so it must not be modified
+     */
+    public ByteBufferChannel(ByteBuffer contents) {
+        buffer = contents;
+    }
+
+    /**
+     * @return the buffer being read, its position advances as the channel is read
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) {
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        final int count = Math.min(dst.remaining(), buffer.remaining());
+        final ByteBuffer chunk = buffer.duplicate();
+        chunk.limit(chunk.position() + count);
+        dst.put(chunk);
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+}
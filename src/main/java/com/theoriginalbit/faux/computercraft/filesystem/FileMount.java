@@ -0,0 +1,336 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft.filesystem;
+
+import com.theoriginalbit.faux.api.computercraft.IWritableMount;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+/**
+ * A writable mount backed by a directory on the host. Like ComputerCraft, every file and
+ * directory uses at least {@link #MINIMUM_FILE_SIZE} bytes of the capacity, so that a program
+ * cannot fill the host's disk with empty files.
+ * <p/>
+ * The space used is counted once, when first needed, and from then on is updated by every
+ * write and delete rather than recounted, so checking the free space costs nothing. The mount
+ * must therefore only be modified through this instance, and only by the device's thread.
+ *
+ * @author theoriginalbit
+ */
+public final class FileMount implements IWritableMount {
+    /**
+     * The least space a file or directory uses, regardless of its size
+     */
+    public static final long MINIMUM_FILE_SIZE = 500L;
+    private static final String OUT_OF_SPACE = "Out of space";
+    private final Path root;
+    private final long capacity;
+    private long usedSpace = -1L;
+
+    /**
+     * @param root     the directory on the host, created when first written to
+     * @param capacity the total space, in bytes, the mount may use
+     */
+    public FileMount(File root, long capacity) {
+        this.root = root.toPath();
+        this.capacity = capacity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean exists(String path) throws IOException {
+        return path.isEmpty() || Files.exists(resolve(path));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDirectory(String path) throws IOException {
+        return path.isEmpty() || Files.isDirectory(resolve(path));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void list(String path, List<String> contents) throws IOException {
+        final Path dir = resolve(path);
+        if (path.isEmpty() && !Files.exists(dir)) {
+            // nothing has been written yet
+            return;
+        }
+        if (!Files.isDirectory(dir)) {
+            throw new IOException("Not a directory");
+        }
+        final DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+        try {
+            for (Path entry : stream) {
+                contents.add(entry.getFileName().toString());
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSize(String path) throws IOException {
+        if (isDirectory(path)) {
+            return 0L;
+        }
+        final Path file = resolve(path);
+        if (!Files.exists(file)) {
+            throw new IOException("No such file");
+        }
+        return Files.size(file);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ReadableByteChannel openForRead(String path) throws IOException {
+        final Path file = resolve(path);
+        if (!Files.isRegularFile(file)) {
+            throw new IOException("No such file");
+        }
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void makeDirectory(String path) throws IOException {
+        final Path dir = resolve(path);
+        if (Files.isDirectory(dir)) {
+            return;
+        }
+        if (Files.exists(dir)) {
+            throw new IOException("File exists");
+        }
+
+        // count the directories that need creating, so that none are created without space
+        int missing = 0;
+        for (Path parent = dir; parent != null && !Files.isDirectory(parent); parent = parent.getParent()) {
+            if (parent.startsWith(root) && !parent.equals(root)) {
+                ++missing;
+            }
+        }
+        ensureSpace(missing * MINIMUM_FILE_SIZE);
+        Files.createDirectories(dir);
+        usedSpace += missing * MINIMUM_FILE_SIZE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete(String path) throws IOException {
+        final Path target = resolve(path);
+        if (path.isEmpty() || !Files.exists(target)) {
+            return;
+        }
+        getUsedSpace();
+        Files.walkFileTree(target, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                usedSpace -= Math.max(attributes.size(), MINIMUM_FILE_SIZE);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.delete(dir);
+                usedSpace -= MINIMUM_FILE_SIZE;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WritableByteChannel openForWrite(String path) throws IOException {
+        final Path file = resolve(path);
+        if (path.isEmpty() || Files.isDirectory(file)) {
+            throw new IOException("Cannot write to directory");
+        }
+
+        if (Files.exists(file)) {
+            // the existing contents are released, the empty file still uses the minimum
+            getUsedSpace();
+            usedSpace -= Math.max(Files.size(file), MINIMUM_FILE_SIZE) - MINIMUM_FILE_SIZE;
+        } else {
+            createParent(file);
+            ensureSpace(MINIMUM_FILE_SIZE);
+            usedSpace += MINIMUM_FILE_SIZE;
+        }
+        return new CountingChannel(FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING), 0L);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WritableByteChannel openForAppend(String path) throws IOException {
+        final Path file = resolve(path);
+        if (path.isEmpty() || Files.isDirectory(file)) {
+            throw new IOException("Cannot write to directory");
+        }
+        if (!Files.exists(file)) {
+            return openForWrite(path);
+        }
+        return new CountingChannel(FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND),
+                Files.size(file));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRemainingSpace() throws IOException {
+        return Math.max(capacity - getUsedSpace(), 0L);
+    }
+
+    /**
+     * @return the total space, in bytes, the mount may use
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the space used, counting it by walking the directory the first time only
+     *
+     * @return the space used in bytes
+     * @throws IOException when the directory cannot be walked
+     */
+    private long getUsedSpace() throws IOException {
+        if (usedSpace < 0L) {
+            final long[] total = new long[1];
+            if (Files.exists(root)) {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                        if (!dir.equals(root)) {
+                            total[0] += MINIMUM_FILE_SIZE;
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        total[0] += Math.max(attributes.size(), MINIMUM_FILE_SIZE);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+            usedSpace = total[0];
+        }
+        return usedSpace;
+    }
+
+    /**
+     * @param bytes the space about to be used
+     * @throws IOException when there is not enough space remaining
+     */
+    private void ensureSpace(long bytes) throws IOException {
+        if (bytes > getRemainingSpace()) {
+            throw new IOException(OUT_OF_SPACE);
+        }
+    }
+
+    private void createParent(Path file) throws IOException {
+        final Path parent = file.getParent();
+        if (!parent.equals(root) && Files.exists(parent) && !Files.isDirectory(parent)) {
+            throw new IOException("File exists");
+        }
+        if (!Files.isDirectory(parent)) {
+            final String relative = root.relativize(parent).toString().replace(File.separatorChar, '/');
+            if (relative.isEmpty()) {
+                Files.createDirectories(root);
+            } else {
+                makeDirectory(relative);
+            }
+        }
+    }
+
+    private Path resolve(String path) {
+        return path.isEmpty() ? root : root.resolve(path);
+    }
+
+    /**
+     * A channel which checks there is space for what is written before writing it
+     */
+    private final class CountingChannel implements WritableByteChannel {
+        private final FileChannel channel;
+        private long size;
+
+        private CountingChannel(FileChannel file, long initialSize) {
+            channel = file;
+            size = initialSize;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            final long newSize = size + src.remaining();
+            final long growth = Math.max(newSize, MINIMUM_FILE_SIZE) - Math.max(size, MINIMUM_FILE_SIZE);
+            ensureSpace(growth);
+            int written = 0;
+            while (src.hasRemaining()) {
+                written += channel.write(src);
+            }
+            usedSpace += growth;
+            size = newSize;
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,456 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft.filesystem;
+
+import com.theoriginalbit.faux.api.computercraft.IMount;
+import com.theoriginalbit.faux.api.computercraft.IWritableMount;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The file system of a device; a tree of mounts, each mounted at a location and labelled with the
+ * drive name {@code fs.getDrive} reports. Paths are sanitised the way ComputerCraft sanitises
+ * them before being passed to a mount.
+ * <p/>
+ * The file system remembers the files it has opened, so that they can all be closed when the
+ * device turns off. It must only be used by the device's thread.
+ *
+ * @author theoriginalbit
+ */
+public final class FileSystem implements Closeable {
+    private static final String ILLEGAL_CHARACTERS = "\"*:<>?|";
+    private final Map<String, MountPoint> mounts = new LinkedHashMap<String, MountPoint>();
+    private final Set<Channel> openFiles = new HashSet<Channel>();
+
+    /**
+     * @param root the mount at the root of the file system
+     */
+    public FileSystem(IWritableMount root) {
+        mounts.put("", new MountPoint("hdd", "", root));
+    }
+
+    /**
+     * Mounts a directory tree into the file system
+     *
+     * @param label    the drive name of the mount
+     * @param location the path to mount at
+     * @param mount    the directory tree
+     * @throws FileSystemException when the location is invalid
+     */
+    public void mount(String label, String location, IMount mount) throws FileSystemException {
+        location = sanitizePath(location);
+        mounts.put(location, new MountPoint(label, location, mount));
+    }
+
+    /**
+     * Sanitises a path; separators are normalised, characters that are illegal on some hosts
+     * removed, and {@code .} and {@code ..} components resolved
+     *
+     * @param path the path
+     * @return the sanitised path, without a leading or trailing separator
+     * @throws FileSystemException when the path leaves the root of the file system
+     */
+    public static String sanitizePath(String path) throws FileSystemException {
+        final StringBuilder cleaned = new StringBuilder(path.length());
+        for (int i = 0; i < path.length(); ++i) {
+            final char ch = path.charAt(i);
+            if (ch == '\\') {
+                cleaned.append('/');
+            } else if (ch >= 32 && ILLEGAL_CHARACTERS.indexOf(ch) < 0) {
+                cleaned.append(ch);
+            }
+        }
+
+        final List<String> parts = new ArrayList<String>();
+        for (String part : cleaned.toString().split("/")) {
+            if (part.isEmpty() || part.equals(".")) {
+                continue;
+            }
+            if (part.equals("..")) {
+                if (parts.isEmpty()) {
+                    throw new FileSystemException("Invalid Path");
+                }
+                parts.remove(parts.size() - 1);
+            } else if (part.length() > 255) {
+                parts.add(part.substring(0, 255));
+            } else {
+                parts.add(part);
+            }
+        }
+
+        final StringBuilder result = new StringBuilder(cleaned.length());
+        for (String part : parts) {
+            if (result.length() > 0) {
+                result.append('/');
+            }
+            result.append(part);
+        }
+        return result.toString();
+    }
+
+    /**
+     * @param path the path
+     * @return the last component of the path, or {@code root} for the root
+     * @throws FileSystemException when the path is invalid
+     */
+    public static String getName(String path) throws FileSystemException {
+        path = sanitizePath(path);
+        return path.isEmpty() ? "root" : path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * @param path the path
+     * @return the path of the directory containing the path, or {@code ..} for the root
+     * @throws FileSystemException when the path is invalid
+     */
+    public static String getDirectory(String path) throws FileSystemException {
+        path = sanitizePath(path);
+        if (path.isEmpty()) {
+            return "..";
+        }
+        final int separator = path.lastIndexOf('/');
+        return separator < 0 ? "" : path.substring(0, separator);
+    }
+
+    /**
+     * @param base  the base path
+     * @param child the path to append
+     * @return the combined and sanitised path
+     * @throws FileSystemException when the path is invalid
+     */
+    public static String combine(String base, String child) throws FileSystemException {
+        return sanitizePath(base + "/" + child);
+    }
+
+    /**
+     * Lists a directory, including the locations of mounts within it
+     *
+     * @param path the directory
+     * @return the sorted names of its entries
+     * @throws FileSystemException when the path is not a directory
+     */
+    public String[] list(String path) throws FileSystemException {
+        path = sanitizePath(path);
+        final MountPoint mount = getMount(path);
+        final List<String> contents = new ArrayList<String>();
+        try {
+            if (!mount.mount.isDirectory(mount.localPath(path))) {
+                throw new FileSystemException("Not a directory");
+            }
+            mount.mount.list(mount.localPath(path), contents);
+        } catch (IOException e) {
+            throw new FileSystemException(e.getMessage());
+        }
+
+        for (MountPoint other : mounts.values()) {
+            if (!other.location.isEmpty() && getDirectory(other.location).equals(path)) {
+                final String name = getName(other.location);
+                if (!contents.contains(name)) {
+                    contents.add(name);
+                }
+            }
+        }
+        Collections.sort(contents);
+        return contents.toArray(new String[contents.size()]);
+    }
+
+    public boolean exists(String path) throws FileSystemException {
+        path = sanitizePath(path);
+        final MountPoint mount = getMount(path);
+        try {
+            return mount.mount.exists(mount.localPath(path));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public boolean isDirectory(String path) throws FileSystemException {
+        path = sanitizePath(path);
+        final MountPoint mount = getMount(path);
+        try {
+            return mount.mount.isDirectory(mount.localPath(path));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public boolean isReadOnly(String path) throws FileSystemException {
+        return !(getMount(sanitizePath(path)).mount instanceof IWritableMount);
+    }
+
+    /**
+     * @param path the path
+     * @return the drive name of the mount the path is in, or null if it doesn't exist
+     * @throws FileSystemException when the path is invalid
+     */
+    public String getDrive(String path) throws FileSystemException {
+        return exists(path) ? getMount(sanitizePath(path)).label : null;
+    }
+
+    public long getSize(String path) throws FileSystemException {
+        path = sanitizePath(path);
+        final MountPoint mount = getMount(path);
+        try {
+            if (!mount.mount.exists(mount.localPath(path))) {
+                throw new FileSystemException("/" + path + ": No such file");
+            }
+            return mount.mount.getSize(mount.localPath(path));
+        } catch (IOException e) {
+            throw new FileSystemException("/" + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param path a path within the mount to check
+     * @return the bytes that can still be written to the mount, 0 when it is read only
+     * @throws FileSystemException when the path is invalid
+     */
+    public long getFreeSpace(String path) throws FileSystemException {
+        final MountPoint mount = getMount(sanitizePath(path));
+        try {
+            return mount.mount instanceof IWritableMount ? ((IWritableMount) mount.mount).getRemainingSpace() : 0L;
+        } catch (IOException e) {
+            throw new FileSystemException(e.getMessage());
+        }
+    }
+
+    public void makeDirectory(String path) throws FileSystemException {
+        path = sanitizePath(path);
+        final MountPoint mount = getMount(path);
+        try {
+            getWritable(mount, path).makeDirectory(mount.localPath(path));
+        } catch (IOException e) {
+            throw new FileSystemException("/" + path + ": " + e.getMessage());
+        }
+    }
+
+    public void delete(String path) throws FileSystemException {
+        path = sanitizePath(path);
+        final MountPoint mount = getMount(path);
+        if (mount.location.equals(path) && !path.isEmpty()) {
+            throw new FileSystemException("/" + path + ": Access denied");
+        }
+        try {
+            getWritable(mount, path).delete(mount.localPath(path));
+        } catch (IOException e) {
+            throw new FileSystemException("/" + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Copies a file or directory, which may be between mounts
+     *
+     * @param from the source
+     * @param to   the destination, which must not exist
+     * @throws FileSystemException when the copy fails
+     */
+    public void copy(String from, String to) throws FileSystemException {
+        from = sanitizePath(from);
+        to = sanitizePath(to);
+        checkTransfer(from, to, "copy");
+        copyRecursive(from, to);
+    }
+
+    /**
+     * Moves a file or directory, which may be between mounts
+     *
+     * @param from the source
+     * @param to   the destination, which must not exist
+     * @throws FileSystemException when the move fails
+     */
+    public void move(String from, String to) throws FileSystemException {
+        from = sanitizePath(from);
+        to = sanitizePath(to);
+        checkTransfer(from, to, "move");
+        if (isReadOnly(from)) {
+            throw new FileSystemException("/" + from + ": Access denied");
+        }
+        copyRecursive(from, to);
+        delete(from);
+    }
+
+    /**
+     * Opens a file for reading, the channel must be closed with {@link #close(Channel)}
+     *
+     * @param path the file
+     * @return the channel
+     * @throws FileSystemException when the path is not a file
+     */
+    public ReadableByteChannel openForRead(String path) throws FileSystemException {
+        path = sanitizePath(path);
+        final MountPoint mount = getMount(path);
+        try {
+            final String local = mount.localPath(path);
+            if (!mount.mount.exists(local) || mount.mount.isDirectory(local)) {
+                throw new FileSystemException("/" + path + ": No such file");
+            }
+            final ReadableByteChannel channel = mount.mount.openForRead(local);
+            openFiles.add(channel);
+            return channel;
+        } catch (IOException e) {
+            throw new FileSystemException("/" + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens a file for writing, the channel must be closed with {@link #close(Channel)}
+     *
+     * @param path   the file
+     * @param append whether to write after the existing contents
+     * @return the channel
+     * @throws FileSystemException when the path is a directory, read only or out of space
+     */
+    public WritableByteChannel openForWrite(String path, boolean append) throws FileSystemException {
+        path = sanitizePath(path);
+        final MountPoint mount = getMount(path);
+        try {
+            final IWritableMount writable = getWritable(mount, path);
+            final String local = mount.localPath(path);
+            if (writable.isDirectory(local)) {
+                throw new FileSystemException("/" + path + ": Cannot write to directory");
+            }
+            final WritableByteChannel channel = append ? writable.openForAppend(local) : writable.openForWrite(local);
+            openFiles.add(channel);
+            return channel;
+        } catch (IOException e) {
+            throw new FileSystemException("/" + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes a file opened by this file system
+     *
+     * @param channel the file
+     * @throws IOException when the file cannot be closed
+     */
+    public void close(Channel channel) throws IOException {
+        openFiles.remove(channel);
+        channel.close();
+    }
+
+    /**
+     * Closes every file still open
+     */
+    @Override
+    public void close() {
+        for (Channel channel : openFiles) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // the device is turning off, there is nobody to report it to
+            }
+        }
+        openFiles.clear();
+    }
+
+    private void checkTransfer(String from, String to, String action) throws FileSystemException {
+        if (!exists(from)) {
+            throw new FileSystemException("No such file");
+        }
+        if (exists(to)) {
+            throw new FileSystemException("File exists");
+        }
+        if (isReadOnly(to)) {
+            throw new FileSystemException("/" + to + ": Access denied");
+        }
+        if (to.equals(from) || to.startsWith(from.isEmpty() ? "" : from + "/")) {
+            throw new FileSystemException("Can't " + action + " a directory inside itself");
+        }
+    }
+
+    private void copyRecursive(String from, String to) throws FileSystemException {
+        if (isDirectory(from)) {
+            makeDirectory(to);
+            for (String child : list(from)) {
+                copyRecursive(from + "/" + child, to + "/" + child);
+            }
+            return;
+        }
+
+        final ReadableByteChannel source = openForRead(from);
+        try {
+            final WritableByteChannel destination = openForWrite(to, false);
+            try {
+                final ByteBuffer buffer = ByteBuffer.allocate(8192);
+                while (source.read(buffer) >= 0) {
+                    buffer.flip();
+                    destination.write(buffer);
+                    buffer.clear();
+                }
+            } finally {
+                close(destination);
+            }
+        } catch (IOException e) {
+            throw new FileSystemException(e.getMessage());
+        } finally {
+            try {
+                close(source);
+            } catch (IOException ignored) {
+                // everything was read already
+            }
+        }
+    }
+
+    private IWritableMount getWritable(MountPoint mount, String path) throws FileSystemException {
+        if (!(mount.mount instanceof IWritableMount)) {
+            throw new FileSystemException("/" + path + ": Access denied");
+        }
+        return (IWritableMount) mount.mount;
+    }
+
+    /**
+     * @param path a sanitised path
+     * @return the mount with the deepest location containing the path
+     */
+    private MountPoint getMount(String path) {
+        MountPoint match = mounts.get("");
+        for (MountPoint mount : mounts.values()) {
+            if ((path.equals(mount.location) || path.startsWith(mount.location + "/")) &&
+                    mount.location.length() > match.location.length()) {
+                match = mount;
+            }
+        }
+        return match;
+    }
+
+    private static final class MountPoint {
+        private final String label;
+        private final String location;
+        private final IMount mount;
+
+        private MountPoint(String label, String location, IMount mount) {
+            this.label = label;
+            this.location = location;
+            this.mount = mount;
+        }
+
+        private String localPath(String path) {
+            return location.isEmpty() ? path : path.substring(Math.min(location.length() + 1, path.length()));
+        }
+    }
+}
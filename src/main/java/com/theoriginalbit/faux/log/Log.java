@@ -17,22 +17,38 @@ package com.theoriginalbit.faux.log;
 
 import com.theoriginalbit.faux.AppInfo;
 import com.theoriginalbit.faux.Emulator;
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.PrintStream;
 
 /**
+ * The messages are formatted with {@link String#format(String, Object...)}, but only when the
+ * level is enabled, and the fixed arity overloads mean a disabled message costs no more than a
+ * level check. Records are written by an asynchronous appender, see log4j2.xml.
+ *
  * @author theoriginalbit
  */
 public final class Log {
     private static final Logger logger = LogManager.getLogger(Emulator.class);
     private static final String SEPARATOR = "****************************************";
     private static final String TRACE = "*  at %s%s";
-    private static boolean configured = false;
+    /**
+     * Whether lines written to System.out and System.err are prefixed with their caller, this
+     * requires walking the stack for every line so is disabled unless set
+     */
+    private static final boolean TRACE_OUTPUT = Boolean.getBoolean("com.theoriginalbit." + AppInfo.NAME + ".traceOutput");
+    private static volatile boolean configured = false;
+    private static PrintStream console;
+
+    private static synchronized void configure() {
+        if (configured) {
+            return;
+        }
 
-    private static void configure() {
         // inject into System.out and System.err
+        console = System.out;
         System.setOut(new TracingPrintStream(LogManager.getLogger("STDOUT"), System.out));
         System.setErr(new TracingPrintStream(LogManager.getLogger("STDERR"), System.err));
         configured = true;
@@ -43,23 +59,73 @@ public final class Log {
         Log.info("");
     }
 
-    public static void info(String message, Object... args) {
+    /**
+     * @return the standard output as it was before it was logged, for output which is the
+     * result of the program rather than a message about it
+     */
+    public static PrintStream getConsole() {
         if (!configured) configure();
-        logger.info(String.format(message, args));
+        return console;
     }
 
-    public static void warn(String message, Object... args) {
+    /**
+     * @return whether debug messages will be logged, for guarding messages with costly arguments
+     */
+    public static boolean isDebugEnabled() {
         if (!configured) configure();
-        logger.warn(String.format(message, args));
+        return logger.isDebugEnabled();
+    }
+
+    public static void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    public static void info(String message, Object arg) {
+        if (isEnabled(Level.INFO)) logger.info(String.format(message, arg));
+    }
+
+    public static void info(String message, Object arg1, Object arg2) {
+        if (isEnabled(Level.INFO)) logger.info(String.format(message, arg1, arg2));
+    }
+
+    public static void info(String message, Object... args) {
+        if (isEnabled(Level.INFO)) logger.info(String.format(message, args));
+    }
+
+    public static void warn(String message) {
+        log(Level.WARN, message);
+    }
+
+    public static void warn(String message, Object arg) {
+        if (isEnabled(Level.WARN)) logger.warn(String.format(message, arg));
+    }
+
+    public static void warn(String message, Object arg1, Object arg2) {
+        if (isEnabled(Level.WARN)) logger.warn(String.format(message, arg1, arg2));
+    }
+
+    public static void warn(String message, Object... args) {
+        if (isEnabled(Level.WARN)) logger.warn(String.format(message, args));
+    }
+
+    public static void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    public static void error(String message, Object arg) {
+        if (isEnabled(Level.ERROR)) logger.error(String.format(message, arg));
+    }
+
+    public static void error(String message, Object arg1, Object arg2) {
+        if (isEnabled(Level.ERROR)) logger.error(String.format(message, arg1, arg2));
     }
 
     public static void error(String message, Object... args) {
-        if (!configured) configure();
-        logger.error(String.format(message, args));
+        if (isEnabled(Level.ERROR)) logger.error(String.format(message, args));
     }
 
     public static void fatal(String message, Object... args) {
-        if (!configured) configure();
+        if (!isEnabled(Level.FATAL)) return;
         logger.fatal(SEPARATOR);
         logger.fatal(String.format("* " + message, args));
         final StackTraceElement[] trace = Thread.currentThread().getStackTrace();
@@ -69,9 +135,29 @@ public final class Log {
         logger.fatal(SEPARATOR);
     }
 
+    public static void debug(String message) {
+        log(Level.DEBUG, message);
+    }
+
+    public static void debug(String message, Object arg) {
+        if (isEnabled(Level.DEBUG)) logger.debug(String.format(message, arg));
+    }
+
+    public static void debug(String message, Object arg1, Object arg2) {
+        if (isEnabled(Level.DEBUG)) logger.debug(String.format(message, arg1, arg2));
+    }
+
     public static void debug(String message, Object... args) {
+        if (isEnabled(Level.DEBUG)) logger.debug(String.format(message, args));
+    }
+
+    private static boolean isEnabled(Level level) {
         if (!configured) configure();
-        logger.debug(String.format(message, args));
+        return logger.isEnabled(level);
+    }
+
+    private static void log(Level level, String message) {
+        if (isEnabled(level)) logger.log(level, message);
     }
 
     private static class TracingPrintStream extends PrintStream {
@@ -84,12 +170,12 @@ public final class Log {
 
         @Override
         public void println(Object o) {
-            logger.info(getPrefix() + o);
+            logger.info(TRACE_OUTPUT ? getPrefix() + o : String.valueOf(o));
         }
 
         @Override
         public void println(String s) {
-            logger.info(getPrefix() + s);
+            logger.info(TRACE_OUTPUT ? getPrefix() + s : s);
         }
 
         private String getPrefix() {
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua;
+
+/**
+ * The activation record of a Lua function on a coroutine's call stack.
+ *
+ * @author theoriginalbit
+ */
+final class CallFrame {
+    /**
+     * A frame called from the machine's dispatch loop
+     */
+    static final int NORMAL = 0;
+    /**
+     * A frame called by {@code pcall} or {@code xpcall}, errors stop unwinding here
+     */
+    static final int PROTECTED = 1;
+    /**
+     * A frame called from Java, such as a metamethod, its return hands the results back to Java
+     */
+    static final int BOUNDARY = 2;
+    LuaClosure closure;
+    /**
+     * The stack index of the function's first register
+     */
+    int base;
+    int pc;
+    /**
+     * The stack index the results are copied to when the function returns
+     */
+    int returnTo;
+    /**
+     * The number of results the caller wants, -1 for all of them
+     */
+    int wanted;
+    Object[] varargs;
+    int kind;
+    /**
+     * The message handler of an {@code xpcall} frame
+     */
+    Object handler;
+
+    /**
+     * @return the line being executed
+     */
+    int getLine() {
+        final int[] lines = closure.prototype.lineInfo;
+        return lines.length == 0 ? -1 : lines[Math.max(pc - 1, 0)];
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua;
+
+/**
+ * A library function that transfers control, such as {@code pcall} or {@code coroutine.yield}.
+ * When called from Lua code the machine runs these itself so that the code they call, or resume,
+ * runs on the machine's own call stack and may yield; the {@link #invoke} implementation is only
+ * used when they are called from Java, such as through another library function.
+ *
+ * @author theoriginalbit
+ */
+public class ControlFunction extends LibFunction {
+    ControlFunction(String qualifiedName, int controlKind) {
+        super(qualifiedName, controlKind);
+    }
+
+    public static LibFunction pcall() {
+        return new ControlFunction("pcall", PCALL);
+    }
+
+    public static LibFunction xpcall() {
+        return new ControlFunction("xpcall", XPCALL);
+    }
+
+    public static LibFunction yield() {
+        return new ControlFunction("coroutine.yield", YIELD);
+    }
+
+    public static LibFunction resume() {
+        return new ControlFunction("coroutine.resume", RESUME);
+    }
+
+    /**
+     * @param coroutine the coroutine the function resumes
+     * @return a function resuming the coroutine, as returned by {@code coroutine.wrap}
+     */
+    public static LibFunction wrap(Coroutine coroutine) {
+        return new CoroutineFunction(coroutine);
+    }
+
+    @Override
+    public Object[] invoke(LuaMachine machine, Object[] args) {
+        switch (control) {
+            case PCALL:
+            case XPCALL: {
+                final Object target = checkAny(args, 0);
+                final Object[] callArgs;
+                if (control == XPCALL || args.length <= 1) {
+                    callArgs = Lua.NONE;
+                } else {
+                    callArgs = new Object[args.length - 1];
+                    System.arraycopy(args, 1, callArgs, 0, callArgs.length);
+                }
+                try {
+                    final Object[] values = machine.call(target, callArgs);
+                    final Object[] results = new Object[values.length + 1];
+                    results[0] = Boolean.TRUE;
+                    System.arraycopy(values, 0, results, 1, values.length);
+                    return results;
+                } catch (LuaError e) {
+                    if (e.isFatal()) {
+                        throw e;
+                    }
+                    Object value = e.getValue();
+                    if (control == XPCALL) {
+                        final Object[] handled = machine.call(arg(args, 1), value);
+                        value = handled.length > 0 ? handled[0] : null;
+                    }
+                    return results(Boolean.FALSE, value);
+                }
+            }
+            case YIELD:
+                throw new LuaError("attempt to yield across metamethod/C-call boundary");
+            case RESUME: {
+                final Object target = arg(args, 0);
+                if (!(target instanceof Coroutine)) {
+                    throw typeError(args, 0, "coroutine");
+                }
+                final Object[] resumeArgs = new Object[Math.max(args.length - 1, 0)];
+                System.arraycopy(args, 1, resumeArgs, 0, resumeArgs.length);
+                return machine.resumeFromJava((Coroutine) target, resumeArgs);
+            }
+            default:
+                throw new IllegalStateException("Unknown control function " + getQualifiedName());
+        }
+    }
+}
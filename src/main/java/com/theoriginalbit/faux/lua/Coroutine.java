@@ -0,0 +1,184 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua;
+
+import java.util.Arrays;
+
+/**
+ * A Lua coroutine, the {@code thread} type. Each coroutine owns a value stack and a call stack,
+ * both held entirely in objects rather than on the Java stack, so that a coroutine can be
+ * suspended and resumed at any instruction.
+ *
+ * @author theoriginalbit
+ */
+public final class Coroutine {
+    public enum Status {
+        SUSPENDED("suspended"), RUNNING("running"), NORMAL("normal"), DEAD("dead");
+
+        private final String name;
+
+        Status(String n) {
+            name = n;
+        }
+
+        /**
+         * @return the name returned by {@code coroutine.status}
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * How the coroutine that resumed this one wants the results
+     */
+    static final int RESUME = 0, WRAP = 1, JAVA = 2;
+    private static final int INITIAL_STACK = 64;
+    /**
+     * The largest number of stack slots and call frames a coroutine may use
+     */
+    private static final int MAX_STACK = 1000000, MAX_FRAMES = 8000;
+    LuaFunction function;
+    Object[] stack = new Object[INITIAL_STACK];
+    /**
+     * One past the last value produced by an instruction with a variable number of results
+     */
+    int top;
+    CallFrame[] frames = new CallFrame[8];
+    int frameCount;
+    UpValue openUpvalues;
+    Status status = Status.SUSPENDED;
+    Coroutine resumer;
+    int resumeMode;
+    /**
+     * The stack index and count of the results this coroutine is waiting on while it is not
+     * running; the results of its call to {@code resume} or {@code yield}
+     */
+    int pendingIndex, pendingWanted;
+    /**
+     * The number of frames called from Java on the call stack, a coroutine cannot yield past them
+     */
+    int boundaries;
+
+    public Coroutine(LuaFunction body) {
+        function = body;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return whether the coroutine has started running its function
+     */
+    boolean isStarted() {
+        return frameCount > 0 || status != Status.SUSPENDED;
+    }
+
+    CallFrame pushFrame() {
+        if (frameCount == frames.length) {
+            if (frameCount >= MAX_FRAMES) {
+                throw new LuaError("stack overflow");
+            }
+            frames = Arrays.copyOf(frames, frameCount * 2);
+        }
+        CallFrame frame = frames[frameCount];
+        if (frame == null) {
+            frame = new CallFrame();
+            frames[frameCount] = frame;
+        }
+        ++frameCount;
+        return frame;
+    }
+
+    CallFrame popFrame() {
+        final CallFrame frame = frames[--frameCount];
+        if (frame.kind == CallFrame.BOUNDARY) {
+            --boundaries;
+        }
+        return frame;
+    }
+
+    CallFrame topFrame() {
+        return frames[frameCount - 1];
+    }
+
+    /**
+     * @return the first stack slot free for a call made from Java
+     */
+    int freeSlot() {
+        if (frameCount == 0) {
+            return top;
+        }
+        final CallFrame frame = frames[frameCount - 1];
+        return Math.max(frame.base + frame.closure.prototype.maxStack, top);
+    }
+
+    /**
+     * Makes sure the stack has at least the supplied number of slots
+     *
+     * @param size the number of slots
+     */
+    void ensureStack(int size) {
+        if (size > stack.length) {
+            if (size > MAX_STACK) {
+                throw new LuaError("stack overflow");
+            }
+            stack = Arrays.copyOf(stack, Math.max(size, stack.length * 2));
+        }
+    }
+
+    /**
+     * Finds, or opens, the upvalue of a stack slot
+     *
+     * @param index the stack slot
+     * @return the open upvalue
+     */
+    UpValue findUpValue(int index) {
+        UpValue previous = null;
+        UpValue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.index > index) {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+        if (upvalue != null && upvalue.index == index) {
+            return upvalue;
+        }
+
+        final UpValue created = new UpValue(this, index);
+        created.next = upvalue;
+        if (previous == null) {
+            openUpvalues = created;
+        } else {
+            previous.next = created;
+        }
+        return created;
+    }
+
+    /**
+     * Closes the open upvalues at or above a stack slot
+     *
+     * @param level the lowest stack slot to close
+     */
+    void closeUpValues(int level) {
+        while (openUpvalues != null && openUpvalues.index >= level) {
+            final UpValue upvalue = openUpvalues;
+            openUpvalues = upvalue.next;
+            upvalue.close();
+            upvalue.next = null;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua;
+
+/**
+ * The function returned by {@code coroutine.wrap}, which resumes its coroutine and raises any
+ * error the coroutine raises
+ *
+ * @author theoriginalbit
+ */
+final class CoroutineFunction extends ControlFunction {
+    private final Coroutine coroutine;
+
+    CoroutineFunction(Coroutine target) {
+        super("coroutine.wrap", WRAPPED);
+        coroutine = target;
+    }
+
+    Coroutine getCoroutine() {
+        return coroutine;
+    }
+
+    @Override
+    public Object[] getState() {
+        return new Object[]{coroutine};
+    }
+
+    @Override
+    public Object[] invoke(LuaMachine machine, Object[] args) {
+        final Object[] results = machine.resumeFromJava(coroutine, args);
+        if (results[0] != Boolean.TRUE) {
+            throw new LuaError(results.length > 1 ? results[1] : null, 0);
+        }
+        final Object[] values = new Object[results.length - 1];
+        System.arraycopy(results, 1, values, 0, values.length);
+        return values;
+    }
+}
@@ -0,0 +1,302 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Reads the values written by a {@link HeapWriter}. Library functions are looked up by their
+ * qualified name in a machine which has had the same libraries installed, so that a restored
+ * machine is given the functions of its new environment; a function which no longer exists is
+ * restored as one that raises an error when called.
+ *
+ * @author theoriginalbit
+ */
+public final class HeapReader {
+    private final DataInputStream in;
+    private final Map<String, LibFunction> functions = new HashMap<String, LibFunction>();
+    private final List<Object> objects = new ArrayList<Object>();
+    private final ArrayDeque<Object> bodies = new ArrayDeque<Object>();
+
+    /**
+     * @param stream    the stream to read from
+     * @param libraries a machine with the libraries installed which the saved machine had
+     */
+    public HeapReader(DataInputStream stream, LuaMachine libraries) {
+        in = stream;
+        register(libraries.getGlobals(), true);
+        if (libraries.getStringMetatable() != null) {
+            register(libraries.getStringMetatable(), true);
+        }
+    }
+
+    /**
+     * Reads a machine written by {@link HeapWriter#writeMachine(LuaMachine)}. The machine is
+     * restored with the default instruction budget and timeout.
+     *
+     * @return the machine
+     * @throws IOException when the stream cannot be read
+     */
+    public LuaMachine readMachine() throws IOException {
+        final LuaTable globals = (LuaTable) readValue();
+        final LuaTable strings = (LuaTable) readValue();
+        final Coroutine main = (Coroutine) readValue();
+        final Coroutine current = (Coroutine) readValue();
+        final LuaMachine.State state = LuaMachine.State.values()[in.readUnsignedByte()];
+        final Object[] yielded = readValues();
+        final Object error = readValue();
+        final long steps = in.readLong();
+
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        final Random random;
+        try {
+            random = (Random) new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+
+        final LuaMachine machine = new LuaMachine(globals);
+        machine.restore(strings, main, current, state, yielded, error, steps, random);
+        return machine;
+    }
+
+    /**
+     * @return the values read, as written by {@link HeapWriter#writeValues(Object[])}
+     * @throws IOException when the stream cannot be read
+     */
+    public Object[] readValues() throws IOException {
+        final int count = in.readInt();
+        final Object[] values = new Object[count];
+        for (int i = 0; i < count; ++i) {
+            values[i] = readValue();
+        }
+        return values;
+    }
+
+    /**
+     * @return the value read
+     * @throws IOException when the stream cannot be read
+     */
+    public Object readValue() throws IOException {
+        final int tag = in.readUnsignedByte();
+        switch (tag) {
+            case HeapWriter.NIL:
+                return null;
+            case HeapWriter.FALSE:
+                return Boolean.FALSE;
+            case HeapWriter.TRUE:
+                return Boolean.TRUE;
+            case HeapWriter.INTEGER:
+                return Lua.valueOf(in.readInt());
+            case HeapWriter.NUMBER:
+                return Lua.valueOf(in.readDouble());
+            case HeapWriter.STRING: {
+                final String str = readString();
+                objects.add(str);
+                return str;
+            }
+            case HeapWriter.REFERENCE: {
+                final int id = in.readInt();
+                if (id < 0 || id >= objects.size()) {
+                    throw new IOException("Invalid reference " + id);
+                }
+                return objects.get(id);
+            }
+            case HeapWriter.TABLE:
+                return queue(new LuaTable());
+            case HeapWriter.CLOSURE: {
+                // the closure's prototype is read first, so its slot is reserved until then
+                final int id = reserve();
+                final Prototype prototype = (Prototype) readValue();
+                final LuaClosure closure = new LuaClosure(prototype, new UpValue[prototype.getUpvalueCount()], null);
+                objects.set(id, closure);
+                bodies.add(closure);
+                return closure;
+            }
+            case HeapWriter.FUNCTION: {
+                final int id = reserve();
+                final String name = readString();
+                final int count = in.readInt();
+                Object[] state = null;
+                if (count >= 0) {
+                    state = new Object[count];
+                    for (int i = 0; i < count; ++i) {
+                        state[i] = readValue();
+                    }
+                }
+                final LibFunction function = lookup(name, state);
+                objects.set(id, function);
+                return function;
+            }
+            case HeapWriter.COROUTINE:
+                return queue(new Coroutine(null));
+            case HeapWriter.UPVALUE:
+                return queue(new UpValue(null));
+            case HeapWriter.PROTOTYPE: {
+                final byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                final Prototype prototype = PrototypeCache.getInstance().fromBytes(bytes);
+                objects.add(prototype);
+                return prototype;
+            }
+            default:
+                throw new IOException("Unknown value type " + tag);
+        }
+    }
+
+    /**
+     * Reads the bodies of the objects read so far, this must be invoked after the last value
+     *
+     * @throws IOException when the stream cannot be read
+     */
+    public void finish() throws IOException {
+        Object object;
+        while ((object = bodies.poll()) != null) {
+            if (object instanceof LuaTable) {
+                readTable((LuaTable) object);
+            } else if (object instanceof LuaClosure) {
+                final LuaClosure closure = (LuaClosure) object;
+                closure.env = (LuaTable) readValue();
+                for (int i = 0; i < closure.upvalues.length; ++i) {
+                    closure.upvalues[i] = (UpValue) readValue();
+                }
+            } else if (object instanceof UpValue) {
+                final UpValue upvalue = (UpValue) object;
+                if (in.readBoolean()) {
+                    upvalue.coroutine = (Coroutine) readValue();
+                    upvalue.index = in.readInt();
+                    upvalue.next = (UpValue) readValue();
+                } else {
+                    upvalue.value = readValue();
+                }
+            } else {
+                readCoroutine((Coroutine) object);
+            }
+        }
+    }
+
+    private Object queue(Object object) {
+        objects.add(object);
+        bodies.add(object);
+        return object;
+    }
+
+    private int reserve() {
+        objects.add(null);
+        return objects.size() - 1;
+    }
+
+    private void readTable(LuaTable table) throws IOException {
+        table.setMetatable((LuaTable) readValue());
+        Object key;
+        while ((key = readValue()) != null) {
+            table.rawset(key, readValue());
+        }
+    }
+
+    private void readCoroutine(Coroutine co) throws IOException {
+        co.function = (LuaFunction) readValue();
+        co.status = Coroutine.Status.values()[in.readUnsignedByte()];
+        co.resumer = (Coroutine) readValue();
+        co.resumeMode = in.readUnsignedByte();
+        co.pendingIndex = in.readInt();
+        co.pendingWanted = in.readInt();
+        co.top = in.readInt();
+
+        final int size = in.readInt();
+        co.ensureStack(size);
+        for (int i = 0; i < size; ++i) {
+            co.stack[i] = readValue();
+        }
+
+        final int frameCount = in.readInt();
+        for (int i = 0; i < frameCount; ++i) {
+            final CallFrame frame = co.pushFrame();
+            frame.closure = (LuaClosure) readValue();
+            frame.base = in.readInt();
+            frame.pc = in.readInt();
+            frame.returnTo = in.readInt();
+            frame.wanted = in.readInt();
+            frame.kind = in.readUnsignedByte();
+            frame.handler = readValue();
+            final int count = in.readInt();
+            if (count >= 0) {
+                frame.varargs = new Object[count];
+                for (int j = 0; j < count; ++j) {
+                    frame.varargs[j] = readValue();
+                }
+            }
+        }
+        co.openUpvalues = (UpValue) readValue();
+    }
+
+    /**
+     * Finds the library function of a name, recreating it with its state if it has any
+     */
+    private LibFunction lookup(final String name, Object[] state) {
+        final LibFunction function = functions.get(name);
+        if (function != null) {
+            if (state == null) {
+                return function;
+            }
+            try {
+                return function.recreate(state);
+            } catch (RuntimeException ignored) {
+                // fall through to the placeholder, the function cannot be restored
+            }
+        }
+        return new LibFunction(name) {
+            @Override
+            public Object[] invoke(LuaMachine machine, Object[] args) {
+                throw new LuaError(name + " is not available after restoring");
+            }
+        };
+    }
+
+    /**
+     * Registers the library functions of a table, and of the library tables within it
+     */
+    private void register(LuaTable table, boolean nested) {
+        final Object[] entry = new Object[2];
+        Object key = null;
+        while (table.next(key, entry)) {
+            key = entry[0];
+            final Object value = entry[1];
+            if (value instanceof LibFunction) {
+                final LibFunction function = (LibFunction) value;
+                functions.put(function.getQualifiedName(), function);
+            } else if (value instanceof LuaTable && nested && value != table) {
+                register((LuaTable) value, false);
+            }
+        }
+    }
+
+    private String readString() throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, HeapWriter.UTF_8);
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Writes the state of a machine, and any other values reachable from it, as a compact binary
+ * stream that a {@link HeapReader} restores. Each object is written once, and referenced by its
+ * index after that. Library functions are written by their qualified name, and prototypes in
+ * the format of the {@link PrototypeCache}.
+ * <p/>
+ * So that the Java stack stays shallow however deeply the Lua values nest, an object is written
+ * in two parts; its shell, with what is needed to construct it, where it is first referenced,
+ * and its body, such as a table's entries, from a queue afterwards. {@link #finish()} writes the
+ * queued bodies, and must be invoked after the last value has been written.
+ *
+ * @author theoriginalbit
+ */
+public final class HeapWriter {
+    static final int NIL = 0, FALSE = 1, TRUE = 2, INTEGER = 3, NUMBER = 4, STRING = 5, REFERENCE = 6, TABLE = 7,
+            CLOSURE = 8, FUNCTION = 9, COROUTINE = 10, UPVALUE = 11, PROTOTYPE = 12;
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final DataOutputStream out;
+    private final Map<Object, Integer> objects = new IdentityHashMap<Object, Integer>();
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+    private final ArrayDeque<Object> bodies = new ArrayDeque<Object>();
+    private final Object[] entry = new Object[2];
+    private int nextID;
+
+    /**
+     * @param stream the stream to write to
+     */
+    public HeapWriter(DataOutputStream stream) {
+        out = stream;
+    }
+
+    /**
+     * Writes the state of a machine which is not running; its globals, coroutines, and the
+     * values it yielded or failed with. The instruction budget and timeout are not written.
+     *
+     * @param machine the machine
+     * @throws IOException when the stream cannot be written, or the machine cannot be saved
+     *                     because Java code is waiting on it
+     */
+    public void writeMachine(LuaMachine machine) throws IOException {
+        if (machine.getState() == LuaMachine.State.RUNNING) {
+            throw new IOException("Cannot save a running machine");
+        }
+        writeValue(machine.getGlobals());
+        writeValue(machine.getStringMetatable());
+        writeObject(machine.getMainCoroutine());
+        writeObject(machine.getCurrentCoroutine());
+        out.writeByte(machine.getState().ordinal());
+        writeValues(machine.getYielded());
+        writeValue(machine.getError());
+        out.writeLong(machine.getSteps());
+
+        final ByteArrayOutputStream random = new ByteArrayOutputStream();
+        final ObjectOutputStream stream = new ObjectOutputStream(random);
+        stream.writeObject(machine.getRandom());
+        stream.close();
+        out.writeInt(random.size());
+        random.writeTo(out);
+    }
+
+    /**
+     * @param values the values to write, with their count
+     * @throws IOException when the stream cannot be written
+     */
+    public void writeValues(Object[] values) throws IOException {
+        out.writeInt(values.length);
+        for (Object value : values) {
+            writeValue(value);
+        }
+    }
+
+    /**
+     * @param value the Lua value to write
+     * @throws IOException when the stream cannot be written, or the value is not a Lua value
+     */
+    public void writeValue(Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NIL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Double) {
+            final double d = (Double) value;
+            if (d == (int) d && (d != 0.0 || 1.0 / d > 0.0)) {
+                out.writeByte(INTEGER);
+                out.writeInt((int) d);
+            } else {
+                out.writeByte(NUMBER);
+                out.writeDouble(d);
+            }
+        } else if (value instanceof String) {
+            final Integer id = strings.get(value);
+            if (id != null) {
+                out.writeByte(REFERENCE);
+                out.writeInt(id);
+            } else {
+                strings.put((String) value, nextID++);
+                out.writeByte(STRING);
+                writeString((String) value);
+            }
+        } else {
+            writeObject(value);
+        }
+    }
+
+    /**
+     * Writes the bodies of the objects written so far, this must be invoked after the last value
+     *
+     * @throws IOException when the stream cannot be written
+     */
+    public void finish() throws IOException {
+        Object object;
+        while ((object = bodies.poll()) != null) {
+            if (object instanceof LuaTable) {
+                writeTable((LuaTable) object);
+            } else if (object instanceof LuaClosure) {
+                final LuaClosure closure = (LuaClosure) object;
+                writeValue(closure.env);
+                for (UpValue upvalue : closure.upvalues) {
+                    writeObject(upvalue);
+                }
+            } else if (object instanceof UpValue) {
+                final UpValue upvalue = (UpValue) object;
+                out.writeBoolean(upvalue.coroutine != null);
+                if (upvalue.coroutine != null) {
+                    writeObject(upvalue.coroutine);
+                    out.writeInt(upvalue.index);
+                    writeObject(upvalue.next);
+                } else {
+                    writeValue(upvalue.value);
+                }
+            } else {
+                writeCoroutine((Coroutine) object);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes a reference to an object, or its shell when it is first referenced
+     */
+    private void writeObject(Object object) throws IOException {
+        if (object == null) {
+            out.writeByte(NIL);
+            return;
+        }
+        final Integer id = objects.get(object);
+        if (id != null) {
+            out.writeByte(REFERENCE);
+            out.writeInt(id);
+            return;
+        }
+
+        if (object instanceof LuaTable) {
+            objects.put(object, nextID++);
+            out.writeByte(TABLE);
+            bodies.add(object);
+        } else if (object instanceof LuaClosure) {
+            objects.put(object, nextID++);
+            out.writeByte(CLOSURE);
+            writeObject(((LuaClosure) object).prototype);
+            bodies.add(object);
+        } else if (object instanceof LibFunction) {
+            objects.put(object, nextID++);
+            final LibFunction function = (LibFunction) object;
+            out.writeByte(FUNCTION);
+            writeString(function.getQualifiedName());
+            final Object[] state = function.getState();
+            if (state == null) {
+                out.writeInt(-1);
+            } else {
+                writeValues(state);
+            }
+        } else if (object instanceof Coroutine) {
+            objects.put(object, nextID++);
+            out.writeByte(COROUTINE);
+            bodies.add(object);
+        } else if (object instanceof UpValue) {
+            objects.put(object, nextID++);
+            out.writeByte(UPVALUE);
+            bodies.add(object);
+        } else if (object instanceof Prototype) {
+            objects.put(object, nextID++);
+            final byte[] bytes = PrototypeCache.getInstance().toBytes((Prototype) object);
+            out.writeByte(PROTOTYPE);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else {
+            throw new IOException("Cannot save a " + object.getClass().getName());
+        }
+    }
+
+    private void writeTable(LuaTable table) throws IOException {
+        writeValue(table.getMetatable());
+        Object key = null;
+        while (table.next(key, entry)) {
+            key = entry[0];
+            final Object value = entry[1];
+            writeValue(key);
+            writeValue(value);
+        }
+        // nil can never be a key, so it marks the end of the entries
+        out.writeByte(NIL);
+    }
+
+    private void writeCoroutine(Coroutine co) throws IOException {
+        if (co.boundaries > 0) {
+            throw new IOException("Cannot save a coroutine while Java code is waiting on it");
+        }
+        writeObject(co.function);
+        out.writeByte(co.status.ordinal());
+        writeObject(co.resumer);
+        out.writeByte(co.resumeMode);
+        out.writeInt(co.pendingIndex);
+        out.writeInt(co.pendingWanted);
+        out.writeInt(co.top);
+
+        // anything past the last value on the stack is unused
+        int size = co.stack.length;
+        while (size > 0 && co.stack[size - 1] == null) {
+            --size;
+        }
+        out.writeInt(size);
+        for (int i = 0; i < size; ++i) {
+            writeValue(co.stack[i]);
+        }
+
+        out.writeInt(co.frameCount);
+        for (int i = 0; i < co.frameCount; ++i) {
+            final CallFrame frame = co.frames[i];
+            writeObject(frame.closure);
+            out.writeInt(frame.base);
+            out.writeInt(frame.pc);
+            out.writeInt(frame.returnTo);
+            out.writeInt(frame.wanted);
+            out.writeByte(frame.kind);
+            writeValue(frame.handler);
+            if (frame.varargs == null) {
+                out.writeInt(-1);
+            } else {
+                writeValues(frame.varargs);
+            }
+        }
+        writeObject(co.openUpvalues);
+    }
+
+    private void writeString(String str) throws IOException {
+        final byte[] bytes = str.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
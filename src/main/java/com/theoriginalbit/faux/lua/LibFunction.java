@@ -0,0 +1,176 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua;
+
+/**
+ * A function implemented in Java. Library functions are registered with a qualified name, such
+ * as {@code string.sub}, which identifies them when a machine's state is saved.
+ * <p/>
+ * The argument helpers raise the same "bad argument" errors as the Lua 5.1 libraries.
+ *
+ * @author theoriginalbit
+ */
+public abstract class LibFunction extends LuaFunction {
+    /**
+     * Functions which the machine runs itself as they transfer control rather than return
+     */
+    static final int PLAIN = 0, PCALL = 1, XPCALL = 2, YIELD = 3, RESUME = 4, WRAPPED = 5;
+    private final String qualifiedName;
+    private final String name;
+    final int control;
+
+    /**
+     * @param qualifiedName the library qualified name of the function, such as {@code string.sub}
+     */
+    protected LibFunction(String qualifiedName) {
+        this(qualifiedName, PLAIN);
+    }
+
+    LibFunction(String qualified, int controlKind) {
+        qualifiedName = qualified;
+        name = qualified.substring(qualified.lastIndexOf('.') + 1);
+        control = controlKind;
+    }
+
+    /**
+     * Invokes the function
+     *
+     * @param machine the machine the function was called on
+     * @param args    the arguments, which the function may keep or modify
+     * @return the results, never null
+     */
+    public abstract Object[] invoke(LuaMachine machine, Object[] args);
+
+    /**
+     * @return the qualified name of this function, unique within a machine
+     */
+    public String getQualifiedName() {
+        return qualifiedName;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the values a function created at runtime, such as an iterator, was created with, so
+     * that it can be recreated when a machine is restored. Functions installed by a library have
+     * no state and are restored by their qualified name alone.
+     *
+     * @return the values the function was created with, or null when installed by a library
+     */
+    public Object[] getState() {
+        return null;
+    }
+
+    /**
+     * Recreates a function which shares this function's qualified name and was created at
+     * runtime, such as the iterator of {@code string.gmatch}, when a machine is restored
+     *
+     * @param state the values returned by {@link #getState()} of the function being recreated
+     * @return the recreated function
+     */
+    public LibFunction recreate(Object[] state) {
+        throw new UnsupportedOperationException(qualifiedName + " cannot recreate functions");
+    }
+
+    protected static Object[] results(Object value) {
+        return new Object[]{value};
+    }
+
+    protected static Object[] results(Object first, Object second) {
+        return new Object[]{first, second};
+    }
+
+    protected static Object arg(Object[] args, int index) {
+        return index < args.length ? args[index] : null;
+    }
+
+    protected LuaError argError(int index, String message) {
+        return new LuaError("bad argument #" + (index + 1) + " to '" + name + "' (" + message + ")");
+    }
+
+    protected LuaError typeError(Object[] args, int index, String expected) {
+        final String got = index < args.length ? Lua.typeName(args[index]) : "no value";
+        return argError(index, expected + " expected, got " + got);
+    }
+
+    protected Object checkAny(Object[] args, int index) {
+        if (index >= args.length) {
+            throw argError(index, "value expected");
+        }
+        return args[index];
+    }
+
+    protected LuaTable checkTable(Object[] args, int index) {
+        final Object value = arg(args, index);
+        if (!(value instanceof LuaTable)) {
+            throw typeError(args, index, "table");
+        }
+        return (LuaTable) value;
+    }
+
+    protected LuaFunction checkFunction(Object[] args, int index) {
+        final Object value = arg(args, index);
+        if (!(value instanceof LuaFunction)) {
+            throw typeError(args, index, "function");
+        }
+        return (LuaFunction) value;
+    }
+
+    protected double checkNumber(Object[] args, int index) {
+        final Double value = Lua.toNumber(arg(args, index));
+        if (value == null) {
+            throw typeError(args, index, "number");
+        }
+        return value;
+    }
+
+    protected int checkInt(Object[] args, int index) {
+        return toInt(checkNumber(args, index));
+    }
+
+    protected String checkString(Object[] args, int index) {
+        final String value = Lua.toConcatString(arg(args, index));
+        if (value == null) {
+            throw typeError(args, index, "string");
+        }
+        return value;
+    }
+
+    protected double optNumber(Object[] args, int index, double def) {
+        return arg(args, index) == null ? def : checkNumber(args, index);
+    }
+
+    protected int optInt(Object[] args, int index, int def) {
+        return arg(args, index) == null ? def : checkInt(args, index);
+    }
+
+    protected String optString(Object[] args, int index, String def) {
+        return arg(args, index) == null ? def : checkString(args, index);
+    }
+
+    /**
+     * Truncates a number to an int the way Lua's C API does, clamping out of range numbers
+     *
+     * @param d the number
+     * @return the truncated number
+     */
+    protected static int toInt(double d) {
+        return d >= Integer.MAX_VALUE ? Integer.MAX_VALUE : d <= Integer.MIN_VALUE ? Integer.MIN_VALUE : (int) d;
+    }
+}
@@ -0,0 +1,316 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * The conversions and comparisons shared by the Lua machine and its libraries.
+ * <p/>
+ * Lua values are plain Java objects; {@code nil} is {@code null}, booleans are {@link Boolean},
+ * numbers are {@link Double}, strings are {@link String} with one char per byte, and the
+ * remaining types are {@link LuaTable}, {@link LuaFunction} and {@link Coroutine}.
+ *
+ * @author theoriginalbit
+ */
+public final class Lua {
+    public static final Object[] NONE = new Object[0];
+    /**
+     * The smallest and largest whole numbers that are boxed once rather than on every use
+     */
+    private static final int CACHE_LOW = -128, CACHE_HIGH = 1024;
+    private static final Double[] NUMBERS = new Double[CACHE_HIGH - CACHE_LOW + 1];
+    private static final MathContext PRECISION = new MathContext(14, RoundingMode.HALF_EVEN);
+
+    static {
+        for (int i = 0; i < NUMBERS.length; ++i) {
+            NUMBERS[i] = (double) (i + CACHE_LOW);
+        }
+    }
+
+    private Lua() {
+        // NO-OP
+    }
+
+    /**
+     * Boxes a number, small whole numbers such as loop counters and indices are not allocated
+     *
+     * @param d the number
+     * @return the boxed number
+     */
+    public static Double valueOf(double d) {
+        final int i = (int) d;
+        if (i == d && i >= CACHE_LOW && i <= CACHE_HIGH && (i != 0 || 1 / d > 0)) {
+            return NUMBERS[i - CACHE_LOW];
+        }
+        return d;
+    }
+
+    /**
+     * @param b the boolean
+     * @return the canonical boxed boolean
+     */
+    public static Boolean valueOf(boolean b) {
+        return b ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    /**
+     * @param value the value
+     * @return whether the value is neither nil nor false
+     */
+    public static boolean isTruthy(Object value) {
+        return value != null && value != Boolean.FALSE;
+    }
+
+    /**
+     * @param value the value
+     * @return the Lua type name of the value
+     */
+    public static String typeName(Object value) {
+        if (value == null) {
+            return "nil";
+        } else if (value instanceof Double) {
+            return "number";
+        } else if (value instanceof String) {
+            return "string";
+        } else if (value instanceof Boolean) {
+            return "boolean";
+        } else if (value instanceof LuaTable) {
+            return "table";
+        } else if (value instanceof LuaFunction) {
+            return "function";
+        } else if (value instanceof Coroutine) {
+            return "thread";
+        }
+        return "userdata";
+    }
+
+    /**
+     * Converts a value to a number the way arithmetic does, strings are parsed
+     *
+     * @param value the value
+     * @return the number, or null when the value cannot be converted
+     */
+    public static Double toNumber(Object value) {
+        if (value instanceof Double) {
+            return (Double) value;
+        } else if (value instanceof String) {
+            return parseNumber((String) value);
+        }
+        return null;
+    }
+
+    /**
+     * Parses a Lua numeral, allowing surrounding whitespace and hexadecimal integers
+     *
+     * @param str the string to parse
+     * @return the number, or null when the string is not a numeral
+     */
+    public static Double parseNumber(String str) {
+        int start = 0, end = str.length();
+        while (start < end && isSpace(str.charAt(start))) {
+            ++start;
+        }
+        while (end > start && isSpace(str.charAt(end - 1))) {
+            --end;
+        }
+        if (start == end) {
+            return null;
+        }
+
+        int i = start;
+        final boolean negative = str.charAt(i) == '-';
+        if (negative || str.charAt(i) == '+') {
+            ++i;
+        }
+        if (i + 1 < end && str.charAt(i) == '0' && (str.charAt(i + 1) == 'x' || str.charAt(i + 1) == 'X')) {
+            final Double value = parseInteger(str, i + 2, end, 16);
+            return value == null ? null : valueOf(negative ? -value : value);
+        }
+
+        // validate the numeral ourselves as Double.parseDouble accepts far more than Lua does
+        boolean digits = false;
+        while (i < end && isDigit(str.charAt(i))) {
+            ++i;
+            digits = true;
+        }
+        if (i < end && str.charAt(i) == '.') {
+            ++i;
+            while (i < end && isDigit(str.charAt(i))) {
+                ++i;
+                digits = true;
+            }
+        }
+        if (!digits) {
+            return null;
+        }
+        if (i < end && (str.charAt(i) == 'e' || str.charAt(i) == 'E')) {
+            ++i;
+            if (i < end && (str.charAt(i) == '-' || str.charAt(i) == '+')) {
+                ++i;
+            }
+            if (i == end || !isDigit(str.charAt(i))) {
+                return null;
+            }
+            while (i < end && isDigit(str.charAt(i))) {
+                ++i;
+            }
+        }
+        if (i != end) {
+            return null;
+        }
+        return valueOf(Double.parseDouble(str.substring(start, end)));
+    }
+
+    /**
+     * Parses an unsigned integer in the supplied base, as {@code tonumber} does for bases other
+     * than 10
+     *
+     * @param str  the string to parse
+     * @param base the base, 2 to 36
+     * @return the number, or null when the string is not an integer in the base
+     */
+    public static Double parseNumber(String str, int base) {
+        int start = 0, end = str.length();
+        while (start < end && isSpace(str.charAt(start))) {
+            ++start;
+        }
+        while (end > start && isSpace(str.charAt(end - 1))) {
+            --end;
+        }
+        final boolean negative = start < end && str.charAt(start) == '-';
+        final Double value = parseInteger(str, negative ? start + 1 : start, end, base);
+        return value == null ? null : valueOf(negative ? -value : value);
+    }
+
+    private static Double parseInteger(String str, int start, int end, int base) {
+        if (start >= end) {
+            return null;
+        }
+        double value = 0;
+        for (int i = start; i < end; ++i) {
+            final int digit = Character.digit(str.charAt(i), base);
+            if (digit < 0) {
+                return null;
+            }
+            value = value * base + digit;
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    private static boolean isSpace(char ch) {
+        return ch == ' ' || (ch >= '\t' && ch <= '\r');
+    }
+
+    /**
+     * Formats a number the way Lua 5.1 does, {@code %.14g}
+     *
+     * @param d the number
+     * @return the formatted number
+     */
+    public static String numberToString(double d) {
+        final long l = (long) d;
+        if (l == d && l > -100000000000000L && l < 100000000000000L) {
+            return l == 0 && 1 / d < 0 ? "-0" : Long.toString(l);
+        } else if (Double.isNaN(d)) {
+            return "nan";
+        } else if (Double.isInfinite(d)) {
+            return d > 0 ? "inf" : "-inf";
+        }
+
+        final BigDecimal rounded = new BigDecimal(d).round(PRECISION);
+        final int exponent = rounded.precision() - rounded.scale() - 1;
+        if (exponent >= -4 && exponent < 14) {
+            return rounded.stripTrailingZeros().toPlainString();
+        }
+
+        final String digits = rounded.unscaledValue().abs().toString().replaceFirst("0+$", "");
+        final StringBuilder builder = new StringBuilder(24);
+        if (d < 0) {
+            builder.append('-');
+        }
+        builder.append(digits.charAt(0));
+        if (digits.length() > 1) {
+            builder.append('.').append(digits, 1, digits.length());
+        }
+        builder.append(exponent < 0 ? "e-" : "e+");
+        final int magnitude = Math.abs(exponent);
+        if (magnitude < 10) {
+            builder.append('0');
+        }
+        return builder.append(magnitude).toString();
+    }
+
+    /**
+     * Converts a value to a string without invoking {@code __tostring}
+     *
+     * @param value the value
+     * @return the string form of the value
+     */
+    public static String toStringRaw(Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        } else if (value instanceof Double) {
+            return numberToString((Double) value);
+        } else if (value == null) {
+            return "nil";
+        } else if (value instanceof Boolean) {
+            return value.toString();
+        }
+        return typeName(value) + ": " + String.format("%08x", System.identityHashCode(value));
+    }
+
+    /**
+     * Converts a number or string to a string, as concatenation does
+     *
+     * @param value the value
+     * @return the string, or null when the value is neither a number nor a string
+     */
+    public static String toConcatString(Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        } else if (value instanceof Double) {
+            return numberToString((Double) value);
+        }
+        return null;
+    }
+
+    /**
+     * Compares two values without invoking {@code __eq}
+     *
+     * @param a the first value
+     * @param b the second value
+     * @return whether the values are primitively equal
+     */
+    public static boolean rawEquals(Object a, Object b) {
+        if (a == b) {
+            return !(a instanceof Double) || !((Double) a).isNaN();
+        } else if (a instanceof Double && b instanceof Double) {
+            return ((Double) a).doubleValue() == ((Double) b).doubleValue();
+        } else if (a instanceof String && b instanceof String) {
+            return a.equals(b);
+        } else if (a instanceof Boolean && b instanceof Boolean) {
+            return a.equals(b);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua;
+
+/**
+ * An instance of a compiled Lua function; the shared {@link Prototype} along with the variables
+ * it captured from its enclosing functions and the environment its globals are looked up in.
+ *
+ * @author theoriginalbit
+ */
+public final class LuaClosure extends LuaFunction {
+    final Prototype prototype;
+    final UpValue[] upvalues;
+    LuaTable env;
+
+    /**
+     * Constructs a closure of a main chunk, which has no upvalues
+     *
+     * @param proto       the compiled chunk
+     * @param environment the table globals are looked up in
+     */
+    public LuaClosure(Prototype proto, LuaTable environment) {
+        this(proto, new UpValue[proto.getUpvalueCount()], environment);
+    }
+
+    LuaClosure(Prototype proto, UpValue[] captured, LuaTable environment) {
+        prototype = proto;
+        upvalues = captured;
+        env = environment;
+    }
+
+    public Prototype getPrototype() {
+        return prototype;
+    }
+
+    public LuaTable getEnvironment() {
+        return env;
+    }
+
+    public void setEnvironment(LuaTable environment) {
+        env = environment;
+    }
+
+    @Override
+    public String getName() {
+        return "function <" + prototype.getShortSource() + ":" + prototype.getLineDefined() + ">";
+    }
+}
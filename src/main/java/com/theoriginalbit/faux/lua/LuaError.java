@@ -0,0 +1,103 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua;
+
+/**
+ * An error raised by, or while running, Lua code. The error carries the Lua value it was raised
+ * with, which is what {@code pcall} returns to the script that caught it.
+ * <p/>
+ * Errors are thrown for control flow by scripts all the time, so the Java stack trace is never
+ * filled in.
+ *
+ * @author theoriginalbit
+ */
+public class LuaError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private Object value;
+    private int level;
+    private final boolean fatal;
+
+    /**
+     * Constructs an error that is prefixed with the position of the function that raised it
+     *
+     * @param message the error message
+     */
+    public LuaError(String message) {
+        this(message, 1, false);
+    }
+
+    /**
+     * Constructs an error with the supplied value
+     *
+     * @param value the error value
+     * @param level the stack level whose position prefixes a string error, 0 for none
+     */
+    public LuaError(Object value, int level) {
+        this(value, level, false);
+    }
+
+    /**
+     * Constructs an error with the supplied value
+     *
+     * @param value the error value
+     * @param level the stack level whose position prefixes a string error, 0 for none
+     * @param fatal whether the error bypasses {@code pcall} and stops the machine
+     */
+    public LuaError(Object value, int level, boolean fatal) {
+        super(null, null, false, false);
+        this.value = value;
+        this.level = value instanceof String || value instanceof Double ? level : 0;
+        this.fatal = fatal;
+    }
+
+    /**
+     * @return the value the error was raised with
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * @return the stack level whose position has yet to prefix the message, 0 once it has
+     */
+    int getLevel() {
+        return level;
+    }
+
+    /**
+     * Prefixes the error message with the position it was raised at
+     *
+     * @param position the position, such as {@code bios:12: }
+     */
+    void setPosition(String position) {
+        if (level > 0) {
+            value = position + Lua.toStringRaw(value);
+            level = 0;
+        }
+    }
+
+    /**
+     * @return whether this error cannot be caught by the script, such as a hard abort
+     */
+    public boolean isFatal() {
+        return fatal;
+    }
+
+    @Override
+    public String getMessage() {
+        return Lua.toStringRaw(value);
+    }
+}
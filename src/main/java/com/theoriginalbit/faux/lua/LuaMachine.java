@@ -0,0 +1,1570 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.theoriginalbit.faux.lua.Opcodes.*;
+
+/**
+ * Runs Lua code for a single computer. The machine interprets the prototypes' instructions
+ * itself, with every call frame and coroutine held in objects rather than on the Java stack, so
+ * that running code can be suspended after any call or backward jump and continued later from
+ * the same place, on any thread.
+ * <p/>
+ * The host loads a main function and then resumes the machine until it yields, passing the
+ * yielded values and later the values to resume with, such as events. Each resume runs for at
+ * most an instruction budget and a time slice, after which the machine pauses and must be
+ * resumed again to continue. Budget is counted in steps; a step is taken by every call and
+ * every backward jump, so each loop iteration costs at least one step, and the cost to check it
+ * is a decrement and a compare. When the main coroutine runs for longer than the yield timeout
+ * without yielding, across any number of slices, the script receives a "Too long without
+ * yielding" error, and if it still does not yield it is stopped outright.
+ * <p/>
+ * A machine is not thread safe, it must only be used by one thread at a time.
+ *
+ * @author theoriginalbit
+ */
+public final class LuaMachine {
+    public enum State {
+        /**
+         * Loaded but not yet resumed
+         */
+        READY,
+        RUNNING,
+        /**
+         * Preempted, having used the instruction budget or time slice, and waiting to continue
+         */
+        PAUSED,
+        /**
+         * Yielded to the host, waiting for the values to resume with
+         */
+        YIELDED,
+        /**
+         * The main function returned
+         */
+        FINISHED,
+        /**
+         * The main function raised an error
+         */
+        ERRORED
+    }
+
+    /**
+     * The number of steps between checks of the clock
+     */
+    private static final int CHECK_INTERVAL = 1024;
+    /**
+     * The time, in nanoseconds, a script is given to yield after being told it has taken too long
+     */
+    private static final long HARD_ABORT_GRACE = 1500000000L;
+    private static final int CONTINUE = 0, RELOAD = 1, HALT = 2;
+    private static final String[] ARITH_EVENTS = {"__add", "__sub", "__mul", "__div", "__mod", "__pow"};
+    private final LuaTable globals;
+    private Random random = new Random();
+    private LuaTable stringMetatable;
+    private Coroutine main;
+    private Coroutine current = new Coroutine(null);
+    private State state = State.READY;
+    private Object[] yielded = Lua.NONE;
+    private Object error;
+    /*
+       control of the dispatch loop
+     */
+    private boolean halted;
+    private Object[] javaResults;
+    private int nesting;
+    /*
+       preemption, times are in nanoseconds
+     */
+    private int budget;
+    private int granted;
+    private long remaining;
+    private long instructionBudget = 1000000L;
+    private long timeout = 7000000000L;
+    private long sliceStart, sliceDeadline;
+    private long runTime;
+    private boolean softAborted;
+    private long steps;
+
+    /**
+     * @param globals the global table, the environment of loaded functions
+     */
+    public LuaMachine(LuaTable globals) {
+        this.globals = globals;
+    }
+
+    public LuaTable getGlobals() {
+        return globals;
+    }
+
+    /**
+     * @return the metatable shared by all strings, whose {@code __index} is the string library
+     */
+    public LuaTable getStringMetatable() {
+        return stringMetatable;
+    }
+
+    public void setStringMetatable(LuaTable metatable) {
+        stringMetatable = metatable;
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+
+    /**
+     * @param steps the most steps a single resume may take before pausing
+     */
+    public void setInstructionBudget(long steps) {
+        instructionBudget = Math.max(steps, 1L);
+    }
+
+    /**
+     * @param nanos how long the main coroutine may run without yielding before being aborted
+     */
+    public void setTimeout(long nanos) {
+        timeout = nanos;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return the values the main coroutine last yielded, or returned once finished
+     */
+    public Object[] getYielded() {
+        return yielded;
+    }
+
+    /**
+     * @return the error the main coroutine raised
+     */
+    public Object getError() {
+        return error;
+    }
+
+    /**
+     * @return the total steps taken by this machine
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return the running coroutine
+     */
+    public Coroutine getCurrentCoroutine() {
+        return current;
+    }
+
+    public Coroutine getMainCoroutine() {
+        return main;
+    }
+
+    /**
+     * Restores the state of a machine saved by a {@link HeapWriter}, the machine must not have
+     * been loaded or resumed
+     */
+    void restore(LuaTable strings, Coroutine mainCoroutine, Coroutine currentCoroutine, State restoredState,
+                 Object[] restoredYielded, Object restoredError, long restoredSteps, Random restoredRandom) {
+        stringMetatable = strings;
+        main = mainCoroutine;
+        current = currentCoroutine;
+        state = restoredState;
+        yielded = restoredYielded;
+        error = restoredError;
+        steps = restoredSteps;
+        random = restoredRandom;
+    }
+
+    /**
+     * Loads the function the main coroutine runs, replacing anything previously loaded
+     *
+     * @param body the main function
+     */
+    public void load(LuaFunction body) {
+        main = new Coroutine(body);
+        current = main;
+        state = State.READY;
+        yielded = Lua.NONE;
+        error = null;
+        runTime = 0;
+        softAborted = false;
+    }
+
+    /**
+     * Starts, continues or resumes the main coroutine, running until it yields, finishes, or
+     * uses up the instruction budget or time slice.
+     *
+     * @param args      the arguments to start with, or the results of the yield; ignored when
+     *                  continuing a paused machine
+     * @param timeSlice the most time, in nanoseconds, to run for
+     * @return the state of the machine afterwards
+     */
+    public State resume(Object[] args, long timeSlice) {
+        switch (state) {
+            case READY:
+                if (!(main.function instanceof LuaClosure)) {
+                    throw new IllegalStateException("The main function must be a Lua function");
+                }
+                main.stack[0] = main.function;
+                main.ensureStack(args.length + 1);
+                System.arraycopy(args, 0, main.stack, 1, args.length);
+                pushClosure(main, (LuaClosure) main.function, 0, args.length, -1);
+                break;
+            case YIELDED:
+                placeResults(main, main.pendingIndex, main.pendingWanted, args, 0, args.length);
+                break;
+            case PAUSED:
+                break;
+            default:
+                throw new IllegalStateException("Cannot resume a machine that is " + state);
+        }
+
+        main.status = main == current ? Coroutine.Status.RUNNING : Coroutine.Status.NORMAL;
+        state = State.RUNNING;
+        sliceStart = System.nanoTime();
+        sliceDeadline = sliceStart + timeSlice;
+        remaining = instructionBudget;
+        refill();
+
+        run();
+
+        steps += granted - budget;
+        granted = budget = 0;
+        if (state == State.PAUSED) {
+            runTime += System.nanoTime() - sliceStart;
+        } else {
+            runTime = 0;
+            softAborted = false;
+        }
+        return state;
+    }
+
+    /**
+     * Calls a function from Java, such as a library calling a metamethod or a comparator. The
+     * function runs on the current coroutine and cannot yield.
+     *
+     * @param function the function to call
+     * @param args     the arguments
+     * @return the results
+     */
+    public Object[] call(Object function, Object... args) {
+        if (function instanceof LibFunction) {
+            return ((LibFunction) function).invoke(this, args);
+        } else if (function instanceof LuaClosure) {
+            final Coroutine co = current;
+            final int slot = co.freeSlot();
+            co.ensureStack(slot + args.length + 1);
+            co.stack[slot] = function;
+            System.arraycopy(args, 0, co.stack, slot + 1, args.length);
+            final CallFrame frame = pushClosure(co, (LuaClosure) function, slot, args.length, -1);
+            frame.kind = CallFrame.BOUNDARY;
+            ++co.boundaries;
+
+            ++nesting;
+            try {
+                run();
+            } finally {
+                --nesting;
+            }
+            final Object[] results = javaResults;
+            javaResults = null;
+            return results;
+        }
+
+        final Object handler = getMetamethod(function, "__call");
+        if (handler == null) {
+            throw new LuaError("attempt to call a " + Lua.typeName(function) + " value");
+        }
+        final Object[] shifted = new Object[args.length + 1];
+        shifted[0] = function;
+        System.arraycopy(args, 0, shifted, 1, args.length);
+        return call(handler, shifted);
+    }
+
+    /**
+     * Resumes a coroutine from Java, for when {@code coroutine.resume} is not called directly by
+     * Lua code. The coroutine runs until it yields back, finishes or raises an error.
+     *
+     * @param target the coroutine to resume
+     * @param args   the arguments to resume with
+     * @return the results of {@code coroutine.resume}
+     */
+    Object[] resumeFromJava(Coroutine target, Object[] args) {
+        if (target.status != Coroutine.Status.SUSPENDED) {
+            return new Object[]{Boolean.FALSE, cannotResume(target)};
+        }
+        final Coroutine from = current;
+        if (switchTo(from, target, args, Coroutine.JAVA) == HALT) {
+            final Object[] results = javaResults;
+            javaResults = null;
+            return results;
+        }
+
+        ++nesting;
+        try {
+            run();
+        } finally {
+            --nesting;
+        }
+        final Object[] results = javaResults;
+        javaResults = null;
+        return results;
+    }
+
+    /**
+     * Gets the position of a function on the call stack, for prefixing error messages
+     *
+     * @param level the stack level; 1 is the Lua function that called the current library function
+     * @return the position, such as {@code bios:12: }, or an empty string when unknown
+     */
+    public String where(int level) {
+        final Coroutine co = current;
+        final int index = co.frameCount - level;
+        if (level <= 0 || index < 0) {
+            return "";
+        }
+        final CallFrame frame = co.frames[index];
+        return frame.closure.prototype.getShortSource() + ":" + frame.getLine() + ": ";
+    }
+
+    /**
+     * Gets a Lua function on the call stack of the current coroutine
+     *
+     * @param level the stack level; 1 is the Lua function that called the current library function
+     * @return the function, or null when there is no function at the level
+     */
+    public LuaClosure getFunction(int level) {
+        final int index = current.frameCount - level;
+        return level <= 0 || index < 0 ? null : current.frames[index].closure;
+    }
+
+    /*
+     * ============================================================================================
+     *                                       DISPATCH
+     * ============================================================================================
+     */
+
+    /**
+     * Runs the current coroutine until the machine halts; pausing, yielding to the host or Java,
+     * finishing, or returning from a frame called by Java.
+     */
+    private void run() {
+        for (; ; ) {
+            try {
+                dispatch();
+                return;
+            } catch (LuaError e) {
+                handleError(e);
+            } catch (StackOverflowError e) {
+                handleError(new LuaError("stack overflow"));
+            }
+            if (halted) {
+                halted = false;
+                return;
+            }
+        }
+    }
+
+    private void dispatch() {
+        newFrame:
+        for (; ; ) {
+            final Coroutine co = current;
+            final CallFrame frame = co.frames[co.frameCount - 1];
+            final LuaClosure closure = frame.closure;
+            final Prototype proto = closure.prototype;
+            final int[] code = proto.code;
+            final Object[] k = proto.constants;
+            final UpValue[] upvalues = closure.upvalues;
+            final int base = frame.base;
+            Object[] stack = co.stack;
+            int pc = frame.pc;
+            try {
+                for (; ; ) {
+                    final int i = code[pc++];
+                    final int a = base + ((i >>> POS_A) & MAX_A);
+                    switch (i & 0x3F) {
+                        case MOVE:
+                            stack[a] = stack[base + (i >>> POS_B)];
+                            continue;
+                        case LOADK:
+                            stack[a] = k[i >>> POS_BX];
+                            continue;
+                        case LOADBOOL:
+                            stack[a] = (i >>> POS_B) != 0 ? Boolean.TRUE : Boolean.FALSE;
+                            if (((i >>> POS_C) & MAX_C) != 0) {
+                                ++pc;
+                            }
+                            continue;
+                        case LOADNIL:
+                            Arrays.fill(stack, a, base + (i >>> POS_B) + 1, null);
+                            continue;
+                        case GETUPVAL:
+                            stack[a] = upvalues[i >>> POS_B].get();
+                            continue;
+                        case GETGLOBAL: {
+                            final LuaTable env = closure.env;
+                            final Object key = k[i >>> POS_BX];
+                            Object value = env.rawget(key);
+                            if (value == null && env.getMetatable() != null) {
+                                frame.pc = pc;
+                                value = index(env, key);
+                                stack = co.stack;
+                            }
+                            stack[a] = value;
+                            continue;
+                        }
+                        case GETTABLE: {
+                            final int b = i >>> POS_B;
+                            final int c = (i >>> POS_C) & MAX_C;
+                            final Object table = stack[base + b];
+                            final Object key = c > MAX_INDEX_RK ? k[c & MAX_INDEX_RK] : stack[base + c];
+                            if (table instanceof LuaTable) {
+                                final LuaTable t = (LuaTable) table;
+                                final Object value = t.rawget(key);
+                                if (value != null || t.getMetatable() == null) {
+                                    stack[a] = value;
+                                    continue;
+                                }
+                            }
+                            frame.pc = pc;
+                            final Object value = indexOperand(frame, table, key, b);
+                            stack = co.stack;
+                            stack[a] = value;
+                            continue;
+                        }
+                        case SETGLOBAL: {
+                            final LuaTable env = closure.env;
+                            if (env.getMetatable() == null) {
+                                env.rawset(k[i >>> POS_BX], stack[a]);
+                            } else {
+                                frame.pc = pc;
+                                setIndex(env, k[i >>> POS_BX], stack[a]);
+                                stack = co.stack;
+                            }
+                            continue;
+                        }
+                        case SETUPVAL:
+                            upvalues[i >>> POS_B].set(stack[a]);
+                            continue;
+                        case SETTABLE: {
+                            final int b = i >>> POS_B;
+                            final int c = (i >>> POS_C) & MAX_C;
+                            final Object table = stack[a];
+                            final Object key = b > MAX_INDEX_RK ? k[b & MAX_INDEX_RK] : stack[base + b];
+                            final Object value = c > MAX_INDEX_RK ? k[c & MAX_INDEX_RK] : stack[base + c];
+                            frame.pc = pc;
+                            if (table instanceof LuaTable && ((LuaTable) table).getMetatable() == null) {
+                                ((LuaTable) table).rawset(key, value);
+                                continue;
+                            }
+                            if (!(table instanceof LuaTable) && getMetamethod(table, "__newindex") == null) {
+                                throw operandError(frame, a - base, "index", table);
+                            }
+                            setIndex(table, key, value);
+                            stack = co.stack;
+                            continue;
+                        }
+                        case NEWTABLE:
+                            stack[a] = new LuaTable(i >>> POS_B, (i >>> POS_C) & MAX_C);
+                            continue;
+                        case SELF: {
+                            final int b = i >>> POS_B;
+                            final int c = (i >>> POS_C) & MAX_C;
+                            final Object object = stack[base + b];
+                            final Object key = c > MAX_INDEX_RK ? k[c & MAX_INDEX_RK] : stack[base + c];
+                            stack[a + 1] = object;
+                            if (object instanceof LuaTable) {
+                                final LuaTable t = (LuaTable) object;
+                                final Object value = t.rawget(key);
+                                if (value != null || t.getMetatable() == null) {
+                                    stack[a] = value;
+                                    continue;
+                                }
+                            }
+                            frame.pc = pc;
+                            final Object value = indexOperand(frame, object, key, b);
+                            stack = co.stack;
+                            stack[a] = value;
+                            continue;
+                        }
+                        case ADD:
+                        case SUB:
+                        case MUL:
+                        case DIV:
+                        case MOD:
+                        case POW: {
+                            final int b = i >>> POS_B;
+                            final int c = (i >>> POS_C) & MAX_C;
+                            final Object rb = b > MAX_INDEX_RK ? k[b & MAX_INDEX_RK] : stack[base + b];
+                            final Object rc = c > MAX_INDEX_RK ? k[c & MAX_INDEX_RK] : stack[base + c];
+                            if (rb instanceof Double && rc instanceof Double) {
+                                stack[a] = Lua.valueOf(compute(i & 0x3F, (Double) rb, (Double) rc));
+                            } else {
+                                frame.pc = pc;
+                                final Object value = arithSlow(frame, i, rb, rc);
+                                stack = co.stack;
+                                stack[a] = value;
+                            }
+                            continue;
+                        }
+                        case UNM: {
+                            final Object rb = stack[base + (i >>> POS_B)];
+                            if (rb instanceof Double) {
+                                stack[a] = Lua.valueOf(-(Double) rb);
+                            } else {
+                                frame.pc = pc;
+                                final Object value = arithSlow(frame, i, rb, rb);
+                                stack = co.stack;
+                                stack[a] = value;
+                            }
+                            continue;
+                        }
+                        case NOT: {
+                            final Object rb = stack[base + (i >>> POS_B)];
+                            stack[a] = rb == null || rb == Boolean.FALSE ? Boolean.TRUE : Boolean.FALSE;
+                            continue;
+                        }
+                        case LEN: {
+                            final Object rb = stack[base + (i >>> POS_B)];
+                            if (rb instanceof LuaTable) {
+                                stack[a] = Lua.valueOf(((LuaTable) rb).length());
+                            } else if (rb instanceof String) {
+                                stack[a] = Lua.valueOf(((String) rb).length());
+                            } else {
+                                frame.pc = pc;
+                                final Object handler = getMetamethod(rb, "__len");
+                                if (handler == null) {
+                                    throw operandError(frame, i >>> POS_B, "get length of", rb);
+                                }
+                                final Object value = first(call(handler, rb, rb));
+                                stack = co.stack;
+                                stack[a] = value;
+                            }
+                            continue;
+                        }
+                        case CONCAT: {
+                            frame.pc = pc;
+                            final Object value = concat(frame, co, base + (i >>> POS_B), base + ((i >>> POS_C) & MAX_C));
+                            stack = co.stack;
+                            stack[a] = value;
+                            continue;
+                        }
+                        case JMP: {
+                            final int offset = (i >>> POS_BX) - MAX_SBX;
+                            pc += offset;
+                            if (offset < 0 && --budget <= 0) {
+                                frame.pc = pc;
+                                if (checkBudget()) {
+                                    return;
+                                }
+                            }
+                            continue;
+                        }
+                        case EQ: {
+                            final int b = i >>> POS_B;
+                            final int c = (i >>> POS_C) & MAX_C;
+                            final Object rb = b > MAX_INDEX_RK ? k[b & MAX_INDEX_RK] : stack[base + b];
+                            final Object rc = c > MAX_INDEX_RK ? k[c & MAX_INDEX_RK] : stack[base + c];
+                            final boolean equal;
+                            if (rb instanceof Double && rc instanceof Double) {
+                                equal = ((Double) rb).doubleValue() == ((Double) rc).doubleValue();
+                            } else {
+                                frame.pc = pc;
+                                equal = equals(rb, rc);
+                                stack = co.stack;
+                            }
+                            if (equal != (((i >>> POS_A) & MAX_A) != 0)) {
+                                ++pc;
+                            }
+                            continue;
+                        }
+                        case LT:
+                        case LE: {
+                            final int b = i >>> POS_B;
+                            final int c = (i >>> POS_C) & MAX_C;
+                            final Object rb = b > MAX_INDEX_RK ? k[b & MAX_INDEX_RK] : stack[base + b];
+                            final Object rc = c > MAX_INDEX_RK ? k[c & MAX_INDEX_RK] : stack[base + c];
+                            final boolean result;
+                            if (rb instanceof Double && rc instanceof Double) {
+                                final double x = (Double) rb, y = (Double) rc;
+                                result = (i & 0x3F) == LT ? x < y : x <= y;
+                            } else {
+                                frame.pc = pc;
+                                result = (i & 0x3F) == LT ? lessThan(rb, rc) : lessEqual(rb, rc);
+                                stack = co.stack;
+                            }
+                            if (result != (((i >>> POS_A) & MAX_A) != 0)) {
+                                ++pc;
+                            }
+                            continue;
+                        }
+                        case TEST: {
+                            final Object ra = stack[a];
+                            if ((ra != null && ra != Boolean.FALSE) != (((i >>> POS_C) & MAX_C) != 0)) {
+                                ++pc;
+                            }
+                            continue;
+                        }
+                        case TESTSET: {
+                            final Object rb = stack[base + (i >>> POS_B)];
+                            if ((rb != null && rb != Boolean.FALSE) == (((i >>> POS_C) & MAX_C) != 0)) {
+                                stack[a] = rb;
+                            } else {
+                                ++pc;
+                            }
+                            continue;
+                        }
+                        case CALL: {
+                            if (--budget <= 0) {
+                                frame.pc = pc - 1;
+                                if (checkBudget()) {
+                                    return;
+                                }
+                            }
+                            frame.pc = pc;
+                            final int b = i >>> POS_B;
+                            final int nargs = b != 0 ? b - 1 : co.top - a - 1;
+                            final Object function = stack[a];
+                            if (function instanceof LuaClosure) {
+                                pushClosure(co, (LuaClosure) function, a, nargs, ((i >>> POS_C) & MAX_C) - 1);
+                                continue newFrame;
+                            } else if (!(function instanceof LuaFunction) && getMetamethod(function, "__call") == null) {
+                                throw operandError(frame, a - base, "call", function);
+                            }
+                            final int result = callValue(co, a, nargs, ((i >>> POS_C) & MAX_C) - 1);
+                            if (result == HALT) {
+                                return;
+                            } else if (result == RELOAD) {
+                                continue newFrame;
+                            }
+                            stack = co.stack;
+                            continue;
+                        }
+                        case TAILCALL: {
+                            if (--budget <= 0) {
+                                frame.pc = pc - 1;
+                                if (checkBudget()) {
+                                    return;
+                                }
+                            }
+                            frame.pc = pc;
+                            final int b = i >>> POS_B;
+                            final int nargs = b != 0 ? b - 1 : co.top - a - 1;
+                            final Object function = stack[a];
+                            if (function instanceof LuaClosure) {
+                                // reuse this frame for the callee, so tail recursion runs in
+                                // constant space
+                                co.closeUpValues(base);
+                                System.arraycopy(stack, a, stack, base - 1, nargs + 1);
+                                setupFrame(co, frame, (LuaClosure) function, base, nargs);
+                                continue newFrame;
+                            } else if (!(function instanceof LuaFunction) && getMetamethod(function, "__call") == null) {
+                                throw operandError(frame, a - base, "call", function);
+                            }
+                            // anything else is an ordinary call, its results are returned by the
+                            // next instruction
+                            final int result = callValue(co, a, nargs, -1);
+                            if (result == HALT) {
+                                return;
+                            } else if (result == RELOAD) {
+                                continue newFrame;
+                            }
+                            stack = co.stack;
+                            continue;
+                        }
+                        case RETURN: {
+                            final int b = i >>> POS_B;
+                            final int count = b != 0 ? b - 1 : co.top - a;
+                            if (co.openUpvalues != null) {
+                                co.closeUpValues(base);
+                            }
+                            if (doReturn(co, a, count) == HALT) {
+                                return;
+                            }
+                            continue newFrame;
+                        }
+                        case FORLOOP: {
+                            final double step = (Double) stack[a + 2];
+                            final double index = (Double) stack[a] + step;
+                            final double limit = (Double) stack[a + 1];
+                            if (step > 0 ? index <= limit : index >= limit) {
+                                final Double value = Lua.valueOf(index);
+                                stack[a] = value;
+                                stack[a + 3] = value;
+                                pc += (i >>> POS_BX) - MAX_SBX;
+                                if (--budget <= 0) {
+                                    frame.pc = pc;
+                                    if (checkBudget()) {
+                                        return;
+                                    }
+                                }
+                            }
+                            continue;
+                        }
+                        case FORPREP: {
+                            final Double init = Lua.toNumber(stack[a]);
+                            final Double limit = Lua.toNumber(stack[a + 1]);
+                            final Double step = Lua.toNumber(stack[a + 2]);
+                            if (init == null) {
+                                throw new LuaError("'for' initial value must be a number");
+                            } else if (limit == null) {
+                                throw new LuaError("'for' limit must be a number");
+                            } else if (step == null) {
+                                throw new LuaError("'for' step must be a number");
+                            }
+                            stack[a] = init - step;
+                            stack[a + 1] = limit;
+                            stack[a + 2] = step;
+                            pc += (i >>> POS_BX) - MAX_SBX;
+                            continue;
+                        }
+                        case TFORLOOP: {
+                            final Object value = stack[a + 1];
+                            if (value != null) {
+                                stack[a] = value;
+                                pc += (i >>> POS_BX) - MAX_SBX;
+                                if (--budget <= 0) {
+                                    frame.pc = pc;
+                                    if (checkBudget()) {
+                                        return;
+                                    }
+                                }
+                            }
+                            continue;
+                        }
+                        case SETLIST: {
+                            final int b = i >>> POS_B;
+                            int c = (i >>> POS_C) & MAX_C;
+                            if (c == 0) {
+                                c = code[pc++];
+                            }
+                            final int count = b != 0 ? b : co.top - a - 1;
+                            final LuaTable table = (LuaTable) stack[a];
+                            final int offset = (c - 1) * FIELDS_PER_FLUSH;
+                            for (int j = 1; j <= count; ++j) {
+                                table.rawset(offset + j, stack[a + j]);
+                            }
+                            continue;
+                        }
+                        case CLOSE:
+                            co.closeUpValues(a);
+                            continue;
+                        case CLOSURE: {
+                            final Prototype child = proto.prototypes[i >>> POS_BX];
+                            final UpValue[] captured = new UpValue[child.upvalueNames.length];
+                            for (int u = 0; u < captured.length; ++u) {
+                                captured[u] = child.upvalueInStack[u] ? co.findUpValue(base + child.upvalueIndex[u]) : upvalues[child.upvalueIndex[u]];
+                            }
+                            stack[a] = new LuaClosure(child, captured, closure.env);
+                            continue;
+                        }
+                        case VARARG: {
+                            final int b = i >>> POS_B;
+                            final Object[] varargs = frame.varargs;
+                            if (b == 0) {
+                                co.ensureStack(a + varargs.length);
+                                stack = co.stack;
+                                System.arraycopy(varargs, 0, stack, a, varargs.length);
+                                co.top = a + varargs.length;
+                            } else {
+                                for (int j = 0; j < b - 1; ++j) {
+                                    stack[a + j] = j < varargs.length ? varargs[j] : null;
+                                }
+                            }
+                            continue;
+                        }
+                        default:
+                            throw new LuaError("bad instruction " + (i & 0x3F), 0);
+                    }
+                }
+            } catch (LuaError e) {
+                frame.pc = pc;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Called when the step counter runs out, checks the clock and refills the counter
+     *
+     * @return whether the machine has paused and the dispatch loop must return
+     */
+    private boolean checkBudget() {
+        steps += granted - budget;
+        remaining -= granted - budget;
+        final long now = System.nanoTime();
+        final long running = runTime + (now - sliceStart);
+        refill();
+        if (running > timeout) {
+            if (!softAborted) {
+                softAborted = true;
+                throw new LuaError("Too long without yielding", 0);
+            } else if (running > timeout + HARD_ABORT_GRACE) {
+                throw new LuaError("Too long without yielding", 0, true);
+            }
+        }
+        if (nesting == 0 && (remaining <= 0 || now >= sliceDeadline)) {
+            state = State.PAUSED;
+            return true;
+        }
+        return false;
+    }
+
+    private void refill() {
+        granted = remaining > 0 ? (int) Math.min(remaining, CHECK_INTERVAL) : CHECK_INTERVAL;
+        budget = granted;
+    }
+
+    /*
+     * ============================================================================================
+     *                                     CALLS & RETURNS
+     * ============================================================================================
+     */
+
+    private CallFrame pushClosure(Coroutine co, LuaClosure closure, int functionIndex, int nargs, int wanted) {
+        final CallFrame frame = co.pushFrame();
+        setupFrame(co, frame, closure, functionIndex + 1, nargs);
+        frame.returnTo = functionIndex;
+        frame.wanted = wanted;
+        frame.kind = CallFrame.NORMAL;
+        frame.handler = null;
+        return frame;
+    }
+
+    /**
+     * Prepares a frame to run a closure whose arguments are already on the stack from the base
+     */
+    private static void setupFrame(Coroutine co, CallFrame frame, LuaClosure closure, int base, int nargs) {
+        final Prototype proto = closure.prototype;
+        co.ensureStack(base + Math.max(proto.maxStack, nargs));
+        final Object[] stack = co.stack;
+        Object[] varargs = null;
+        if (proto.vararg) {
+            varargs = nargs > proto.numParams ? Arrays.copyOfRange(stack, base + proto.numParams, base + nargs) : Lua.NONE;
+        }
+        Arrays.fill(stack, base + Math.min(nargs, proto.numParams), base + proto.maxStack, null);
+        frame.closure = closure;
+        frame.base = base;
+        frame.pc = 0;
+        frame.varargs = varargs;
+    }
+
+    /**
+     * Calls anything other than a closure from the dispatch loop
+     *
+     * @return whether the loop may continue with the current frame, must reload it, or must halt
+     */
+    private int callValue(Coroutine co, int a, int nargs, int wanted) {
+        Object function = co.stack[a];
+        for (; ; ) {
+            if (function instanceof LuaClosure) {
+                pushClosure(co, (LuaClosure) function, a, nargs, wanted);
+                return RELOAD;
+            } else if (function instanceof LibFunction) {
+                final LibFunction lib = (LibFunction) function;
+                if (lib.control != LibFunction.PLAIN) {
+                    return control(co, lib, a, nargs, wanted);
+                }
+                final Object[] args = nargs == 0 ? Lua.NONE : Arrays.copyOfRange(co.stack, a + 1, a + 1 + nargs);
+                final Object[] results = lib.invoke(this, args);
+                placeResults(co, a, wanted, results, 0, results.length);
+                return CONTINUE;
+            }
+
+            final Object handler = getMetamethod(function, "__call");
+            if (handler == null) {
+                throw new LuaError("attempt to call a " + Lua.typeName(function) + " value");
+            }
+            // the callable becomes the first argument of its __call handler
+            co.ensureStack(a + nargs + 2);
+            System.arraycopy(co.stack, a, co.stack, a + 1, nargs + 1);
+            co.stack[a] = handler;
+            ++nargs;
+            function = handler;
+        }
+    }
+
+    /**
+     * Runs the functions that transfer control; protected calls and coroutines
+     */
+    private int control(Coroutine co, LibFunction lib, int a, int nargs, int wanted) {
+        switch (lib.control) {
+            case LibFunction.PCALL:
+            case LibFunction.XPCALL: {
+                if (nargs == 0) {
+                    throw lib.argError(0, "value expected");
+                }
+                final Object target = co.stack[a + 1];
+                final boolean handled = lib.control == LibFunction.XPCALL;
+                final Object handler = handled ? (nargs > 1 ? co.stack[a + 2] : null) : null;
+                if (target instanceof LuaClosure) {
+                    final CallFrame frame = pushClosure(co, (LuaClosure) target, a + 1, handled ? 0 : nargs - 1, wanted);
+                    frame.kind = CallFrame.PROTECTED;
+                    frame.returnTo = a;
+                    frame.handler = handler;
+                    return RELOAD;
+                }
+
+                // anything else runs from Java, and so cannot yield
+                final Object[] args = handled || nargs == 1 ? Lua.NONE : Arrays.copyOfRange(co.stack, a + 2, a + 1 + nargs);
+                Object[] results;
+                try {
+                    final Object[] values = call(target, args);
+                    results = new Object[values.length + 1];
+                    results[0] = Boolean.TRUE;
+                    System.arraycopy(values, 0, results, 1, values.length);
+                } catch (LuaError e) {
+                    if (e.isFatal()) {
+                        throw e;
+                    }
+                    results = new Object[]{Boolean.FALSE, handled ? callHandler(handler, e.getValue()) : e.getValue()};
+                }
+                placeResults(co, a, wanted, results, 0, results.length);
+                return CONTINUE;
+            }
+            case LibFunction.YIELD: {
+                if (co.boundaries > 0) {
+                    throw new LuaError("attempt to yield across metamethod/C-call boundary");
+                }
+                final Object[] values = nargs == 0 ? Lua.NONE : Arrays.copyOfRange(co.stack, a + 1, a + 1 + nargs);
+                co.pendingIndex = a;
+                co.pendingWanted = wanted;
+                co.status = Coroutine.Status.SUSPENDED;
+                final Coroutine resumer = co.resumer;
+                if (resumer == null) {
+                    // the main coroutine yields to the host
+                    yielded = values;
+                    state = State.YIELDED;
+                    return HALT;
+                }
+                co.resumer = null;
+                return deliver(co, resumer, true, values);
+            }
+            case LibFunction.RESUME: {
+                final Object target = nargs > 0 ? co.stack[a + 1] : null;
+                if (!(target instanceof Coroutine)) {
+                    throw lib.typeError(nargs > 0 ? new Object[]{target} : Lua.NONE, 0, "coroutine");
+                }
+                final Object[] args = nargs <= 1 ? Lua.NONE : Arrays.copyOfRange(co.stack, a + 2, a + 1 + nargs);
+                final Coroutine coroutine = (Coroutine) target;
+                if (coroutine.status != Coroutine.Status.SUSPENDED) {
+                    placeResults(co, a, wanted, new Object[]{Boolean.FALSE, cannotResume(coroutine)}, 0, 2);
+                    return CONTINUE;
+                }
+                co.pendingIndex = a;
+                co.pendingWanted = wanted;
+                return switchTo(co, coroutine, args, Coroutine.RESUME);
+            }
+            case LibFunction.WRAPPED: {
+                final Coroutine coroutine = ((CoroutineFunction) lib).getCoroutine();
+                if (coroutine.status != Coroutine.Status.SUSPENDED) {
+                    throw new LuaError(cannotResume(coroutine));
+                }
+                final Object[] args = nargs == 0 ? Lua.NONE : Arrays.copyOfRange(co.stack, a + 1, a + 1 + nargs);
+                co.pendingIndex = a;
+                co.pendingWanted = wanted;
+                return switchTo(co, coroutine, args, Coroutine.WRAP);
+            }
+            default:
+                throw new LuaError("unknown control function " + lib.getName(), 0);
+        }
+    }
+
+    private static String cannotResume(Coroutine coroutine) {
+        return coroutine.status == Coroutine.Status.DEAD ? "cannot resume dead coroutine" : "cannot resume non-suspended coroutine";
+    }
+
+    /**
+     * Transfers control to a suspended coroutine, starting it or handing it the results of its
+     * yield
+     */
+    private int switchTo(Coroutine from, Coroutine target, Object[] args, int mode) {
+        from.status = Coroutine.Status.NORMAL;
+        target.resumer = from;
+        target.resumeMode = mode;
+        target.status = Coroutine.Status.RUNNING;
+        current = target;
+
+        if (target.frameCount > 0) {
+            placeResults(target, target.pendingIndex, target.pendingWanted, args, 0, args.length);
+            return RELOAD;
+        } else if (target.function instanceof LuaClosure) {
+            target.ensureStack(args.length + 1);
+            target.stack[0] = target.function;
+            System.arraycopy(args, 0, target.stack, 1, args.length);
+            pushClosure(target, (LuaClosure) target.function, 0, args.length, -1);
+            return RELOAD;
+        }
+
+        // a coroutine of a Java function runs to completion straight away
+        Object[] results;
+        boolean success = true;
+        try {
+            results = call(target.function, args);
+        } catch (LuaError e) {
+            if (e.isFatal()) {
+                throw e;
+            }
+            results = new Object[]{e.getValue()};
+            success = false;
+        }
+        target.status = Coroutine.Status.DEAD;
+        target.resumer = null;
+        if (!success && mode == Coroutine.WRAP) {
+            current = from;
+            from.status = Coroutine.Status.RUNNING;
+            throw new LuaError(results[0], 0);
+        }
+        return deliver(target, from, success, results);
+    }
+
+    /**
+     * Hands the values a coroutine yielded or returned to the coroutine that resumed it, which
+     * becomes the running coroutine
+     */
+    private int deliver(Coroutine from, Coroutine resumer, boolean success, Object[] values) {
+        current = resumer;
+        resumer.status = Coroutine.Status.RUNNING;
+        if (from.resumeMode == Coroutine.WRAP) {
+            placeResults(resumer, resumer.pendingIndex, resumer.pendingWanted, values, 0, values.length);
+            return RELOAD;
+        }
+
+        final Object[] results = new Object[values.length + 1];
+        results[0] = Lua.valueOf(success);
+        System.arraycopy(values, 0, results, 1, values.length);
+        if (from.resumeMode == Coroutine.JAVA) {
+            javaResults = results;
+            return HALT;
+        }
+        placeResults(resumer, resumer.pendingIndex, resumer.pendingWanted, results, 0, results.length);
+        return RELOAD;
+    }
+
+    /**
+     * Returns from the top frame of a coroutine
+     */
+    private int doReturn(Coroutine co, int from, int count) {
+        final CallFrame frame = co.popFrame();
+        if (frame.kind == CallFrame.BOUNDARY) {
+            javaResults = Arrays.copyOfRange(co.stack, from, from + count);
+            return HALT;
+        }
+
+        int dest = frame.returnTo;
+        int wanted = frame.wanted;
+        if (frame.kind == CallFrame.PROTECTED) {
+            co.stack[dest++] = Boolean.TRUE;
+            if (wanted > 0) {
+                --wanted;
+            }
+        }
+        placeResults(co, dest, wanted, co.stack, from, count);
+
+        if (co.frameCount == 0) {
+            // the coroutine's function returned
+            final Object[] values = Arrays.copyOfRange(co.stack, dest, dest + count);
+            co.status = Coroutine.Status.DEAD;
+            co.stack = Lua.NONE;
+            final Coroutine resumer = co.resumer;
+            if (resumer == null) {
+                yielded = values;
+                state = State.FINISHED;
+                return HALT;
+            }
+            co.resumer = null;
+            return deliver(co, resumer, true, values);
+        }
+        return RELOAD;
+    }
+
+    /**
+     * Copies results to where the caller expects them, padding with nil or truncating to the
+     * number wanted, or setting the top of the stack when all of them are wanted
+     */
+    private static void placeResults(Coroutine co, int dest, int wanted, Object[] source, int from, int count) {
+        if (wanted < 0) {
+            co.ensureStack(dest + count);
+            System.arraycopy(source, from, co.stack, dest, count);
+            co.top = dest + count;
+        } else {
+            co.ensureStack(dest + wanted);
+            final int copied = Math.min(count, wanted);
+            System.arraycopy(source, from, co.stack, dest, copied);
+            Arrays.fill(co.stack, dest + copied, dest + wanted, null);
+        }
+    }
+
+    /*
+     * ============================================================================================
+     *                                        ERRORS
+     * ============================================================================================
+     */
+
+    /**
+     * Unwinds the call stack to the nearest protected call. A coroutine without one dies and
+     * the error is passed on to the coroutine that resumed it.
+     */
+    private void handleError(LuaError e) {
+        if (e.isFatal()) {
+            if (nesting > 0) {
+                throw e;
+            }
+            stop(e.getValue());
+            return;
+        }
+
+        for (; ; ) {
+            final Coroutine co = current;
+            if (e.getLevel() > 0) {
+                e.setPosition(where(e.getLevel()));
+            }
+
+            while (co.frameCount > 0) {
+                final CallFrame frame = co.popFrame();
+                co.closeUpValues(frame.base);
+                if (frame.kind == CallFrame.BOUNDARY) {
+                    // back to the Java code that made the call
+                    throw e;
+                } else if (frame.kind == CallFrame.PROTECTED) {
+                    // read the frame first, the handler's call reuses it
+                    final int returnTo = frame.returnTo;
+                    final int wanted = frame.wanted;
+                    final Object value = frame.handler != null ? callHandler(frame.handler, e.getValue()) : e.getValue();
+                    placeResults(co, returnTo, wanted, new Object[]{Boolean.FALSE, value}, 0, 2);
+                    return;
+                }
+            }
+
+            co.status = Coroutine.Status.DEAD;
+            co.stack = Lua.NONE;
+            final Coroutine resumer = co.resumer;
+            if (resumer == null) {
+                stop(e.getValue());
+                return;
+            }
+            co.resumer = null;
+            if (co.resumeMode == Coroutine.WRAP) {
+                // the error continues in the coroutine that called the wrapped function
+                current = resumer;
+                resumer.status = Coroutine.Status.RUNNING;
+                continue;
+            }
+            if (deliver(co, resumer, false, new Object[]{e.getValue()}) == HALT) {
+                halted = true;
+            }
+            return;
+        }
+    }
+
+    private Object callHandler(Object handler, Object value) {
+        try {
+            return first(call(handler, value));
+        } catch (LuaError e) {
+            if (e.isFatal()) {
+                throw e;
+            }
+            return e.getValue();
+        }
+    }
+
+    /**
+     * Stops the machine after the main coroutine raised an error
+     */
+    private void stop(Object value) {
+        main.status = Coroutine.Status.DEAD;
+        current = main;
+        error = value;
+        state = State.ERRORED;
+        halted = true;
+    }
+
+    private LuaError operandError(CallFrame frame, int register, String action, Object value) {
+        final String name = describe(frame.closure.prototype, frame.pc - 1, register);
+        final String type = Lua.typeName(value);
+        return new LuaError("attempt to " + action + " " + (name != null ? name + " (a " + type + " value)" : "a " + type + " value"));
+    }
+
+    /**
+     * Describes the variable a register was loaded from for error messages, such as
+     * {@code global 'print'}, by finding the last instruction before the current one that wrote it
+     *
+     * @param proto    the function
+     * @param pc       the current instruction
+     * @param register the register
+     * @return the description, or null when the register does not hold a named variable
+     */
+    private static String describe(Prototype proto, int pc, int register) {
+        if ((register & BITRK) != 0) {
+            return null;
+        }
+        final String local = proto.getLocalName(register, pc);
+        if (local != null) {
+            return "local '" + local + "'";
+        }
+
+        for (int j = pc - 1; j >= 0; --j) {
+            final int i = proto.code[j];
+            final int op = getOpcode(i);
+            final int a = getA(i);
+            if (op == CALL || op == TAILCALL || op == VARARG) {
+                if (register >= a) {
+                    return null;
+                }
+                continue;
+            } else if (op == LOADNIL) {
+                if (register >= a && register <= getB(i)) {
+                    return null;
+                }
+                continue;
+            } else if (op == SELF && register == a + 1 || op == FORLOOP && register == a + 3) {
+                return null;
+            } else if (a != register || op == JMP || op == EQ || op == LT || op == LE || op == TEST ||
+                    op == SETGLOBAL || op == SETUPVAL || op == SETTABLE || op == SETLIST || op == CLOSE ||
+                    op == RETURN || op == FORPREP || op == TFORLOOP) {
+                continue;
+            }
+
+            switch (op) {
+                case GETGLOBAL:
+                    return "global '" + proto.constants[getBx(i)] + "'";
+                case GETUPVAL:
+                    return "upvalue '" + proto.upvalueNames[getB(i)] + "'";
+                case GETTABLE:
+                case SELF: {
+                    final int c = getC(i);
+                    if (isConstant(c) && proto.constants[c & MAX_INDEX_RK] instanceof String) {
+                        return (op == SELF ? "method '" : "field '") + proto.constants[c & MAX_INDEX_RK] + "'";
+                    }
+                    return null;
+                }
+                case MOVE:
+                    return getB(i) < a ? describe(proto, j, getB(i)) : null;
+                default:
+                    return null;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * ============================================================================================
+     *                                 METAMETHODS & OPERATORS
+     * ============================================================================================
+     */
+
+    /**
+     * @param value the value
+     * @return the metatable of the value, or null when it has none
+     */
+    public LuaTable getMetatable(Object value) {
+        if (value instanceof LuaTable) {
+            return ((LuaTable) value).getMetatable();
+        } else if (value instanceof String) {
+            return stringMetatable;
+        }
+        return null;
+    }
+
+    /**
+     * @param value the value
+     * @param event the metamethod name, such as {@code __index}
+     * @return the metamethod, or null when the value has none
+     */
+    public Object getMetamethod(Object value, String event) {
+        final LuaTable metatable = getMetatable(value);
+        return metatable == null ? null : metatable.rawget(event);
+    }
+
+    /**
+     * Indexes a value, as the expression {@code value[key]} does
+     *
+     * @param value the value to index
+     * @param key   the key
+     * @return the value of the key
+     */
+    public Object index(Object value, Object key) {
+        for (int loop = 0; loop < 100; ++loop) {
+            final Object handler;
+            if (value instanceof LuaTable) {
+                final LuaTable table = (LuaTable) value;
+                final Object result = table.rawget(key);
+                final LuaTable metatable = table.getMetatable();
+                if (result != null || metatable == null || (handler = metatable.rawget("__index")) == null) {
+                    return result;
+                }
+            } else if ((handler = getMetamethod(value, "__index")) == null) {
+                throw new LuaError("attempt to index a " + Lua.typeName(value) + " value");
+            }
+
+            if (handler instanceof LuaFunction) {
+                return first(call(handler, value, key));
+            }
+            value = handler;
+        }
+        throw new LuaError("loop in gettable");
+    }
+
+    private Object indexOperand(CallFrame frame, Object value, Object key, int register) {
+        if (!(value instanceof LuaTable) && getMetamethod(value, "__index") == null) {
+            throw operandError(frame, register, "index", value);
+        }
+        return index(value, key);
+    }
+
+    /**
+     * Assigns to a key of a value, as the statement {@code value[key] = v} does
+     *
+     * @param value    the value to index
+     * @param key      the key
+     * @param newValue the value to assign
+     */
+    public void setIndex(Object value, Object key, Object newValue) {
+        for (int loop = 0; loop < 100; ++loop) {
+            final Object handler;
+            if (value instanceof LuaTable) {
+                final LuaTable table = (LuaTable) value;
+                final LuaTable metatable = table.getMetatable();
+                if (metatable == null || table.rawget(key) != null || (handler = metatable.rawget("__newindex")) == null) {
+                    table.rawset(key, newValue);
+                    return;
+                }
+            } else if ((handler = getMetamethod(value, "__newindex")) == null) {
+                throw new LuaError("attempt to index a " + Lua.typeName(value) + " value");
+            }
+
+            if (handler instanceof LuaFunction) {
+                call(handler, value, key, newValue);
+                return;
+            }
+            value = handler;
+        }
+        throw new LuaError("loop in settable");
+    }
+
+    private static double compute(int op, double x, double y) {
+        switch (op) {
+            case ADD:
+                return x + y;
+            case SUB:
+                return x - y;
+            case MUL:
+                return x * y;
+            case DIV:
+                return x / y;
+            case MOD:
+                return x - Math.floor(x / y) * y;
+            case POW:
+                return Math.pow(x, y);
+            default:
+                return -x;
+        }
+    }
+
+    /**
+     * Performs arithmetic on operands that are not both numbers; coercing strings, or calling
+     * a metamethod
+     */
+    private Object arithSlow(CallFrame frame, int i, Object rb, Object rc) {
+        final int op = getOpcode(i);
+        final Double x = Lua.toNumber(rb);
+        final Double y = Lua.toNumber(rc);
+        if (x != null && y != null) {
+            return Lua.valueOf(compute(op, x, y));
+        }
+
+        final String event = op == UNM ? "__unm" : ARITH_EVENTS[op - ADD];
+        Object handler = getMetamethod(rb, event);
+        if (handler == null) {
+            handler = getMetamethod(rc, event);
+        }
+        if (handler != null) {
+            return first(call(handler, rb, rc));
+        }
+        // blame the first operand that is not a number
+        final boolean first = x == null;
+        final int register = op == UNM ? getB(i) : first ? getB(i) : getC(i);
+        throw operandError(frame, register, "perform arithmetic on", first ? rb : rc);
+    }
+
+    /**
+     * Performs arithmetic on two values, as the machine does, for use by libraries
+     *
+     * @param op    the opcode, such as {@link Opcodes#ADD}
+     * @param left  the left operand
+     * @param right the right operand
+     * @return the result
+     */
+    public Object arith(int op, Object left, Object right) {
+        final Double x = Lua.toNumber(left);
+        final Double y = Lua.toNumber(right);
+        if (x != null && y != null) {
+            return Lua.valueOf(compute(op, x, y));
+        }
+        final String event = op == UNM ? "__unm" : ARITH_EVENTS[op - ADD];
+        Object handler = getMetamethod(left, event);
+        if (handler == null) {
+            handler = getMetamethod(right, event);
+        }
+        if (handler == null) {
+            throw new LuaError("attempt to perform arithmetic on a " + Lua.typeName(x == null ? left : right) + " value");
+        }
+        return first(call(handler, left, right));
+    }
+
+    private Object concat(CallFrame frame, Coroutine co, int from, int to) {
+        final Object[] stack = co.stack;
+        boolean strings = true;
+        for (int r = from; r <= to && strings; ++r) {
+            strings = stack[r] instanceof String || stack[r] instanceof Double;
+        }
+        if (strings) {
+            if (from + 1 == to) {
+                return Lua.toConcatString(stack[from]).concat(Lua.toConcatString(stack[to]));
+            }
+            final StringBuilder builder = new StringBuilder();
+            for (int r = from; r <= to; ++r) {
+                builder.append(Lua.toConcatString(stack[r]));
+            }
+            return builder.toString();
+        }
+
+        // right to left a pair at a time, as a __concat handler may be involved
+        Object result = stack[to];
+        for (int r = to - 1; r >= from; --r) {
+            final Object left = co.stack[r];
+            final String l = Lua.toConcatString(left);
+            final String rs = Lua.toConcatString(result);
+            if (l != null && rs != null) {
+                result = l.concat(rs);
+                continue;
+            }
+            Object handler = getMetamethod(left, "__concat");
+            if (handler == null) {
+                handler = getMetamethod(result, "__concat");
+            }
+            if (handler == null) {
+                final boolean blameLeft = l == null;
+                final int register = blameLeft ? r - frame.base : (r == to - 1 ? to - frame.base : -1);
+                throw operandError(frame, register < 0 ? BITRK : register, "concatenate", blameLeft ? left : result);
+            }
+            result = first(call(handler, left, result));
+        }
+        return result;
+    }
+
+    /**
+     * Compares two values for equality, as the {@code ==} operator does
+     *
+     * @param a the first value
+     * @param b the second value
+     * @return whether the values are equal
+     */
+    public boolean equals(Object a, Object b) {
+        if (Lua.rawEquals(a, b)) {
+            return true;
+        } else if (!(a instanceof LuaTable) || !(b instanceof LuaTable)) {
+            return false;
+        }
+        final Object handler = getComparisonHandler(a, b, "__eq");
+        return handler != null && Lua.isTruthy(first(call(handler, a, b)));
+    }
+
+    /**
+     * Compares two values, as the {@code <} operator does
+     *
+     * @param a the first value
+     * @param b the second value
+     * @return whether the first value is less than the second
+     */
+    public boolean lessThan(Object a, Object b) {
+        if (a instanceof Double && b instanceof Double) {
+            return (Double) a < (Double) b;
+        } else if (a instanceof String && b instanceof String) {
+            return ((String) a).compareTo((String) b) < 0;
+        }
+        final Object handler = getComparisonHandler(a, b, "__lt");
+        if (handler == null) {
+            throw compareError(a, b);
+        }
+        return Lua.isTruthy(first(call(handler, a, b)));
+    }
+
+    /**
+     * Compares two values, as the {@code <=} operator does
+     *
+     * @param a the first value
+     * @param b the second value
+     * @return whether the first value is less than or equal to the second
+     */
+    public boolean lessEqual(Object a, Object b) {
+        if (a instanceof Double && b instanceof Double) {
+            return (Double) a <= (Double) b;
+        } else if (a instanceof String && b instanceof String) {
+            return ((String) a).compareTo((String) b) <= 0;
+        }
+        Object handler = getComparisonHandler(a, b, "__le");
+        if (handler != null) {
+            return Lua.isTruthy(first(call(handler, a, b)));
+        }
+        handler = getComparisonHandler(b, a, "__lt");
+        if (handler == null) {
+            throw compareError(a, b);
+        }
+        return !Lua.isTruthy(first(call(handler, b, a)));
+    }
+
+    private Object getComparisonHandler(Object a, Object b, String event) {
+        if (!Lua.typeName(a).equals(Lua.typeName(b))) {
+            return null;
+        }
+        final Object handler = getMetamethod(a, event);
+        return handler != null && Lua.rawEquals(handler, getMetamethod(b, event)) ? handler : null;
+    }
+
+    private static LuaError compareError(Object a, Object b) {
+        final String x = Lua.typeName(a);
+        final String y = Lua.typeName(b);
+        return new LuaError(x.equals(y) ? "attempt to compare two " + x + " values" : "attempt to compare " + x + " with " + y);
+    }
+
+    /**
+     * Converts a value to a string, as {@code tostring} does
+     *
+     * @param value the value
+     * @return the string
+     */
+    public String toString(Object value) {
+        final Object handler = getMetamethod(value, "__tostring");
+        if (handler != null) {
+            final Object result = first(call(handler, value));
+            if (!(result instanceof String) && !(result instanceof Double)) {
+                throw new LuaError("'__tostring' must return a string");
+            }
+            return Lua.toStringRaw(result);
+        }
+        return Lua.toStringRaw(value);
+    }
+
+    private static Object first(Object[] values) {
+        return values.length == 0 ? null : values[0];
+    }
+}
@@ -0,0 +1,322 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua;
+
+/**
+ * A Lua table, made up of an array part holding the values of the keys 1 to n and an open
+ * addressed hash part holding everything else.
+ * <p/>
+ * Assigning nil to a key in the hash part leaves the key in place, so that {@code next} can
+ * continue past it while a script clears a table during traversal; such keys are only dropped
+ * when the hash part is next resized.
+ *
+ * @author theoriginalbit
+ */
+public final class LuaTable {
+    private static final Object[] EMPTY = new Object[0];
+    private static final Double ZERO = 0.0;
+    private Object[] array = EMPTY;
+    private Object[] keys = EMPTY;
+    private Object[] values = EMPTY;
+    /**
+     * The number of hash slots holding a key, including keys whose value has been cleared
+     */
+    private int hashUsed;
+    private LuaTable metatable;
+
+    public LuaTable() {
+        // NO-OP
+    }
+
+    /**
+     * Constructs a table with room for the supplied number of entries
+     *
+     * @param arraySize the expected number of sequential entries
+     * @param hashSize  the expected number of other entries
+     */
+    public LuaTable(int arraySize, int hashSize) {
+        if (arraySize > 0) {
+            array = new Object[arraySize];
+        }
+        if (hashSize > 0) {
+            keys = new Object[capacityFor(hashSize)];
+            values = new Object[keys.length];
+        }
+    }
+
+    public LuaTable getMetatable() {
+        return metatable;
+    }
+
+    public void setMetatable(LuaTable table) {
+        metatable = table;
+    }
+
+    /**
+     * @param key the key
+     * @return the value of the key, without invoking {@code __index}
+     */
+    public Object rawget(Object key) {
+        if (key instanceof Double) {
+            final double d = (Double) key;
+            final int i = (int) d;
+            if (i == d) {
+                if (i >= 1 && i <= array.length) {
+                    return array[i - 1];
+                } else if (i == 0) {
+                    key = ZERO;
+                }
+            }
+        }
+        return hashGet(key);
+    }
+
+    /**
+     * @param index the integer key
+     * @return the value of the key, without invoking {@code __index}
+     */
+    public Object rawget(int index) {
+        if (index >= 1 && index <= array.length) {
+            return array[index - 1];
+        }
+        return hashPart() ? hashGet(Lua.valueOf(index)) : null;
+    }
+
+    /**
+     * Sets the value of a key, without invoking {@code __newindex}
+     *
+     * @param key   the key, which must not be nil or NaN
+     * @param value the value, nil removes the key
+     */
+    public void rawset(Object key, Object value) {
+        if (key instanceof Double) {
+            final double d = (Double) key;
+            final int i = (int) d;
+            if (i == d) {
+                if (i >= 1) {
+                    rawset(i, value);
+                    return;
+                } else if (i == 0) {
+                    key = ZERO;
+                }
+            } else if (Double.isNaN(d)) {
+                throw new LuaError("table index is NaN");
+            }
+        } else if (key == null) {
+            throw new LuaError("table index is nil");
+        }
+        hashSet(key, value);
+    }
+
+    /**
+     * Sets the value of an integer key, without invoking {@code __newindex}
+     *
+     * @param index the integer key
+     * @param value the value, nil removes the key
+     */
+    public void rawset(int index, Object value) {
+        if (index >= 1 && index <= array.length) {
+            array[index - 1] = value;
+        } else if (index == array.length + 1 && value != null) {
+            growArray();
+            array[index - 1] = value;
+        } else {
+            hashSet(Lua.valueOf(index), value);
+        }
+    }
+
+    /**
+     * @return a border of the table, the value of the {@code #} operator
+     */
+    public int length() {
+        final int n = array.length;
+        if (n > 0 && array[n - 1] == null) {
+            // binary search for a border within the array part
+            int low = 0, high = n;
+            while (high - low > 1) {
+                final int mid = (low + high) >>> 1;
+                if (array[mid - 1] == null) {
+                    high = mid;
+                } else {
+                    low = mid;
+                }
+            }
+            return low;
+        }
+
+        int border = n;
+        if (hashPart()) {
+            while (hashGet(Lua.valueOf(border + 1)) != null) {
+                ++border;
+            }
+        }
+        return border;
+    }
+
+    /**
+     * Finds the entry that follows a key in traversal order, as {@code next} does
+     *
+     * @param key   the previous key, nil to start a traversal
+     * @param entry receives the next key and value
+     * @return whether there was another entry
+     */
+    public boolean next(Object key, Object[] entry) {
+        int slot = 0;
+        if (key != null) {
+            slot = -1;
+            if (key instanceof Double) {
+                final double d = (Double) key;
+                final int i = (int) d;
+                if (i == d && i >= 1 && i <= array.length) {
+                    slot = i;
+                } else if (d == 0) {
+                    key = ZERO;
+                }
+            }
+            if (slot < 0) {
+                final int found = hashPart() ? hashFind(key) : -1;
+                if (found < 0) {
+                    throw new LuaError("invalid key to 'next'");
+                }
+                slot = array.length + found + 1;
+            }
+        }
+
+        for (; slot < array.length; ++slot) {
+            if (array[slot] != null) {
+                entry[0] = Lua.valueOf(slot + 1);
+                entry[1] = array[slot];
+                return true;
+            }
+        }
+        for (int i = slot - array.length; i < keys.length; ++i) {
+            if (values[i] != null) {
+                entry[0] = keys[i];
+                entry[1] = values[i];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hashPart() {
+        return hashUsed > 0;
+    }
+
+    private Object hashGet(Object key) {
+        final int slot = hashFind(key);
+        return slot < 0 ? null : values[slot];
+    }
+
+    private int hashFind(Object key) {
+        if (keys.length == 0) {
+            return -1;
+        }
+        final int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            final Object k = keys[slot];
+            if (k == null) {
+                return -1;
+            } else if (k == key || k.equals(key)) {
+                return slot;
+            }
+        }
+    }
+
+    private void hashSet(Object key, Object value) {
+        final int found = hashFind(key);
+        if (found >= 0) {
+            values[found] = value;
+            return;
+        } else if (value == null) {
+            return;
+        }
+
+        if ((hashUsed + 1) * 4 > keys.length * 3) {
+            resizeHash();
+        }
+        final int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        ++hashUsed;
+    }
+
+    /**
+     * Rebuilds the hash part with room to grow, dropping the keys whose values were cleared
+     */
+    private void resizeHash() {
+        final Object[] oldKeys = keys;
+        final Object[] oldValues = values;
+        int live = 0;
+        for (Object value : oldValues) {
+            if (value != null) {
+                ++live;
+            }
+        }
+
+        keys = new Object[capacityFor(live + 1)];
+        values = new Object[keys.length];
+        hashUsed = 0;
+        final int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldValues[i] != null) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                ++hashUsed;
+            }
+        }
+    }
+
+    /**
+     * Doubles the array part, moving any keys now in its range out of the hash part
+     */
+    private void growArray() {
+        final int oldLength = array.length;
+        final Object[] grown = new Object[Math.max(4, oldLength * 2)];
+        System.arraycopy(array, 0, grown, 0, oldLength);
+        array = grown;
+        if (hashPart()) {
+            for (int i = oldLength; i < grown.length; ++i) {
+                final int slot = hashFind(Lua.valueOf(i + 1));
+                if (slot >= 0) {
+                    grown[i] = values[slot];
+                    values[slot] = null;
+                }
+            }
+        }
+    }
+
+    private static int capacityFor(int entries) {
+        int capacity = 4;
+        while (capacity * 3 < entries * 4) {
+            capacity <<= 1;
+        }
+        return capacity << 1;
+    }
+
+    private static int hash(Object key) {
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua;
+
+/**
+ * The instruction set of the Lua machine, which follows Lua 5.1. {@code R(x)} is a register,
+ * {@code K(x)} a constant and {@code RK(x)} either, a constant when bit 8 of the operand is set.
+ * <p/>
+ * Unlike Lua 5.1 the upvalues of a closure are described by its prototype rather than by pseudo
+ * instructions following {@code CLOSURE}, and generic for loops call their iterator with a
+ * regular {@code CALL} followed by {@code TFORLOOP}.
+ *
+ * @author theoriginalbit
+ */
+public final class Opcodes {
+    /**
+     * R(A) := R(B)
+     */
+    public static final int MOVE = 0;
+    /**
+     * R(A) := K(Bx)
+     */
+    public static final int LOADK = 1;
+    /**
+     * R(A) := (Bool) B; if (C) pc++
+     */
+    public static final int LOADBOOL = 2;
+    /**
+     * R(A) := ... := R(B) := nil
+     */
+    public static final int LOADNIL = 3;
+    /**
+     * R(A) := UpValue[B]
+     */
+    public static final int GETUPVAL = 4;
+    /**
+     * R(A) := Gbl[K(Bx)]
+     */
+    public static final int GETGLOBAL = 5;
+    /**
+     * R(A) := R(B)[RK(C)]
+     */
+    public static final int GETTABLE = 6;
+    /**
+     * Gbl[K(Bx)] := R(A)
+     */
+    public static final int SETGLOBAL = 7;
+    /**
+     * UpValue[B] := R(A)
+     */
+    public static final int SETUPVAL = 8;
+    /**
+     * R(A)[RK(B)] := RK(C)
+     */
+    public static final int SETTABLE = 9;
+    /**
+     * R(A) := {} with B array and C hash entries expected
+     */
+    public static final int NEWTABLE = 10;
+    /**
+     * R(A+1) := R(B); R(A) := R(B)[RK(C)]
+     */
+    public static final int SELF = 11;
+    /**
+     * R(A) := RK(B) op RK(C)
+     */
+    public static final int ADD = 12, SUB = 13, MUL = 14, DIV = 15, MOD = 16, POW = 17;
+    /**
+     * R(A) := op R(B)
+     */
+    public static final int UNM = 18, NOT = 19, LEN = 20;
+    /**
+     * R(A) := R(B) .. ... .. R(C)
+     */
+    public static final int CONCAT = 21;
+    /**
+     * pc += sBx
+     */
+    public static final int JMP = 22;
+    /**
+     * if ((RK(B) op RK(C)) ~= A) then pc++
+     */
+    public static final int EQ = 23, LT = 24, LE = 25;
+    /**
+     * if not (R(A) <=> C) then pc++
+     */
+    public static final int TEST = 26;
+    /**
+     * if (R(B) <=> C) then R(A) := R(B) else pc++
+     */
+    public static final int TESTSET = 27;
+    /**
+     * R(A), ... ,R(A+C-2) := R(A)(R(A+1), ... ,R(A+B-1))
+     */
+    public static final int CALL = 28;
+    /**
+     * return R(A)(R(A+1), ... ,R(A+B-1))
+     */
+    public static final int TAILCALL = 29;
+    /**
+     * return R(A), ... ,R(A+B-2)
+     */
+    public static final int RETURN = 30;
+    /**
+     * R(A) += R(A+2); if R(A) <?= R(A+1) then { pc += sBx; R(A+3) = R(A) }
+     */
+    public static final int FORLOOP = 31;
+    /**
+     * R(A) -= R(A+2); pc += sBx
+     */
+    public static final int FORPREP = 32;
+    /**
+     * if R(A+1) ~= nil then { R(A) := R(A+1); pc += sBx }
+     */
+    public static final int TFORLOOP = 33;
+    /**
+     * R(A)[(C-1)*FPF+i] := R(A+i), 1 <= i <= B
+     */
+    public static final int SETLIST = 34;
+    /**
+     * close all upvalues >= R(A)
+     */
+    public static final int CLOSE = 35;
+    /**
+     * R(A) := closure(KPROTO[Bx])
+     */
+    public static final int CLOSURE = 36;
+    /**
+     * R(A), R(A+1), ..., R(A+B-2) = vararg
+     */
+    public static final int VARARG = 37;
+
+    public static final int POS_A = 6, POS_C = 14, POS_B = 23, POS_BX = 14;
+    public static final int MAX_A = 0xFF, MAX_B = 0x1FF, MAX_C = 0x1FF;
+    public static final int MAX_BX = (1 << 18) - 1;
+    public static final int MAX_SBX = MAX_BX >> 1;
+    /**
+     * The bit of a B or C operand that marks it as a constant index
+     */
+    public static final int BITRK = 1 << 8;
+    public static final int MAX_INDEX_RK = BITRK - 1;
+    /**
+     * The number of list items a table constructor accumulates before storing them
+     */
+    public static final int FIELDS_PER_FLUSH = 50;
+
+    private Opcodes() {
+        // NO-OP
+    }
+
+    public static int createABC(int op, int a, int b, int c) {
+        return op | (a << POS_A) | (b << POS_B) | (c << POS_C);
+    }
+
+    public static int createABx(int op, int a, int bx) {
+        return op | (a << POS_A) | (bx << POS_BX);
+    }
+
+    public static int createAsBx(int op, int a, int sbx) {
+        return createABx(op, a, sbx + MAX_SBX);
+    }
+
+    public static int getOpcode(int i) {
+        return i & 0x3F;
+    }
+
+    public static int getA(int i) {
+        return (i >>> POS_A) & MAX_A;
+    }
+
+    public static int getB(int i) {
+        return i >>> POS_B;
+    }
+
+    public static int getC(int i) {
+        return (i >>> POS_C) & MAX_C;
+    }
+
+    public static int getBx(int i) {
+        return i >>> POS_BX;
+    }
+
+    public static int getSBx(int i) {
+        return (i >>> POS_BX) - MAX_SBX;
+    }
+
+    public static int setSBx(int i, int sbx) {
+        return (i & ((1 << POS_BX) - 1)) | ((sbx + MAX_SBX) << POS_BX);
+    }
+
+    public static boolean isConstant(int rk) {
+        return (rk & BITRK) != 0;
+    }
+
+    public static int asConstant(int index) {
+        return index | BITRK;
+    }
+}
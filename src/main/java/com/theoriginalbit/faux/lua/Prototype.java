@@ -0,0 +1,169 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua;
+
+/**
+ * A compiled Lua function. Prototypes are immutable once compiled, so a single prototype is
+ * shared by every closure created from it, on every machine.
+ * <p/>
+ * Instructions use the Lua 5.1 layout; a 6 bit opcode followed by an 8 bit A operand and either
+ * 9 bit C and B operands, or an 18 bit Bx operand. See {@link Opcodes}.
+ *
+ * @author theoriginalbit
+ */
+public final class Prototype {
+    final int[] code;
+    final Object[] constants;
+    final Prototype[] prototypes;
+    final int[] lineInfo;
+    final boolean[] upvalueInStack;
+    final int[] upvalueIndex;
+    final String[] upvalueNames;
+    final String[] localNames;
+    final int[] localStart;
+    final int[] localEnd;
+    final int numParams;
+    final boolean vararg;
+    final int maxStack;
+    final String source;
+    final int lineDefined;
+    final int lastLineDefined;
+    /**
+     * The key the {@link PrototypeCache} shares this prototype by, set before it is shared
+     */
+    String cacheKey;
+
+    /**
+     * Constructs a prototype, the arrays are not copied and must not be modified afterwards
+     *
+     * @param code            the instructions
+     * @param constants       the constants; nil, booleans, numbers and strings
+     * @param prototypes      the functions defined within this function
+     * @param lineInfo        the source line of each instruction
+     * @param upvalueInStack  whether each upvalue is a local of the enclosing function, rather
+     *                        than one of its upvalues
+     * @param upvalueIndex    the register or upvalue index of each upvalue in the enclosing
+     *                        function
+     * @param upvalueNames    the name of each upvalue
+     * @param localNames      the name of each local variable
+     * @param localStart      the first instruction each local variable is in scope for
+     * @param localEnd        the instruction each local variable goes out of scope at
+     * @param numParams       the number of fixed parameters
+     * @param vararg          whether the function accepts varargs
+     * @param maxStack        the number of registers the function uses
+     * @param source          the chunk name the function was compiled from
+     * @param lineDefined     the line the function starts on, 0 for a main chunk
+     * @param lastLineDefined the line the function ends on
+     */
+    public Prototype(int[] code, Object[] constants, Prototype[] prototypes, int[] lineInfo,
+                     boolean[] upvalueInStack, int[] upvalueIndex, String[] upvalueNames,
+                     String[] localNames, int[] localStart, int[] localEnd,
+                     int numParams, boolean vararg, int maxStack, String source, int lineDefined, int lastLineDefined) {
+        this.code = code;
+        this.constants = constants;
+        this.prototypes = prototypes;
+        this.lineInfo = lineInfo;
+        this.upvalueInStack = upvalueInStack;
+        this.upvalueIndex = upvalueIndex;
+        this.upvalueNames = upvalueNames;
+        this.localNames = localNames;
+        this.localStart = localStart;
+        this.localEnd = localEnd;
+        this.numParams = numParams;
+        this.vararg = vararg;
+        this.maxStack = maxStack;
+        this.source = source;
+        this.lineDefined = lineDefined;
+        this.lastLineDefined = lastLineDefined;
+    }
+
+    public int[] getCode() {
+        return code.clone();
+    }
+
+    public Object[] getConstants() {
+        return constants.clone();
+    }
+
+    public Prototype[] getPrototypes() {
+        return prototypes.clone();
+    }
+
+    public int getUpvalueCount() {
+        return upvalueNames.length;
+    }
+
+    public int getNumParams() {
+        return numParams;
+    }
+
+    public boolean isVararg() {
+        return vararg;
+    }
+
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return the chunk name as shown in error messages, without a leading {@code @} or {@code =}
+     */
+    public String getShortSource() {
+        return getShortSource(source);
+    }
+
+    /**
+     * @param chunkName the name of a chunk
+     * @return the name as shown in error messages; without a leading {@code @} or {@code =}, or
+     * for code loaded from a string, the first line of the string
+     */
+    public static String getShortSource(String chunkName) {
+        if (chunkName.startsWith("@") || chunkName.startsWith("=")) {
+            return chunkName.substring(1);
+        }
+        final int newline = chunkName.indexOf('\n');
+        final String line = newline < 0 ? chunkName : chunkName.substring(0, newline);
+        return line.length() > 40 || newline >= 0 ? "[string \"" + line.substring(0, Math.min(line.length(), 40)) + "...\"]" : "[string \"" + line + "\"]";
+    }
+
+    public int getLineDefined() {
+        return lineDefined;
+    }
+
+    public int getLastLineDefined() {
+        return lastLineDefined;
+    }
+
+    /**
+     * Finds the name of the local variable held in a register
+     *
+     * @param register the register
+     * @param pc       the instruction the register is being read at
+     * @return the name of the local variable, or null when the register is a temporary
+     */
+    String getLocalName(int register, int pc) {
+        for (int i = 0; i < localNames.length && localStart[i] <= pc; ++i) {
+            if (pc < localEnd[i] && register-- == 0) {
+                return localNames[i];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,574 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua;
+
+import com.theoriginalbit.faux.log.Log;
+import com.theoriginalbit.faux.lua.compiler.LuaCompiler;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shares compiled prototypes between every machine. As prototypes are immutable, every device
+ * loading the same chunk runs the same prototype, so its code and constants are only held once
+ * and the chunk is only lexed and parsed once.
+ * <p/>
+ * Chunks are keyed by a hash of the compiler version and their name and source. Prototypes are
+ * held in memory by soft references, so the collector may reclaim ones no device is using. The
+ * BIOS and the chunks loaded from the ROM are also written to the cache directory so that they
+ * survive a restart of the emulator; user programs and code built at runtime by
+ * {@code loadstring} are only cached in memory, as there is no end to how many of them there are.
+ * Prototypes restored from a saved machine are shared in the same way, by the key of the chunk
+ * they were compiled from, so a restored machine and a new one running the same code share it too.
+ *
+ * @author theoriginalbit
+ */
+public final class PrototypeCache {
+    /**
+     * Identifies a cache file, and the version of its format
+     */
+    private static final int MAGIC = 0x46584c43, VERSION = 1;
+    /**
+     * The most files the cache directory holds, in case a program names its chunks as if they
+     * were in the ROM
+     */
+    private static final int MAX_FILES = 4096;
+    /**
+     * The largest cache file read, anything bigger is not one that was written
+     */
+    private static final long MAX_FILE_LENGTH = 16 * 1024 * 1024;
+    private static final int TYPE_NIL = 0, TYPE_FALSE = 1, TYPE_TRUE = 2, TYPE_NUMBER = 3, TYPE_STRING = 4;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final PrototypeCache INSTANCE = new PrototypeCache();
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final ReferenceQueue<Prototype> collected = new ReferenceQueue<Prototype>();
+    private volatile File directory;
+    /**
+     * The prototypes serialised while machines are being saved, so that saving many machines
+     * running the same code only serialises it once, or null when none are being saved
+     */
+    private Map<Prototype, byte[]> serialised;
+    private int saving;
+
+    private PrototypeCache() {
+    }
+
+    /**
+     * @return the cache shared by every machine
+     */
+    public static PrototypeCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sets where compiled chunks are persisted, or null to only cache them in memory
+     *
+     * @param dir the cache directory, created when first written to
+     */
+    public void setDirectory(File dir) {
+        directory = dir;
+    }
+
+    /**
+     * @return the number of prototypes currently held in memory
+     */
+    public int size() {
+        expunge();
+        return entries.size();
+    }
+
+    /**
+     * Gets the compiled prototype of a chunk, from memory, then from disk, and otherwise by
+     * compiling it
+     *
+     * @param source    the source code
+     * @param chunkName the name of the chunk
+     * @return the prototype of the chunk's main function
+     * @throws LuaError when the source has a syntax error
+     */
+    public Prototype get(String source, String chunkName) {
+        expunge();
+        final String key = hash(source, chunkName);
+        final Entry entry = entries.get(key);
+        Prototype prototype = entry != null ? entry.get() : null;
+        if (prototype != null) {
+            return prototype;
+        }
+
+        final File file = getFile(key, chunkName);
+        if (file != null && file.isFile()) {
+            prototype = read(file);
+        }
+        if (prototype == null) {
+            prototype = LuaCompiler.compile(source, chunkName);
+            if (file != null) {
+                write(file, prototype);
+            }
+        }
+        return share(key, prototype);
+    }
+
+    /**
+     * Discards the prototypes held in memory, the cache files are kept
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    private File getFile(String key, String chunkName) {
+        final File dir = directory;
+        if (dir == null || !(chunkName.equals("@bios") || chunkName.startsWith("@rom/"))) {
+            return null;
+        }
+        return new File(dir, key + ".fxlc");
+    }
+
+    /**
+     * Removes the entries whose prototypes have been collected
+     */
+    private void expunge() {
+        Entry entry;
+        while ((entry = (Entry) collected.poll()) != null) {
+            entries.remove(entry.key, entry);
+        }
+    }
+
+    /**
+     * Starts saving machines, from now until the matching {@link #endSaving()} each prototype is
+     * only serialised once however many machines run it
+     */
+    public synchronized void beginSaving() {
+        if (saving++ == 0) {
+            serialised = new IdentityHashMap<Prototype, byte[]>();
+        }
+    }
+
+    /**
+     * Finishes saving machines, forgetting the serialised prototypes
+     */
+    public synchronized void endSaving() {
+        if (saving > 0 && --saving == 0) {
+            serialised = null;
+        }
+    }
+
+    /**
+     * Serialises a prototype with its key, for saving the state of a machine
+     *
+     * @param prototype the prototype
+     * @return the serialised prototype
+     */
+    synchronized byte[] toBytes(Prototype prototype) {
+        byte[] bytes = serialised != null ? serialised.get(prototype) : null;
+        if (bytes == null) {
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try {
+                final DataOutputStream out = new DataOutputStream(buffer);
+                writeString(out, prototype.cacheKey != null ? prototype.cacheKey : "");
+                writePrototype(out, prototype);
+                out.close();
+            } catch (IOException e) {
+                // nothing in memory can fail to be written
+                throw new IllegalStateException(e);
+            }
+            bytes = buffer.toByteArray();
+            if (serialised != null) {
+                serialised.put(prototype, bytes);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets the prototype serialised by {@link #toBytes(Prototype)}. When the chunk it was
+     * compiled from is already loaded, by any machine, that prototype is used instead.
+     *
+     * @param bytes the serialised prototype
+     * @return the prototype
+     * @throws IOException when the bytes are not a serialised prototype
+     */
+    Prototype fromBytes(byte[] bytes) throws IOException {
+        expunge();
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        String key = readString(in);
+        if (!key.isEmpty()) {
+            final Prototype shared = find(key);
+            if (shared != null) {
+                return shared;
+            }
+        } else {
+            key = "snapshot:" + hash(bytes);
+        }
+        return share(key, readPrototype(in, null));
+    }
+
+    /**
+     * Shares a prototype, keying the functions defined within it by their position in it
+     *
+     * @param key       the key of the prototype
+     * @param prototype the prototype
+     * @return the prototype, or the copy shared with the same key
+     */
+    private Prototype share(String key, Prototype prototype) {
+        setKey(prototype, key);
+
+        // another machine may have loaded the same chunk meanwhile, in which case use its copy
+        final Entry created = new Entry(key, prototype, collected);
+        while (true) {
+            final Entry existing = entries.putIfAbsent(key, created);
+            if (existing == null) {
+                return prototype;
+            }
+            final Prototype shared = existing.get();
+            if (shared != null) {
+                return shared;
+            }
+            entries.remove(key, existing);
+        }
+    }
+
+    private static void setKey(Prototype prototype, String key) {
+        prototype.cacheKey = key;
+        for (int i = 0; i < prototype.prototypes.length; ++i) {
+            setKey(prototype.prototypes[i], key + "/" + i);
+        }
+    }
+
+    /**
+     * Finds a shared prototype, a function defined within a chunk is found in the chunk
+     *
+     * @param key the key of the prototype
+     * @return the prototype, or null when it is not in memory
+     * @throws IOException when the key is not one this cache made
+     */
+    private Prototype find(String key) throws IOException {
+        Entry entry = entries.get(key);
+        Prototype prototype = entry != null ? entry.get() : null;
+        final String[] path = key.split("/");
+        if (prototype != null || path.length == 1) {
+            return prototype;
+        }
+
+        entry = entries.get(path[0]);
+        prototype = entry != null ? entry.get() : null;
+        try {
+            for (int i = 1; i < path.length && prototype != null; ++i) {
+                final int index = Integer.parseInt(path[i]);
+                if (index < 0 || index >= prototype.prototypes.length) {
+                    throw new IOException("Invalid prototype " + key);
+                }
+                prototype = prototype.prototypes[index];
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid prototype " + key);
+        }
+        return prototype;
+    }
+
+    private static String hash(String source, String chunkName) {
+        final byte[] version = {(byte) (LuaCompiler.VERSION >>> 24), (byte) (LuaCompiler.VERSION >>> 16),
+                (byte) (LuaCompiler.VERSION >>> 8), (byte) LuaCompiler.VERSION};
+        return hash(version, chunkName.getBytes(UTF_8), new byte[1], source.getBytes(UTF_8));
+    }
+
+    private static String hash(byte[]... parts) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (byte[] part : parts) {
+                digest.update(part);
+            }
+            final byte[] bytes = digest.digest();
+            final char[] hex = new char[bytes.length * 2];
+            for (int i = 0; i < bytes.length; ++i) {
+                hex[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+                hex[i * 2 + 1] = HEX[bytes[i] & 0xF];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads a cached prototype. A file that cannot be read is deleted, so that it is replaced
+     * by the chunk compiled instead.
+     *
+     * @param file the cache file
+     * @return the prototype, or null when the file is unreadable or in an old format
+     */
+    private static Prototype read(File file) {
+        try {
+            final long length = file.length();
+            if (length > MAX_FILE_LENGTH) {
+                throw new IOException("File is " + length + " bytes");
+            }
+            // read the whole file so every length in it can be checked against what remains
+            final byte[] bytes = new byte[(int) length];
+            final DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                in.readFully(bytes);
+            } finally {
+                in.close();
+            }
+
+            final DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+                throw new IOException("Unknown format");
+            }
+            return readPrototype(data, null);
+        } catch (Exception e) {
+            // a damaged file can hold anything, so whatever goes wrong it is only a miss
+            Log.warn("Failed to read cached chunk %s: %s", file.getName(), e.toString());
+            if (!file.delete()) {
+                Log.warn("Failed to delete cached chunk %s", file.getName());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Writes a prototype to the cache, through a temporary file so that a partially written file
+     * is never read
+     *
+     * @param file      the cache file
+     * @param prototype the prototype
+     */
+    private static void write(File file, Prototype prototype) {
+        final File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.warn("Failed to create the chunk cache %s", dir);
+            return;
+        }
+        final String[] files = dir.list();
+        if (files != null && files.length >= MAX_FILES) {
+            Log.debug("The chunk cache %s is full, %s is not cached", dir, prototype.source);
+            return;
+        }
+
+        File temp = null;
+        try {
+            temp = File.createTempFile(file.getName(), ".tmp", dir);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writePrototype(out, prototype);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                // another emulator wrote the same chunk first, which is just as good
+                temp.delete();
+            }
+        } catch (IOException e) {
+            Log.warn("Failed to cache chunk %s: %s", prototype.source, e.getMessage());
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    private static void writePrototype(DataOutputStream out, Prototype prototype) throws IOException {
+        writeString(out, prototype.source);
+        out.writeInt(prototype.lineDefined);
+        out.writeInt(prototype.lastLineDefined);
+        out.writeByte(prototype.numParams);
+        out.writeBoolean(prototype.vararg);
+        out.writeShort(prototype.maxStack);
+        writeInts(out, prototype.code);
+        writeInts(out, prototype.lineInfo);
+
+        out.writeInt(prototype.constants.length);
+        for (Object constant : prototype.constants) {
+            if (constant == null) {
+                out.writeByte(TYPE_NIL);
+            } else if (constant instanceof Boolean) {
+                out.writeByte((Boolean) constant ? TYPE_TRUE : TYPE_FALSE);
+            } else if (constant instanceof Double) {
+                out.writeByte(TYPE_NUMBER);
+                out.writeDouble((Double) constant);
+            } else {
+                out.writeByte(TYPE_STRING);
+                writeString(out, (String) constant);
+            }
+        }
+
+        out.writeInt(prototype.prototypes.length);
+        for (Prototype child : prototype.prototypes) {
+            writePrototype(out, child);
+        }
+
+        out.writeInt(prototype.upvalueNames.length);
+        for (int i = 0; i < prototype.upvalueNames.length; ++i) {
+            out.writeBoolean(prototype.upvalueInStack[i]);
+            out.writeShort(prototype.upvalueIndex[i]);
+            writeString(out, prototype.upvalueNames[i]);
+        }
+
+        out.writeInt(prototype.localNames.length);
+        for (int i = 0; i < prototype.localNames.length; ++i) {
+            writeString(out, prototype.localNames[i]);
+            out.writeInt(prototype.localStart[i]);
+            out.writeInt(prototype.localEnd[i]);
+        }
+    }
+
+    /**
+     * @param in           the stream
+     * @param parentSource the source of the enclosing function, which is shared rather than
+     *                     duplicated, or null for a main function
+     * @return the prototype
+     * @throws IOException when the stream cannot be read
+     */
+    private static Prototype readPrototype(DataInputStream in, String parentSource) throws IOException {
+        String source = readString(in);
+        if (source.equals(parentSource)) {
+            source = parentSource;
+        }
+        final int lineDefined = in.readInt();
+        final int lastLineDefined = in.readInt();
+        final int numParams = in.readUnsignedByte();
+        final boolean vararg = in.readBoolean();
+        final int maxStack = in.readUnsignedShort();
+        final int[] code = readInts(in);
+        final int[] lineInfo = readInts(in);
+
+        final Object[] constants = new Object[readLength(in)];
+        for (int i = 0; i < constants.length; ++i) {
+            final int type = in.readUnsignedByte();
+            switch (type) {
+                case TYPE_NIL:
+                    break;
+                case TYPE_FALSE:
+                    constants[i] = Boolean.FALSE;
+                    break;
+                case TYPE_TRUE:
+                    constants[i] = Boolean.TRUE;
+                    break;
+                case TYPE_NUMBER:
+                    constants[i] = Lua.valueOf(in.readDouble());
+                    break;
+                case TYPE_STRING:
+                    constants[i] = readString(in);
+                    break;
+                default:
+                    throw new IOException("Unknown constant type " + type);
+            }
+        }
+
+        final Prototype[] prototypes = new Prototype[readLength(in)];
+        for (int i = 0; i < prototypes.length; ++i) {
+            prototypes[i] = readPrototype(in, source);
+        }
+
+        final int upvalues = readLength(in);
+        final boolean[] upvalueInStack = new boolean[upvalues];
+        final int[] upvalueIndex = new int[upvalues];
+        final String[] upvalueNames = new String[upvalues];
+        for (int i = 0; i < upvalues; ++i) {
+            upvalueInStack[i] = in.readBoolean();
+            upvalueIndex[i] = in.readUnsignedShort();
+            upvalueNames[i] = readString(in);
+        }
+
+        final int locals = readLength(in);
+        final String[] localNames = new String[locals];
+        final int[] localStart = new int[locals];
+        final int[] localEnd = new int[locals];
+        for (int i = 0; i < locals; ++i) {
+            localNames[i] = readString(in);
+            localStart[i] = in.readInt();
+            localEnd[i] = in.readInt();
+        }
+
+        return new Prototype(code, constants, prototypes, lineInfo, upvalueInStack, upvalueIndex, upvalueNames,
+                localNames, localStart, localEnd, numParams, vararg, maxStack, source, lineDefined, lastLineDefined);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        final int[] values = new int[readLength(in)];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    /**
+     * Reads the length of an array, which cannot be more than the bytes left as every element
+     * takes at least one
+     *
+     * @param in the stream, which must be read from memory so that what remains is known
+     * @return the length
+     * @throws IOException when the length is impossible
+     */
+    private static int readLength(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid length " + length);
+        }
+        return length;
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        final byte[] bytes = str.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * A soft reference to a prototype which remembers its key, so that it can be removed once
+     * the prototype is collected
+     */
+    private static final class Entry extends SoftReference<Prototype> {
+        private final String key;
+
+        private Entry(String key, Prototype prototype, ReferenceQueue<Prototype> queue) {
+            super(prototype, queue);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua;
+
+/**
+ * A local variable captured by a closure. While the function that declared the variable is
+ * running the upvalue is open and refers to the variable's stack slot, once the variable goes
+ * out of scope the upvalue is closed and holds the value itself.
+ *
+ * @author theoriginalbit
+ */
+final class UpValue {
+    Coroutine coroutine;
+    int index;
+    Object value;
+    /**
+     * The next open upvalue of the coroutine, in descending stack order
+     */
+    UpValue next;
+
+    UpValue(Coroutine owner, int slot) {
+        coroutine = owner;
+        index = slot;
+    }
+
+    UpValue(Object closedValue) {
+        value = closedValue;
+    }
+
+    Object get() {
+        return coroutine != null ? coroutine.stack[index] : value;
+    }
+
+    void set(Object v) {
+        if (coroutine != null) {
+            coroutine.stack[index] = v;
+        } else {
+            value = v;
+        }
+    }
+
+    void close() {
+        value = coroutine.stack[index];
+        coroutine = null;
+    }
+}
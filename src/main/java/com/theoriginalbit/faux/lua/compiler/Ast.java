@@ -0,0 +1,343 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua.compiler;
+
+import java.util.List;
+
+/**
+ * The syntax tree the {@link Parser} produces and the {@link CodeGenerator} compiles
+ *
+ * @author theoriginalbit
+ */
+final class Ast {
+    static final int ADD = 0, SUB = 1, MUL = 2, DIV = 3, MOD = 4, POW = 5, CONCAT = 6,
+            EQ = 7, NE = 8, LT = 9, LE = 10, GT = 11, GE = 12, AND = 13, OR = 14;
+    static final int NEG = 0, NOT = 1, LEN = 2;
+
+    private Ast() {
+    }
+
+    abstract static class Node {
+        final int line;
+
+        Node(int line) {
+            this.line = line;
+        }
+    }
+
+    /*
+     * ============================================================================================
+     *                                      EXPRESSIONS
+     * ============================================================================================
+     */
+
+    abstract static class Expr extends Node {
+        Expr(int line) {
+            super(line);
+        }
+
+        /**
+         * @return whether the expression may produce any number of values
+         */
+        boolean isMultiple() {
+            return false;
+        }
+    }
+
+    static final class Constant extends Expr {
+        /**
+         * A nil, Boolean, Double or String
+         */
+        final Object value;
+
+        Constant(int line, Object value) {
+            super(line);
+            this.value = value;
+        }
+    }
+
+    static final class Vararg extends Expr {
+        Vararg(int line) {
+            super(line);
+        }
+
+        @Override
+        boolean isMultiple() {
+            return true;
+        }
+    }
+
+    static final class Name extends Expr {
+        final String name;
+
+        Name(int line, String name) {
+            super(line);
+            this.name = name;
+        }
+    }
+
+    static final class Index extends Expr {
+        final Expr object;
+        final Expr key;
+
+        Index(int line, Expr object, Expr key) {
+            super(line);
+            this.object = object;
+            this.key = key;
+        }
+    }
+
+    static final class Call extends Expr {
+        final Expr function;
+        /**
+         * The method name for a call such as {@code a:b()}, otherwise null
+         */
+        final String method;
+        final List<Expr> args;
+
+        Call(int line, Expr function, String method, List<Expr> args) {
+            super(line);
+            this.function = function;
+            this.method = method;
+            this.args = args;
+        }
+
+        @Override
+        boolean isMultiple() {
+            return true;
+        }
+    }
+
+    static final class Function extends Expr {
+        final FunctionBody body;
+
+        Function(int line, FunctionBody body) {
+            super(line);
+            this.body = body;
+        }
+    }
+
+    static final class Table extends Expr {
+        /**
+         * The keys of each field, null for a positional field
+         */
+        final List<Expr> keys;
+        final List<Expr> values;
+
+        Table(int line, List<Expr> keys, List<Expr> values) {
+            super(line);
+            this.keys = keys;
+            this.values = values;
+        }
+    }
+
+    static final class Binary extends Expr {
+        final int op;
+        final Expr left, right;
+
+        Binary(int line, int op, Expr left, Expr right) {
+            super(line);
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    static final class Unary extends Expr {
+        final int op;
+        final Expr operand;
+
+        Unary(int line, int op, Expr operand) {
+            super(line);
+            this.op = op;
+            this.operand = operand;
+        }
+    }
+
+    /**
+     * An expression in parentheses, which truncates it to a single value
+     */
+    static final class Paren extends Expr {
+        final Expr inner;
+
+        Paren(int line, Expr inner) {
+            super(line);
+            this.inner = inner;
+        }
+    }
+
+    static final class FunctionBody extends Node {
+        final List<String> params;
+        final boolean vararg;
+        final List<Stat> block;
+        final int lastLine;
+
+        FunctionBody(int line, List<String> params, boolean vararg, List<Stat> block, int lastLine) {
+            super(line);
+            this.params = params;
+            this.vararg = vararg;
+            this.block = block;
+            this.lastLine = lastLine;
+        }
+    }
+
+    /*
+     * ============================================================================================
+     *                                      STATEMENTS
+     * ============================================================================================
+     */
+
+    abstract static class Stat extends Node {
+        Stat(int line) {
+            super(line);
+        }
+    }
+
+    static final class Local extends Stat {
+        final List<String> names;
+        final List<Expr> values;
+
+        Local(int line, List<String> names, List<Expr> values) {
+            super(line);
+            this.names = names;
+            this.values = values;
+        }
+    }
+
+    static final class Assign extends Stat {
+        /**
+         * Each a {@link Name} or {@link Index}
+         */
+        final List<Expr> targets;
+        final List<Expr> values;
+
+        Assign(int line, List<Expr> targets, List<Expr> values) {
+            super(line);
+            this.targets = targets;
+            this.values = values;
+        }
+    }
+
+    static final class CallStat extends Stat {
+        final Call call;
+
+        CallStat(int line, Call call) {
+            super(line);
+            this.call = call;
+        }
+    }
+
+    static final class Do extends Stat {
+        final List<Stat> block;
+
+        Do(int line, List<Stat> block) {
+            super(line);
+            this.block = block;
+        }
+    }
+
+    static final class While extends Stat {
+        final Expr condition;
+        final List<Stat> block;
+
+        While(int line, Expr condition, List<Stat> block) {
+            super(line);
+            this.condition = condition;
+            this.block = block;
+        }
+    }
+
+    static final class Repeat extends Stat {
+        final List<Stat> block;
+        final Expr condition;
+
+        Repeat(int line, List<Stat> block, Expr condition) {
+            super(line);
+            this.block = block;
+            this.condition = condition;
+        }
+    }
+
+    static final class If extends Stat {
+        final List<Expr> conditions;
+        final List<List<Stat>> blocks;
+        /**
+         * The else block, or null when there is none
+         */
+        final List<Stat> otherwise;
+
+        If(int line, List<Expr> conditions, List<List<Stat>> blocks, List<Stat> otherwise) {
+            super(line);
+            this.conditions = conditions;
+            this.blocks = blocks;
+            this.otherwise = otherwise;
+        }
+    }
+
+    static final class NumericFor extends Stat {
+        final String name;
+        final Expr start, limit, step;
+        final List<Stat> block;
+
+        NumericFor(int line, String name, Expr start, Expr limit, Expr step, List<Stat> block) {
+            super(line);
+            this.name = name;
+            this.start = start;
+            this.limit = limit;
+            this.step = step;
+            this.block = block;
+        }
+    }
+
+    static final class GenericFor extends Stat {
+        final List<String> names;
+        final List<Expr> values;
+        final List<Stat> block;
+
+        GenericFor(int line, List<String> names, List<Expr> values, List<Stat> block) {
+            super(line);
+            this.names = names;
+            this.values = values;
+            this.block = block;
+        }
+    }
+
+    static final class LocalFunction extends Stat {
+        final String name;
+        final FunctionBody body;
+
+        LocalFunction(int line, String name, FunctionBody body) {
+            super(line);
+            this.name = name;
+            this.body = body;
+        }
+    }
+
+    static final class Return extends Stat {
+        final List<Expr> values;
+
+        Return(int line, List<Expr> values) {
+            super(line);
+            this.values = values;
+        }
+    }
+
+    static final class Break extends Stat {
+        Break(int line) {
+            super(line);
+        }
+    }
+}
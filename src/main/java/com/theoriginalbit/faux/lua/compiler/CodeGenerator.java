@@ -0,0 +1,1043 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua.compiler;
+
+import com.theoriginalbit.faux.lua.LuaError;
+import com.theoriginalbit.faux.lua.Prototype;
+import com.theoriginalbit.faux.lua.compiler.Ast.Expr;
+import com.theoriginalbit.faux.lua.compiler.Ast.Stat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.theoriginalbit.faux.lua.Opcodes.*;
+
+/**
+ * Compiles the syntax tree of a function into a {@link Prototype}. Locals live in the registers
+ * from 0 in the order they are declared, with temporaries allocated above them and released at
+ * the end of each statement.
+ *
+ * @author theoriginalbit
+ */
+final class CodeGenerator {
+    private static final int MAX_REGISTERS = 250;
+    /**
+     * Stands in for nil in the constant index, as nil cannot be a map key
+     */
+    private static final Object NIL = new Object();
+    private final CodeGenerator parent;
+    private final String source;
+    private final Ast.FunctionBody function;
+    private int[] code = new int[64];
+    private int[] lines = new int[64];
+    private int pc;
+    private int line;
+    private final List<Object> constants = new ArrayList<Object>();
+    private final Map<Object, Integer> constantIndex = new HashMap<Object, Integer>();
+    private final List<Prototype> children = new ArrayList<Prototype>();
+    private final List<LocalInfo> locals = new ArrayList<LocalInfo>();
+    /**
+     * The active locals, the position of each is its register
+     */
+    private final List<LocalInfo> active = new ArrayList<LocalInfo>();
+    private final List<String> upvalueNames = new ArrayList<String>();
+    private final List<Boolean> upvalueInStack = new ArrayList<Boolean>();
+    private final List<Integer> upvalueIndex = new ArrayList<Integer>();
+    private int freeReg;
+    private int maxStack = 2;
+    private Block block;
+
+    CodeGenerator(CodeGenerator parent, String source, Ast.FunctionBody function) {
+        this.parent = parent;
+        this.source = source;
+        this.function = function;
+    }
+
+    private static final class LocalInfo {
+        final String name;
+        final int start;
+        int end;
+
+        LocalInfo(String name, int start) {
+            this.name = name;
+            this.start = start;
+        }
+    }
+
+    private static final class Block {
+        Block previous;
+        /**
+         * The number of active locals when the block was entered
+         */
+        int activeCount;
+        /**
+         * Whether a local of the block is captured by a closure
+         */
+        boolean upval;
+        boolean loop;
+        final List<Integer> breaks = new ArrayList<Integer>();
+    }
+
+    /**
+     * Compiles the function
+     *
+     * @return the prototype
+     */
+    Prototype compile() {
+        enterBlock(false);
+        for (String param : function.params) {
+            addLocal(param);
+        }
+        reserve(function.params.size());
+        statements(function.block);
+        line = function.lastLine;
+        leaveBlock();
+        emitABC(RETURN, 0, 1, 0);
+
+        final int upvalues = upvalueNames.size();
+        final boolean[] inStack = new boolean[upvalues];
+        final int[] index = new int[upvalues];
+        for (int i = 0; i < upvalues; ++i) {
+            inStack[i] = upvalueInStack.get(i);
+            index[i] = upvalueIndex.get(i);
+        }
+        final String[] localNames = new String[locals.size()];
+        final int[] localStart = new int[localNames.length];
+        final int[] localEnd = new int[localNames.length];
+        for (int i = 0; i < localNames.length; ++i) {
+            final LocalInfo local = locals.get(i);
+            localNames[i] = local.name;
+            localStart[i] = local.start;
+            localEnd[i] = local.end;
+        }
+        return new Prototype(Arrays.copyOf(code, pc), constants.toArray(), children.toArray(new Prototype[children.size()]),
+                Arrays.copyOf(lines, pc), inStack, index, upvalueNames.toArray(new String[upvalues]),
+                localNames, localStart, localEnd, function.params.size(), function.vararg, maxStack,
+                source, function.line, function.lastLine);
+    }
+
+    private LuaError error(String message) {
+        return new LuaError(Prototype.getShortSource(source) + ":" + line + ": " + message, 0);
+    }
+
+    /*
+     * ============================================================================================
+     *                                        EMITTING
+     * ============================================================================================
+     */
+
+    private int emit(int instruction) {
+        if (pc == code.length) {
+            code = Arrays.copyOf(code, pc * 2);
+            lines = Arrays.copyOf(lines, pc * 2);
+        }
+        code[pc] = instruction;
+        lines[pc] = line;
+        return pc++;
+    }
+
+    private int emitABC(int op, int a, int b, int c) {
+        return emit(createABC(op, a, b, c));
+    }
+
+    private int emitABx(int op, int a, int bx) {
+        return emit(createABx(op, a, bx));
+    }
+
+    private int jump() {
+        return emit(createAsBx(JMP, 0, 0));
+    }
+
+    private void jumpTo(int target) {
+        emit(createAsBx(JMP, 0, target - (pc + 1)));
+    }
+
+    private void patch(List<Integer> jumps, int target) {
+        for (int jump : jumps) {
+            code[jump] = setSBx(code[jump], target - (jump + 1));
+        }
+    }
+
+    private void patchHere(List<Integer> jumps) {
+        patch(jumps, pc);
+    }
+
+    private void reserve(int count) {
+        freeReg += count;
+        if (freeReg > MAX_REGISTERS) {
+            throw error("function or expression too complex");
+        }
+        maxStack = Math.max(maxStack, freeReg);
+    }
+
+    private int constant(Object value) {
+        final Object key = value == null ? NIL : value;
+        Integer index = constantIndex.get(key);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(key, index);
+        }
+        return index;
+    }
+
+    private void loadConstant(Object value, int target) {
+        if (value == null) {
+            emitABC(LOADNIL, target, target, 0);
+        } else if (value instanceof Boolean) {
+            emitABC(LOADBOOL, target, (Boolean) value ? 1 : 0, 0);
+        } else {
+            emitABx(LOADK, target, constant(value));
+        }
+    }
+
+    /*
+     * ============================================================================================
+     *                                     SCOPE & NAMES
+     * ============================================================================================
+     */
+
+    private void enterBlock(boolean loop) {
+        final Block entered = new Block();
+        entered.previous = block;
+        entered.activeCount = active.size();
+        entered.loop = loop;
+        block = entered;
+    }
+
+    private void leaveBlock() {
+        final Block left = block;
+        block = left.previous;
+        while (active.size() > left.activeCount) {
+            active.remove(active.size() - 1).end = pc;
+        }
+        if (left.upval) {
+            emitABC(CLOSE, left.activeCount, 0, 0);
+        }
+        freeReg = active.size();
+        if (left.loop) {
+            patchHere(left.breaks);
+        }
+    }
+
+    /**
+     * Declares and activates a local in the next register; the caller reserves the register
+     */
+    private void addLocal(String name) {
+        final LocalInfo local = new LocalInfo(name, pc);
+        locals.add(local);
+        active.add(local);
+    }
+
+    private int findLocal(String name) {
+        for (int i = active.size() - 1; i >= 0; --i) {
+            if (active.get(i).name.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int findUpvalue(String name) {
+        for (int i = 0; i < upvalueNames.size(); ++i) {
+            if (upvalueNames.get(i).equals(name)) {
+                return i;
+            }
+        }
+        if (parent == null) {
+            return -1;
+        }
+
+        final int register = parent.findLocal(name);
+        if (register >= 0) {
+            parent.markCaptured(register);
+            return addUpvalue(name, true, register);
+        }
+        final int upvalue = parent.findUpvalue(name);
+        return upvalue < 0 ? -1 : addUpvalue(name, false, upvalue);
+    }
+
+    private int addUpvalue(String name, boolean inStack, int index) {
+        upvalueNames.add(name);
+        upvalueInStack.add(inStack);
+        upvalueIndex.add(index);
+        return upvalueNames.size() - 1;
+    }
+
+    private void markCaptured(int register) {
+        Block scope = block;
+        while (scope.activeCount > register) {
+            scope = scope.previous;
+        }
+        scope.upval = true;
+    }
+
+    /*
+     * ============================================================================================
+     *                                      STATEMENTS
+     * ============================================================================================
+     */
+
+    private void statements(List<Stat> statements) {
+        for (Stat statement : statements) {
+            line = statement.line;
+            statement(statement);
+            freeReg = active.size();
+        }
+    }
+
+    private void scopedBlock(List<Stat> statements) {
+        enterBlock(false);
+        statements(statements);
+        leaveBlock();
+    }
+
+    private void statement(Stat stat) {
+        if (stat instanceof Ast.Local) {
+            final Ast.Local local = (Ast.Local) stat;
+            expressionList(local.values, local.names.size());
+            for (String name : local.names) {
+                addLocal(name);
+            }
+        } else if (stat instanceof Ast.Assign) {
+            assign((Ast.Assign) stat);
+        } else if (stat instanceof Ast.CallStat) {
+            call(((Ast.CallStat) stat).call, 0);
+        } else if (stat instanceof Ast.Do) {
+            scopedBlock(((Ast.Do) stat).block);
+        } else if (stat instanceof Ast.While) {
+            final Ast.While loop = (Ast.While) stat;
+            final int start = pc;
+            final List<Integer> exits = new ArrayList<Integer>();
+            condition(loop.condition, false, exits);
+            enterBlock(true);
+            scopedBlock(loop.block);
+            line = stat.line;
+            jumpTo(start);
+            leaveBlock();
+            patchHere(exits);
+        } else if (stat instanceof Ast.Repeat) {
+            repeat((Ast.Repeat) stat);
+        } else if (stat instanceof Ast.If) {
+            final Ast.If branch = (Ast.If) stat;
+            final List<Integer> escapes = new ArrayList<Integer>();
+            final int count = branch.conditions.size();
+            for (int i = 0; i < count; ++i) {
+                final List<Integer> skip = new ArrayList<Integer>();
+                condition(branch.conditions.get(i), false, skip);
+                scopedBlock(branch.blocks.get(i));
+                if (i < count - 1 || branch.otherwise != null) {
+                    escapes.add(jump());
+                }
+                patchHere(skip);
+            }
+            if (branch.otherwise != null) {
+                scopedBlock(branch.otherwise);
+            }
+            patchHere(escapes);
+        } else if (stat instanceof Ast.NumericFor) {
+            numericFor((Ast.NumericFor) stat);
+        } else if (stat instanceof Ast.GenericFor) {
+            genericFor((Ast.GenericFor) stat);
+        } else if (stat instanceof Ast.LocalFunction) {
+            final Ast.LocalFunction local = (Ast.LocalFunction) stat;
+            final int register = freeReg;
+            addLocal(local.name);
+            reserve(1);
+            closure(local.body, register);
+        } else if (stat instanceof Ast.Return) {
+            returnStatement((Ast.Return) stat);
+        } else if (stat instanceof Ast.Break) {
+            Block loop = block;
+            boolean upval = false;
+            while (loop != null && !loop.loop) {
+                upval |= loop.upval;
+                loop = loop.previous;
+            }
+            if (loop == null) {
+                throw error("no loop to break near 'break'");
+            }
+            if (upval || loop.upval) {
+                emitABC(CLOSE, loop.activeCount, 0, 0);
+            }
+            loop.breaks.add(jump());
+        }
+    }
+
+    private void assign(Ast.Assign assign) {
+        final List<Expr> targets = assign.targets;
+        if (targets.size() == 1 && assign.values.size() == 1 && !assign.values.get(0).isMultiple()) {
+            final Expr target = targets.get(0);
+            final Expr value = assign.values.get(0);
+            if (target instanceof Ast.Name) {
+                final String name = ((Ast.Name) target).name;
+                final int local = findLocal(name);
+                if (local >= 0) {
+                    toRegister(value, local);
+                } else {
+                    storeName(name, toAnyRegister(value));
+                }
+            } else {
+                final Ast.Index index = (Ast.Index) target;
+                final int object = toAnyRegister(index.object);
+                final int key = toRK(index.key);
+                final int rk = toRK(value);
+                line = assign.line;
+                emitABC(SETTABLE, object, key, rk);
+            }
+            return;
+        }
+
+        // evaluate the table and key of each indexed target before the values
+        final int count = targets.size();
+        final int[] objects = new int[count];
+        final int[] keys = new int[count];
+        for (int i = 0; i < count; ++i) {
+            if (targets.get(i) instanceof Ast.Index) {
+                final Ast.Index index = (Ast.Index) targets.get(i);
+                objects[i] = assignedLocal(index.object, targets) ? copyToRegister(index.object) : toAnyRegister(index.object);
+                keys[i] = assignedLocal(index.key, targets) ? copyToRegister(index.key) : toRK(index.key);
+            }
+        }
+        final int base = freeReg;
+        expressionList(assign.values, count);
+        line = assign.line;
+        for (int i = count - 1; i >= 0; --i) {
+            final Expr target = targets.get(i);
+            if (target instanceof Ast.Name) {
+                final String name = ((Ast.Name) target).name;
+                final int local = findLocal(name);
+                if (local >= 0) {
+                    emitABC(MOVE, local, base + i, 0);
+                } else {
+                    storeName(name, base + i);
+                }
+            } else {
+                emitABC(SETTABLE, objects[i], keys[i], base + i);
+            }
+        }
+    }
+
+    /**
+     * @return whether the expression is a local that is also assigned to by the statement
+     */
+    private boolean assignedLocal(Expr expr, List<Expr> targets) {
+        if (!(expr instanceof Ast.Name) || findLocal(((Ast.Name) expr).name) < 0) {
+            return false;
+        }
+        for (Expr target : targets) {
+            if (target instanceof Ast.Name && ((Ast.Name) target).name.equals(((Ast.Name) expr).name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int copyToRegister(Expr expr) {
+        final int register = freeReg;
+        reserve(1);
+        toRegister(expr, register);
+        return register;
+    }
+
+    private void storeName(String name, int register) {
+        final int upvalue = findUpvalue(name);
+        if (upvalue >= 0) {
+            emitABC(SETUPVAL, register, upvalue, 0);
+        } else {
+            emitABx(SETGLOBAL, register, constant(name));
+        }
+    }
+
+    private void repeat(Ast.Repeat repeat) {
+        final int start = pc;
+        enterBlock(true);
+        enterBlock(false);
+        final Block scope = block;
+        statements(repeat.block);
+        line = repeat.condition.line;
+        if (scope.upval) {
+            // captured locals are closed before going around again
+            final List<Integer> exits = new ArrayList<Integer>();
+            condition(repeat.condition, true, exits);
+            emitABC(CLOSE, scope.activeCount, 0, 0);
+            jumpTo(start);
+            patchHere(exits);
+        } else {
+            final List<Integer> again = new ArrayList<Integer>();
+            condition(repeat.condition, false, again);
+            patch(again, start);
+        }
+        leaveBlock();
+        leaveBlock();
+    }
+
+    private void numericFor(Ast.NumericFor loop) {
+        enterBlock(true);
+        final int base = freeReg;
+        reserve(1);
+        toRegister(loop.start, base);
+        reserve(1);
+        toRegister(loop.limit, base + 1);
+        reserve(1);
+        if (loop.step == null) {
+            loadConstant(1.0, base + 2);
+        } else {
+            toRegister(loop.step, base + 2);
+        }
+        addLocal("(for index)");
+        addLocal("(for limit)");
+        addLocal("(for step)");
+        line = loop.line;
+        final int prep = emit(createAsBx(FORPREP, base, 0));
+
+        enterBlock(false);
+        addLocal(loop.name);
+        reserve(1);
+        statements(loop.block);
+        leaveBlock();
+
+        line = loop.line;
+        final int end = emit(createAsBx(FORLOOP, base, 0));
+        code[prep] = setSBx(code[prep], end - (prep + 1));
+        code[end] = setSBx(code[end], prep - end);
+        leaveBlock();
+    }
+
+    private void genericFor(Ast.GenericFor loop) {
+        enterBlock(true);
+        final int base = freeReg;
+        expressionList(loop.values, 3);
+        addLocal("(for generator)");
+        addLocal("(for state)");
+        addLocal("(for control)");
+        line = loop.line;
+        final int check = jump();
+
+        final int body = pc;
+        enterBlock(false);
+        for (String name : loop.names) {
+            addLocal(name);
+        }
+        reserve(loop.names.size());
+        statements(loop.block);
+        leaveBlock();
+
+        patchHere(Collections.singletonList(check));
+        line = loop.line;
+        maxStack = Math.max(maxStack, base + 6);
+        emitABC(MOVE, base + 3, base, 0);
+        emitABC(MOVE, base + 4, base + 1, 0);
+        emitABC(MOVE, base + 5, base + 2, 0);
+        emitABC(CALL, base + 3, 3, loop.names.size() + 1);
+        emit(createAsBx(TFORLOOP, base + 2, body - (pc + 1)));
+        leaveBlock();
+    }
+
+    private void returnStatement(Ast.Return ret) {
+        final List<Expr> values = ret.values;
+        if (values.isEmpty()) {
+            emitABC(RETURN, 0, 1, 0);
+        } else if (values.size() == 1 && values.get(0) instanceof Ast.Call) {
+            final int base = freeReg;
+            call((Ast.Call) values.get(0), -1);
+            code[pc - 1] = createABC(TAILCALL, base, getB(code[pc - 1]), 0);
+            emitABC(RETURN, base, 0, 0);
+        } else if (values.size() == 1 && !values.get(0).isMultiple()) {
+            emitABC(RETURN, toAnyRegister(values.get(0)), 2, 0);
+        } else {
+            final int base = freeReg;
+            expressionList(values, -1);
+            line = ret.line;
+            emitABC(RETURN, base, values.get(values.size() - 1).isMultiple() ? 0 : values.size() + 1, 0);
+        }
+    }
+
+    /*
+     * ============================================================================================
+     *                                      EXPRESSIONS
+     * ============================================================================================
+     */
+
+    /**
+     * Evaluates expressions into consecutive registers from the first free register
+     *
+     * @param exprs  the expressions
+     * @param wanted the number of values wanted, padding with nil or discarding, or -1 for all
+     *               of them, leaving the last expression's values up to the top of the stack
+     */
+    private void expressionList(List<Expr> exprs, int wanted) {
+        final int base = freeReg;
+        final int count = exprs.size();
+        for (int i = 0; i < count; ++i) {
+            final Expr expr = exprs.get(i);
+            if (i == count - 1 && expr.isMultiple()) {
+                final int needed = wanted < 0 ? -1 : Math.max(wanted - i, 0);
+                if (needed != 0 || expr instanceof Ast.Call) {
+                    multiple(expr, needed);
+                }
+                if (needed > 0) {
+                    reserve(needed);
+                }
+                return;
+            }
+            copyToRegister(expr);
+        }
+        if (wanted > count) {
+            final int first = freeReg;
+            reserve(wanted - count);
+            emitABC(LOADNIL, first, freeReg - 1, 0);
+        } else if (wanted >= 0) {
+            freeReg = base + wanted;
+        }
+    }
+
+    /**
+     * Evaluates a call or vararg expression into the registers from the first free register
+     *
+     * @param results the number of values wanted, or -1 for all of them
+     */
+    private void multiple(Expr expr, int results) {
+        if (expr instanceof Ast.Call) {
+            call((Ast.Call) expr, results);
+        } else {
+            line = expr.line;
+            emitABC(VARARG, freeReg, results + 1, 0);
+        }
+        maxStack = Math.max(maxStack, freeReg + Math.max(results, 1));
+    }
+
+    /**
+     * Compiles a call with the function in the first free register, which is free again after
+     */
+    private void call(Ast.Call call, int results) {
+        final int base = freeReg;
+        if (call.method != null) {
+            final int object = toAnyRegister(call.function);
+            freeReg = base;
+            reserve(2);
+            final int key = constantRK(call.method);
+            line = call.line;
+            emitABC(SELF, base, object, key);
+            freeReg = base + 2;
+        } else {
+            reserve(1);
+            toRegister(call.function, base);
+        }
+
+        boolean multiple = false;
+        final int count = call.args.size();
+        for (int i = 0; i < count; ++i) {
+            final Expr arg = call.args.get(i);
+            if (i == count - 1 && arg.isMultiple()) {
+                multiple(arg, -1);
+                multiple = true;
+            } else {
+                copyToRegister(arg);
+            }
+        }
+        line = call.line;
+        emitABC(CALL, base, multiple ? 0 : freeReg - base, results + 1);
+        freeReg = base;
+    }
+
+    /**
+     * @return the register of a local, or a temporary register the expression was evaluated into
+     */
+    private int toAnyRegister(Expr expr) {
+        if (expr instanceof Ast.Name) {
+            final int local = findLocal(((Ast.Name) expr).name);
+            if (local >= 0) {
+                return local;
+            }
+        } else if (expr instanceof Ast.Paren) {
+            return toAnyRegister(((Ast.Paren) expr).inner);
+        }
+        return copyToRegister(expr);
+    }
+
+    /**
+     * @return a constant operand, if the expression is a constant, otherwise a register
+     */
+    private int toRK(Expr expr) {
+        final Object value;
+        if (expr instanceof Ast.Constant) {
+            value = ((Ast.Constant) expr).value;
+        } else {
+            value = fold(expr);
+        }
+        if (value != null || expr instanceof Ast.Constant) {
+            final int index = constant(value);
+            if (index <= MAX_INDEX_RK) {
+                return asConstant(index);
+            }
+        }
+        return toAnyRegister(expr);
+    }
+
+    private int constantRK(String value) {
+        final int index = constant(value);
+        if (index <= MAX_INDEX_RK) {
+            return asConstant(index);
+        }
+        final int register = freeReg;
+        reserve(1);
+        emitABx(LOADK, register, index);
+        return register;
+    }
+
+    /**
+     * Evaluates an expression into a register, leaving the temporaries used free
+     */
+    private void toRegister(Expr expr, int target) {
+        line = expr.line;
+        final int saved = freeReg;
+        if (expr instanceof Ast.Constant) {
+            loadConstant(((Ast.Constant) expr).value, target);
+        } else if (expr instanceof Ast.Vararg) {
+            emitABC(VARARG, target, 2, 0);
+        } else if (expr instanceof Ast.Name) {
+            final String name = ((Ast.Name) expr).name;
+            final int local = findLocal(name);
+            if (local >= 0) {
+                if (local != target) {
+                    emitABC(MOVE, target, local, 0);
+                }
+            } else {
+                final int upvalue = findUpvalue(name);
+                if (upvalue >= 0) {
+                    emitABC(GETUPVAL, target, upvalue, 0);
+                } else {
+                    emitABx(GETGLOBAL, target, constant(name));
+                }
+            }
+        } else if (expr instanceof Ast.Index) {
+            final Ast.Index index = (Ast.Index) expr;
+            final int object = toAnyRegister(index.object);
+            final int key = toRK(index.key);
+            line = expr.line;
+            emitABC(GETTABLE, target, object, key);
+        } else if (expr instanceof Ast.Call) {
+            if (target == freeReg - 1) {
+                // the call can be made in the target itself
+                freeReg = target;
+                call((Ast.Call) expr, 1);
+            } else {
+                final int base = freeReg;
+                call((Ast.Call) expr, 1);
+                emitABC(MOVE, target, base, 0);
+            }
+        } else if (expr instanceof Ast.Function) {
+            closure(((Ast.Function) expr).body, target);
+        } else if (expr instanceof Ast.Table) {
+            table((Ast.Table) expr, target);
+        } else if (expr instanceof Ast.Binary) {
+            binary((Ast.Binary) expr, target);
+        } else if (expr instanceof Ast.Unary) {
+            unary((Ast.Unary) expr, target);
+        } else if (expr instanceof Ast.Paren) {
+            toRegister(((Ast.Paren) expr).inner, target);
+        }
+        freeReg = saved;
+    }
+
+    private void closure(Ast.FunctionBody body, int target) {
+        final Prototype prototype = new CodeGenerator(this, source, body).compile();
+        children.add(prototype);
+        line = body.line;
+        emitABx(CLOSURE, target, children.size() - 1);
+    }
+
+    private void table(Ast.Table table, int target) {
+        final int destination;
+        if (target == freeReg - 1) {
+            destination = target;
+        } else {
+            destination = freeReg;
+            reserve(1);
+        }
+        final int creation = emitABC(NEWTABLE, destination, 0, 0);
+        int arrayCount = 0, hashCount = 0, pending = 0;
+        final int count = table.values.size();
+        for (int i = 0; i < count; ++i) {
+            final Expr key = table.keys.get(i);
+            final Expr value = table.values.get(i);
+            if (key != null) {
+                ++hashCount;
+                final int saved = freeReg;
+                final int k = toRK(key);
+                final int v = toRK(value);
+                line = value.line;
+                emitABC(SETTABLE, destination, k, v);
+                freeReg = saved;
+            } else if (i == count - 1 && value.isMultiple()) {
+                multiple(value, -1);
+                line = table.line;
+                setList(destination, 0, arrayCount / FIELDS_PER_FLUSH + 1);
+                pending = 0;
+            } else {
+                copyToRegister(value);
+                ++arrayCount;
+                if (++pending == FIELDS_PER_FLUSH) {
+                    line = table.line;
+                    setList(destination, pending, (arrayCount - 1) / FIELDS_PER_FLUSH + 1);
+                    freeReg = destination + 1;
+                    pending = 0;
+                }
+            }
+        }
+        if (pending > 0) {
+            line = table.line;
+            setList(destination, pending, (arrayCount - 1) / FIELDS_PER_FLUSH + 1);
+        }
+        code[creation] = createABC(NEWTABLE, destination, Math.min(arrayCount, MAX_B), Math.min(hashCount, MAX_C));
+        if (destination != target) {
+            emitABC(MOVE, target, destination, 0);
+        }
+    }
+
+    private void setList(int table, int count, int batch) {
+        if (batch <= MAX_C) {
+            emitABC(SETLIST, table, count, batch);
+        } else {
+            emitABC(SETLIST, table, count, 0);
+            emit(batch);
+        }
+    }
+
+    private void binary(Ast.Binary expr, int target) {
+        switch (expr.op) {
+            case Ast.ADD:
+            case Ast.SUB:
+            case Ast.MUL:
+            case Ast.DIV:
+            case Ast.MOD:
+            case Ast.POW: {
+                final Double folded = fold(expr);
+                if (folded != null) {
+                    loadConstant(folded, target);
+                    return;
+                }
+                final int left = toRK(expr.left);
+                final int right = toRK(expr.right);
+                line = expr.line;
+                emitABC(ADD + expr.op, target, left, right);
+                return;
+            }
+            case Ast.CONCAT: {
+                final int base = freeReg;
+                Expr operand = expr;
+                while (operand instanceof Ast.Binary && ((Ast.Binary) operand).op == Ast.CONCAT) {
+                    copyToRegister(((Ast.Binary) operand).left);
+                    operand = ((Ast.Binary) operand).right;
+                }
+                copyToRegister(operand);
+                line = expr.line;
+                emitABC(CONCAT, target, base, freeReg - 1);
+                return;
+            }
+            case Ast.AND:
+            case Ast.OR: {
+                // the left value is only kept when it decides the result, so the target may be
+                // read by the right
+                final int left = toAnyRegister(expr.left);
+                line = expr.line;
+                emitABC(TESTSET, target, left, expr.op == Ast.AND ? 0 : 1);
+                final int end = jump();
+                toRegister(expr.right, target);
+                patchHere(Collections.singletonList(end));
+                return;
+            }
+            default:
+                booleanValue(expr, target);
+        }
+    }
+
+    private void unary(Ast.Unary expr, int target) {
+        switch (expr.op) {
+            case Ast.NEG: {
+                final Double folded = fold(expr);
+                if (folded != null) {
+                    loadConstant(folded, target);
+                    return;
+                }
+                final int operand = toAnyRegister(expr.operand);
+                line = expr.line;
+                emitABC(UNM, target, operand, 0);
+                return;
+            }
+            case Ast.LEN: {
+                final int operand = toAnyRegister(expr.operand);
+                line = expr.line;
+                emitABC(LEN, target, operand, 0);
+                return;
+            }
+            default:
+                if (isCondition(expr.operand)) {
+                    booleanValue(expr, target);
+                    return;
+                }
+                final int operand = toAnyRegister(expr.operand);
+                line = expr.line;
+                emitABC(NOT, target, operand, 0);
+        }
+    }
+
+    /**
+     * @return whether an expression is best compiled as jumps, as it only produces a boolean
+     */
+    private static boolean isCondition(Expr expr) {
+        if (expr instanceof Ast.Binary) {
+            final int op = ((Ast.Binary) expr).op;
+            return op >= Ast.EQ && op <= Ast.GE;
+        }
+        return expr instanceof Ast.Unary && ((Ast.Unary) expr).op == Ast.NOT && isCondition(((Ast.Unary) expr).operand);
+    }
+
+    /**
+     * Evaluates a comparison into true or false
+     */
+    private void booleanValue(Expr expr, int target) {
+        final List<Integer> whenFalse = new ArrayList<Integer>();
+        condition(expr, false, whenFalse);
+        emitABC(LOADBOOL, target, 1, 1);
+        patchHere(whenFalse);
+        emitABC(LOADBOOL, target, 0, 0);
+    }
+
+    /**
+     * Compiles an expression as a condition, which jumps when its truth is the one supplied
+     * and otherwise continues with the next instruction
+     *
+     * @param expr  the expression
+     * @param when  whether to jump when the expression is true, or when it is false
+     * @param jumps the list to add the jumps to, for patching to their destination
+     */
+    private void condition(Expr expr, boolean when, List<Integer> jumps) {
+        line = expr.line;
+        if (expr instanceof Ast.Paren) {
+            condition(((Ast.Paren) expr).inner, when, jumps);
+            return;
+        } else if (expr instanceof Ast.Constant || fold(expr) != null) {
+            final Object value = expr instanceof Ast.Constant ? ((Ast.Constant) expr).value : fold(expr);
+            if ((value != null && value != Boolean.FALSE) == when) {
+                jumps.add(jump());
+            }
+            return;
+        } else if (expr instanceof Ast.Unary && ((Ast.Unary) expr).op == Ast.NOT) {
+            condition(((Ast.Unary) expr).operand, !when, jumps);
+            return;
+        }
+
+        final int saved = freeReg;
+        if (expr instanceof Ast.Binary) {
+            final Ast.Binary binary = (Ast.Binary) expr;
+            switch (binary.op) {
+                case Ast.AND:
+                case Ast.OR: {
+                    // jump straight out when the left decides the result, otherwise test the right
+                    final boolean decides = binary.op == Ast.OR;
+                    if (when == decides) {
+                        condition(binary.left, when, jumps);
+                        condition(binary.right, when, jumps);
+                    } else {
+                        final List<Integer> skip = new ArrayList<Integer>();
+                        condition(binary.left, decides, skip);
+                        condition(binary.right, when, jumps);
+                        patchHere(skip);
+                    }
+                    return;
+                }
+                case Ast.EQ:
+                case Ast.NE:
+                case Ast.LT:
+                case Ast.LE:
+                case Ast.GT:
+                case Ast.GE: {
+                    final int left = toRK(binary.left);
+                    final int right = toRK(binary.right);
+                    line = binary.line;
+                    final boolean swap = binary.op == Ast.GT || binary.op == Ast.GE;
+                    final int op = binary.op == Ast.EQ || binary.op == Ast.NE ? EQ : binary.op == Ast.LT || binary.op == Ast.GT ? LT : LE;
+                    final boolean expected = binary.op == Ast.NE ? !when : when;
+                    emitABC(op, expected ? 1 : 0, swap ? right : left, swap ? left : right);
+                    jumps.add(jump());
+                    freeReg = saved;
+                    return;
+                }
+                default:
+                    break;
+            }
+        }
+        final int register = toAnyRegister(expr);
+        line = expr.line;
+        emitABC(TEST, register, 0, when ? 1 : 0);
+        jumps.add(jump());
+        freeReg = saved;
+    }
+
+    /**
+     * Folds arithmetic on number constants
+     *
+     * @return the value of the expression, or null when it is not a constant number
+     */
+    private static Double fold(Expr expr) {
+        if (expr instanceof Ast.Constant) {
+            final Object value = ((Ast.Constant) expr).value;
+            return value instanceof Double ? (Double) value : null;
+        } else if (expr instanceof Ast.Paren) {
+            return fold(((Ast.Paren) expr).inner);
+        } else if (expr instanceof Ast.Unary && ((Ast.Unary) expr).op == Ast.NEG) {
+            final Double operand = fold(((Ast.Unary) expr).operand);
+            return operand == null || operand == 0 ? null : -operand;
+        } else if (!(expr instanceof Ast.Binary) || ((Ast.Binary) expr).op > Ast.POW) {
+            return null;
+        }
+        final Ast.Binary binary = (Ast.Binary) expr;
+        final Double left = fold(binary.left);
+        final Double right = binary.right == null ? null : fold(binary.right);
+        if (left == null || right == null) {
+            return null;
+        }
+        final double x = left, y = right;
+        final double result;
+        switch (binary.op) {
+            case Ast.ADD:
+                result = x + y;
+                break;
+            case Ast.SUB:
+                result = x - y;
+                break;
+            case Ast.MUL:
+                result = x * y;
+                break;
+            case Ast.DIV:
+                result = x / y;
+                break;
+            case Ast.MOD:
+                result = x - Math.floor(x / y) * y;
+                break;
+            default:
+                result = Math.pow(x, y);
+        }
+        // leave anything that is not a plain number to be computed when run
+        return Double.isNaN(result) || Double.isInfinite(result) || result == 0 && 1 / result < 0 ? null : result;
+    }
+}
@@ -0,0 +1,432 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua.compiler;
+
+import com.theoriginalbit.faux.lua.Lua;
+import com.theoriginalbit.faux.lua.LuaError;
+import com.theoriginalbit.faux.lua.Prototype;
+
+/**
+ * Splits Lua 5.1 source code into tokens. Single character tokens are represented by the
+ * character itself, everything else by one of the constants from {@link #FIRST_RESERVED}.
+ *
+ * @author theoriginalbit
+ */
+final class Lexer {
+    static final int FIRST_RESERVED = 257;
+    static final int AND = 257, BREAK = 258, DO = 259, ELSE = 260, ELSEIF = 261, END = 262,
+            FALSE = 263, FOR = 264, FUNCTION = 265, IF = 266, IN = 267, LOCAL = 268, NIL = 269,
+            NOT = 270, OR = 271, REPEAT = 272, RETURN = 273, THEN = 274, TRUE = 275, UNTIL = 276,
+            WHILE = 277, CONCAT = 278, DOTS = 279, EQ = 280, GE = 281, LE = 282, NE = 283,
+            NUMBER = 284, NAME = 285, STRING = 286, EOS = 287;
+    private static final String[] TOKENS = {
+            "and", "break", "do", "else", "elseif", "end", "false", "for", "function", "if", "in",
+            "local", "nil", "not", "or", "repeat", "return", "then", "true", "until", "while",
+            "..", "...", "==", ">=", "<=", "~=", "<number>", "<name>", "<string>", "<eof>"
+    };
+    private static final int RESERVED_COUNT = WHILE - FIRST_RESERVED + 1;
+    private final String source;
+    private final String chunkName;
+    private final StringBuilder buffer = new StringBuilder();
+    private int position;
+    private int current;
+    int line = 1;
+    int lastLine = 1;
+    /*
+       the current token and the one after it, when looked ahead to
+     */
+    int token;
+    Object value;
+    private int aheadToken = EOS;
+    private Object aheadValue;
+    private boolean hasAhead;
+    private Object scannedValue;
+
+    Lexer(String code, String name) {
+        source = code;
+        chunkName = name;
+        current = code.isEmpty() ? -1 : code.charAt(0);
+        // skip a shebang line
+        if (current == '#') {
+            while (current != -1 && current != '\n' && current != '\r') {
+                advance();
+            }
+        }
+    }
+
+    /**
+     * Moves to the next token
+     */
+    void next() {
+        lastLine = line;
+        if (hasAhead) {
+            token = aheadToken;
+            value = aheadValue;
+            hasAhead = false;
+        } else {
+            token = scan();
+            value = scannedValue;
+        }
+    }
+
+    /**
+     * @return the token after the current one
+     */
+    int lookahead() {
+        if (!hasAhead) {
+            aheadToken = scan();
+            aheadValue = scannedValue;
+            hasAhead = true;
+        }
+        return aheadToken;
+    }
+
+    LuaError error(String message, int tok) {
+        String msg = Prototype.getShortSource(chunkName) + ":" + line + ": " + message;
+        if (tok != 0) {
+            msg += " near '" + describe(tok) + "'";
+        }
+        return new LuaError(msg, 0);
+    }
+
+    private String describe(int tok) {
+        switch (tok) {
+            case NAME:
+            case STRING:
+            case NUMBER:
+                return buffer.toString();
+            default:
+                return tokenText(tok);
+        }
+    }
+
+    static String tokenText(int tok) {
+        return tok < FIRST_RESERVED ? String.valueOf((char) tok) : TOKENS[tok - FIRST_RESERVED];
+    }
+
+    private void advance() {
+        ++position;
+        current = position < source.length() ? source.charAt(position) : -1;
+    }
+
+    private void save(int ch) {
+        buffer.append((char) ch);
+    }
+
+    private void saveAndAdvance() {
+        save(current);
+        advance();
+    }
+
+    private boolean isNewline() {
+        return current == '\n' || current == '\r';
+    }
+
+    private void newline() {
+        final int old = current;
+        advance();
+        if (isNewline() && current != old) {
+            advance();
+        }
+        ++line;
+    }
+
+    private int scan() {
+        buffer.setLength(0);
+        scannedValue = null;
+        for (; ; ) {
+            switch (current) {
+                case '\n':
+                case '\r':
+                    newline();
+                    continue;
+                case '-':
+                    advance();
+                    if (current != '-') {
+                        return '-';
+                    }
+                    advance();
+                    if (current == '[') {
+                        final int level = longBracketLevel();
+                        buffer.setLength(0);
+                        if (level >= 0) {
+                            readLongString(level, false);
+                            buffer.setLength(0);
+                            continue;
+                        }
+                    }
+                    while (!isNewline() && current != -1) {
+                        advance();
+                    }
+                    continue;
+                case '[': {
+                    final int level = longBracketLevel();
+                    if (level >= 0) {
+                        readLongString(level, true);
+                        return STRING;
+                    } else if (level == -1) {
+                        return '[';
+                    }
+                    throw error("invalid long string delimiter", STRING);
+                }
+                case '=':
+                    advance();
+                    if (current != '=') {
+                        return '=';
+                    }
+                    advance();
+                    return EQ;
+                case '<':
+                    advance();
+                    if (current != '=') {
+                        return '<';
+                    }
+                    advance();
+                    return LE;
+                case '>':
+                    advance();
+                    if (current != '=') {
+                        return '>';
+                    }
+                    advance();
+                    return GE;
+                case '~':
+                    advance();
+                    if (current != '=') {
+                        return '~';
+                    }
+                    advance();
+                    return NE;
+                case '"':
+                case '\'':
+                    readString(current);
+                    return STRING;
+                case '.':
+                    saveAndAdvance();
+                    if (current == '.') {
+                        saveAndAdvance();
+                        if (current == '.') {
+                            saveAndAdvance();
+                            return DOTS;
+                        }
+                        return CONCAT;
+                    } else if (!Character.isDigit(current)) {
+                        return '.';
+                    }
+                    readNumber();
+                    return NUMBER;
+                case -1:
+                    return EOS;
+                default:
+                    if (current == ' ' || current == '\t' || current == '\f' || current == 0x0B) {
+                        advance();
+                        continue;
+                    } else if (current < 128 && Character.isDigit(current)) {
+                        readNumber();
+                        return NUMBER;
+                    } else if (isNameStart(current)) {
+                        do {
+                            saveAndAdvance();
+                        } while (isNamePart(current));
+                        final String name = buffer.toString();
+                        for (int i = 0; i < RESERVED_COUNT; ++i) {
+                            if (TOKENS[i].equals(name)) {
+                                return FIRST_RESERVED + i;
+                            }
+                        }
+                        scannedValue = name;
+                        return NAME;
+                    }
+                    final int ch = current;
+                    advance();
+                    return ch;
+            }
+        }
+    }
+
+    private static boolean isNameStart(int ch) {
+        return ch >= 'a' && ch <= 'z' || ch >= 'A' && ch <= 'Z' || ch == '_';
+    }
+
+    private static boolean isNamePart(int ch) {
+        return isNameStart(ch) || ch >= '0' && ch <= '9';
+    }
+
+    private void readNumber() {
+        while (current != -1 && (isNamePart(current) || current == '.')) {
+            saveAndAdvance();
+        }
+        // an exponent may be signed
+        final char last = buffer.charAt(buffer.length() - 1);
+        if ((last == 'e' || last == 'E') && (current == '+' || current == '-') && !isHex()) {
+            saveAndAdvance();
+            while (current != -1 && (isNamePart(current) || current == '.')) {
+                saveAndAdvance();
+            }
+        }
+        final Double number = Lua.parseNumber(buffer.toString());
+        if (number == null) {
+            throw error("malformed number", NUMBER);
+        }
+        scannedValue = number;
+    }
+
+    private boolean isHex() {
+        return buffer.length() > 1 && buffer.charAt(0) == '0' && (buffer.charAt(1) == 'x' || buffer.charAt(1) == 'X');
+    }
+
+    /**
+     * Reads the opening bracket of a long string or comment, such as {@code [==[}
+     *
+     * @return the number of equals signs, -1 when it is a lone bracket, or -2 when malformed
+     */
+    private int longBracketLevel() {
+        final int start = position;
+        advance();
+        int level = 0;
+        while (current == '=') {
+            advance();
+            ++level;
+        }
+        if (current == '[') {
+            advance();
+            return level;
+        }
+        if (level == 0) {
+            return -1;
+        }
+        // not a long bracket after all, only the first bracket was consumed
+        position = start;
+        advance();
+        return -2;
+    }
+
+    private void readLongString(int level, boolean keep) {
+        buffer.setLength(0);
+        // a newline straight after the opening bracket is skipped
+        if (isNewline()) {
+            newline();
+        }
+        for (; ; ) {
+            switch (current) {
+                case -1:
+                    throw error(keep ? "unfinished long string" : "unfinished long comment", EOS);
+                case ']': {
+                    advance();
+                    int count = 0;
+                    while (current == '=' && count < level) {
+                        advance();
+                        ++count;
+                    }
+                    if (count == level && current == ']') {
+                        advance();
+                        scannedValue = buffer.toString();
+                        return;
+                    }
+                    save(']');
+                    for (int i = 0; i < count; ++i) {
+                        save('=');
+                    }
+                    break;
+                }
+                case '\n':
+                case '\r':
+                    save('\n');
+                    newline();
+                    if (!keep) {
+                        buffer.setLength(0);
+                    }
+                    break;
+                default:
+                    if (keep) {
+                        save(current);
+                    }
+                    advance();
+            }
+        }
+    }
+
+    private void readString(int delimiter) {
+        advance();
+        while (current != delimiter) {
+            switch (current) {
+                case -1:
+                    throw error("unfinished string", EOS);
+                case '\n':
+                case '\r':
+                    throw error("unfinished string", STRING);
+                case '\\':
+                    advance();
+                    switch (current) {
+                        case 'a':
+                            save(7);
+                            advance();
+                            break;
+                        case 'b':
+                            save('\b');
+                            advance();
+                            break;
+                        case 'f':
+                            save('\f');
+                            advance();
+                            break;
+                        case 'n':
+                            save('\n');
+                            advance();
+                            break;
+                        case 'r':
+                            save('\r');
+                            advance();
+                            break;
+                        case 't':
+                            save('\t');
+                            advance();
+                            break;
+                        case 'v':
+                            save(0x0B);
+                            advance();
+                            break;
+                        case '\n':
+                        case '\r':
+                            save('\n');
+                            newline();
+                            break;
+                        case -1:
+                            break;
+                        default:
+                            if (current >= '0' && current <= '9') {
+                                int code = 0;
+                                for (int i = 0; i < 3 && current >= '0' && current <= '9'; ++i) {
+                                    code = code * 10 + current - '0';
+                                    advance();
+                                }
+                                if (code > 255) {
+                                    throw error("escape sequence too large", STRING);
+                                }
+                                save(code);
+                            } else {
+                                saveAndAdvance();
+                            }
+                    }
+                    break;
+                default:
+                    saveAndAdvance();
+            }
+        }
+        advance();
+        scannedValue = buffer.toString();
+    }
+}
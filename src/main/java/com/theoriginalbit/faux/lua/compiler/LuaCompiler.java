@@ -0,0 +1,50 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua.compiler;
+
+import com.theoriginalbit.faux.lua.LuaError;
+import com.theoriginalbit.faux.lua.Prototype;
+
+/**
+ * Compiles Lua 5.1 source code into prototypes the
+ * {@link com.theoriginalbit.faux.lua.LuaMachine} runs
+ *
+ * @author theoriginalbit
+ */
+public final class LuaCompiler {
+    /**
+     * The version of the code generated, which must be changed whenever the same source would
+     * compile to different instructions, so that prototypes cached by an older compiler are not
+     * run by a newer machine
+     */
+    public static final int VERSION = 1;
+
+    private LuaCompiler() {
+    }
+
+    /**
+     * Compiles a chunk of source code
+     *
+     * @param source    the source code
+     * @param chunkName the name of the chunk shown in error messages, such as {@code @bios}
+     * @return the prototype of the chunk's main function
+     * @throws LuaError when the source has a syntax error
+     */
+    public static Prototype compile(String source, String chunkName) {
+        final Ast.FunctionBody main = new Parser(source, chunkName).parseChunk();
+        return new CodeGenerator(null, chunkName, main).compile();
+    }
+}
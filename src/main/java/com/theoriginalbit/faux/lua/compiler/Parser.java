@@ -0,0 +1,525 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua.compiler;
+
+import com.theoriginalbit.faux.lua.LuaError;
+import com.theoriginalbit.faux.lua.compiler.Ast.Expr;
+import com.theoriginalbit.faux.lua.compiler.Ast.Stat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.theoriginalbit.faux.lua.compiler.Lexer.*;
+
+/**
+ * A recursive descent parser for the Lua 5.1 grammar, producing an {@link Ast}
+ *
+ * @author theoriginalbit
+ */
+final class Parser {
+    /**
+     * The left and right priority of each binary operator, indexed by the {@link Ast} operator
+     */
+    private static final int[][] PRIORITY = {
+            {6, 6}, {6, 6}, {7, 7}, {7, 7}, {7, 7}, {10, 9}, {5, 4},
+            {3, 3}, {3, 3}, {3, 3}, {3, 3}, {3, 3}, {3, 3}, {2, 2}, {1, 1}
+    };
+    private static final int UNARY_PRIORITY = 8;
+    private final Lexer lexer;
+    /**
+     * Whether each function being parsed, innermost last, accepts varargs
+     */
+    private final List<Boolean> varargs = new ArrayList<Boolean>();
+
+    Parser(String source, String chunkName) {
+        lexer = new Lexer(source, chunkName);
+    }
+
+    /**
+     * Parses the whole chunk
+     *
+     * @return the main function
+     */
+    Ast.FunctionBody parseChunk() {
+        lexer.next();
+        varargs.add(Boolean.TRUE);
+        final List<Stat> block = block();
+        check(EOS);
+        return new Ast.FunctionBody(0, Collections.<String>emptyList(), true, block, lexer.line);
+    }
+
+    private LuaError error(String message) {
+        return lexer.error(message, lexer.token);
+    }
+
+    private void check(int token) {
+        if (lexer.token != token) {
+            throw error("'" + tokenText(token) + "' expected");
+        }
+    }
+
+    private void checkNext(int token) {
+        check(token);
+        lexer.next();
+    }
+
+    private boolean testNext(int token) {
+        if (lexer.token == token) {
+            lexer.next();
+            return true;
+        }
+        return false;
+    }
+
+    private void checkMatch(int what, int who, int where) {
+        if (lexer.token != what) {
+            if (where == lexer.line) {
+                throw error("'" + tokenText(what) + "' expected");
+            }
+            throw error("'" + tokenText(what) + "' expected (to close '" + tokenText(who) + "' at line " + where + ")");
+        }
+        lexer.next();
+    }
+
+    private String checkName() {
+        check(NAME);
+        final String name = (String) lexer.value;
+        lexer.next();
+        return name;
+    }
+
+    private boolean blockFollows() {
+        switch (lexer.token) {
+            case ELSE:
+            case ELSEIF:
+            case END:
+            case UNTIL:
+            case EOS:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /*
+     * ============================================================================================
+     *                                      STATEMENTS
+     * ============================================================================================
+     */
+
+    private List<Stat> block() {
+        final List<Stat> statements = new ArrayList<Stat>();
+        while (!blockFollows()) {
+            final boolean last = lexer.token == RETURN || lexer.token == BREAK;
+            statements.add(statement());
+            testNext(';');
+            if (last) {
+                break;
+            }
+        }
+        return statements;
+    }
+
+    private Stat statement() {
+        final int line = lexer.line;
+        switch (lexer.token) {
+            case IF:
+                return ifStatement(line);
+            case WHILE: {
+                lexer.next();
+                final Expr condition = expression();
+                checkNext(DO);
+                final List<Stat> block = block();
+                checkMatch(END, WHILE, line);
+                return new Ast.While(line, condition, block);
+            }
+            case DO: {
+                lexer.next();
+                final List<Stat> block = block();
+                checkMatch(END, DO, line);
+                return new Ast.Do(line, block);
+            }
+            case FOR:
+                return forStatement(line);
+            case REPEAT: {
+                lexer.next();
+                final List<Stat> block = block();
+                checkMatch(UNTIL, REPEAT, line);
+                return new Ast.Repeat(line, block, expression());
+            }
+            case FUNCTION: {
+                lexer.next();
+                Expr target = new Ast.Name(lexer.line, checkName());
+                boolean method = false;
+                while (lexer.token == '.' || lexer.token == ':') {
+                    method = lexer.token == ':';
+                    lexer.next();
+                    target = new Ast.Index(lexer.line, target, new Ast.Constant(lexer.line, checkName()));
+                    if (method) {
+                        break;
+                    }
+                }
+                final Ast.FunctionBody body = functionBody(method, line);
+                return new Ast.Assign(line, Collections.singletonList(target),
+                        Collections.<Expr>singletonList(new Ast.Function(line, body)));
+            }
+            case LOCAL: {
+                lexer.next();
+                if (testNext(FUNCTION)) {
+                    final String name = checkName();
+                    return new Ast.LocalFunction(line, name, functionBody(false, line));
+                }
+                final List<String> names = new ArrayList<String>();
+                do {
+                    names.add(checkName());
+                } while (testNext(','));
+                final List<Expr> values = testNext('=') ? expressionList() : Collections.<Expr>emptyList();
+                return new Ast.Local(line, names, values);
+            }
+            case RETURN: {
+                lexer.next();
+                final List<Expr> values = blockFollows() || lexer.token == ';' ? Collections.<Expr>emptyList() : expressionList();
+                return new Ast.Return(line, values);
+            }
+            case BREAK:
+                lexer.next();
+                return new Ast.Break(line);
+            default:
+                return expressionStatement(line);
+        }
+    }
+
+    private Stat ifStatement(int line) {
+        final List<Expr> conditions = new ArrayList<Expr>();
+        final List<List<Stat>> blocks = new ArrayList<List<Stat>>();
+        do {
+            lexer.next();
+            conditions.add(expression());
+            checkNext(THEN);
+            blocks.add(block());
+        } while (lexer.token == ELSEIF);
+        List<Stat> otherwise = null;
+        if (testNext(ELSE)) {
+            otherwise = block();
+        }
+        checkMatch(END, IF, line);
+        return new Ast.If(line, conditions, blocks, otherwise);
+    }
+
+    private Stat forStatement(int line) {
+        lexer.next();
+        final String first = checkName();
+        if (lexer.token == '=') {
+            lexer.next();
+            final Expr start = expression();
+            checkNext(',');
+            final Expr limit = expression();
+            final Expr step = testNext(',') ? expression() : null;
+            checkNext(DO);
+            final List<Stat> block = block();
+            checkMatch(END, FOR, line);
+            return new Ast.NumericFor(line, first, start, limit, step, block);
+        } else if (lexer.token == ',' || lexer.token == IN) {
+            final List<String> names = new ArrayList<String>();
+            names.add(first);
+            while (testNext(',')) {
+                names.add(checkName());
+            }
+            checkNext(IN);
+            final List<Expr> values = expressionList();
+            checkNext(DO);
+            final List<Stat> block = block();
+            checkMatch(END, FOR, line);
+            return new Ast.GenericFor(line, names, values, block);
+        }
+        throw error("'=' or 'in' expected");
+    }
+
+    private Stat expressionStatement(int line) {
+        final Expr first = suffixedExpression();
+        if (lexer.token == '=' || lexer.token == ',') {
+            final List<Expr> targets = new ArrayList<Expr>();
+            targets.add(first);
+            while (testNext(',')) {
+                targets.add(suffixedExpression());
+            }
+            checkNext('=');
+            for (Expr target : targets) {
+                if (!(target instanceof Ast.Name) && !(target instanceof Ast.Index)) {
+                    throw error("syntax error");
+                }
+            }
+            return new Ast.Assign(line, targets, expressionList());
+        } else if (!(first instanceof Ast.Call)) {
+            throw error("syntax error");
+        }
+        return new Ast.CallStat(line, (Ast.Call) first);
+    }
+
+    /*
+     * ============================================================================================
+     *                                      EXPRESSIONS
+     * ============================================================================================
+     */
+
+    private List<Expr> expressionList() {
+        final List<Expr> list = new ArrayList<Expr>();
+        do {
+            list.add(expression());
+        } while (testNext(','));
+        return list;
+    }
+
+    private Expr expression() {
+        return subExpression(0);
+    }
+
+    /**
+     * Parses an expression of operators binding tighter than the limit
+     */
+    private Expr subExpression(int limit) {
+        Expr expr;
+        final int unary = unaryOperator(lexer.token);
+        if (unary >= 0) {
+            final int line = lexer.line;
+            lexer.next();
+            expr = new Ast.Unary(line, unary, subExpression(UNARY_PRIORITY));
+        } else {
+            expr = simpleExpression();
+        }
+
+        int op = binaryOperator(lexer.token);
+        while (op >= 0 && PRIORITY[op][0] > limit) {
+            final int line = lexer.line;
+            lexer.next();
+            final Expr right = subExpression(PRIORITY[op][1]);
+            expr = new Ast.Binary(line, op, expr, right);
+            op = binaryOperator(lexer.token);
+        }
+        return expr;
+    }
+
+    private static int unaryOperator(int token) {
+        switch (token) {
+            case NOT:
+                return Ast.NOT;
+            case '-':
+                return Ast.NEG;
+            case '#':
+                return Ast.LEN;
+            default:
+                return -1;
+        }
+    }
+
+    private static int binaryOperator(int token) {
+        switch (token) {
+            case '+':
+                return Ast.ADD;
+            case '-':
+                return Ast.SUB;
+            case '*':
+                return Ast.MUL;
+            case '/':
+                return Ast.DIV;
+            case '%':
+                return Ast.MOD;
+            case '^':
+                return Ast.POW;
+            case Lexer.CONCAT:
+                return Ast.CONCAT;
+            case Lexer.EQ:
+                return Ast.EQ;
+            case NE:
+                return Ast.NE;
+            case '<':
+                return Ast.LT;
+            case Lexer.LE:
+                return Ast.LE;
+            case '>':
+                return Ast.GT;
+            case GE:
+                return Ast.GE;
+            case AND:
+                return Ast.AND;
+            case OR:
+                return Ast.OR;
+            default:
+                return -1;
+        }
+    }
+
+    private Expr simpleExpression() {
+        final int line = lexer.line;
+        switch (lexer.token) {
+            case NUMBER:
+            case STRING: {
+                final Object value = lexer.value;
+                lexer.next();
+                return new Ast.Constant(line, value);
+            }
+            case NIL:
+                lexer.next();
+                return new Ast.Constant(line, null);
+            case TRUE:
+                lexer.next();
+                return new Ast.Constant(line, Boolean.TRUE);
+            case FALSE:
+                lexer.next();
+                return new Ast.Constant(line, Boolean.FALSE);
+            case DOTS:
+                if (!varargs.get(varargs.size() - 1)) {
+                    throw error("cannot use '...' outside a vararg function");
+                }
+                lexer.next();
+                return new Ast.Vararg(line);
+            case '{':
+                return table();
+            case FUNCTION:
+                lexer.next();
+                return new Ast.Function(line, functionBody(false, line));
+            default:
+                return suffixedExpression();
+        }
+    }
+
+    private Expr primaryExpression() {
+        final int line = lexer.line;
+        if (lexer.token == NAME) {
+            return new Ast.Name(line, checkName());
+        } else if (lexer.token == '(') {
+            lexer.next();
+            final Expr inner = expression();
+            checkMatch(')', '(', line);
+            return new Ast.Paren(line, inner);
+        }
+        throw error("unexpected symbol");
+    }
+
+    private Expr suffixedExpression() {
+        Expr expr = primaryExpression();
+        for (; ; ) {
+            final int line = lexer.line;
+            switch (lexer.token) {
+                case '.':
+                    lexer.next();
+                    expr = new Ast.Index(line, expr, new Ast.Constant(line, checkName()));
+                    break;
+                case '[': {
+                    lexer.next();
+                    final Expr key = expression();
+                    checkNext(']');
+                    expr = new Ast.Index(line, expr, key);
+                    break;
+                }
+                case ':': {
+                    lexer.next();
+                    final String method = checkName();
+                    expr = new Ast.Call(line, expr, method, callArguments());
+                    break;
+                }
+                case '(':
+                case STRING:
+                case '{':
+                    expr = new Ast.Call(line, expr, null, callArguments());
+                    break;
+                default:
+                    return expr;
+            }
+        }
+    }
+
+    private List<Expr> callArguments() {
+        final int line = lexer.line;
+        switch (lexer.token) {
+            case STRING: {
+                final Expr value = new Ast.Constant(line, lexer.value);
+                lexer.next();
+                return Collections.singletonList(value);
+            }
+            case '{':
+                return Collections.singletonList(table());
+            case '(': {
+                if (line != lexer.lastLine) {
+                    throw error("ambiguous syntax (function call x new statement)");
+                }
+                lexer.next();
+                final List<Expr> args = lexer.token == ')' ? Collections.<Expr>emptyList() : expressionList();
+                checkMatch(')', '(', line);
+                return args;
+            }
+            default:
+                throw error("function arguments expected");
+        }
+    }
+
+    private Expr table() {
+        final int line = lexer.line;
+        checkNext('{');
+        final List<Expr> keys = new ArrayList<Expr>();
+        final List<Expr> values = new ArrayList<Expr>();
+        while (lexer.token != '}') {
+            if (lexer.token == NAME && lexer.lookahead() == '=') {
+                keys.add(new Ast.Constant(lexer.line, checkName()));
+                lexer.next();
+                values.add(expression());
+            } else if (lexer.token == '[') {
+                lexer.next();
+                keys.add(expression());
+                checkNext(']');
+                checkNext('=');
+                values.add(expression());
+            } else {
+                keys.add(null);
+                values.add(expression());
+            }
+            if (!testNext(',') && !testNext(';')) {
+                break;
+            }
+        }
+        checkMatch('}', '{', line);
+        return new Ast.Table(line, keys, values);
+    }
+
+    private Ast.FunctionBody functionBody(boolean method, int line) {
+        final List<String> params = new ArrayList<String>();
+        if (method) {
+            params.add("self");
+        }
+        boolean vararg = false;
+        checkNext('(');
+        if (lexer.token != ')') {
+            do {
+                if (lexer.token == NAME) {
+                    params.add(checkName());
+                } else if (lexer.token == DOTS) {
+                    lexer.next();
+                    vararg = true;
+                } else {
+                    throw error("<name> or '...' expected");
+                }
+            } while (!vararg && testNext(','));
+        }
+        checkNext(')');
+        varargs.add(vararg);
+        final List<Stat> block = block();
+        varargs.remove(varargs.size() - 1);
+        final int lastLine = lexer.line;
+        checkMatch(END, FUNCTION, line);
+        return new Ast.FunctionBody(line, params, vararg, block, lastLine);
+    }
+}
@@ -0,0 +1,268 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua.lib;
+
+import com.theoriginalbit.faux.lua.ControlFunction;
+import com.theoriginalbit.faux.lua.LibFunction;
+import com.theoriginalbit.faux.lua.Lua;
+import com.theoriginalbit.faux.lua.LuaClosure;
+import com.theoriginalbit.faux.lua.LuaError;
+import com.theoriginalbit.faux.lua.LuaFunction;
+import com.theoriginalbit.faux.lua.LuaMachine;
+import com.theoriginalbit.faux.lua.LuaTable;
+import com.theoriginalbit.faux.lua.PrototypeCache;
+
+/**
+ * The Lua basic functions, less those reaching outside of the machine such as {@code print}
+ * and {@code dofile}, which the computer provides itself
+ *
+ * @author theoriginalbit
+ */
+public final class BaseLib extends LibFunction {
+    private static final String[] NAMES = {
+            "assert", "error", "getfenv", "getmetatable", "ipairs", "load", "loadstring", "next",
+            "pairs", "rawequal", "rawget", "rawset", "select", "setfenv", "setmetatable", "tonumber",
+            "tostring", "type", "unpack"
+    };
+    private static final int ASSERT = 0, ERROR = 1, GETFENV = 2, GETMETATABLE = 3, IPAIRS = 4, LOAD = 5,
+            LOADSTRING = 6, NEXT = 7, PAIRS = 8, RAWEQUAL = 9, RAWGET = 10, RAWSET = 11, SELECT = 12,
+            SETFENV = 13, SETMETATABLE = 14, TONUMBER = 15, TOSTRING = 16, TYPE = 17, UNPACK = 18,
+            IPAIRS_ITERATOR = 19;
+    private static final BaseLib NEXT_FUNCTION = new BaseLib("next", NEXT);
+    private static final BaseLib IPAIRS_FUNCTION = new BaseLib("ipairs", IPAIRS_ITERATOR);
+    private final int opcode;
+
+    private BaseLib(String name, int op) {
+        super(name);
+        opcode = op;
+    }
+
+    /**
+     * Installs the functions into the machine's globals
+     *
+     * @param machine the machine
+     */
+    public static void install(LuaMachine machine) {
+        final LuaTable globals = machine.getGlobals();
+        for (int i = 0; i < NAMES.length; ++i) {
+            globals.rawset(NAMES[i], i == NEXT ? NEXT_FUNCTION : new BaseLib(NAMES[i], i));
+        }
+        globals.rawset("pcall", ControlFunction.pcall());
+        globals.rawset("xpcall", ControlFunction.xpcall());
+        globals.rawset("_G", globals);
+        globals.rawset("_VERSION", "Lua 5.1");
+    }
+
+    /**
+     * Compiles a chunk of source code into a function, reusing the prototype of any machine that
+     * has loaded the same chunk before
+     *
+     * @param source      the source code
+     * @param chunkName   the name of the chunk
+     * @param environment the environment of the function
+     * @return the function
+     * @throws LuaError when the source has a syntax error
+     */
+    public static LuaClosure load(String source, String chunkName, LuaTable environment) {
+        return new LuaClosure(PrototypeCache.getInstance().get(source, chunkName), environment);
+    }
+
+    @Override
+    public Object[] getState() {
+        return opcode == IPAIRS_ITERATOR ? Lua.NONE : null;
+    }
+
+    @Override
+    public LibFunction recreate(Object[] state) {
+        return opcode == IPAIRS ? IPAIRS_FUNCTION : super.recreate(state);
+    }
+
+    @Override
+    public Object[] invoke(LuaMachine machine, Object[] args) {
+        switch (opcode) {
+            case ASSERT:
+                if (!Lua.isTruthy(checkAny(args, 0))) {
+                    throw new LuaError(optString(args, 1, "assertion failed!"));
+                }
+                return args;
+            case ERROR: {
+                final int level = optInt(args, 1, 1);
+                throw new LuaError(arg(args, 0), level);
+            }
+            case GETFENV: {
+                final LuaFunction function = functionAt(machine, args);
+                return results(function instanceof LuaClosure ? ((LuaClosure) function).getEnvironment() : machine.getGlobals());
+            }
+            case GETMETATABLE: {
+                final LuaTable metatable = machine.getMetatable(checkAny(args, 0));
+                if (metatable == null) {
+                    return results(null);
+                }
+                final Object protection = metatable.rawget("__metatable");
+                return results(protection != null ? protection : metatable);
+            }
+            case IPAIRS:
+                return new Object[]{IPAIRS_FUNCTION, checkTable(args, 0), Lua.valueOf(0)};
+            case IPAIRS_ITERATOR: {
+                final int index = checkInt(args, 1) + 1;
+                final Object value = checkTable(args, 0).rawget(index);
+                return value == null ? Lua.NONE : results(Lua.valueOf(index), value);
+            }
+            case LOAD: {
+                final LuaFunction reader = checkFunction(args, 0);
+                final StringBuilder source = new StringBuilder();
+                for (; ; ) {
+                    final Object[] piece = machine.call(reader);
+                    final Object value = piece.length > 0 ? piece[0] : null;
+                    if (value == null || "".equals(value)) {
+                        break;
+                    } else if (!(value instanceof String)) {
+                        return results(null, "reader function must return a string");
+                    }
+                    source.append((String) value);
+                }
+                return compile(machine, source.toString(), optString(args, 1, "=(load)"));
+            }
+            case LOADSTRING: {
+                final String source = checkString(args, 0);
+                return compile(machine, source, optString(args, 1, source));
+            }
+            case NEXT: {
+                final Object[] entry = new Object[2];
+                if (!checkTable(args, 0).next(arg(args, 1), entry)) {
+                    return results(null);
+                }
+                return entry;
+            }
+            case PAIRS:
+                return new Object[]{NEXT_FUNCTION, checkTable(args, 0), null};
+            case RAWEQUAL:
+                return results(Lua.valueOf(Lua.rawEquals(checkAny(args, 0), checkAny(args, 1))));
+            case RAWGET:
+                return results(checkTable(args, 0).rawget(checkAny(args, 1)));
+            case RAWSET: {
+                final LuaTable table = checkTable(args, 0);
+                checkAny(args, 1);
+                table.rawset(args[1], checkAny(args, 2));
+                return results(table);
+            }
+            case SELECT: {
+                if ("#".equals(arg(args, 0))) {
+                    return results(Lua.valueOf(args.length - 1));
+                }
+                int index = checkInt(args, 0);
+                if (index < 0) {
+                    index = args.length + index;
+                } else if (index == 0) {
+                    throw argError(0, "index out of range");
+                }
+                if (index < 1) {
+                    throw argError(0, "index out of range");
+                } else if (index >= args.length) {
+                    return Lua.NONE;
+                }
+                final Object[] selected = new Object[args.length - index];
+                System.arraycopy(args, index, selected, 0, selected.length);
+                return selected;
+            }
+            case SETFENV: {
+                final LuaTable environment = checkTable(args, 1);
+                if (Double.valueOf(0).equals(Lua.toNumber(arg(args, 0)))) {
+                    throw new LuaError("'setfenv' cannot change the environment of the thread");
+                }
+                final LuaFunction function = functionAt(machine, args);
+                if (!(function instanceof LuaClosure)) {
+                    throw new LuaError("'setfenv' cannot change environment of given object");
+                }
+                ((LuaClosure) function).setEnvironment(environment);
+                return results(function);
+            }
+            case SETMETATABLE: {
+                final LuaTable table = checkTable(args, 0);
+                final Object metatable = arg(args, 1);
+                if (metatable != null && !(metatable instanceof LuaTable)) {
+                    throw typeError(args, 1, "nil or table");
+                } else if (table.getMetatable() != null && table.getMetatable().rawget("__metatable") != null) {
+                    throw new LuaError("cannot change a protected metatable");
+                }
+                table.setMetatable((LuaTable) metatable);
+                return results(table);
+            }
+            case TONUMBER: {
+                final int base = optInt(args, 1, 10);
+                if (base == 10) {
+                    return results(Lua.toNumber(checkAny(args, 0)));
+                } else if (base < 2 || base > 36) {
+                    throw argError(1, "base out of range");
+                }
+                return results(Lua.parseNumber(checkString(args, 0), base));
+            }
+            case TOSTRING:
+                return results(machine.toString(checkAny(args, 0)));
+            case TYPE:
+                return results(Lua.typeName(checkAny(args, 0)));
+            case UNPACK: {
+                final LuaTable table = checkTable(args, 0);
+                final int first = optInt(args, 1, 1);
+                final int last = arg(args, 2) == null ? table.length() : checkInt(args, 2);
+                if (first > last) {
+                    return Lua.NONE;
+                }
+                final long count = (long) last - first + 1;
+                if (count >= 1000000) {
+                    throw new LuaError("too many results to unpack");
+                }
+                final Object[] values = new Object[(int) count];
+                for (int i = 0; i < values.length; ++i) {
+                    values[i] = table.rawget(first + i);
+                }
+                return values;
+            }
+            default:
+                throw new IllegalStateException("Unknown function " + getName());
+        }
+    }
+
+    /**
+     * Finds the function named by the first argument of {@code getfenv} or {@code setfenv},
+     * either the function itself or a stack level
+     */
+    private LuaFunction functionAt(LuaMachine machine, Object[] args) {
+        final Object target = arg(args, 0);
+        if (target instanceof LuaFunction) {
+            return (LuaFunction) target;
+        }
+        final int level = optInt(args, 0, 1);
+        if (level < 0) {
+            throw argError(0, "level must be non-negative");
+        } else if (level == 0) {
+            return null;
+        }
+        final LuaFunction function = machine.getFunction(level);
+        if (function == null) {
+            throw argError(0, "invalid level");
+        }
+        return function;
+    }
+
+    private static Object[] compile(LuaMachine machine, String source, String chunkName) {
+        try {
+            return results(load(source, chunkName, machine.getGlobals()));
+        } catch (LuaError e) {
+            return results(null, e.getValue());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua.lib;
+
+import com.theoriginalbit.faux.lua.ControlFunction;
+import com.theoriginalbit.faux.lua.Coroutine;
+import com.theoriginalbit.faux.lua.LibFunction;
+import com.theoriginalbit.faux.lua.LuaMachine;
+import com.theoriginalbit.faux.lua.LuaTable;
+
+/**
+ * The Lua coroutine library
+ *
+ * @author theoriginalbit
+ */
+public final class CoroutineLib extends LibFunction {
+    private static final String[] NAMES = {"create", "running", "status", "wrap"};
+    private static final int CREATE = 0, RUNNING = 1, STATUS = 2, WRAP = 3;
+    private final int opcode;
+
+    private CoroutineLib(String name, int op) {
+        super("coroutine." + name);
+        opcode = op;
+    }
+
+    /**
+     * Installs the library into the machine's globals
+     *
+     * @param machine the machine
+     */
+    public static void install(LuaMachine machine) {
+        final LuaTable library = new LuaTable();
+        for (int i = 0; i < NAMES.length; ++i) {
+            library.rawset(NAMES[i], new CoroutineLib(NAMES[i], i));
+        }
+        library.rawset("resume", ControlFunction.resume());
+        library.rawset("yield", ControlFunction.yield());
+        machine.getGlobals().rawset("coroutine", library);
+    }
+
+    @Override
+    public LibFunction recreate(Object[] state) {
+        if (opcode != WRAP) {
+            return super.recreate(state);
+        }
+        return ControlFunction.wrap((Coroutine) state[0]);
+    }
+
+    @Override
+    public Object[] invoke(LuaMachine machine, Object[] args) {
+        switch (opcode) {
+            case CREATE:
+                return results(new Coroutine(checkFunction(args, 0)));
+            case RUNNING: {
+                final Coroutine current = machine.getCurrentCoroutine();
+                return results(current == machine.getMainCoroutine() ? null : current);
+            }
+            case STATUS: {
+                final Object value = arg(args, 0);
+                if (!(value instanceof Coroutine)) {
+                    throw typeError(args, 0, "coroutine");
+                }
+                return results(((Coroutine) value).getStatus().getName());
+            }
+            case WRAP:
+                return results(ControlFunction.wrap(new Coroutine(checkFunction(args, 0))));
+            default:
+                throw new IllegalStateException("Unknown function " + getName());
+        }
+    }
+}
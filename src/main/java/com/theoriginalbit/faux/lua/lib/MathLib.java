@@ -0,0 +1,173 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua.lib;
+
+import com.theoriginalbit.faux.lua.LibFunction;
+import com.theoriginalbit.faux.lua.Lua;
+import com.theoriginalbit.faux.lua.LuaError;
+import com.theoriginalbit.faux.lua.LuaMachine;
+import com.theoriginalbit.faux.lua.LuaTable;
+
+import java.util.Random;
+
+/**
+ * The Lua math library, with random numbers from the machine's own generator
+ *
+ * @author theoriginalbit
+ */
+public final class MathLib extends LibFunction {
+    private static final String[] NAMES = {
+            "abs", "acos", "asin", "atan", "atan2", "ceil", "cos", "cosh", "deg", "exp", "floor",
+            "fmod", "frexp", "ldexp", "log", "log10", "max", "min", "modf", "pow", "rad", "random",
+            "randomseed", "sin", "sinh", "sqrt", "tan", "tanh"
+    };
+    private static final int ABS = 0, ACOS = 1, ASIN = 2, ATAN = 3, ATAN2 = 4, CEIL = 5, COS = 6, COSH = 7,
+            DEG = 8, EXP = 9, FLOOR = 10, FMOD = 11, FREXP = 12, LDEXP = 13, LOG = 14, LOG10 = 15, MAX = 16,
+            MIN = 17, MODF = 18, POW = 19, RAD = 20, RANDOM = 21, RANDOMSEED = 22, SIN = 23, SINH = 24,
+            SQRT = 25, TAN = 26, TANH = 27;
+    private final int opcode;
+
+    private MathLib(String name, int op) {
+        super("math." + name);
+        opcode = op;
+    }
+
+    /**
+     * Installs the library into the machine's globals
+     *
+     * @param machine the machine
+     */
+    public static void install(LuaMachine machine) {
+        final LuaTable library = new LuaTable();
+        for (int i = 0; i < NAMES.length; ++i) {
+            library.rawset(NAMES[i], new MathLib(NAMES[i], i));
+        }
+        library.rawset("pi", Math.PI);
+        library.rawset("huge", Double.POSITIVE_INFINITY);
+        machine.getGlobals().rawset("math", library);
+    }
+
+    @Override
+    public Object[] invoke(LuaMachine machine, Object[] args) {
+        switch (opcode) {
+            case ABS:
+                return number(Math.abs(checkNumber(args, 0)));
+            case ACOS:
+                return number(Math.acos(checkNumber(args, 0)));
+            case ASIN:
+                return number(Math.asin(checkNumber(args, 0)));
+            case ATAN:
+                return number(Math.atan(checkNumber(args, 0)));
+            case ATAN2:
+                return number(Math.atan2(checkNumber(args, 0), checkNumber(args, 1)));
+            case CEIL:
+                return number(Math.ceil(checkNumber(args, 0)));
+            case COS:
+                return number(Math.cos(checkNumber(args, 0)));
+            case COSH:
+                return number(Math.cosh(checkNumber(args, 0)));
+            case DEG:
+                return number(Math.toDegrees(checkNumber(args, 0)));
+            case EXP:
+                return number(Math.exp(checkNumber(args, 0)));
+            case FLOOR:
+                return number(Math.floor(checkNumber(args, 0)));
+            case FMOD:
+                return number(checkNumber(args, 0) % checkNumber(args, 1));
+            case FREXP: {
+                final double x = checkNumber(args, 0);
+                if (x == 0 || Double.isNaN(x) || Double.isInfinite(x)) {
+                    return results(Lua.valueOf(x), Lua.valueOf(0));
+                }
+                // scale subnormals up first so the exponent is exact
+                final boolean subnormal = Math.abs(x) < Double.MIN_NORMAL;
+                final double scaled = subnormal ? x * 0x1p54 : x;
+                final int exponent = Math.getExponent(scaled) + 1;
+                return results(Lua.valueOf(scaled / Math.scalb(1.0, exponent)), Lua.valueOf(exponent - (subnormal ? 54 : 0)));
+            }
+            case LDEXP:
+                return number(checkNumber(args, 0) * Math.pow(2, checkInt(args, 1)));
+            case LOG:
+                return number(Math.log(checkNumber(args, 0)));
+            case LOG10:
+                return number(Math.log10(checkNumber(args, 0)));
+            case MAX:
+            case MIN: {
+                double result = checkNumber(args, 0);
+                for (int i = 1; i < args.length; ++i) {
+                    final double value = checkNumber(args, i);
+                    if (opcode == MAX ? value > result : value < result) {
+                        result = value;
+                    }
+                }
+                return number(result);
+            }
+            case MODF: {
+                final double x = checkNumber(args, 0);
+                final double integral = x >= 0 ? Math.floor(x) : Math.ceil(x);
+                final double fraction = Double.isInfinite(x) ? 0 : x - integral;
+                return results(Lua.valueOf(integral), Lua.valueOf(fraction));
+            }
+            case POW:
+                return number(Math.pow(checkNumber(args, 0), checkNumber(args, 1)));
+            case RAD:
+                return number(Math.toRadians(checkNumber(args, 0)));
+            case RANDOM: {
+                final Random random = machine.getRandom();
+                switch (args.length) {
+                    case 0:
+                        return number(random.nextDouble());
+                    case 1: {
+                        final int upper = checkInt(args, 0);
+                        if (upper < 1) {
+                            throw argError(0, "interval is empty");
+                        }
+                        return number(1 + random.nextInt(upper));
+                    }
+                    case 2: {
+                        final int lower = checkInt(args, 0);
+                        final int upper = checkInt(args, 1);
+                        if (lower > upper) {
+                            throw argError(1, "interval is empty");
+                        }
+                        return number(lower + (long) (random.nextDouble() * ((long) upper - lower + 1)));
+                    }
+                    default:
+                        throw new LuaError("wrong number of arguments");
+                }
+            }
+            case RANDOMSEED:
+                machine.getRandom().setSeed(Double.doubleToLongBits(checkNumber(args, 0)));
+                return Lua.NONE;
+            case SIN:
+                return number(Math.sin(checkNumber(args, 0)));
+            case SINH:
+                return number(Math.sinh(checkNumber(args, 0)));
+            case SQRT:
+                return number(Math.sqrt(checkNumber(args, 0)));
+            case TAN:
+                return number(Math.tan(checkNumber(args, 0)));
+            case TANH:
+                return number(Math.tanh(checkNumber(args, 0)));
+            default:
+                throw new IllegalStateException("Unknown function " + getName());
+        }
+    }
+
+    private static Object[] number(double value) {
+        return results(Lua.valueOf(value));
+    }
+}
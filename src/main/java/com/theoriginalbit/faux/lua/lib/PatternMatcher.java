@@ -0,0 +1,392 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua.lib;
+
+import com.theoriginalbit.faux.lua.Lua;
+import com.theoriginalbit.faux.lua.LuaError;
+
+/**
+ * Matches Lua patterns against a string, following the behaviour of the reference
+ * implementation, with positions as string indices from 0
+ *
+ * @author theoriginalbit
+ */
+final class PatternMatcher {
+    static final int MAX_CAPTURES = 32;
+    private static final int CAP_UNFINISHED = -1, CAP_POSITION = -2;
+    private static final int MAX_DEPTH = 200;
+    private static final char ESCAPE = '%';
+    private final String source;
+    private final String pattern;
+    private final int[] captureStart = new int[MAX_CAPTURES];
+    private final int[] captureLength = new int[MAX_CAPTURES];
+    private int level;
+    private int depth;
+
+    PatternMatcher(String src, String pat) {
+        source = src;
+        pattern = pat;
+    }
+
+    /**
+     * Resets the captures before matching from a new position
+     */
+    void reset() {
+        level = 0;
+        depth = 0;
+    }
+
+    int getLevel() {
+        return level;
+    }
+
+    /**
+     * Matches the pattern from a position
+     *
+     * @param s the position in the source
+     * @param p the position in the pattern
+     * @return the end of the match, or -1 when there is no match
+     */
+    int match(int s, int p) {
+        if (++depth > MAX_DEPTH) {
+            throw new LuaError("pattern too complex");
+        }
+        try {
+            for (; ; ) {
+                if (p == pattern.length()) {
+                    return s;
+                }
+                switch (pattern.charAt(p)) {
+                    case '(':
+                        if (p + 1 < pattern.length() && pattern.charAt(p + 1) == ')') {
+                            return startCapture(s, p + 2, CAP_POSITION);
+                        }
+                        return startCapture(s, p + 1, CAP_UNFINISHED);
+                    case ')':
+                        return endCapture(s, p + 1);
+                    case '$':
+                        if (p + 1 == pattern.length()) {
+                            return s == source.length() ? s : -1;
+                        }
+                        break;
+                    case ESCAPE:
+                        if (p + 1 < pattern.length()) {
+                            final char next = pattern.charAt(p + 1);
+                            if (next == 'b') {
+                                s = matchBalance(s, p + 2);
+                                if (s == -1) {
+                                    return -1;
+                                }
+                                p += 4;
+                                continue;
+                            } else if (next == 'f') {
+                                p += 2;
+                                if (p >= pattern.length() || pattern.charAt(p) != '[') {
+                                    throw new LuaError("missing '[' after '%f' in pattern");
+                                }
+                                final int end = classEnd(p);
+                                final int previous = s == 0 ? 0 : source.charAt(s - 1);
+                                final int current = s < source.length() ? source.charAt(s) : 0;
+                                if (matchBracketClass(previous, p, end - 1) || !matchBracketClass(current, p, end - 1)) {
+                                    return -1;
+                                }
+                                p = end;
+                                continue;
+                            } else if (next >= '0' && next <= '9') {
+                                s = matchCapture(s, next);
+                                if (s == -1) {
+                                    return -1;
+                                }
+                                p += 2;
+                                continue;
+                            }
+                        }
+                        break;
+                    default:
+                        break;
+                }
+
+                final int end = classEnd(p);
+                final boolean matches = s < source.length() && singleMatch(source.charAt(s), p, end);
+                final char suffix = end < pattern.length() ? pattern.charAt(end) : '\0';
+                switch (suffix) {
+                    case '?': {
+                        if (matches) {
+                            final int result = match(s + 1, end + 1);
+                            if (result != -1) {
+                                return result;
+                            }
+                        }
+                        p = end + 1;
+                        continue;
+                    }
+                    case '*':
+                        return maxExpand(s, p, end);
+                    case '+':
+                        return matches ? maxExpand(s + 1, p, end) : -1;
+                    case '-':
+                        return minExpand(s, p, end);
+                    default:
+                        if (!matches) {
+                            return -1;
+                        }
+                        ++s;
+                        p = end;
+                }
+            }
+        } finally {
+            --depth;
+        }
+    }
+
+    private int classEnd(int p) {
+        final char ch = pattern.charAt(p++);
+        if (ch == ESCAPE) {
+            if (p >= pattern.length()) {
+                throw new LuaError("malformed pattern (ends with '%')");
+            }
+            return p + 1;
+        } else if (ch == '[') {
+            if (p < pattern.length() && pattern.charAt(p) == '^') {
+                ++p;
+            }
+            do {
+                if (p >= pattern.length()) {
+                    throw new LuaError("malformed pattern (missing ']')");
+                }
+                final char c = pattern.charAt(p++);
+                if (c == ESCAPE && p < pattern.length()) {
+                    ++p;
+                }
+            } while (p >= pattern.length() || pattern.charAt(p) != ']');
+            return p + 1;
+        }
+        return p;
+    }
+
+    private boolean singleMatch(int c, int p, int end) {
+        final char ch = pattern.charAt(p);
+        switch (ch) {
+            case '.':
+                return true;
+            case ESCAPE:
+                return matchClass(c, pattern.charAt(p + 1));
+            case '[':
+                return matchBracketClass(c, p, end - 1);
+            default:
+                return ch == c;
+        }
+    }
+
+    private boolean matchBracketClass(int c, int p, int end) {
+        boolean signal = true;
+        if (pattern.charAt(p + 1) == '^') {
+            signal = false;
+            ++p;
+        }
+        while (++p < end) {
+            final char ch = pattern.charAt(p);
+            if (ch == ESCAPE) {
+                ++p;
+                if (matchClass(c, pattern.charAt(p))) {
+                    return signal;
+                }
+            } else if (pattern.charAt(p + 1) == '-' && p + 2 < end) {
+                p += 2;
+                if (ch <= c && c <= pattern.charAt(p)) {
+                    return signal;
+                }
+            } else if (ch == c) {
+                return signal;
+            }
+        }
+        return !signal;
+    }
+
+    static boolean matchClass(int c, char cls) {
+        final boolean result;
+        switch (Character.toLowerCase(cls)) {
+            case 'a':
+                result = c < 128 && Character.isLetter(c);
+                break;
+            case 'c':
+                result = c < 32 || c == 127;
+                break;
+            case 'd':
+                result = c >= '0' && c <= '9';
+                break;
+            case 'l':
+                result = c >= 'a' && c <= 'z';
+                break;
+            case 'p':
+                result = c > 32 && c < 127 && !Character.isLetterOrDigit(c);
+                break;
+            case 's':
+                result = c == ' ' || c >= '\t' && c <= '\r';
+                break;
+            case 'u':
+                result = c >= 'A' && c <= 'Z';
+                break;
+            case 'w':
+                result = c < 128 && Character.isLetterOrDigit(c);
+                break;
+            case 'x':
+                result = c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F';
+                break;
+            case 'z':
+                result = c == 0;
+                break;
+            default:
+                return cls == c;
+        }
+        return Character.isUpperCase(cls) != result;
+    }
+
+    private int maxExpand(int s, int p, int end) {
+        int count = 0;
+        while (s + count < source.length() && singleMatch(source.charAt(s + count), p, end)) {
+            ++count;
+        }
+        while (count >= 0) {
+            final int result = match(s + count, end + 1);
+            if (result != -1) {
+                return result;
+            }
+            --count;
+        }
+        return -1;
+    }
+
+    private int minExpand(int s, int p, int end) {
+        for (; ; ) {
+            final int result = match(s, end + 1);
+            if (result != -1) {
+                return result;
+            } else if (s < source.length() && singleMatch(source.charAt(s), p, end)) {
+                ++s;
+            } else {
+                return -1;
+            }
+        }
+    }
+
+    private int startCapture(int s, int p, int what) {
+        if (level >= MAX_CAPTURES) {
+            throw new LuaError("too many captures");
+        }
+        captureStart[level] = s;
+        captureLength[level] = what;
+        ++level;
+        final int result = match(s, p);
+        if (result == -1) {
+            --level;
+        }
+        return result;
+    }
+
+    private int endCapture(int s, int p) {
+        int open = -1;
+        for (int i = level - 1; i >= 0; --i) {
+            if (captureLength[i] == CAP_UNFINISHED) {
+                open = i;
+                break;
+            }
+        }
+        if (open < 0) {
+            throw new LuaError("invalid pattern capture");
+        }
+        captureLength[open] = s - captureStart[open];
+        final int result = match(s, p);
+        if (result == -1) {
+            captureLength[open] = CAP_UNFINISHED;
+        }
+        return result;
+    }
+
+    private int matchBalance(int s, int p) {
+        if (p + 1 >= pattern.length()) {
+            throw new LuaError("unbalanced pattern");
+        }
+        if (s >= source.length() || source.charAt(s) != pattern.charAt(p)) {
+            return -1;
+        }
+        final char open = pattern.charAt(p), close = pattern.charAt(p + 1);
+        int count = 1;
+        while (++s < source.length()) {
+            final char ch = source.charAt(s);
+            if (ch == close) {
+                if (--count == 0) {
+                    return s + 1;
+                }
+            } else if (ch == open) {
+                ++count;
+            }
+        }
+        return -1;
+    }
+
+    private int matchCapture(int s, char index) {
+        final int capture = index - '1';
+        if (capture < 0 || capture >= level || captureLength[capture] == CAP_UNFINISHED) {
+            throw new LuaError("invalid capture index");
+        }
+        final int length = captureLength[capture];
+        if (source.length() - s >= length && source.regionMatches(captureStart[capture], source, s, length)) {
+            return s + length;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets a capture of the last match
+     *
+     * @param index the capture
+     * @param start the start of the whole match
+     * @param end   the end of the whole match
+     * @return the captured string, or position
+     */
+    Object getCapture(int index, int start, int end) {
+        if (index >= level) {
+            if (index == 0) {
+                return source.substring(start, end);
+            }
+            throw new LuaError("invalid capture index");
+        }
+        final int length = captureLength[index];
+        if (length == CAP_UNFINISHED) {
+            throw new LuaError("unfinished capture");
+        } else if (length == CAP_POSITION) {
+            return Lua.valueOf(captureStart[index] + 1);
+        }
+        return source.substring(captureStart[index], captureStart[index] + length);
+    }
+
+    /**
+     * Gets the captures of the last match, or the whole match when there are none
+     *
+     * @param start the start of the whole match
+     * @param end   the end of the whole match
+     * @return the captures
+     */
+    Object[] getCaptures(int start, int end) {
+        final int count = level == 0 ? 1 : level;
+        final Object[] captures = new Object[count];
+        for (int i = 0; i < count; ++i) {
+            captures[i] = getCapture(i, start, end);
+        }
+        return captures;
+    }
+}
@@ -0,0 +1,567 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua.lib;
+
+import com.theoriginalbit.faux.lua.LibFunction;
+import com.theoriginalbit.faux.lua.Lua;
+import com.theoriginalbit.faux.lua.LuaError;
+import com.theoriginalbit.faux.lua.LuaFunction;
+import com.theoriginalbit.faux.lua.LuaMachine;
+import com.theoriginalbit.faux.lua.LuaTable;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.IllegalFormatException;
+import java.util.Locale;
+
+/**
+ * The Lua string library. Strings hold characters 0 to 255, so the case and character class
+ * functions only consider ASCII, as the C locale does.
+ *
+ * @author theoriginalbit
+ */
+public final class StringLib extends LibFunction {
+    private static final String[] NAMES = {
+            "byte", "char", "dump", "find", "format", "gmatch", "gsub", "len", "lower", "match",
+            "rep", "reverse", "sub", "upper"
+    };
+    private static final int BYTE = 0, CHAR = 1, DUMP = 2, FIND = 3, FORMAT = 4, GMATCH = 5, GSUB = 6,
+            LEN = 7, LOWER = 8, MATCH = 9, REP = 10, REVERSE = 11, SUB = 12, UPPER = 13, GMATCH_ITERATOR = 14;
+    /**
+     * The longest string the library will build
+     */
+    private static final int MAX_LENGTH = 1 << 26;
+    private static final String SPECIALS = "^$*+?.([%-";
+    private final int opcode;
+    /*
+       the state of a gmatch iterator
+     */
+    private final PatternMatcher matcher;
+    private final String source, pattern;
+    private int position;
+
+    private StringLib(String name, int op) {
+        super("string." + name);
+        opcode = op;
+        matcher = null;
+        source = pattern = null;
+    }
+
+    private StringLib(String src, String pat, int start) {
+        super("string.gmatch");
+        opcode = GMATCH_ITERATOR;
+        matcher = new PatternMatcher(src, pat);
+        source = src;
+        pattern = pat;
+        position = start;
+    }
+
+    /**
+     * Installs the library into the machine's globals, and as the string metatable's index
+     *
+     * @param machine the machine
+     */
+    public static void install(LuaMachine machine) {
+        final LuaTable library = new LuaTable();
+        for (int i = 0; i < NAMES.length; ++i) {
+            library.rawset(NAMES[i], new StringLib(NAMES[i], i));
+        }
+        machine.getGlobals().rawset("string", library);
+        final LuaTable metatable = new LuaTable();
+        metatable.rawset("__index", library);
+        machine.setStringMetatable(metatable);
+    }
+
+    @Override
+    public Object[] getState() {
+        return opcode == GMATCH_ITERATOR ? new Object[]{source, pattern, Lua.valueOf(position)} : null;
+    }
+
+    @Override
+    public LibFunction recreate(Object[] state) {
+        if (opcode != GMATCH) {
+            return super.recreate(state);
+        }
+        return new StringLib((String) state[0], (String) state[1], ((Double) state[2]).intValue());
+    }
+
+    @Override
+    public Object[] invoke(LuaMachine machine, Object[] args) {
+        switch (opcode) {
+            case BYTE: {
+                final String s = checkString(args, 0);
+                final int first = relative(optInt(args, 1, 1), s.length());
+                final int last = Math.min(relative(arg(args, 2) == null ? first : checkInt(args, 2), s.length()), s.length());
+                final int start = Math.max(first, 1);
+                if (start > last) {
+                    return Lua.NONE;
+                }
+                final Object[] bytes = new Object[last - start + 1];
+                for (int i = 0; i < bytes.length; ++i) {
+                    bytes[i] = Lua.valueOf(s.charAt(start - 1 + i));
+                }
+                return bytes;
+            }
+            case CHAR: {
+                final char[] chars = new char[args.length];
+                for (int i = 0; i < args.length; ++i) {
+                    final int c = checkInt(args, i);
+                    if (c < 0 || c > 255) {
+                        throw argError(i, "invalid value");
+                    }
+                    chars[i] = (char) c;
+                }
+                return results(new String(chars));
+            }
+            case DUMP:
+                checkFunction(args, 0);
+                throw new LuaError("unable to dump given function");
+            case FIND:
+                return find(args, true);
+            case FORMAT:
+                return results(format(args));
+            case GMATCH:
+                return results(new StringLib(checkString(args, 0), checkString(args, 1), 0));
+            case GMATCH_ITERATOR:
+                while (position <= source.length()) {
+                    matcher.reset();
+                    final int start = position;
+                    final int end = matcher.match(start, 0);
+                    if (end != -1) {
+                        position = end == start ? end + 1 : end;
+                        return matcher.getCaptures(start, end);
+                    }
+                    ++position;
+                }
+                return Lua.NONE;
+            case GSUB:
+                return gsub(machine, args);
+            case LEN:
+                return results(Lua.valueOf(checkString(args, 0).length()));
+            case LOWER: {
+                final char[] chars = checkString(args, 0).toCharArray();
+                for (int i = 0; i < chars.length; ++i) {
+                    if (chars[i] >= 'A' && chars[i] <= 'Z') {
+                        chars[i] += 'a' - 'A';
+                    }
+                }
+                return results(new String(chars));
+            }
+            case MATCH:
+                return find(args, false);
+            case REP: {
+                final String s = checkString(args, 0);
+                final int count = checkInt(args, 1);
+                if (count <= 0 || s.isEmpty()) {
+                    return results("");
+                } else if ((long) s.length() * count > MAX_LENGTH) {
+                    throw new LuaError("resulting string too large");
+                }
+                final StringBuilder builder = new StringBuilder(s.length() * count);
+                for (int i = 0; i < count; ++i) {
+                    builder.append(s);
+                }
+                return results(builder.toString());
+            }
+            case REVERSE:
+                return results(new StringBuilder(checkString(args, 0)).reverse().toString());
+            case SUB: {
+                final String s = checkString(args, 0);
+                final int start = Math.max(relative(optInt(args, 1, 1), s.length()), 1);
+                final int end = Math.min(relative(optInt(args, 2, -1), s.length()), s.length());
+                return results(start <= end ? s.substring(start - 1, end) : "");
+            }
+            case UPPER: {
+                final char[] chars = checkString(args, 0).toCharArray();
+                for (int i = 0; i < chars.length; ++i) {
+                    if (chars[i] >= 'a' && chars[i] <= 'z') {
+                        chars[i] -= 'a' - 'A';
+                    }
+                }
+                return results(new String(chars));
+            }
+            default:
+                throw new IllegalStateException("Unknown function " + getName());
+        }
+    }
+
+    /**
+     * Converts a position which may be relative to the end of a string, as -1 is the last character
+     */
+    private static int relative(int position, int length) {
+        return position >= 0 ? position : Math.max(length + position + 1, 0);
+    }
+
+    private Object[] find(Object[] args, boolean find) {
+        final String s = checkString(args, 0);
+        final String pattern = checkString(args, 1);
+        int init = relative(optInt(args, 2, 1), s.length()) - 1;
+        if (init < 0) {
+            init = 0;
+        } else if (init > s.length()) {
+            init = s.length();
+        }
+
+        if (find && (Lua.isTruthy(arg(args, 3)) || !hasSpecials(pattern))) {
+            final int index = s.indexOf(pattern, init);
+            return index < 0 ? results(null) : results(Lua.valueOf(index + 1), Lua.valueOf(index + pattern.length()));
+        }
+
+        final boolean anchor = pattern.startsWith("^");
+        final PatternMatcher matcher = new PatternMatcher(s, anchor ? pattern.substring(1) : pattern);
+        int start = init;
+        do {
+            matcher.reset();
+            final int end = matcher.match(start, 0);
+            if (end != -1) {
+                if (!find) {
+                    return matcher.getCaptures(start, end);
+                }
+                final int captures = matcher.getLevel();
+                final Object[] results = new Object[2 + captures];
+                results[0] = Lua.valueOf(start + 1);
+                results[1] = Lua.valueOf(end);
+                for (int i = 0; i < captures; ++i) {
+                    results[2 + i] = matcher.getCapture(i, start, end);
+                }
+                return results;
+            }
+        } while (start++ < s.length() && !anchor);
+        return results(null);
+    }
+
+    private static boolean hasSpecials(String pattern) {
+        for (int i = 0; i < pattern.length(); ++i) {
+            if (SPECIALS.indexOf(pattern.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Object[] gsub(LuaMachine machine, Object[] args) {
+        final String s = checkString(args, 0);
+        String pattern = checkString(args, 1);
+        final Object replacement = arg(args, 2);
+        if (!(replacement instanceof String) && !(replacement instanceof Double) &&
+                !(replacement instanceof LuaTable) && !(replacement instanceof LuaFunction)) {
+            throw typeError(args, 2, "string/function/table");
+        }
+        final int max = optInt(args, 3, s.length() + 1);
+
+        final boolean anchor = pattern.startsWith("^");
+        if (anchor) {
+            pattern = pattern.substring(1);
+        }
+        final PatternMatcher matcher = new PatternMatcher(s, pattern);
+        final StringBuilder result = new StringBuilder(s.length());
+        int source = 0;
+        int count = 0;
+        while (count < max) {
+            matcher.reset();
+            final int end = matcher.match(source, 0);
+            if (end != -1) {
+                ++count;
+                addValue(machine, matcher, result, s, source, end, replacement);
+            }
+            if (end != -1 && end > source) {
+                source = end;
+            } else if (source < s.length()) {
+                result.append(s.charAt(source++));
+            } else {
+                break;
+            }
+            if (anchor) {
+                break;
+            }
+        }
+        result.append(s, source, s.length());
+        return results(result.toString(), Lua.valueOf(count));
+    }
+
+    private static void addValue(LuaMachine machine, PatternMatcher matcher, StringBuilder result, String s, int start, int end, Object replacement) {
+        final Object value;
+        if (replacement instanceof LuaTable) {
+            value = machine.index(replacement, matcher.getCapture(0, start, end));
+        } else if (replacement instanceof LuaFunction) {
+            final Object[] values = machine.call(replacement, matcher.getCaptures(start, end));
+            value = values.length > 0 ? values[0] : null;
+        } else {
+            final String template = Lua.toConcatString(replacement);
+            for (int i = 0; i < template.length(); ++i) {
+                final char ch = template.charAt(i);
+                if (ch != '%' || ++i == template.length()) {
+                    result.append(ch);
+                    continue;
+                }
+                final char next = template.charAt(i);
+                if (next == '0') {
+                    result.append(s, start, end);
+                } else if (next >= '1' && next <= '9') {
+                    result.append(Lua.toConcatString(matcher.getCapture(next - '1', start, end)));
+                } else {
+                    result.append(next);
+                }
+            }
+            return;
+        }
+
+        if (!Lua.isTruthy(value)) {
+            result.append(s, start, end);
+        } else if (value instanceof String || value instanceof Double) {
+            result.append(Lua.toConcatString(value));
+        } else {
+            throw new LuaError("invalid replacement value (a " + Lua.typeName(value) + ")");
+        }
+    }
+
+    /*
+     * ============================================================================================
+     *                                        FORMAT
+     * ============================================================================================
+     */
+
+    private String format(Object[] args) {
+        final String format = checkString(args, 0);
+        final StringBuilder result = new StringBuilder(format.length() + 16);
+        int arg = 0;
+        for (int i = 0; i < format.length(); ++i) {
+            final char ch = format.charAt(i);
+            if (ch != '%') {
+                result.append(ch);
+                continue;
+            } else if (++i == format.length()) {
+                throw new LuaError("invalid option '%' to 'format'");
+            } else if (format.charAt(i) == '%') {
+                result.append('%');
+                continue;
+            }
+
+            // flags, width and precision
+            final int start = i;
+            while (i < format.length() && "-+ #0".indexOf(format.charAt(i)) >= 0) {
+                ++i;
+            }
+            if (i - start > 5) {
+                throw new LuaError("invalid format (repeated flags)");
+            }
+            final int widthStart = i;
+            while (i < format.length() && Character.isDigit(format.charAt(i))) {
+                ++i;
+            }
+            if (i - widthStart > 2) {
+                throw new LuaError("invalid format (width or precision too long)");
+            }
+            final int width = i == widthStart ? 0 : Integer.parseInt(format.substring(widthStart, i));
+            int precision = -1;
+            if (i < format.length() && format.charAt(i) == '.') {
+                final int precisionStart = ++i;
+                while (i < format.length() && Character.isDigit(format.charAt(i))) {
+                    ++i;
+                }
+                if (i - precisionStart > 2) {
+                    throw new LuaError("invalid format (width or precision too long)");
+                }
+                precision = i == precisionStart ? 0 : Integer.parseInt(format.substring(precisionStart, i));
+            }
+            if (i == format.length()) {
+                throw new LuaError("invalid option '%' to 'format'");
+            }
+            final String flags = format.substring(start, widthStart);
+            // Java insists on a width for some flags that C ignores without one
+            final String javaFlags = width > 0 ? flags + width : flags.replace("-", "").replace("0", "");
+            final char conversion = format.charAt(i);
+
+            ++arg;
+            if (conversion != 'q' && conversion != 's' && conversion != 'c' && "dicoxXuueEfgG".indexOf(conversion) < 0) {
+                throw new LuaError("invalid option '%" + conversion + "' to 'format'");
+            }
+            try {
+                switch (conversion) {
+                    case 'c':
+                        result.append(pad(String.valueOf((char) checkInt(args, arg)), flags, width));
+                        break;
+                    case 'd':
+                    case 'i':
+                    case 'u': {
+                        final long value = (long) checkNumber(args, arg);
+                        String digits = Long.toString(value);
+                        if (precision >= 0) {
+                            digits = precisionDigits(digits, precision);
+                        }
+                        if (value >= 0 && flags.contains("+")) {
+                            digits = "+" + digits;
+                        } else if (value >= 0 && flags.contains(" ")) {
+                            digits = " " + digits;
+                        }
+                        result.append(pad(digits, flags, width, flags.contains("0") && precision < 0));
+                        break;
+                    }
+                    case 'o':
+                    case 'x':
+                    case 'X':
+                        result.append(String.format(Locale.ROOT, "%" + javaFlags.replace("+", "").replace(" ", "") + conversion, (long) checkNumber(args, arg)));
+                        break;
+                    case 'e':
+                    case 'E':
+                    case 'f':
+                        result.append(String.format(Locale.ROOT, "%" + javaFlags + (precision >= 0 ? "." + precision : "") + conversion, checkNumber(args, arg)));
+                        break;
+                    case 'g':
+                    case 'G': {
+                        String number = formatGeneral(checkNumber(args, arg), precision < 0 ? 6 : precision, flags.contains("#"));
+                        if (conversion == 'G') {
+                            number = number.toUpperCase(Locale.ROOT);
+                        }
+                        if (flags.contains("+") && !number.startsWith("-")) {
+                            number = "+" + number;
+                        } else if (flags.contains(" ") && !number.startsWith("-")) {
+                            number = " " + number;
+                        }
+                        result.append(pad(number, flags, width, flags.contains("0")));
+                        break;
+                    }
+                    case 'q':
+                        quote(result, checkString(args, arg));
+                        break;
+                    default: {
+                        String string = checkString(args, arg);
+                        if (precision >= 0 && precision < string.length()) {
+                            string = string.substring(0, precision);
+                        }
+                        result.append(pad(string, flags, width));
+                    }
+                }
+            } catch (IllegalFormatException e) {
+                throw new LuaError("invalid option '%" + format.substring(start, i + 1) + "' to 'format'");
+            }
+        }
+        return result.toString();
+    }
+
+    private static String precisionDigits(String digits, int precision) {
+        final boolean sign = !digits.isEmpty() && !Character.isDigit(digits.charAt(0));
+        final String prefix = sign ? digits.substring(0, 1) : "";
+        String body = sign ? digits.substring(1) : digits;
+        if (precision == 0 && body.equals("0")) {
+            body = "";
+        }
+        final StringBuilder builder = new StringBuilder(prefix);
+        for (int i = body.length(); i < precision; ++i) {
+            builder.append('0');
+        }
+        return builder.append(body).toString();
+    }
+
+    private static String pad(String value, String flags, int width) {
+        return pad(value, flags, width, false);
+    }
+
+    private static String pad(String value, String flags, int width, boolean zeros) {
+        if (value.length() >= width) {
+            return value;
+        }
+        final StringBuilder builder = new StringBuilder(width);
+        if (flags.contains("-")) {
+            builder.append(value);
+            while (builder.length() < width) {
+                builder.append(' ');
+            }
+            return builder.toString();
+        }
+        final boolean sign = zeros && !value.isEmpty() && "+- ".indexOf(value.charAt(0)) >= 0;
+        if (sign) {
+            builder.append(value.charAt(0));
+        }
+        for (int i = value.length(); i < width; ++i) {
+            builder.append(zeros ? '0' : ' ');
+        }
+        return builder.append(sign ? value.substring(1) : value).toString();
+    }
+
+    /**
+     * Formats a number as C's {@code %g} conversion does
+     */
+    static String formatGeneral(double value, int precision, boolean alternate) {
+        if (Double.isNaN(value)) {
+            return "nan";
+        } else if (Double.isInfinite(value)) {
+            return value > 0 ? "inf" : "-inf";
+        }
+        if (precision == 0) {
+            precision = 1;
+        }
+        int exponent = 0;
+        if (value != 0) {
+            final BigDecimal rounded = new BigDecimal(value).round(new MathContext(precision, RoundingMode.HALF_EVEN));
+            exponent = rounded.precision() - rounded.scale() - 1;
+        }
+        String formatted;
+        if (exponent < -4 || exponent >= precision) {
+            formatted = String.format(Locale.ROOT, "%." + (precision - 1) + "e", value);
+            if (!alternate) {
+                final int e = formatted.indexOf('e');
+                formatted = stripZeros(formatted.substring(0, e)) + formatted.substring(e);
+            }
+        } else {
+            formatted = String.format(Locale.ROOT, "%." + Math.max(precision - 1 - exponent, 0) + "f", value);
+            if (!alternate) {
+                formatted = stripZeros(formatted);
+            }
+        }
+        return formatted;
+    }
+
+    private static String stripZeros(String number) {
+        if (number.indexOf('.') < 0) {
+            return number;
+        }
+        int end = number.length();
+        while (number.charAt(end - 1) == '0') {
+            --end;
+        }
+        if (number.charAt(end - 1) == '.') {
+            --end;
+        }
+        return number.substring(0, end);
+    }
+
+    private static void quote(StringBuilder result, String s) {
+        result.append('"');
+        for (int i = 0; i < s.length(); ++i) {
+            final char ch = s.charAt(i);
+            switch (ch) {
+                case '"':
+                case '\\':
+                    result.append('\\').append(ch);
+                    break;
+                case '\n':
+                    result.append("\\\n");
+                    break;
+                case '\r':
+                    result.append("\\r");
+                    break;
+                case '\0':
+                    result.append("\\000");
+                    break;
+                default:
+                    result.append(ch);
+            }
+        }
+        result.append('"');
+    }
+}
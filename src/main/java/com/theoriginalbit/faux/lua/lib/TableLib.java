@@ -0,0 +1,212 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua.lib;
+
+import com.theoriginalbit.faux.lua.LibFunction;
+import com.theoriginalbit.faux.lua.Lua;
+import com.theoriginalbit.faux.lua.LuaError;
+import com.theoriginalbit.faux.lua.LuaFunction;
+import com.theoriginalbit.faux.lua.LuaMachine;
+import com.theoriginalbit.faux.lua.LuaTable;
+
+/**
+ * The Lua table library
+ *
+ * @author theoriginalbit
+ */
+public final class TableLib extends LibFunction {
+    private static final String[] NAMES = {"concat", "getn", "insert", "maxn", "remove", "sort"};
+    private static final int CONCAT = 0, GETN = 1, INSERT = 2, MAXN = 3, REMOVE = 4, SORT = 5;
+    private final int opcode;
+
+    private TableLib(String name, int op) {
+        super("table." + name);
+        opcode = op;
+    }
+
+    /**
+     * Installs the library into the machine's globals
+     *
+     * @param machine the machine
+     */
+    public static void install(LuaMachine machine) {
+        final LuaTable library = new LuaTable();
+        for (int i = 0; i < NAMES.length; ++i) {
+            library.rawset(NAMES[i], new TableLib(NAMES[i], i));
+        }
+        machine.getGlobals().rawset("table", library);
+    }
+
+    @Override
+    public Object[] invoke(LuaMachine machine, Object[] args) {
+        switch (opcode) {
+            case CONCAT: {
+                final LuaTable table = checkTable(args, 0);
+                final String separator = optString(args, 1, "");
+                final int first = optInt(args, 2, 1);
+                final int last = arg(args, 3) == null ? table.length() : checkInt(args, 3);
+                final StringBuilder builder = new StringBuilder();
+                for (int i = first; i <= last && i >= first; ++i) {
+                    final String value = Lua.toConcatString(table.rawget(i));
+                    if (value == null) {
+                        throw new LuaError("invalid value (at index " + i + ") in table for 'concat'");
+                    }
+                    builder.append(value);
+                    if (i != last) {
+                        builder.append(separator);
+                    }
+                }
+                return results(builder.toString());
+            }
+            case GETN:
+                return results(Lua.valueOf(checkTable(args, 0).length()));
+            case INSERT: {
+                final LuaTable table = checkTable(args, 0);
+                final int length = table.length();
+                switch (args.length) {
+                    case 2:
+                        table.rawset(length + 1, args[1]);
+                        return Lua.NONE;
+                    case 3: {
+                        final int position = checkInt(args, 1);
+                        for (int i = length; i >= position; --i) {
+                            table.rawset(i + 1, table.rawget(i));
+                        }
+                        table.rawset(position, args[2]);
+                        return Lua.NONE;
+                    }
+                    default:
+                        throw new LuaError("wrong number of arguments to 'insert'");
+                }
+            }
+            case MAXN: {
+                final LuaTable table = checkTable(args, 0);
+                final Object[] entry = new Object[2];
+                double max = 0;
+                Object key = null;
+                while (table.next(key, entry)) {
+                    key = entry[0];
+                    if (key instanceof Double && (Double) key > max) {
+                        max = (Double) key;
+                    }
+                }
+                return results(Lua.valueOf(max));
+            }
+            case REMOVE: {
+                final LuaTable table = checkTable(args, 0);
+                final int length = table.length();
+                final int position = optInt(args, 1, length);
+                if (length == 0) {
+                    return Lua.NONE;
+                }
+                final Object removed = table.rawget(position);
+                for (int i = position; i < length; ++i) {
+                    table.rawset(i, table.rawget(i + 1));
+                }
+                table.rawset(length, null);
+                return results(removed);
+            }
+            case SORT: {
+                final LuaTable table = checkTable(args, 0);
+                final Object comparator = arg(args, 1);
+                if (comparator != null && !(comparator instanceof LuaFunction)) {
+                    throw typeError(args, 1, "function");
+                }
+                final int length = table.length();
+                final Object[] values = new Object[length];
+                for (int i = 0; i < length; ++i) {
+                    values[i] = table.rawget(i + 1);
+                }
+                sort(machine, values, 0, length - 1, comparator);
+                for (int i = 0; i < length; ++i) {
+                    table.rawset(i + 1, values[i]);
+                }
+                return Lua.NONE;
+            }
+            default:
+                throw new IllegalStateException("Unknown function " + getName());
+        }
+    }
+
+    private static boolean less(LuaMachine machine, Object comparator, Object a, Object b) {
+        if (comparator == null) {
+            return machine.lessThan(a, b);
+        }
+        final Object[] result = machine.call(comparator, a, b);
+        return result.length > 0 && Lua.isTruthy(result[0]);
+    }
+
+    /**
+     * Quicksort with a median of three pivot, checking the bounds so that an inconsistent
+     * comparator raises an error rather than running off the end
+     */
+    private static void sort(LuaMachine machine, Object[] values, int low, int high, Object comparator) {
+        while (low < high) {
+            // order the low, middle and high values, leaving the median as the pivot
+            final int middle = (low + high) >>> 1;
+            if (less(machine, comparator, values[high], values[low])) {
+                swap(values, low, high);
+            }
+            if (high - low == 1) {
+                return;
+            }
+            if (less(machine, comparator, values[middle], values[low])) {
+                swap(values, middle, low);
+            } else if (less(machine, comparator, values[high], values[middle])) {
+                swap(values, middle, high);
+            }
+            if (high - low == 2) {
+                return;
+            }
+            final Object pivot = values[middle];
+            swap(values, middle, high - 1);
+
+            int i = low, j = high - 1;
+            for (; ; ) {
+                while (less(machine, comparator, values[++i], pivot)) {
+                    if (i >= high) {
+                        throw new LuaError("invalid order function for sorting");
+                    }
+                }
+                while (less(machine, comparator, pivot, values[--j])) {
+                    if (j <= low) {
+                        throw new LuaError("invalid order function for sorting");
+                    }
+                }
+                if (j < i) {
+                    break;
+                }
+                swap(values, i, j);
+            }
+            swap(values, high - 1, i);
+
+            // recurse into the smaller part, loop on the larger
+            if (i - low < high - i) {
+                sort(machine, values, low, i - 1, comparator);
+                low = i + 1;
+            } else {
+                sort(machine, values, i + 1, high, comparator);
+                high = i - 1;
+            }
+        }
+    }
+
+    private static void swap(Object[] values, int a, int b) {
+        final Object temp = values[a];
+        values[a] = values[b];
+        values[b] = temp;
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.manager;
+
+import com.theoriginalbit.faux.api.computercraft.IDeviceStatistics;
+
+/**
+ * The counters of {@link com.theoriginalbit.faux.api.computercraft.IDeviceStatistics}, with the
+ * names they are exported under.
+ *
+ * @author theoriginalbit
+ */
+enum DeviceCounter {
+    EVENTS_QUEUED("events_queued_total", "Events queued for devices") {
+        @Override
+        long get(IDeviceStatistics statistics) {
+            return statistics.getEventsQueued();
+        }
+    },
+    EVENTS_DROPPED("events_dropped_total", "Events dropped because a device's queue was full") {
+        @Override
+        long get(IDeviceStatistics statistics) {
+            return statistics.getEventsDropped();
+        }
+    },
+    INSTRUCTIONS("instructions_total", "Lua instructions executed") {
+        @Override
+        long get(IDeviceStatistics statistics) {
+            return statistics.getInstructions();
+        }
+    },
+    YIELDS("yields_total", "Yields to wait for an event") {
+        @Override
+        long get(IDeviceStatistics statistics) {
+            return statistics.getYields();
+        }
+    },
+    OVERRUNS("time_slice_overruns_total", "Executions that ran longer than their time slice") {
+        @Override
+        long get(IDeviceStatistics statistics) {
+            return statistics.getOverruns();
+        }
+    },
+    BYTES_READ("file_read_bytes_total", "Bytes read from files") {
+        @Override
+        long get(IDeviceStatistics statistics) {
+            return statistics.getBytesRead();
+        }
+    },
+    BYTES_WRITTEN("file_written_bytes_total", "Bytes written to files") {
+        @Override
+        long get(IDeviceStatistics statistics) {
+            return statistics.getBytesWritten();
+        }
+    },
+    RENDERS("renders_total", "Times devices were drawn") {
+        @Override
+        long get(IDeviceStatistics statistics) {
+            return statistics.getRenders();
+        }
+    },
+    RENDER_TIME("render_seconds_total", "Time spent drawing devices", 1.0e-9) {
+        @Override
+        long get(IDeviceStatistics statistics) {
+            return statistics.getRenderTime();
+        }
+    };
+
+    private final String name, help;
+    private final double scale;
+
+    DeviceCounter(String metricName, String description) {
+        this(metricName, description, 1.0);
+    }
+
+    DeviceCounter(String metricName, String description, double unitScale) {
+        name = metricName;
+        help = description;
+        scale = unitScale;
+    }
+
+    /**
+     * @return the name of the metric, without a prefix
+     */
+    String getName() {
+        return name;
+    }
+
+    String getHelp() {
+        return help;
+    }
+
+    /**
+     * @return the factor which converts the counter to the unit of the metric
+     */
+    double getScale() {
+        return scale;
+    }
+
+    /**
+     * @param statistics the statistics to read
+     * @return the value of the counter
+     */
+    abstract long get(IDeviceStatistics statistics);
+}
@@ -15,15 +15,59 @@
  */
 package com.theoriginalbit.faux.manager;
 
+import com.theoriginalbit.faux.Emulator;
 import com.theoriginalbit.faux.api.computercraft.IDevice;
+import com.theoriginalbit.faux.api.computercraft.IDeviceStatistics;
 import com.theoriginalbit.faux.log.Log;
+import com.theoriginalbit.faux.lua.PrototypeCache;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * Keeps every device, and publishes the statistics of each device, and the totals of them all, as
+ * JMX MBeans under the {@value #DOMAIN} domain. The totals include devices which have since been
+ * removed, so they only ever increase.
+ * <p/>
+ * The MBeans of each manager are told apart by an {@code instance} property, numbered from 0 in
+ * the order the managers are created, so that several emulators can run in the same JVM. Devices
+ * which share an ID are told apart by a {@code copy} property on all but the first. The MBeans are
+ * published until the manager is closed.
+ *
  * @author theoriginalbit
  */
 public class DeviceManager extends Manager<IDevice> {
+    private static final String DOMAIN = "com.theoriginalbit.faux";
+    private static final DeviceCounter[] COUNTERS = DeviceCounter.values();
+    private static final AtomicInteger instances = new AtomicInteger();
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final Totals totals = new Totals();
+    private final String scope = DOMAIN + ":instance=" + instances.getAndIncrement() + ",";
+    /**
+     * The name each registered device's statistics are published under
+     */
+    private final Map<IDevice, ObjectName> names = new IdentityHashMap<IDevice, ObjectName>();
+    /**
+     * The name the totals are published under, or null if they are not published
+     */
+    private ObjectName totalsName;
+
     public DeviceManager() {
-        super("Device");
+        super("Device", IDevice.class);
+        try {
+            final ObjectName objectName = new ObjectName(scope + "type=Devices");
+            if (export(totals, objectName)) {
+                totalsName = objectName;
+            }
+        } catch (JMException e) {
+            Log.warn("Failed to publish the device totals: %s", e.getMessage());
+        }
     }
 
     @Override
@@ -36,10 +80,186 @@ public class DeviceManager extends Manager<IDevice> {
         // NO-OP
     }
 
+    @Override
+    public boolean register(IDevice item) {
+        if (!super.register(item)) {
+            return false;
+        }
+        // the first free name is found and taken at once, in case a device with the same ID is
+        // registered at the same time
+        synchronized (names) {
+            try {
+                final String name = scope + "type=Device,id=" + item.getID();
+                ObjectName objectName = new ObjectName(name);
+                for (int copy = 2; server.isRegistered(objectName); ++copy) {
+                    objectName = new ObjectName(name + ",copy=" + copy);
+                }
+                if (export(item.getStatistics(), objectName)) {
+                    names.put(item, objectName);
+                }
+            } catch (JMException e) {
+                Log.warn("Failed to publish the statistics of device %d: %s", item.getID(), e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean unregister(IDevice item) {
+        // the counts of the device move to the totals at once, so the totals never go backwards
+        synchronized (totals) {
+            if (!super.unregister(item)) {
+                return false;
+            }
+            final IDeviceStatistics statistics = item.getStatistics();
+            for (DeviceCounter counter : COUNTERS) {
+                totals.retired[counter.ordinal()] += counter.get(statistics);
+            }
+        }
+        final ObjectName objectName;
+        synchronized (names) {
+            objectName = names.remove(item);
+        }
+        if (objectName != null) {
+            unexport(objectName);
+        }
+        return true;
+    }
+
+    /**
+     * @return the totals of every device
+     */
+    public IDeviceStatistics getTotals() {
+        return totals;
+    }
+
+    /**
+     * @return the devices, in the order they were registered
+     */
+    IDevice[] getDevices() {
+        return getItems();
+    }
+
+    /**
+     * Stops every device, or hibernates them when the emulator is set to hibernate on exit
+     */
     public void stopDevices() {
-        for (IDevice device : items) {
-            Log.debug("Stopping device " + device.getID());
-            device.stop();
+        final boolean hibernate = Emulator.getEmulatorSettings().isHibernateOnExit();
+        if (hibernate) {
+            PrototypeCache.getInstance().beginSaving();
+        }
+        try {
+            for (IDevice device : getItems()) {
+                if (hibernate) {
+                    Log.debug("Hibernating device %d", device.getID());
+                    device.hibernate();
+                } else {
+                    Log.debug("Stopping device %d", device.getID());
+                    device.stop();
+                }
+            }
+        } finally {
+            if (hibernate) {
+                PrototypeCache.getInstance().endSaving();
+            }
+        }
+    }
+
+    /**
+     * Removes the MBeans of the totals and of any devices still registered, so that a manager
+     * which is no longer used does not stay reachable through the MBean server
+     */
+    public void close() {
+        synchronized (names) {
+            for (ObjectName objectName : names.values()) {
+                unexport(objectName);
+            }
+            names.clear();
+            if (totalsName != null) {
+                unexport(totalsName);
+                totalsName = null;
+            }
+        }
+    }
+
+    /**
+     * @return whether the statistics were published
+     */
+    private boolean export(IDeviceStatistics statistics, ObjectName name) {
+        try {
+            server.registerMBean(new StandardMBean(statistics, IDeviceStatistics.class), name);
+            return true;
+        } catch (JMException e) {
+            Log.warn("Failed to publish the statistics %s: %s", name, e.getMessage());
+            return false;
+        }
+    }
+
+    private void unexport(ObjectName name) {
+        try {
+            server.unregisterMBean(name);
+        } catch (JMException e) {
+            Log.warn("Failed to remove the statistics %s: %s", name, e.getMessage());
+        }
+    }
+
+    /**
+     * The sum of the statistics of the registered devices and those which have been removed
+     */
+    private final class Totals implements IDeviceStatistics {
+        private final long[] retired = new long[COUNTERS.length];
+
+        private synchronized long get(DeviceCounter counter) {
+            long total = retired[counter.ordinal()];
+            for (IDevice device : getItems()) {
+                total += counter.get(device.getStatistics());
+            }
+            return total;
+        }
+
+        @Override
+        public long getEventsQueued() {
+            return get(DeviceCounter.EVENTS_QUEUED);
+        }
+
+        @Override
+        public long getEventsDropped() {
+            return get(DeviceCounter.EVENTS_DROPPED);
+        }
+
+        @Override
+        public long getInstructions() {
+            return get(DeviceCounter.INSTRUCTIONS);
+        }
+
+        @Override
+        public long getYields() {
+            return get(DeviceCounter.YIELDS);
+        }
+
+        @Override
+        public long getOverruns() {
+            return get(DeviceCounter.OVERRUNS);
+        }
+
+        @Override
+        public long getBytesRead() {
+            return get(DeviceCounter.BYTES_READ);
+        }
+
+        @Override
+        public long getBytesWritten() {
+            return get(DeviceCounter.BYTES_WRITTEN);
+        }
+
+        @Override
+        public long getRenders() {
+            return get(DeviceCounter.RENDERS);
+        }
+
+        @Override
+        public long getRenderTime() {
+            return get(DeviceCounter.RENDER_TIME);
         }
     }
 }
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.manager;
+
+/**
+ * Records how long each phase of the most recent frames of the main loop took. It is written by
+ * the main thread, phase by phase, and may be read from any thread.
+ *
+ * @author theoriginalbit
+ */
+public final class FrameStatistics {
+    /**
+     * The number of frames the statistics cover, 4 seconds at 30 frames per second
+     */
+    public static final int WINDOW = 120;
+
+    /**
+     * The phases of a frame, in the order the main loop performs them
+     */
+    public enum Phase {
+        /**
+         * Collecting the damage of, and drawing, the windows
+         */
+        WINDOWS,
+        /**
+         * Collecting the damage of, and drawing, everything else
+         */
+        RENDER,
+        /**
+         * Presenting the frame, or processing the messages of the display when nothing was drawn
+         */
+        UPDATE,
+        /**
+         * Processing the mouse and keyboard input
+         */
+        INPUT,
+        /**
+         * Waiting for the next frame
+         */
+        SYNC
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private final long[] starts = new long[WINDOW];
+    private final long[][] durations = new long[PHASES.length][WINDOW];
+    private long frames;
+    private long lastMark;
+
+    /**
+     * Starts recording a new frame, all of its phases take no time until they are marked
+     */
+    public synchronized void begin() {
+        final int index = (int) (frames % WINDOW);
+        lastMark = System.nanoTime();
+        starts[index] = lastMark;
+        for (long[] phase : durations) {
+            phase[index] = 0L;
+        }
+        ++frames;
+    }
+
+    /**
+     * Adds the time since the previous mark, or the start of the frame, to a phase of the current
+     * frame. A phase may be marked more than once a frame.
+     *
+     * @param phase the phase which has just been performed
+     */
+    public synchronized void mark(Phase phase) {
+        if (frames == 0) {
+            return;
+        }
+        final long now = System.nanoTime();
+        durations[phase.ordinal()][(int) ((frames - 1) % WINDOW)] += now - lastMark;
+        lastMark = now;
+    }
+
+    /**
+     * @return the number of frames drawn per second, ideally the frame rate cap
+     */
+    public synchronized double getFramesPerSecond() {
+        final int count = getWindowSize();
+        if (count < 2) {
+            return 0.0;
+        }
+        final long newest = starts[(int) ((frames - 1) % WINDOW)];
+        final long oldest = starts[(int) ((frames - count) % WINDOW)];
+        return newest == oldest ? 0.0 : (count - 1) * 1000000000.0 / (newest - oldest);
+    }
+
+    /**
+     * Gets the mean time of a phase over the completed frames; the current frame is still being
+     * recorded
+     *
+     * @param phase the phase
+     * @return the mean time taken, in nanoseconds
+     */
+    public synchronized long getMeanTime(Phase phase) {
+        final int count = getWindowSize() - 1;
+        if (count <= 0) {
+            return 0L;
+        }
+        final long[] times = durations[phase.ordinal()];
+        long total = 0L;
+        for (long age = 2; age <= count + 1; ++age) {
+            total += times[(int) ((frames - age) % WINDOW)];
+        }
+        return total / count;
+    }
+
+    /**
+     * Copies the time of a phase in the most recent completed frames, oldest first. When there
+     * are more frames than fit, the oldest are left out.
+     *
+     * @param phase the phase
+     * @param into  the array to copy into
+     * @return the number of frames copied
+     */
+    public synchronized int getRecentTimes(Phase phase, long[] into) {
+        final int count = Math.min(getWindowSize() - 1, into.length);
+        if (count <= 0) {
+            return 0;
+        }
+        final long[] times = durations[phase.ordinal()];
+        for (int i = 0; i < count; ++i) {
+            into[i] = times[(int) ((frames - 1 - count + i) % WINDOW)];
+        }
+        return count;
+    }
+
+    /**
+     * @return the total number of frames started
+     */
+    public synchronized long getFrameCount() {
+        return frames;
+    }
+
+    private int getWindowSize() {
+        return (int) Math.min(frames, WINDOW);
+    }
+}
@@ -17,6 +17,7 @@ package com.theoriginalbit.faux.manager;
 
 import com.theoriginalbit.faux.api.IEmulatorInstance;
 import com.theoriginalbit.faux.api.IInputConsumer;
+import com.theoriginalbit.faux.api.IWindow;
 import org.lwjgl.input.Keyboard;
 import org.lwjgl.input.Mouse;
 
@@ -25,15 +26,36 @@ import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.Transferable;
 
 /**
+ * Dispatches the keyboard and the mouse to windows. Keys only reach the window with focus, and
+ * consumers which are not windows. Each mouse event is resolved once against the window stack
+ * and only the top-most window under the mouse receives it; while a button is held, the window
+ * it was pressed on receives every event until it is released, even once the mouse has left the
+ * window.
+ * <p/>
+ * The mouse is sampled far more often than frames are drawn, so consecutive samples which only
+ * move the mouse are collapsed into one move each frame.
+ *
  * @author theoriginalbit
  */
 public class InputManager extends Manager<IInputConsumer> {
     private final IEmulatorInstance emulator;
+    private final WindowManager windows;
     private int mouseLastX = 0, mouseLastY = 0, eventButton = -1;
+    /**
+     * The window the held button was pressed on
+     */
+    private IWindow pressed;
+    /**
+     * Where the mouse moved to in samples that have not been handled yet
+     */
+    private int pendingX, pendingY;
+    private boolean movePending;
+    private long coalescedMoves;
 
-    public InputManager(final IEmulatorInstance emulatorInstance) {
-        super("Input");
+    public InputManager(final IEmulatorInstance emulatorInstance, final WindowManager windowManager) {
+        super("Input", IInputConsumer.class);
         emulator = emulatorInstance;
+        windows = windowManager;
     }
 
     public static String getClipboardContents() {
@@ -52,8 +74,20 @@ public class InputManager extends Manager<IInputConsumer> {
     public void manage() {
         if (Mouse.isCreated()) {
             while (Mouse.next()) {
-                handleMouseInput();
+                if (Mouse.getEventButton() == -1 && Mouse.getEventDWheel() == 0) {
+                    // only the last of consecutive moves matters, as nothing happened in between
+                    if (movePending) {
+                        ++coalescedMoves;
+                    }
+                    pendingX = Mouse.getEventX();
+                    pendingY = emulator.getHeight() - Mouse.getEventY() - 1;
+                    movePending = true;
+                } else {
+                    handlePendingMove();
+                    handleMouseInput();
+                }
             }
+            handlePendingMove();
         }
         if (Keyboard.isCreated()) {
             while (Keyboard.next()) {
@@ -67,45 +101,74 @@ public class InputManager extends Manager<IInputConsumer> {
         // NO-OP
     }
 
+    /**
+     * @return the number of mouse move samples that were collapsed into a later one
+     */
+    public long getCoalescedMoveCount() {
+        return coalescedMoves;
+    }
+
+    private void handlePendingMove() {
+        if (movePending) {
+            movePending = false;
+            handleMouseMove(pendingX, pendingY);
+        }
+    }
+
+    private void handleMouseMove(int x, int y) {
+        if (mouseLastX != x || mouseLastY != y) {
+            mouseLastX = x;
+            mouseLastY = y;
+            final IWindow target = eventButton != -1 ? pressed : windows.getWindowAt(x, y);
+            if (target != null) {
+                target.onMouseMoved(x, y);
+            }
+        }
+    }
+
     private void handleMouseInput() {
         final int x = Mouse.getEventX();
         final int y = emulator.getHeight() - Mouse.getEventY() - 1;
         final int b = Mouse.getEventButton();
         final int w = Mouse.getEventDWheel();
 
-        if (eventButton != b && b != -1) {
-            eventButton = b;
-            for (IInputConsumer consumer : items) {
-                consumer.onMouseClick(x, y, eventButton);
-            }
-        }
-
-        if (eventButton != -1 && !Mouse.isButtonDown(eventButton)) {
-            eventButton = -1;
-            for (IInputConsumer consumer : items) {
-                consumer.onMouseRelease(x, y, eventButton);
+        if (b != -1) {
+            if (Mouse.getEventButtonState()) {
+                // only the first button held is tracked, like ComputerCraft
+                if (eventButton == -1) {
+                    eventButton = b;
+                    pressed = windows.getWindowAt(x, y);
+                    if (pressed != null) {
+                        pressed.onMouseClick(x, y, b);
+                    }
+                }
+            } else if (b == eventButton) {
+                eventButton = -1;
+                if (pressed != null) {
+                    pressed.onMouseRelease(x, y, b);
+                    pressed = null;
+                }
             }
         }
 
-        if (mouseLastX != x || mouseLastY != y) {
-            mouseLastX = x;
-            mouseLastY = y;
-            for (IInputConsumer consumer : items) {
-                consumer.onMouseMoved(x, y);
-            }
-        }
+        handleMouseMove(x, y);
 
         if (w != 0) {
-            for (IInputConsumer consumer : items) {
-                consumer.onMouseScrolled(x, y, w);
+            final IWindow target = windows.getWindowAt(x, y);
+            if (target != null) {
+                target.onMouseScrolled(x, y, w);
             }
         }
     }
 
     private void handleKeyboardInput() {
         if (Keyboard.getEventKeyState() || Keyboard.isRepeatEvent()) {
-            for (IInputConsumer consumer : items) {
-                consumer.onKeyPressed(Keyboard.getEventKey(), Keyboard.getEventCharacter());
+            final IWindow focused = windows.getFocused();
+            for (IInputConsumer consumer : getItems()) {
+                // windows behind the focused one must not type, or paste, what the user types
+                if (!(consumer instanceof IWindow) || consumer == focused) {
+                    consumer.onKeyPressed(Keyboard.getEventKey(), Keyboard.getEventCharacter());
+                }
             }
         }
     }
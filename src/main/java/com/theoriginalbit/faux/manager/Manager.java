@@ -18,39 +18,98 @@ package com.theoriginalbit.faux.manager;
 import com.theoriginalbit.faux.api.IManager;
 import com.theoriginalbit.faux.log.Log;
 
-import java.util.ArrayList;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 /**
+ * The base of all managers. Items may be registered and unregistered from any thread in constant
+ * time, while they are kept in registration order. Readers iterate an immutable snapshot array
+ * of the items, which is only rebuilt on the first read after the items have changed, meaning
+ * iteration never locks, allocates, or fails due to concurrent modification.
+ *
  * @author theoriginalbit
  */
 public abstract class Manager<E> implements IManager<E> {
-    protected final ArrayList<E> items = new ArrayList<E>();
+    private final LinkedHashSet<E> members = new LinkedHashSet<E>();
+    private final Class<E> type;
     private final String name;
+    /**
+     * The items as of the last change, or null if it must be rebuilt
+     */
+    private volatile E[] snapshot;
 
-    protected Manager(String managerName) {
+    protected Manager(String managerName, Class<E> itemType) {
         name = managerName;
+        type = itemType;
     }
 
     @Override
     public boolean register(E item) {
-        if (items.contains(item)) {
-            Log.warn("Attempting to register %s with the %s manager when it is already registered", item, name);
-            return false;
+        synchronized (members) {
+            if (!members.add(item)) {
+                Log.warn("Attempting to register %s with the %s manager when it is already registered", item, name);
+                return false;
+            }
+            snapshot = null;
         }
-        return items.add(item);
+        return true;
     }
 
     @Override
     public boolean unregister(E item) {
-        if (!items.contains(item)) {
-            Log.warn("Attempting to un-register %s with the %s manager when it was not registered", item, name);
-            return false;
+        synchronized (members) {
+            if (!members.remove(item)) {
+                Log.warn("Attempting to un-register %s with the %s manager when it was not registered", item, name);
+                return false;
+            }
+            snapshot = null;
+        }
+        return true;
+    }
+
+    /**
+     * Moves an item to the end of the order, in constant time
+     *
+     * @param item the item to move
+     * @return whether the item is registered
+     */
+    protected final boolean moveToEnd(E item) {
+        synchronized (members) {
+            if (!members.remove(item)) {
+                return false;
+            }
+            members.add(item);
+            snapshot = null;
         }
-        return items.remove(item);
+        return true;
     }
 
     @Override
-    public ArrayList<E> getRegisteredItems() {
-        return new ArrayList<E>(items);
+    public List<E> getRegisteredItems() {
+        return Collections.unmodifiableList(Arrays.asList(getItems()));
+    }
+
+    /**
+     * Gets the registered items, in registration order. The returned array is shared and must not
+     * be modified; it does not reflect items registered or unregistered after it was returned.
+     *
+     * @return the registered items
+     */
+    @SuppressWarnings("unchecked")
+    protected final E[] getItems() {
+        E[] items = snapshot;
+        if (items == null) {
+            synchronized (members) {
+                items = snapshot;
+                if (items == null) {
+                    items = members.toArray((E[]) Array.newInstance(type, members.size()));
+                    snapshot = items;
+                }
+            }
+        }
+        return items;
     }
 }
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.manager;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.theoriginalbit.faux.api.IEmulatorInstance;
+import com.theoriginalbit.faux.api.ITickStatistics;
+import com.theoriginalbit.faux.api.computercraft.IDevice;
+import com.theoriginalbit.faux.api.computercraft.IDeviceStatistics;
+import com.theoriginalbit.faux.log.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves the device and tick statistics on {@code http://localhost:<port>/metrics}, in the
+ * Prometheus text format. It only listens on the loopback address. The statistics are read when
+ * they are requested, so serving them adds no work to the emulator in between. Devices which
+ * share an ID are reported as one, their counters summed, so that each series is unique.
+ *
+ * @author theoriginalbit
+ */
+public final class MetricsServer implements HttpHandler {
+    private static final String PREFIX = "faux_";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final DeviceCounter[] COUNTERS = DeviceCounter.values();
+    private final IEmulatorInstance emulator;
+    private final DeviceManager devices;
+    private final HttpServer server;
+
+    private MetricsServer(IEmulatorInstance instance, DeviceManager deviceManager, int port) throws IOException {
+        emulator = instance;
+        devices = deviceManager;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", this);
+    }
+
+    /**
+     * Starts serving the statistics
+     *
+     * @param instance      the emulator instance, for its tick statistics
+     * @param deviceManager the devices
+     * @param port          the port to listen on
+     * @return the server, or null if it could not be started
+     */
+    public static MetricsServer start(IEmulatorInstance instance, DeviceManager deviceManager, int port) {
+        try {
+            final MetricsServer metrics = new MetricsServer(instance, deviceManager, port);
+            metrics.server.start();
+            Log.info("Serving metrics on http://localhost:%d/metrics", port);
+            return metrics;
+        } catch (IOException e) {
+            Log.error("Failed to serve metrics on port %d: %s", port, e.getMessage());
+            return null;
+        }
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            final byte[] body = write(new StringBuilder(4096)).toString().getBytes(Charset.forName("UTF-8"));
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            final OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Writes every metric, the totals of each counter followed by the counter for each device
+     *
+     * @param out the builder to write to
+     * @return the builder
+     */
+    StringBuilder write(StringBuilder out) {
+        final IDevice[] items = devices.getDevices();
+        final IDeviceStatistics totals = devices.getTotals();
+        for (DeviceCounter counter : COUNTERS) {
+            header(out, counter.getName(), counter.getHelp(), "counter");
+            sample(out, counter.getName(), null, counter.get(totals) * counter.getScale());
+        }
+
+        final Map<Integer, List<IDeviceStatistics>> byID = new LinkedHashMap<Integer, List<IDeviceStatistics>>();
+        for (IDevice device : items) {
+            List<IDeviceStatistics> statistics = byID.get(device.getID());
+            if (statistics == null) {
+                statistics = new ArrayList<IDeviceStatistics>(1);
+                byID.put(device.getID(), statistics);
+            }
+            statistics.add(device.getStatistics());
+        }
+        for (DeviceCounter counter : COUNTERS) {
+            final String name = "device_" + counter.getName();
+            header(out, name, counter.getHelp() + ", by device", "counter");
+            for (Map.Entry<Integer, List<IDeviceStatistics>> entry : byID.entrySet()) {
+                long value = 0L;
+                for (IDeviceStatistics statistics : entry.getValue()) {
+                    value += counter.get(statistics);
+                }
+                sample(out, name, entry.getKey().toString(), value * counter.getScale());
+            }
+        }
+
+        header(out, "devices", "Devices in the emulator", "gauge");
+        sample(out, "devices", null, items.length);
+
+        final ITickStatistics ticks = emulator.getTickStatistics();
+        header(out, "ticks_total", "Ticks processed", "counter");
+        sample(out, "ticks_total", null, ticks.getTickCount());
+        header(out, "ticks_skipped_total", "Ticks skipped because the emulator could not keep up", "counter");
+        sample(out, "ticks_skipped_total", null, ticks.getSkippedTicks());
+        header(out, "ticks_per_second", "Ticks processed per second, ideally 20", "gauge");
+        sample(out, "ticks_per_second", null, ticks.getTicksPerSecond());
+        header(out, "tick_mean_seconds", "Mean time taken to process a tick", "gauge");
+        sample(out, "tick_mean_seconds", null, ticks.getMeanTickTime() * 1.0e-9);
+        header(out, "tick_p99_seconds", "99th percentile of the time taken to process a tick", "gauge");
+        sample(out, "tick_p99_seconds", null, ticks.getP99TickTime() * 1.0e-9);
+        return out;
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String device, double value) {
+        out.append(PREFIX).append(name);
+        if (device != null) {
+            out.append("{device=\"").append(device).append("\"}");
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1.0e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+}
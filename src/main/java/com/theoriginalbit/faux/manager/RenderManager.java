@@ -17,17 +17,54 @@ package com.theoriginalbit.faux.manager;
 
 import com.theoriginalbit.faux.api.IRendered;
 
+import java.awt.Rectangle;
+
 /**
  * @author theoriginalbit
  */
 public class RenderManager extends Manager<IRendered> {
+    private final Rectangle bounds = new Rectangle();
+
     public RenderManager() {
-        super("Render");
+        super("Render", IRendered.class);
     }
 
     @Override
     public void manage() {
+        draw(null);
+    }
+
+    /**
+     * Grows the damage to include the areas every element has changed since it was last drawn
+     *
+     * @param damage the damage to grow
+     */
+    public void collectDamage(Rectangle damage) {
+        for (IRendered item : getItems()) {
+            if (item.isDirty()) {
+                item.addDamage(damage);
+            }
+        }
+    }
 
+    /**
+     * Draws the visible elements which overlap the clip, the renderer must already be clipped to it
+     *
+     * @param clip the area being redrawn, or null to draw every visible element
+     */
+    public void draw(Rectangle clip) {
+        for (IRendered item : getItems()) {
+            if (!item.isVisible()) {
+                continue;
+            }
+            if (clip != null) {
+                item.getBounds(bounds);
+                if (!clip.intersects(bounds)) {
+                    continue;
+                }
+            }
+            item.draw(this);
+        }
     }
 
     @Override
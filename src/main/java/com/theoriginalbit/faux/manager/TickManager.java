@@ -15,24 +15,80 @@
  */
 package com.theoriginalbit.faux.manager;
 
+import com.theoriginalbit.faux.Emulator;
+import com.theoriginalbit.faux.api.IClock;
 import com.theoriginalbit.faux.api.IEmulatorInstance;
+import com.theoriginalbit.faux.api.IExecutable;
+import com.theoriginalbit.faux.api.IInputSource;
 import com.theoriginalbit.faux.api.IManager;
+import com.theoriginalbit.faux.api.ITickStatistics;
 import com.theoriginalbit.faux.api.ITicking;
 import com.theoriginalbit.faux.log.Log;
-import org.lwjgl.Sys;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Drives the pseudo-world tick on a fixed timestep. Each tick every registered object is ticked on
+ * a work-stealing pool, after which any {@link com.theoriginalbit.faux.api.IExecutable} objects
+ * that still have work are given further time slices, in rounds, until they are done or the tick
+ * is over.
+ * <p/>
+ * The ticks are scheduled by a {@link com.theoriginalbit.faux.api.IClock}, the system clock unless
+ * another is given, and an {@link com.theoriginalbit.faux.api.IInputSource} may be set to deliver
+ * input before each tick. The statistics record when each tick started on the tick clock, so the
+ * ticks per second are those of the schedule, which is virtual while input is replayed, and the
+ * time taken by ticks and objects on the system clock, as that is their real cost.
+ *
  * @author theoriginalbit
  */
 public class TickManager extends Manager<ITicking> implements Runnable, IManager<ITicking> {
-    private static final long MAX_SLEEP = 50L;
-    private static final float SLOW_TICK = 80.0F;
+    /**
+     * The length of a pseudo-world tick in nanoseconds, 20 ticks per second
+     */
+    private static final long TICK_LENGTH = TimeUnit.MILLISECONDS.toNanos(50L);
     private final IEmulatorInstance emulator;
-    private float lastTick = 0.0F;
+    private final IClock clock;
+    private final ForkJoinPool pool;
+    private final long timeSlice;
+    private final TickStatistics statistics = new TickStatistics();
+    /**
+     * The items ticked last tick, when the registered items change the times of those removed are
+     * forgotten
+     */
+    private ITicking[] lastItems;
+    /**
+     * The slice of each item ticked last tick, in the same order, kept so that a tick does not
+     * allocate while the registered items stay the same
+     */
+    private Slice[] slices = new Slice[0];
+    /**
+     * The slices given time in the current round, and those with work left for the next
+     */
+    private List<Slice> pending = new ArrayList<Slice>(), remaining = new ArrayList<Slice>();
+    private volatile IInputSource inputSource;
 
     public TickManager(final IEmulatorInstance emulatorInstance) {
-        super("Tick");
+        this(emulatorInstance, SystemClock.INSTANCE);
+    }
+
+    /**
+     * @param emulatorInstance the emulator instance
+     * @param tickClock        the clock the ticks are scheduled by
+     */
+    public TickManager(final IEmulatorInstance emulatorInstance, final IClock tickClock) {
+        super("Tick", ITicking.class);
         emulator = emulatorInstance;
+        clock = tickClock;
+        pool = new ForkJoinPool(Emulator.getEmulatorSettings().getWorkerThreads());
+        timeSlice = TimeUnit.MILLISECONDS.toNanos(Emulator.getEmulatorSettings().getTimeSlice());
     }
 
     @Override
@@ -48,40 +104,178 @@ public class TickManager extends Manager<ITicking> implements Runnable, IManager
     /**
      * Get the time in milliseconds
      *
-     * @return The system time in milliseconds
+     * @return The time in milliseconds, on the clock the ticks are scheduled by
      */
     public long getSystemTime() {
-        return Sys.getTime() * 1000L / Sys.getTimerResolution();
+        return TimeUnit.NANOSECONDS.toMillis(clock.nanoTime());
+    }
+
+    /**
+     * Sets the source of input delivered before each tick, once the source ends the tick stops
+     *
+     * @param source the source, or null for none
+     */
+    public void setInputSource(IInputSource source) {
+        inputSource = source;
+    }
+
+    /**
+     * @return the live statistics of the pseudo-world tick
+     */
+    public ITickStatistics getStatistics() {
+        return statistics;
     }
 
     @Override
     public void run() {
-        while (emulator.isRunning()) {
-            try {
-                long tickStart = getSystemTime();
+        final TickPolicy policy = Emulator.getEmulatorSettings().getTickPolicy();
+        final long maxBacklog = Emulator.getEmulatorSettings().getMaxTickBacklog();
+        long nextTick = clock.nanoTime();
+        try {
+            while (emulator.isRunning()) {
+                try {
+                    long now = clock.nanoTime();
+                    if (now < nextTick) {
+                        clock.sleep(nextTick - now);
+                        continue;
+                    }
 
-                synchronized (items) {
-                    for (ITicking ticking : items) {
-                        ticking.onTick();
+                    // the number of whole ticks we are behind the schedule
+                    final long backlog = (now - nextTick) / TICK_LENGTH;
+                    if (backlog > 0 && (policy == TickPolicy.SKIP || backlog > maxBacklog)) {
+                        if (policy != TickPolicy.SKIP) {
+                            Log.warn("Cannot keep up, skipping %d ticks", backlog);
+                        }
+                        statistics.recordSkipped(backlog);
+                        nextTick += backlog * TICK_LENGTH;
                     }
+
+                    final IInputSource source = inputSource;
+                    if (source != null && !source.deliver(statistics.getTickCount())) {
+                        Log.info("The input has ended after %d ticks", statistics.getTickCount());
+                        break;
+                    }
+
+                    // the start is on the tick clock, the cost always on the system clock
+                    final long tickStart = clock.nanoTime();
+                    final long cost = System.nanoTime();
+                    tick(tickStart + TICK_LENGTH);
+                    statistics.record(tickStart, System.nanoTime() - cost);
+
+                    // scheduling from the previous tick rather than the current time stops drift
+                    nextTick += TICK_LENGTH;
+                } catch (InterruptedException ignored) {
+                    Log.info("Tick manager was interrupted");
+                } catch (Exception e) {
+                    Log.info("Tick manager has thrown an exception: ", e);
                 }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
 
-                long tickEnd = getSystemTime();
-                long tickTime = tickEnd - tickStart;
+    /**
+     * Runs a single tick on the pool, returning once every object has finished or the deadline
+     * has passed
+     *
+     * @param deadline the time, in nanoseconds, the tick must finish by
+     * @throws InterruptedException when interrupted while waiting for the pool
+     */
+    private void tick(long deadline) throws InterruptedException {
+        final ITicking[] items = getItems();
+        if (items != lastItems) {
+            updateSlices(items);
+            statistics.retainItems(items);
+            lastItems = items;
+        }
+        pending.clear();
+        for (Slice slice : slices) {
+            slice.reset();
+            pending.add(slice);
+        }
 
-                if ((tickStart - lastTick) > SLOW_TICK) {
-                    Log.warn(String.format("Cannot keep up [cycle-time: %fms, proc-time: %fms]", (tickEnd - lastTick), (float) tickTime));
+        // each round gives every object with remaining work one slice, so no single object can
+        // hold a worker while others are waiting for their turn
+        while (!pending.isEmpty()) {
+            final List<Future<Boolean>> results = pool.invokeAll(pending);
+            remaining.clear();
+            for (int i = 0; i < results.size(); ++i) {
+                try {
+                    if (results.get(i).get()) {
+                        remaining.add(pending.get(i));
+                    }
+                } catch (ExecutionException e) {
+                    Log.warn("%s has thrown an exception while ticking: %s", pending.get(i).item, e.getCause());
                 }
+            }
+            if (clock.nanoTime() >= deadline) {
+                break;
+            }
+            final List<Slice> next = remaining;
+            remaining = pending;
+            pending = next;
+        }
 
-                lastTick = tickEnd;
+        for (Slice slice : slices) {
+            statistics.recordItem(slice.item, slice.time);
+        }
+    }
 
-                if (MAX_SLEEP > tickTime) {
-                    Thread.sleep(MAX_SLEEP - tickTime);
+    /**
+     * Matches the slices to the registered items, keeping the slices of the items which are
+     * still registered
+     *
+     * @param items the registered items
+     */
+    private void updateSlices(ITicking[] items) {
+        final Map<ITicking, Slice> existing = new IdentityHashMap<ITicking, Slice>(slices.length);
+        for (Slice slice : slices) {
+            existing.put(slice.item, slice);
+        }
+        final Slice[] updated = new Slice[items.length];
+        for (int i = 0; i < items.length; ++i) {
+            final Slice slice = existing.get(items[i]);
+            updated[i] = slice != null ? slice : new Slice(items[i]);
+        }
+        slices = updated;
+    }
+
+    /**
+     * The work an object performs during a tick; its tick followed by a time slice, and then
+     * further time slices while it still has work
+     */
+    private final class Slice implements Callable<Boolean> {
+        private final ITicking item;
+        private boolean ticked;
+        /**
+         * The time taken so far this tick, in nanoseconds
+         */
+        private long time;
+
+        private Slice(ITicking ticking) {
+            item = ticking;
+        }
+
+        /**
+         * Readies the slice for a new tick
+         */
+        private void reset() {
+            ticked = false;
+            time = 0L;
+        }
+
+        @Override
+        public Boolean call() {
+            final long start = System.nanoTime();
+            try {
+                if (!ticked) {
+                    ticked = true;
+                    item.onTick();
                 }
-            } catch (InterruptedException ignored) {
-                Log.info("Tick manager was interrupted");
-            } catch (Exception e) {
-                Log.info("Tick manager has thrown an exception: ", e);
+                return item instanceof IExecutable && ((IExecutable) item).execute(timeSlice);
+            } finally {
+                time += System.nanoTime() - start;
             }
         }
     }
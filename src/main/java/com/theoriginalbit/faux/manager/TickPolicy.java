@@ -0,0 +1,33 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.manager;
+
+/**
+ * What the tick manager does when ticks take longer than the tick length and it falls behind
+ *
+ * @author theoriginalbit
+ */
+public enum TickPolicy {
+    /**
+     * Run the missed ticks back to back until caught up, skipping them only when the backlog
+     * grows beyond the maximum backlog
+     */
+    CATCH_UP,
+    /**
+     * Skip the missed ticks, always continuing from the current time
+     */
+    SKIP
+}
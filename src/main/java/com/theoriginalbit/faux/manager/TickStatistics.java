@@ -0,0 +1,210 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.manager;
+
+import com.theoriginalbit.faux.api.ITickStatistics;
+import com.theoriginalbit.faux.api.ITicking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the start time and duration of the most recent ticks, and the time each ticked object
+ * takes. It is written by the tick thread, once per tick, and may be read from any thread.
+ *
+ * @author theoriginalbit
+ */
+public final class TickStatistics implements ITickStatistics {
+    /**
+     * The number of ticks the statistics cover, 5 seconds at 20 ticks per second
+     */
+    private static final int WINDOW = 100;
+    private final long[] starts = new long[WINDOW];
+    private final long[] durations = new long[WINDOW];
+    private final long[] sorted = new long[WINDOW];
+    /**
+     * The smoothed time each ticked object takes, each new sample has an eighth of the weight
+     */
+    private final Map<ITicking, long[]> itemTimes = new IdentityHashMap<ITicking, long[]>();
+    private final Comparator<ITicking> slowestFirst = new Comparator<ITicking>() {
+        @Override
+        public int compare(ITicking a, ITicking b) {
+            final long timeA = itemTimes.get(a)[0];
+            final long timeB = itemTimes.get(b)[0];
+            return timeA < timeB ? 1 : (timeA == timeB ? 0 : -1);
+        }
+    };
+    private long ticks;
+    private long skipped;
+
+    /**
+     * Records a processed tick
+     *
+     * @param start    the time the tick started on the clock the ticks are scheduled by, in
+     *                 nanoseconds
+     * @param duration the time taken to process the tick on the system clock, in nanoseconds
+     */
+    public synchronized void record(long start, long duration) {
+        final int index = (int) (ticks % WINDOW);
+        starts[index] = start;
+        durations[index] = duration;
+        ++ticks;
+    }
+
+    /**
+     * Records the time an object took during a tick
+     *
+     * @param item     the ticked object
+     * @param duration the time taken by its tick and time slices, in nanoseconds
+     */
+    public synchronized void recordItem(ITicking item, long duration) {
+        final long[] time = itemTimes.get(item);
+        if (time == null) {
+            itemTimes.put(item, new long[]{duration});
+        } else {
+            time[0] += (duration - time[0]) >> 3;
+        }
+    }
+
+    /**
+     * Forgets the times of any objects which are no longer ticked
+     *
+     * @param items the objects which are ticked
+     */
+    public synchronized void retainItems(ITicking[] items) {
+        if (itemTimes.size() <= items.length) {
+            return;
+        }
+        final Map<ITicking, long[]> retained = new IdentityHashMap<ITicking, long[]>();
+        for (ITicking item : items) {
+            final long[] time = itemTimes.get(item);
+            if (time != null) {
+                retained.put(item, time);
+            }
+        }
+        itemTimes.clear();
+        itemTimes.putAll(retained);
+    }
+
+    /**
+     * Records ticks that were skipped
+     *
+     * @param count the number of ticks skipped
+     */
+    public synchronized void recordSkipped(long count) {
+        skipped += count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized double getTicksPerSecond() {
+        final int count = getWindowSize();
+        if (count < 2) {
+            return 0.0;
+        }
+        final long newest = starts[(int) ((ticks - 1) % WINDOW)];
+        final long oldest = starts[(int) ((ticks - count) % WINDOW)];
+        return newest == oldest ? 0.0 : (count - 1) * 1000000000.0 / (newest - oldest);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized long getMeanTickTime() {
+        final int count = getWindowSize();
+        if (count == 0) {
+            return 0L;
+        }
+        long total = 0L;
+        for (int i = 0; i < count; ++i) {
+            total += durations[i];
+        }
+        return total / count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized long getP99TickTime() {
+        final int count = getWindowSize();
+        if (count == 0) {
+            return 0L;
+        }
+        System.arraycopy(durations, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        return sorted[Math.min((int) Math.ceil(count * 0.99) - 1, count - 1)];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized long getTickCount() {
+        return ticks;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized long getSkippedTicks() {
+        return skipped;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int getRecentTickTimes(long[] into) {
+        final int count = Math.min(getWindowSize(), into.length);
+        for (int i = 0; i < count; ++i) {
+            into[i] = durations[(int) ((ticks - count + i) % WINDOW)];
+        }
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized long getMeanTickTime(ITicking item) {
+        final long[] time = itemTimes.get(item);
+        return time == null ? 0L : time[0];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized List<ITicking> getSlowest(int count) {
+        final List<ITicking> items = new ArrayList<ITicking>(itemTimes.keySet());
+        Collections.sort(items, slowestFirst);
+        return items.size() > count ? new ArrayList<ITicking>(items.subList(0, count)) : items;
+    }
+
+    private int getWindowSize() {
+        return (int) Math.min(ticks, WINDOW);
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.manager;
+
+import com.theoriginalbit.faux.api.IClock;
+
+/**
+ * A clock that only moves when something waits on it, at which point it jumps straight to the end
+ * of the wait. A tick manager following this clock runs its ticks back to back, as fast as they
+ * can be run, and as the clock never reaches the deadline of a tick each tick runs until every
+ * device has finished its work. Only the thread running the tick may wait on the clock.
+ *
+ * @author theoriginalbit
+ */
+public final class VirtualClock implements IClock {
+    private volatile long time;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long nanoTime() {
+        return time;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sleep(long nanos) {
+        time += nanos;
+    }
+}
@@ -15,14 +15,35 @@
  */
 package com.theoriginalbit.faux.manager;
 
+import com.theoriginalbit.faux.api.IEmulatorInstance;
 import com.theoriginalbit.faux.api.IWindow;
 
+import java.awt.Rectangle;
+import java.util.Arrays;
+
 /**
+ * Manages the windows as a stack, the order of the items is the z-order from the bottom window
+ * to the top, and the top window is the one with focus. Managing a window raises and focuses it.
+ * <p/>
+ * Before drawing, the stack is walked from the top down to find the windows that can be seen;
+ * windows which are hidden, off the canvas, outside the area being redrawn, or entirely behind
+ * the opaque area of a window above are skipped before anything is drawn.
+ *
  * @author theoriginalbit
  */
 public class WindowManager extends Manager<IWindow> {
-    public WindowManager() {
-        super("Window");
+    private final IEmulatorInstance emulator;
+    private final Rectangle bounds = new Rectangle();
+    /*
+       reused by each draw; the opaque areas of the windows above, and which windows can be seen
+     */
+    private Rectangle[] occluders = new Rectangle[0];
+    private boolean[] shown = new boolean[0];
+    private volatile IWindow focused;
+
+    public WindowManager(final IEmulatorInstance emulatorInstance) {
+        super("Window", IWindow.class);
+        emulator = emulatorInstance;
     }
 
     @Override
@@ -35,14 +56,151 @@ public class WindowManager extends Manager<IWindow> {
     }
 
     @Override
-    public void manage() {
-        // TODO: make this respect z-index and focused window
-        for (IWindow window : items) {
-            window.draw(null);
+    public boolean unregister(IWindow window) {
+        if (super.unregister(window)) {
+            if (window == focused) {
+                // focus passes to the window that is now on top
+                final IWindow[] windows = getItems();
+                focused = null;
+                if (windows.length > 0) {
+                    manage(windows[windows.length - 1]);
+                }
+            }
+            return true;
         }
+        return false;
     }
 
+    @Override
+    public void manage() {
+        draw(null);
+    }
+
+    /**
+     * Raises the window to the top of the stack and gives it focus, taking focus from the
+     * window that had it
+     *
+     * @param item the window to raise
+     */
     @Override
     public void manage(IWindow item) {
+        if (!moveToEnd(item)) {
+            return;
+        }
+        final IWindow previous = focused;
+        if (previous != item) {
+            if (previous != null) {
+                previous.setFocus(false);
+            }
+            focused = item;
+        }
+        item.setFocus(true);
+    }
+
+    /**
+     * @return the window on top of the stack, which has focus, or null if there are no windows
+     */
+    public IWindow getFocused() {
+        return focused;
+    }
+
+    /**
+     * Finds the window the mouse is over, the top-most visible window at the position
+     *
+     * @param x the x position on the canvas
+     * @param y the y position on the canvas
+     * @return the window, or null if there is no window at the position
+     */
+    public IWindow getWindowAt(int x, int y) {
+        final IWindow[] windows = getItems();
+        for (int i = windows.length - 1; i >= 0; --i) {
+            final IWindow window = windows[i];
+            if (window.isVisible() && window.wasClickInBounds(x, y)) {
+                return window;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Grows the damage to include the areas every window has changed since it was last drawn
+     *
+     * @param damage the damage to grow
+     */
+    public void collectDamage(Rectangle damage) {
+        for (IWindow window : getItems()) {
+            if (window.isDirty()) {
+                window.addDamage(damage);
+            }
+        }
+    }
+
+    /**
+     * Draws, from the bottom of the stack up, the windows which can be seen within the clip; the
+     * renderer must already be clipped to it
+     *
+     * @param clip the area being redrawn, or null to draw everything on the canvas
+     */
+    public void draw(Rectangle clip) {
+        final IWindow[] windows = getItems();
+        if (shown.length < windows.length) {
+            shown = new boolean[windows.length];
+            final int existing = occluders.length;
+            occluders = Arrays.copyOf(occluders, windows.length);
+            for (int i = existing; i < occluders.length; ++i) {
+                occluders[i] = new Rectangle();
+            }
+        }
+
+        final int left = clip != null ? Math.max(clip.x, 0) : 0;
+        final int top = clip != null ? Math.max(clip.y, 0) : 0;
+        final int right = clip != null ? Math.min(clip.x + clip.width, emulator.getWidth()) : emulator.getWidth();
+        final int bottom = clip != null ? Math.min(clip.y + clip.height, emulator.getHeight()) : emulator.getHeight();
+
+        // walk down from the top, each window can only be covered by those above it
+        int occluderCount = 0;
+        for (int i = windows.length - 1; i >= 0; --i) {
+            final IWindow window = windows[i];
+            shown[i] = false;
+            if (!window.isVisible()) {
+                continue;
+            }
+
+            // the part of the window that would be drawn
+            window.getBounds(bounds);
+            final int x0 = Math.max(bounds.x, left), y0 = Math.max(bounds.y, top);
+            final int x1 = Math.min(bounds.x + bounds.width, right), y1 = Math.min(bounds.y + bounds.height, bottom);
+            if (x0 >= x1 || y0 >= y1 || isOccluded(occluderCount, x0, y0, x1, y1)) {
+                continue;
+            }
+
+            shown[i] = true;
+            final Rectangle opaque = occluders[occluderCount];
+            window.getOpaqueBounds(opaque);
+            if (!opaque.isEmpty()) {
+                ++occluderCount;
+            }
+        }
+
+        for (int i = 0; i < windows.length; ++i) {
+            if (shown[i]) {
+                windows[i].draw(null);
+                // submit the window in one draw call before the next window draws over it
+                emulator.getRenderer().flush();
+            }
+        }
+    }
+
+    /**
+     * @return whether the area is entirely inside the opaque area of one of the windows above
+     */
+    private boolean isOccluded(int count, int x0, int y0, int x1, int y1) {
+        for (int i = 0; i < count; ++i) {
+            final Rectangle opaque = occluders[i];
+            if (x0 >= opaque.x && y0 >= opaque.y && x1 <= opaque.x + opaque.width && y1 <= opaque.y + opaque.height) {
+                return true;
+            }
+        }
+        return false;
     }
 }
@@ -40,16 +40,43 @@ public class Color {
     public static final Color RED = new Color(0xCC4C4C);
     public static final Color BLACK = new Color(0x191919);
     public static final Color D_BLACK = new Color(0x000000);
+    /*
+       The ComputerCraft colours ordered by their colour index, i.e. the bit index of the
+       colour value in the colours API
+     */
+    private static final Color[] PALETTE = {
+            WHITE, ORANGE, MAGENTA, L_BLUE, YELLOW, LIME, PINK, GRAY,
+            L_GRAY, CYAN, PURPLE, BLUE, BROWN, GREEN, RED, BLACK
+    };
 
     private static final float MAX_VAL = 256.0f;
     private final float red, green, blue;
+    private final int rgb;
 
     public Color(int hex) {
+        rgb = hex & 0xFFFFFF;
         red = ((hex & 0xFF0000) >> 16) / MAX_VAL;
         green = ((hex & 0x00FF00) >> 8) / MAX_VAL;
         blue = (hex & 0x0000FF) / MAX_VAL;
     }
 
+    /**
+     * Looks up the ComputerCraft colour for a terminal colour index
+     *
+     * @param index the colour index, 0 (white) to 15 (black)
+     * @return the colour
+     */
+    public static Color fromIndex(int index) {
+        return PALETTE[index & 0xF];
+    }
+
+    /**
+     * @return the colour as a 0xRRGGBB value
+     */
+    public int getRGB() {
+        return rgb;
+    }
+
     /**
      * @return the red component of the colour
      */
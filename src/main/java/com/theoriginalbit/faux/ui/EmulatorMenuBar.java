@@ -17,12 +17,20 @@ package com.theoriginalbit.faux.ui;
 
 import com.theoriginalbit.faux.AppInfo;
 import com.theoriginalbit.faux.Emulator;
+import com.theoriginalbit.faux.api.IWindow;
+import com.theoriginalbit.faux.computercraft.DisplayDevice;
+import com.theoriginalbit.faux.computercraft.InputRecorder;
+import com.theoriginalbit.faux.log.Log;
 import com.theoriginalbit.faux.util.DialogUtils;
 import com.theoriginalbit.faux.util.OperatingSystem;
 
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
 
 /**
  * @author theoriginalbit
@@ -83,16 +91,84 @@ public final class EmulatorMenuBar extends JMenuBar {
         menuItem = new JMenuItem("Create... (coming soon)");
         menuItem.setEnabled(false);
         parent.add(menuItem);
+
+        // types a file from the host into the focused device, such as a script into an editor
+        menuItem = new JMenuItem("Type File In...");
+        menuItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                final DisplayDevice device = getFocusedDevice();
+                if (device == null) {
+                    JOptionPane.showMessageDialog(EmulatorMenuBar.this.parent, "There is no device to type into", null, JOptionPane.PLAIN_MESSAGE);
+                    return;
+                }
+                final JFileChooser chooser = new JFileChooser();
+                if (chooser.showOpenDialog(EmulatorMenuBar.this.parent) == JFileChooser.APPROVE_OPTION) {
+                    final File file = chooser.getSelectedFile();
+                    try {
+                        device.typeIn(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+                    } catch (IOException ex) {
+                        Log.error("Failed to open %s: %s", file, ex.getMessage());
+                    }
+                }
+            }
+        });
+        parent.add(menuItem);
+    }
+
+    /**
+     * @return the device in the focused window, or null if the focused window is not a device
+     */
+    private DisplayDevice getFocusedDevice() {
+        for (IWindow window : emulator.getWindowManager().getRegisteredItems()) {
+            if (window.hasFocus() && window instanceof DisplayDevice) {
+                return (DisplayDevice) window;
+            }
+        }
+        return null;
     }
 
     private void addDebugMenu() {
         final JMenu menu = new JMenu("Debug");
-        JMenuItem menuItem;
 
-        menuItem = new JMenuItem("No items");
-        menuItem.setEnabled(false);
+        // frame and tick timings drawn over the canvas, to find what is making the emulator stutter
+        final TimingOverlay overlay = new TimingOverlay(emulator, emulator.getFrameStatistics());
+        emulator.getRenderManager().register(overlay);
+        final JCheckBoxMenuItem menuItem = new JCheckBoxMenuItem("Show Timings");
+        menuItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                overlay.setVisible(menuItem.isSelected());
+            }
+        });
         menu.add(menuItem);
 
+        // records the input to the devices, so the session can be replayed by the fleet emulator
+        final JCheckBoxMenuItem recordItem = new JCheckBoxMenuItem("Record Input...");
+        recordItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (!recordItem.isSelected()) {
+                    InputRecorder.finish();
+                    return;
+                }
+                final JFileChooser chooser = new JFileChooser();
+                chooser.setSelectedFile(new File("session.fxi"));
+                if (chooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION) {
+                    recordItem.setSelected(false);
+                    return;
+                }
+                final File file = chooser.getSelectedFile();
+                try {
+                    InputRecorder.start(file, emulator);
+                } catch (IOException ex) {
+                    Log.error("Failed to record to %s: %s", file, ex.getMessage());
+                    recordItem.setSelected(false);
+                }
+            }
+        });
+        menu.add(recordItem);
+
         add(menu);
     }
 }
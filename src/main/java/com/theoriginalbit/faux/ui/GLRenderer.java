@@ -0,0 +1,157 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.ui;
+
+import com.theoriginalbit.faux.api.IRenderer;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.Util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Renders to the current OpenGL context, quads are collected into a
+ * {@link com.theoriginalbit.faux.ui.QuadBatch} and submitted when flushed.
+ * <p/>
+ * A renderer must only be used from the thread that owns the OpenGL context.
+ *
+ * @author theoriginalbit
+ */
+public final class GLRenderer implements IRenderer {
+    private final QuadBatch batch = new QuadBatch();
+    private int glyphTexture;
+    private int height;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void initialise(int width, int height) {
+        GL11.glEnable(GL11.GL_TEXTURE_2D); // enable textures
+        Util.checkGLError();
+        GL11.glDisable(GL11.GL_DEPTH_TEST); // 2D textures don't have depth
+
+        GL11.glEnable(GL11.GL_BLEND);
+        GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+        Util.checkGLError();
+
+        GL11.glMatrixMode(GL11.GL_PROJECTION);
+        GL11.glLoadIdentity();
+
+        GL11.glOrtho(0, width, height, 0, -1, 1);
+        GL11.glMatrixMode(GL11.GL_MODELVIEW);
+
+        GL11.glClearColor(0.275F, 0.275F, 0.275F, 1.0F);
+        GL11.glViewport(0, 0, width, height);
+        GL11.glEnable(GL11.GL_SCISSOR_TEST);
+        this.height = height;
+        setClip(0, 0, width, height);
+
+        // shared by every device so must only be uploaded once
+        glyphTexture = uploadGlyphAtlas();
+        Util.checkGLError();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resize(int width, int height) {
+        GL11.glViewport(0, 0, width, height);
+        this.height = height;
+        setClip(0, 0, width, height);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setClip(int x, int y, int w, int h) {
+        // the scissor applies when quads are submitted, so anything batched uses the old clip
+        batch.flush();
+        // the scissor is in window coordinates, which start from the bottom left
+        GL11.glScissor(x, height - y - h, Math.max(w, 0), Math.max(h, 0));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setColor(Color color) {
+        batch.setColor(color);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drawQuad(int x, int y, int w, int h) {
+        batch.addQuad(x, y, w, h);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drawBlock(VertexBlock block, int x, int y) {
+        batch.addBlock(block, x, y);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drawGlyph(int x, int y, int w, int h, int ch) {
+        final float u = GlyphAtlas.getU(ch);
+        final float v = GlyphAtlas.getV(ch);
+        batch.setTexture(glyphTexture);
+        batch.addQuad(x, y, w, h, u, v, u + GlyphAtlas.GLYPH_U, v + GlyphAtlas.GLYPH_V);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() {
+        batch.flush();
+    }
+
+    private static int uploadGlyphAtlas() {
+        final int[] pixels = GlyphAtlas.getPixels();
+        final ByteBuffer buffer = BufferUtils.createByteBuffer(pixels.length * 4);
+        for (int argb : pixels) {
+            buffer.put((byte) (argb >> 16)).put((byte) (argb >> 8)).put((byte) argb).put((byte) (argb >> 24));
+        }
+        buffer.flip();
+
+        final int texture = GL11.glGenTextures();
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+        GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, GlyphAtlas.ATLAS_WIDTH, GlyphAtlas.ATLAS_HEIGHT, 0,
+                GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, buffer);
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+        return texture;
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.ui;
+
+import com.theoriginalbit.faux.log.Log;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A single texture containing a glyph for every character of the 256 character ComputerCraft
+ * charset, laid out in a 16 by 16 grid indexed by the character value. The glyphs are white
+ * so that they take on the colour of the quad they are drawn with.
+ * <p/>
+ * The glyphs come from a bitmap font bundled with the emulator, so text looks the same on every
+ * platform. The font is loaded once, when first requested by a renderer, and shared by every
+ * window, meaning the memory used for text rendering does not grow as devices are added.
+ *
+ * @author theoriginalbit
+ */
+public final class GlyphAtlas {
+    /**
+     * The bitmap font, a 16 by 16 grid of glyphs the size of a terminal cell
+     */
+    private static final String FONT = "/font/term_font.png";
+    /**
+     * The width of a glyph in texels, double the width of a terminal cell
+     */
+    public static final int GLYPH_WIDTH = 12;
+    /**
+     * The height of a glyph in texels, double the height of a terminal cell
+     */
+    public static final int GLYPH_HEIGHT = 18;
+    /**
+     * The width of the atlas in texels
+     */
+    public static final int ATLAS_WIDTH = 256;
+    /**
+     * The height of the atlas in texels
+     */
+    public static final int ATLAS_HEIGHT = 512;
+    /**
+     * The width of a glyph in texture coordinates
+     */
+    public static final float GLYPH_U = GLYPH_WIDTH / (float) ATLAS_WIDTH;
+    /**
+     * The height of a glyph in texture coordinates
+     */
+    public static final float GLYPH_V = GLYPH_HEIGHT / (float) ATLAS_HEIGHT;
+    private static int[] pixels;
+
+    /**
+     * Gets the pixels of the atlas, loading them the first time this is invoked. The returned
+     * array is shared and must not be modified.
+     *
+     * @return the ARGB pixels of the atlas, row by row
+     */
+    public static synchronized int[] getPixels() {
+        if (pixels == null) {
+            Log.info("Loading %dx%d glyph atlas", ATLAS_WIDTH, ATLAS_HEIGHT);
+            try {
+                pixels = load();
+            } catch (IOException e) {
+                throw new IllegalStateException("The font " + FONT + " could not be read", e);
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * @param ch the character, 0 to 255
+     * @return the left texture coordinate of the glyph
+     */
+    public static float getU(int ch) {
+        return (ch & 0xF) * GLYPH_U;
+    }
+
+    /**
+     * @param ch the character, 0 to 255
+     * @return the top texture coordinate of the glyph
+     */
+    public static float getV(int ch) {
+        return ((ch >> 4) & 0xF) * GLYPH_V;
+    }
+
+    /**
+     * Reads the bundled font and scales each glyph up to fill its slot in the atlas. Any texel of
+     * the font that is not transparent becomes a white texel of the atlas.
+     *
+     * @return the ARGB pixels of the atlas, row by row
+     * @throws IOException if the font is missing or malformed
+     */
+    private static int[] load() throws IOException {
+        final InputStream stream = GlyphAtlas.class.getResourceAsStream(FONT);
+        if (stream == null) {
+            throw new IOException(FONT + " is missing");
+        }
+        final BufferedImage font;
+        try {
+            font = ImageIO.read(stream);
+        } finally {
+            stream.close();
+        }
+        if (font == null || font.getWidth() % 16 != 0 || font.getHeight() % 16 != 0) {
+            throw new IOException(FONT + " is not a 16 by 16 grid of glyphs");
+        }
+
+        final int cellWidth = font.getWidth() / 16, cellHeight = font.getHeight() / 16;
+        final int[] atlas = new int[ATLAS_WIDTH * ATLAS_HEIGHT];
+        for (int ch = 0; ch < 256; ++ch) {
+            final int fontX = (ch & 0xF) * cellWidth, fontY = ((ch >> 4) & 0xF) * cellHeight;
+            final int atlasX = (ch & 0xF) * GLYPH_WIDTH, atlasY = ((ch >> 4) & 0xF) * GLYPH_HEIGHT;
+            for (int y = 0; y < GLYPH_HEIGHT; ++y) {
+                final int row = (atlasY + y) * ATLAS_WIDTH + atlasX;
+                for (int x = 0; x < GLYPH_WIDTH; ++x) {
+                    final int texel = font.getRGB(fontX + x * cellWidth / GLYPH_WIDTH,
+                            fontY + y * cellHeight / GLYPH_HEIGHT);
+                    if ((texel >>> 24) != 0) {
+                        atlas[row + x] = 0xFFFFFFFF;
+                    }
+                }
+            }
+        }
+        return atlas;
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.ui;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Collects quads into a reusable vertex array so they can be submitted to OpenGL in a single draw
+ * call instead of a glBegin/glEnd pair per quad. The colour is stored per vertex, meaning colour
+ * changes do not break the batch and quads are always drawn in the order they were added; only a
+ * change of texture, or a full buffer, forces the batch to be flushed early.
+ * <p/>
+ * A batch must only be used from the thread that owns the OpenGL context.
+ *
+ * @author theoriginalbit
+ */
+public final class QuadBatch {
+    /**
+     * The maximum number of quads held before the batch is flushed
+     */
+    private static final int MAX_QUADS = 4096;
+    private static final int STRIDE = VertexBlock.FLOATS_PER_VERTEX * 4;
+    private final FloatBuffer vertices = BufferUtils.createFloatBuffer(MAX_QUADS * VertexBlock.FLOATS_PER_QUAD);
+    private float red, green, blue;
+    private int texture;
+    private int quads;
+
+    /**
+     * Sets the colour of all subsequently added quads
+     *
+     * @param color the colour to set
+     */
+    public void setColor(Color color) {
+        red = color.getRed();
+        green = color.getGreen();
+        blue = color.getBlue();
+    }
+
+    /**
+     * Sets the texture of all subsequently added quads, flushing the batch if it differs from the
+     * current texture.
+     *
+     * @param textureId the OpenGL texture name, or 0 for untextured quads
+     */
+    public void setTexture(int textureId) {
+        if (textureId != texture) {
+            flush();
+            texture = textureId;
+        }
+    }
+
+    /**
+     * Adds an untextured quad to the batch, flushing any textured quads before it
+     *
+     * @param x the x position
+     * @param y the y position
+     * @param w the width of the quad
+     * @param h the height of the quad
+     */
+    public void addQuad(float x, float y, float w, float h) {
+        setTexture(0);
+        addQuad(x, y, w, h, 0.0f, 0.0f, 0.0f, 0.0f);
+    }
+
+    /**
+     * Adds a quad to the batch textured with the current texture
+     *
+     * @param x  the x position
+     * @param y  the y position
+     * @param w  the width of the quad
+     * @param h  the height of the quad
+     * @param u0 the left texture coordinate
+     * @param v0 the top texture coordinate
+     * @param u1 the right texture coordinate
+     * @param v1 the bottom texture coordinate
+     */
+    public void addQuad(float x, float y, float w, float h, float u0, float v0, float u1, float v1) {
+        if (quads == MAX_QUADS) {
+            flush();
+        }
+        putVertex(x, y, u0, v0);
+        putVertex(x + w, y, u1, v0);
+        putVertex(x + w, y + h, u1, v1);
+        putVertex(x, y + h, u0, v1);
+        ++quads;
+    }
+
+    /**
+     * Adds the quads of a pre-built block to the batch, flushing any textured quads before it
+     *
+     * @param block the block to add
+     * @param x     the x position of the block origin
+     * @param y     the y position of the block origin
+     */
+    public void addBlock(VertexBlock block, float x, float y) {
+        setTexture(0);
+        final float[] data = block.getVertices();
+        for (int quad = 0; quad < block.getQuadCount(); ++quad) {
+            if (quads == MAX_QUADS) {
+                flush();
+            }
+            for (int i = quad * VertexBlock.FLOATS_PER_QUAD, end = i + VertexBlock.FLOATS_PER_QUAD; i < end; i += VertexBlock.FLOATS_PER_VERTEX) {
+                vertices.put(data[i] + x).put(data[i + 1] + y).put(data, i + 2, VertexBlock.FLOATS_PER_VERTEX - 2);
+            }
+            ++quads;
+        }
+    }
+
+    /**
+     * Submits all the quads in the batch to OpenGL and empties the batch
+     */
+    public void flush() {
+        if (quads == 0) {
+            return;
+        }
+
+        vertices.flip();
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture);
+        GL11.glEnableClientState(GL11.GL_VERTEX_ARRAY);
+        GL11.glEnableClientState(GL11.GL_COLOR_ARRAY);
+        vertices.position(0);
+        GL11.glVertexPointer(2, STRIDE, vertices);
+        vertices.position(4);
+        GL11.glColorPointer(3, STRIDE, vertices);
+        if (texture != 0) {
+            GL11.glEnableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+            vertices.position(2);
+            GL11.glTexCoordPointer(2, STRIDE, vertices);
+        }
+
+        GL11.glDrawArrays(GL11.GL_QUADS, 0, quads * 4);
+
+        if (texture != 0) {
+            GL11.glDisableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+        }
+        GL11.glDisableClientState(GL11.GL_COLOR_ARRAY);
+        GL11.glDisableClientState(GL11.GL_VERTEX_ARRAY);
+
+        vertices.clear();
+        quads = 0;
+    }
+
+    private void putVertex(float x, float y, float u, float v) {
+        vertices.put(x).put(y).put(u).put(v).put(red).put(green).put(blue);
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.ui;
+
+import com.theoriginalbit.faux.api.IRenderer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Renders into an ARGB framebuffer in pure Java, allowing the emulator to render without an
+ * OpenGL display. Everything is drawn immediately, the result can be inspected pixel by pixel
+ * or saved as a PNG snapshot.
+ *
+ * @author theoriginalbit
+ */
+public final class SoftwareRenderer implements IRenderer {
+    /**
+     * The same background colour as the OpenGL renderer clears to
+     */
+    private static final int CLEAR_COLOR = 0xFF464646;
+    /**
+     * Glyph texels with an alpha below this are treated as transparent
+     */
+    private static final int ALPHA_THRESHOLD = 0x80;
+    private int[] pixels = new int[0];
+    private int width, height;
+    private int clipLeft, clipTop, clipRight, clipBottom;
+    private int color = 0xFF000000;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void initialise(int w, int h) {
+        resize(w, h);
+        clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resize(int w, int h) {
+        if (w != width || h != height) {
+            width = Math.max(w, 0);
+            height = Math.max(h, 0);
+            pixels = new int[width * height];
+        }
+        setClip(0, 0, width, height);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        fill(0, 0, width, height, CLEAR_COLOR);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setClip(int x, int y, int w, int h) {
+        clipLeft = Math.max(x, 0);
+        clipTop = Math.max(y, 0);
+        clipRight = Math.min(x + w, width);
+        clipBottom = Math.min(y + h, height);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setColor(Color c) {
+        color = 0xFF000000 | c.getRGB();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drawQuad(int x, int y, int w, int h) {
+        fill(x, y, x + w, y + h, color);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drawBlock(VertexBlock block, int x, int y) {
+        final float[] data = block.getVertices();
+        for (int quad = 0; quad < block.getQuadCount(); ++quad) {
+            // the first vertex is the top-left and the third the bottom-right of the quad
+            final int i = quad * VertexBlock.FLOATS_PER_QUAD;
+            final int j = i + VertexBlock.FLOATS_PER_VERTEX * 2;
+            final int argb = 0xFF000000 | toChannel(data[i + 4]) << 16 | toChannel(data[i + 5]) << 8 | toChannel(data[i + 6]);
+            fill(x + (int) data[i], y + (int) data[i + 1], x + (int) data[j], y + (int) data[j + 1], argb);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drawGlyph(int x, int y, int w, int h, int ch) {
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+
+        final int[] atlas = GlyphAtlas.getPixels();
+        final int glyphX = (ch & 0xF) * GlyphAtlas.GLYPH_WIDTH;
+        final int glyphY = ((ch >> 4) & 0xF) * GlyphAtlas.GLYPH_HEIGHT;
+        final int left = Math.max(x, clipLeft), right = Math.min(x + w, clipRight);
+        final int top = Math.max(y, clipTop), bottom = Math.min(y + h, clipBottom);
+        for (int py = top; py < bottom; ++py) {
+            // nearest neighbour sampling, the same as the texture filter of the OpenGL renderer
+            final int row = (glyphY + (py - y) * GlyphAtlas.GLYPH_HEIGHT / h) * GlyphAtlas.ATLAS_WIDTH;
+            for (int px = left; px < right; ++px) {
+                final int texel = atlas[row + glyphX + (px - x) * GlyphAtlas.GLYPH_WIDTH / w];
+                if ((texel >>> 24) >= ALPHA_THRESHOLD) {
+                    pixels[py * width + px] = color;
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() {
+        // NO-OP
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the framebuffer, row by row, in ARGB format; this is not a copy
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Writes the current content of the framebuffer to a PNG image
+     *
+     * @param file the file to write
+     * @throws IOException when the image could not be written
+     */
+    public void writePng(File file) throws IOException {
+        final BufferedImage image = new BufferedImage(Math.max(width, 1), Math.max(height, 1), BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        if (!ImageIO.write(image, "png", file)) {
+            throw new IOException("No PNG writer is available");
+        }
+    }
+
+    private void fill(int x0, int y0, int x1, int y1, int argb) {
+        x0 = Math.max(x0, clipLeft);
+        y0 = Math.max(y0, clipTop);
+        x1 = Math.min(x1, clipRight);
+        y1 = Math.min(y1, clipBottom);
+        for (int y = y0; y < y1; ++y) {
+            Arrays.fill(pixels, y * width + x0, y * width + Math.max(x1, x0), argb);
+        }
+    }
+
+    private static int toChannel(float value) {
+        return Math.min((int) (value * 256.0f), 0xFF);
+    }
+}
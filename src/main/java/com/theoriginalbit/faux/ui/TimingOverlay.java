@@ -0,0 +1,310 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.ui;
+
+import com.theoriginalbit.faux.api.IEmulatorInstance;
+import com.theoriginalbit.faux.api.IManager;
+import com.theoriginalbit.faux.api.IRendered;
+import com.theoriginalbit.faux.api.IRenderer;
+import com.theoriginalbit.faux.api.ITickStatistics;
+import com.theoriginalbit.faux.api.ITicking;
+import com.theoriginalbit.faux.api.computercraft.IDevice;
+import com.theoriginalbit.faux.manager.FrameStatistics;
+import com.theoriginalbit.faux.util.GuiUtils;
+
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An overlay in the corner of the canvas showing how long recent frames and ticks took, as graphs,
+ * along with the time each phase of a frame takes and the devices which take the longest to tick.
+ * <p/>
+ * The statistics are copied when the overlay's damage is added, a few times a second, so that it
+ * does not force every frame to be drawn, and it draws the same content when it is drawn again
+ * because something else changed beneath it.
+ *
+ * @author theoriginalbit
+ */
+public final class TimingOverlay implements IRendered {
+    /**
+     * How often the overlay is refreshed, in milliseconds
+     */
+    private static final long REFRESH_INTERVAL = 250L;
+    /*
+       the overlay is laid out in unscaled pixels, its text uses the glyphs of the device terminals
+     */
+    private static final int GLYPH_WIDTH = 6;
+    private static final int GLYPH_HEIGHT = 9;
+    private static final int COLUMNS = 26;
+    private static final int PADDING = 3;
+    private static final int BAR_WIDTH = 2;
+    private static final int SAMPLES = COLUMNS * GLYPH_WIDTH / BAR_WIDTH;
+    private static final int GRAPH_HEIGHT = 36;
+    private static final int SLOWEST = 5;
+    /**
+     * The time the top of each graph represents, twice the target frame and tick time
+     */
+    private static final long FRAME_GRAPH_RANGE = TimeUnit.MILLISECONDS.toNanos(66L);
+    private static final long TICK_GRAPH_RANGE = TimeUnit.MILLISECONDS.toNanos(100L);
+    private static final FrameStatistics.Phase[] PHASES = FrameStatistics.Phase.values();
+    private static final Color[] PHASE_COLOURS = {Color.BLUE, Color.GREEN, Color.YELLOW, Color.PURPLE, Color.L_GRAY};
+    private static final int LINES = 1 + PHASES.length + 2 + SLOWEST;
+
+    private final IEmulatorInstance emulator;
+    private final FrameStatistics frames;
+    private volatile boolean visible, focus;
+    /**
+     * Whether the overlay was shown or hidden since its damage was last added
+     */
+    private volatile boolean damaged;
+    private final Rectangle drawn = new Rectangle();
+    private long lastRefresh;
+
+    /*
+       the statistics as of the last refresh
+     */
+    private final long[][] phaseTimes = new long[PHASES.length][SAMPLES];
+    private final long[] tickTimes = new long[SAMPLES];
+    private int frameCount, tickCount;
+    private final String[] lines = new String[LINES];
+    private final Color[] lineColours = new Color[LINES];
+
+    public TimingOverlay(IEmulatorInstance instance, FrameStatistics frameStatistics) {
+        emulator = instance;
+        frames = frameStatistics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasFocus() {
+        return focus;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setFocus(boolean f) {
+        focus = f;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isVisible() {
+        return visible;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setVisible(boolean visibility) {
+        if (visible != visibility) {
+            visible = visibility;
+            damaged = true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDirty() {
+        return damaged || (visible && emulator.getSystemTime() - lastRefresh >= REFRESH_INTERVAL);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addDamage(Rectangle damage) {
+        damaged = false;
+        GuiUtils.union(damage, drawn.x, drawn.y, drawn.width, drawn.height);
+        if (visible) {
+            getBounds(drawn);
+            GuiUtils.union(damage, drawn.x, drawn.y, drawn.width, drawn.height);
+            refresh();
+        } else {
+            drawn.setBounds(0, 0, 0, 0);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getBounds(Rectangle into) {
+        final int margin = GuiUtils.toScaledPixels(PADDING);
+        into.setBounds(margin, margin, GuiUtils.toScaledPixels(PADDING * 2 + COLUMNS * GLYPH_WIDTH),
+                GuiUtils.toScaledPixels(PADDING * 4 + LINES * GLYPH_HEIGHT + GRAPH_HEIGHT * 2));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void draw(IManager<IRendered> manager) {
+        final IRenderer renderer = emulator.getRenderer();
+        renderer.setColor(Color.BLACK);
+        renderer.drawQuad(drawn.x, drawn.y, drawn.width, drawn.height);
+
+        final int left = drawn.x + GuiUtils.toScaledPixels(PADDING);
+        int top = drawn.y + GuiUtils.toScaledPixels(PADDING);
+        int line = 0;
+
+        // frame time, with each phase stacked in its own colour
+        top = drawText(renderer, left, top, line++);
+        top = drawGraph(renderer, left, top, FRAME_GRAPH_RANGE, frameCount, null);
+        while (line < 1 + PHASES.length) {
+            top = drawText(renderer, left, top, line++);
+        }
+
+        // tick time, and the slowest devices
+        top = drawText(renderer, left, top, line++);
+        top = drawText(renderer, left, top, line++);
+        top = drawGraph(renderer, left, top, TICK_GRAPH_RANGE, tickCount, tickTimes);
+        while (line < LINES) {
+            top = drawText(renderer, left, top, line++);
+        }
+    }
+
+    /**
+     * Copies the statistics to draw until the next refresh
+     */
+    private void refresh() {
+        lastRefresh = emulator.getSystemTime();
+        final ITickStatistics ticks = emulator.getTickStatistics();
+
+        long busy = 0L;
+        for (int i = 0; i < PHASES.length; ++i) {
+            frameCount = frames.getRecentTimes(PHASES[i], phaseTimes[i]);
+            final long mean = frames.getMeanTime(PHASES[i]);
+            if (PHASES[i] != FrameStatistics.Phase.SYNC) {
+                busy += mean;
+            }
+            setLine(1 + i, PHASE_COLOURS[i], String.format("%-8s %7.2fms", PHASES[i].name().toLowerCase(), toMillis(mean)));
+        }
+        setLine(0, Color.WHITE, String.format("frame %6.2fms %5.1ffps", toMillis(busy), frames.getFramesPerSecond()));
+
+        tickCount = ticks.getRecentTickTimes(tickTimes);
+        int line = 1 + PHASES.length;
+        setLine(line++, Color.WHITE, String.format("tick  %6.2fms %5.1ftps", toMillis(ticks.getMeanTickTime()), ticks.getTicksPerSecond()));
+        setLine(line++, Color.L_GRAY, String.format("p99   %6.2fms %5d skip", toMillis(ticks.getP99TickTime()), ticks.getSkippedTicks()));
+        final List<ITicking> slowest = ticks.getSlowest(SLOWEST);
+        for (int i = 0; i < SLOWEST; ++i) {
+            if (i < slowest.size()) {
+                final ITicking item = slowest.get(i);
+                setLine(line++, Color.L_GRAY, String.format("%-16.16s %7.2fms", getName(item), toMillis(ticks.getMeanTickTime(item))));
+            } else {
+                setLine(line++, null, null);
+            }
+        }
+    }
+
+    private void setLine(int line, Color colour, String text) {
+        lines[line] = text;
+        lineColours[line] = colour;
+    }
+
+    /**
+     * Draws a line of text, if there is one
+     *
+     * @param renderer the renderer to draw with
+     * @param left     the left of the text
+     * @param top      the top of the text
+     * @param line     the line to draw
+     * @return the top of the next line
+     */
+    private int drawText(IRenderer renderer, int left, int top, int line) {
+        final int bottom = top + GuiUtils.toScaledPixels(GLYPH_HEIGHT);
+        final String text = lines[line];
+        if (text != null) {
+            renderer.setColor(lineColours[line]);
+            final int length = Math.min(text.length(), COLUMNS);
+            for (int i = 0; i < length; ++i) {
+                final int ch = text.charAt(i) & 0xFF;
+                if (ch == ' ') {
+                    continue;
+                }
+                final int x = left + GuiUtils.toScaledPixels(i * GLYPH_WIDTH);
+                renderer.drawGlyph(x, top, left + GuiUtils.toScaledPixels((i + 1) * GLYPH_WIDTH) - x, bottom - top, ch);
+            }
+        }
+        return bottom;
+    }
+
+    /**
+     * Draws a graph of recent times, either the frame times as stacked phases or a single series,
+     * with a line at the middle showing the target time
+     *
+     * @param renderer the renderer to draw with
+     * @param left     the left of the graph
+     * @param top      the top of the graph
+     * @param range    the time at the top of the graph, in nanoseconds
+     * @param count    the number of samples
+     * @param series   the samples of a single series, or null to draw the frame phases
+     * @return the top of the next line
+     */
+    private int drawGraph(IRenderer renderer, int left, int top, long range, int count, long[] series) {
+        final int height = GuiUtils.toScaledPixels(GRAPH_HEIGHT);
+        final int bottom = top + height;
+        // samples are drawn from the right, so the newest is always at the same place
+        final int offset = SAMPLES - count;
+        for (int i = 0; i < count; ++i) {
+            final int x = left + GuiUtils.toScaledPixels((offset + i) * BAR_WIDTH);
+            final int w = left + GuiUtils.toScaledPixels((offset + i + 1) * BAR_WIDTH) - x;
+            if (series == null) {
+                long total = 0L;
+                for (int phase = 0; phase < PHASES.length; ++phase) {
+                    final int from = scale(total, range, height);
+                    total += phaseTimes[phase][i];
+                    final int to = scale(total, range, height);
+                    if (to > from) {
+                        renderer.setColor(PHASE_COLOURS[phase]);
+                        renderer.drawQuad(x, bottom - to, w, to - from);
+                    }
+                }
+            } else {
+                final int h = scale(series[i], range, height);
+                if (h > 0) {
+                    renderer.setColor(series[i] > range / 2 ? Color.RED : Color.LIME);
+                    renderer.drawQuad(x, bottom - h, w, h);
+                }
+            }
+        }
+        renderer.setColor(Color.WHITE);
+        renderer.drawQuad(left, bottom - height / 2, GuiUtils.toScaledPixels(SAMPLES * BAR_WIDTH), Math.max(GuiUtils.toScaledPixels(1) / 2, 1));
+        return bottom + GuiUtils.toScaledPixels(PADDING);
+    }
+
+    private static int scale(long time, long range, int height) {
+        return (int) (Math.min(time, range) * height / range);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    private static String getName(ITicking item) {
+        final String name = item.getClass().getSimpleName().isEmpty() ? item.getClass().getName() : item.getClass().getSimpleName();
+        return item instanceof IDevice ? name + " " + ((IDevice) item).getID() : name;
+    }
+}
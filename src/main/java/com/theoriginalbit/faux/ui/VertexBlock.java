@@ -0,0 +1,112 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.ui;
+
+import java.util.Arrays;
+
+/**
+ * An immutable block of untextured, coloured quads that are positioned relative to an origin.
+ * Geometry that does not change between frames can be built once as a block and then added to
+ * a {@link com.theoriginalbit.faux.ui.QuadBatch} each frame with only a translation applied.
+ *
+ * @author theoriginalbit
+ * @see com.theoriginalbit.faux.ui.QuadBatch#addBlock(VertexBlock, float, float)
+ */
+public final class VertexBlock {
+    /**
+     * x, y, u, v, red, green, blue
+     */
+    static final int FLOATS_PER_VERTEX = 7;
+    static final int FLOATS_PER_QUAD = FLOATS_PER_VERTEX * 4;
+    private final float[] vertices;
+    private final int quads;
+
+    private VertexBlock(float[] data, int quadCount) {
+        vertices = data;
+        quads = quadCount;
+    }
+
+    /**
+     * @return the number of quads in this block
+     */
+    public int getQuadCount() {
+        return quads;
+    }
+
+    float[] getVertices() {
+        return vertices;
+    }
+
+    /**
+     * Builds a {@link com.theoriginalbit.faux.ui.VertexBlock} in the same manner that quads are
+     * drawn by a window; set a colour and then add the quads of that colour.
+     */
+    public static final class Builder {
+        private float[] data = new float[FLOATS_PER_QUAD * 16];
+        private int size;
+        private float red, green, blue;
+
+        /**
+         * Sets the colour of all subsequently added quads
+         *
+         * @param color the colour to set
+         * @return this builder
+         */
+        public Builder setColor(Color color) {
+            red = color.getRed();
+            green = color.getGreen();
+            blue = color.getBlue();
+            return this;
+        }
+
+        /**
+         * Adds a quad relative to the origin of the block
+         *
+         * @param x the x offset
+         * @param y the y offset
+         * @param w the width of the quad
+         * @param h the height of the quad
+         * @return this builder
+         */
+        public Builder addQuad(int x, int y, int w, int h) {
+            if (size + FLOATS_PER_QUAD > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            putVertex(x, y);
+            putVertex(x + w, y);
+            putVertex(x + w, y + h);
+            putVertex(x, y + h);
+            return this;
+        }
+
+        /**
+         * @return the block containing all the added quads
+         */
+        public VertexBlock build() {
+            return new VertexBlock(Arrays.copyOf(data, size), size / FLOATS_PER_QUAD);
+        }
+
+        private void putVertex(float x, float y) {
+            data[size++] = x;
+            data[size++] = y;
+            data[size++] = 0.0f;
+            data[size++] = 0.0f;
+            data[size++] = red;
+            data[size++] = green;
+            data[size++] = blue;
+        }
+    }
+}
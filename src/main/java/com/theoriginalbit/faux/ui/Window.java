@@ -18,14 +18,20 @@ package com.theoriginalbit.faux.ui;
 import com.theoriginalbit.faux.api.IEmulatorInstance;
 import com.theoriginalbit.faux.api.IWindow;
 import com.theoriginalbit.faux.log.Log;
+import com.theoriginalbit.faux.util.GuiUtils;
 import org.lwjgl.input.Mouse;
-import org.lwjgl.opengl.GL11;
+
+import java.awt.Rectangle;
 
 /**
  * A window is the main rendered content element of the emulator. This element is a movable element
  * which captures user input, as well as ticking each game loop in order to update. It is rendered
  * before any {@link com.theoriginalbit.faux.api.IRendered} elements, and the rendering respects
  * z-index and focused windows, as opposed to IRendered elements.
+ * <p/>
+ * A window is dirty whenever it moves, resizes, or changes focus or visibility, in which case its
+ * whole area, and the area it was last drawn at, are damaged. Subclasses report changes to their
+ * content through {@link #isDirty()} and {@link #addDamage(java.awt.Rectangle)}.
  *
  * @author theoriginalbit
  * @see com.theoriginalbit.faux.api.IWindow
@@ -38,6 +44,14 @@ public abstract class Window implements IWindow {
     private boolean focus = true, visible = true;
     private boolean lastClickInBounds;
     private int lastClickX = -1, lastClickY = -1;
+    /**
+     * The area the window covered when its damage was last added, empty if it was hidden
+     */
+    private final Rectangle drawn = new Rectangle();
+    /**
+     * Whether the whole window must be drawn again, it starts this way as it has never been drawn
+     */
+    private boolean damaged = true;
 
     /**
      * Constructs a window which can be rendered to the screen
@@ -98,7 +112,10 @@ public abstract class Window implements IWindow {
      */
     @Override
     public void setFocus(boolean f) {
-        focus = f;
+        if (focus != f) {
+            focus = f;
+            damaged = true;
+        }
     }
 
     /**
@@ -114,7 +131,52 @@ public abstract class Window implements IWindow {
      */
     @Override
     public void setVisible(boolean visibility) {
-        visible = visibility;
+        if (visible != visibility) {
+            visible = visibility;
+            damaged = true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDirty() {
+        return damaged || (visible && (xPos != drawn.x || yPos != drawn.y || width != drawn.width || height != drawn.height));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addDamage(Rectangle damage) {
+        if (!isDirty()) {
+            return;
+        }
+        damaged = false;
+        GuiUtils.union(damage, drawn.x, drawn.y, drawn.width, drawn.height);
+        if (visible) {
+            drawn.setBounds(xPos, yPos, width, height);
+            GuiUtils.union(damage, xPos, yPos, width, height);
+        } else {
+            drawn.setBounds(0, 0, 0, 0);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getBounds(Rectangle into) {
+        into.setBounds(xPos, yPos, width, height);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getOpaqueBounds(Rectangle into) {
+        into.setBounds(0, 0, 0, 0);
     }
 
     /**
@@ -124,8 +186,11 @@ public abstract class Window implements IWindow {
     public void onCreate() {
         Log.debug("Creating window @ %d, %d", xPos, yPos);
         emulator.getTickManager().register(this);
-        emulator.getInputManager().register(this);
-        emulator.getWindowManager().register(this);
+        // an emulator without a display has no input or windows, the window only ticks
+        if (emulator.getWindowManager() != null) {
+            emulator.getInputManager().register(this);
+            emulator.getWindowManager().register(this);
+        }
     }
 
     /**
@@ -135,8 +200,10 @@ public abstract class Window implements IWindow {
     public void onDestroy() {
         Log.debug("Destroying window @ %d, %d", xPos, yPos);
         emulator.getTickManager().unregister(this);
-        emulator.getInputManager().unregister(this);
-        emulator.getWindowManager().unregister(this);
+        if (emulator.getWindowManager() != null) {
+            emulator.getInputManager().unregister(this);
+            emulator.getWindowManager().unregister(this);
+        }
     }
 
     /**
@@ -175,7 +242,7 @@ public abstract class Window implements IWindow {
      */
     @Override
     public void onMouseRelease(int x, int y, int button) {
-        // NO-OP
+        lastClickInBounds = false;
     }
 
     /**
@@ -193,7 +260,7 @@ public abstract class Window implements IWindow {
     public boolean wasClickInBounds(int x, int y) {
         x = translateX(x);
         y = translateY(y);
-        return x >= 0 && x <= width && y >= 0 && y <= height;
+        return x >= 0 && x < width && y >= 0 && y < height;
     }
 
     /**
@@ -226,12 +293,19 @@ public abstract class Window implements IWindow {
     }
 
     /**
-     * Sets the render colour of the OpenGL context
+     * Marks the whole window as needing to be drawn again
+     */
+    protected void markDirty() {
+        damaged = true;
+    }
+
+    /**
+     * Sets the colour of the quads subsequently drawn by this window
      *
      * @param color the colour to set
      */
     protected void setColor(Color color) {
-        GL11.glColor3f(color.getRed(), color.getGreen(), color.getBlue());
+        emulator.getRenderer().setColor(color);
     }
 
     /**
@@ -243,12 +317,33 @@ public abstract class Window implements IWindow {
      * @param h the height of the quad
      */
     protected void drawQuad(int x, int y, int w, int h) {
-        GL11.glBegin(GL11.GL_QUADS);
-        GL11.glVertex2f(x, y);
-        GL11.glVertex2f(x + w, y);
-        GL11.glVertex2f(x + w, y + h);
-        GL11.glVertex2f(x, y + h);
-        GL11.glEnd();
+        emulator.getRenderer().drawQuad(x, y, w, h);
+    }
+
+    /**
+     * Renders a glyph from the {@link com.theoriginalbit.faux.ui.GlyphAtlas} in the current colour,
+     * stretched to the specified location and dimensions on the screen
+     *
+     * @param x  the x position
+     * @param y  the y position
+     * @param w  the width of the glyph
+     * @param h  the height of the glyph
+     * @param ch the character to draw, 0 to 255
+     */
+    protected void drawGlyph(int x, int y, int w, int h, int ch) {
+        emulator.getRenderer().drawGlyph(x, y, w, h, ch);
+    }
+
+    /**
+     * Renders the quads of a pre-built block with its origin at the specified location on the
+     * screen
+     *
+     * @param block the block to draw
+     * @param x     the x position
+     * @param y     the y position
+     */
+    protected void drawBlock(VertexBlock block, int x, int y) {
+        emulator.getRenderer().drawBlock(block, x, y);
     }
 
     /**
@@ -19,23 +19,67 @@ package com.theoriginalbit.faux.util;
  * @author theoriginalbit
  */
 public final class ChatUtils {
+    /**
+     * The single character strings of the ComputerCraft charset, so that char events don't
+     * allocate a new string for every key press
+     */
+    private static final String[] charStrings = new String[256];
     public static final char[] allowedCharacters = new char[]{'/', '\n', '\r', '\t', '\u0000', '\f', '`', '?', '*', '\\', '<', '>', '|', '\"', ':'};
 
+    static {
+        for (int i = 0; i < charStrings.length; ++i) {
+            charStrings[i] = String.valueOf((char) i).intern();
+        }
+    }
+
+    /**
+     * Converts a character to a string, without allocating for characters of the ComputerCraft
+     * charset
+     *
+     * @param ch the character
+     * @return the single character string
+     */
+    public static String toString(char ch) {
+        return ch < charStrings.length ? charStrings[ch] : String.valueOf(ch);
+    }
+
     public static boolean isAllowedCharacter(char ch) {
         return ch != 167 && ch >= 32 && ch != 127;
     }
 
     /**
      * Filter string by only keeping those characters for which isAllowedCharacter() returns true.
+     * The input is returned as it is when every character is allowed.
      */
     public static String filerAllowedCharacters(String input) {
-        StringBuilder str = new StringBuilder();
-        for (char ch : input.toCharArray()) {
-            if (isAllowedCharacter(ch)) {
-                str.append(ch);
-            }
+        int i = 0;
+        while (i < input.length() && isAllowedCharacter(input.charAt(i))) {
+            ++i;
+        }
+        if (i == input.length()) {
+            return input;
         }
 
-        return str.toString();
+        final char[] chars = input.toCharArray();
+        return new String(chars, 0, filterAllowedCharacters(chars, 0, chars.length));
+    }
+
+    /**
+     * Filters characters in place, moving those for which isAllowedCharacter() returns true to
+     * the start of the range in the same order.
+     *
+     * @param chars  the characters to filter
+     * @param offset the start of the range
+     * @param length the length of the range
+     * @return the number of characters kept, which now start at the offset
+     */
+    public static int filterAllowedCharacters(char[] chars, int offset, int length) {
+        int kept = offset;
+        for (int i = offset; i < offset + length; ++i) {
+            if (isAllowedCharacter(chars[i])) {
+                chars[kept++] = chars[i];
+            }
+        }
+        return kept - offset;
     }
 }
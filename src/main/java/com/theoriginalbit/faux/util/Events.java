@@ -22,4 +22,10 @@ public class Events {
     public static final String PASTE = "paste";
     public static final String CHAR = "char";
     public static final String KEY = "key";
+    public static final String TIMER = "timer";
+    public static final String TERMINATE = "terminate";
+    public static final String MOUSE_CLICK = "mouse_click";
+    public static final String MOUSE_DRAG = "mouse_drag";
+    public static final String MOUSE_UP = "mouse_up";
+    public static final String MOUSE_SCROLL = "mouse_scroll";
 }
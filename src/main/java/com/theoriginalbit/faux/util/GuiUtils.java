@@ -17,6 +17,8 @@ package com.theoriginalbit.faux.util;
 
 import com.theoriginalbit.faux.Emulator;
 
+import java.awt.Rectangle;
+
 /**
  * @author theoriginalbit
  */
@@ -30,4 +32,29 @@ public class GuiUtils {
     public static int toScaledPixels(int pixels) {
         return (int) (pixels * Emulator.getEmulatorSettings().getGuiScale());
     }
+
+    /**
+     * Grows the damage to include an area, an empty area is ignored
+     *
+     * @param damage the damage to grow
+     * @param x      the x position of the area
+     * @param y      the y position of the area
+     * @param w      the width of the area
+     * @param h      the height of the area
+     */
+    public static void union(Rectangle damage, int x, int y, int w, int h) {
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+        if (damage.isEmpty()) {
+            damage.setBounds(x, y, w, h);
+        } else {
+            final int right = Math.max(damage.x + damage.width, x + w);
+            final int bottom = Math.max(damage.y + damage.height, y + h);
+            damage.x = Math.min(damage.x, x);
+            damage.y = Math.min(damage.y, y);
+            damage.width = right - damage.x;
+            damage.height = bottom - damage.y;
+        }
+    }
 }
@@ -0,0 +1,324 @@
+--[[
+  Copyright 2014 Joshua Asbury (@theoriginalbit)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+]]
+
+-- The minimal startup program of an emulated device. It provides the global functions that the
+-- ComputerCraft BIOS provides on top of the native APIs, and then runs an interactive Lua prompt.
+
+local nativeShutdown = os.shutdown
+local nativeReboot = os.reboot
+
+function os.pullEventRaw(filter)
+    return coroutine.yield(filter)
+end
+
+function os.pullEvent(filter)
+    local event = { os.pullEventRaw(filter) }
+    if event[1] == "terminate" then
+        error("Terminated", 0)
+    end
+    return unpack(event)
+end
+
+function os.sleep(time)
+    local timer = os.startTimer(time or 0)
+    repeat
+        local _, id = os.pullEvent("timer")
+    until id == timer
+end
+
+function os.shutdown()
+    nativeShutdown()
+    while true do
+        coroutine.yield()
+    end
+end
+
+function os.reboot()
+    nativeReboot()
+    while true do
+        coroutine.yield()
+    end
+end
+
+function os.version()
+    return "CraftOS 1.7"
+end
+
+sleep = os.sleep
+
+function loadfile(path)
+    local file = fs.open(path, "r")
+    if not file then
+        return nil, "File not found"
+    end
+    local func, err = loadstring(file.readAll(), "@" .. fs.combine(path, ""))
+    file.close()
+    return func, err
+end
+
+function dofile(path)
+    local func, err = loadfile(path)
+    if not func then
+        error(err, 2)
+    end
+    setfenv(func, _G)
+    return func()
+end
+
+function write(text)
+    local w, h = term.getSize()
+    local x, y = term.getCursorPos()
+    local lines = 0
+
+    local function newLine()
+        if y + 1 <= h then
+            term.setCursorPos(1, y + 1)
+        else
+            term.setCursorPos(1, h)
+            term.scroll(1)
+        end
+        x, y = term.getCursorPos()
+        lines = lines + 1
+    end
+
+    text = tostring(text)
+    while #text > 0 do
+        local whitespace = string.match(text, "^[ \t]+")
+        if whitespace then
+            -- print whitespace without wrapping, the terminal has no tab stops
+            term.write((string.gsub(whitespace, "\t", " ")))
+            x, y = term.getCursorPos()
+            text = string.sub(text, #whitespace + 1)
+        end
+
+        local newline = string.match(text, "^\n")
+        if newline then
+            newLine()
+            text = string.sub(text, 2)
+        end
+
+        local word = string.match(text, "^[^ \t\n]+")
+        if word then
+            text = string.sub(text, #word + 1)
+            if #word > w then
+                -- the word is longer than a line, so break it across lines
+                while #word > 0 do
+                    if x > w then
+                        newLine()
+                    end
+                    term.write(word)
+                    word = string.sub(word, w - x + 2)
+                    x, y = term.getCursorPos()
+                end
+            else
+                if x + #word - 1 > w then
+                    newLine()
+                end
+                term.write(word)
+                x, y = term.getCursorPos()
+            end
+        end
+    end
+    return lines
+end
+
+function print(...)
+    local lines = 0
+    for i = 1, select("#", ...) do
+        if i > 1 then
+            lines = lines + write("\t")
+        end
+        lines = lines + write(tostring(select(i, ...)))
+    end
+    return lines + write("\n")
+end
+
+function printError(...)
+    if term.isColour() then
+        term.setTextColour(colours.red)
+    end
+    local lines = print(...)
+    term.setTextColour(colours.white)
+    return lines
+end
+
+function read(replaceChar, history)
+    term.setCursorBlink(true)
+
+    local line = ""
+    local position = 0
+    local historyIndex
+    local w = term.getSize()
+    local startX, startY = term.getCursorPos()
+
+    local function redraw(clear)
+        local scroll = 0
+        if startX + position >= w then
+            scroll = (startX + position) - w
+        end
+        local _, y = term.getCursorPos()
+        term.setCursorPos(startX, y)
+        local visible = string.sub(line, scroll + 1)
+        if clear then
+            term.write(string.rep(" ", #visible))
+        elseif replaceChar then
+            term.write(string.rep(replaceChar, #visible))
+        else
+            term.write(visible)
+        end
+        term.setCursorPos(startX + position - scroll, y)
+    end
+
+    while true do
+        local event, param = os.pullEvent()
+        if event == "char" then
+            redraw(true)
+            line = string.sub(line, 1, position) .. param .. string.sub(line, position + 1)
+            position = position + 1
+            redraw()
+        elseif event == "paste" then
+            redraw(true)
+            line = string.sub(line, 1, position) .. param .. string.sub(line, position + 1)
+            position = position + #param
+            redraw()
+        elseif event == "key" then
+            if param == keys.enter then
+                break
+            elseif param == keys.left then
+                if position > 0 then
+                    redraw(true)
+                    position = position - 1
+                    redraw()
+                end
+            elseif param == keys.right then
+                if position < #line then
+                    redraw(true)
+                    position = position + 1
+                    redraw()
+                end
+            elseif param == keys.up or param == keys.down then
+                if history and #history > 0 then
+                    redraw(true)
+                    if param == keys.up then
+                        historyIndex = historyIndex and math.max(historyIndex - 1, 1) or #history
+                    elseif historyIndex then
+                        historyIndex = historyIndex < #history and historyIndex + 1 or nil
+                    end
+                    line = historyIndex and history[historyIndex] or ""
+                    position = #line
+                    redraw()
+                end
+            elseif param == keys.backspace then
+                if position > 0 then
+                    redraw(true)
+                    line = string.sub(line, 1, position - 1) .. string.sub(line, position + 1)
+                    position = position - 1
+                    redraw()
+                end
+            elseif param == keys.delete then
+                if position < #line then
+                    redraw(true)
+                    line = string.sub(line, 1, position) .. string.sub(line, position + 2)
+                    redraw()
+                end
+            elseif param == keys.home then
+                redraw(true)
+                position = 0
+                redraw()
+            elseif param == keys["end"] then
+                redraw(true)
+                position = #line
+                redraw()
+            end
+        end
+    end
+
+    term.setCursorBlink(false)
+    local _, y = term.getCursorPos()
+    term.setCursorPos(w + 1, y)
+    print()
+    return line
+end
+
+colours = {
+    white = 1, orange = 2, magenta = 4, lightBlue = 8, yellow = 16, lime = 32, pink = 64,
+    grey = 128, lightGrey = 256, cyan = 512, purple = 1024, blue = 2048, brown = 4096,
+    green = 8192, red = 16384, black = 32768,
+}
+colors = {}
+for name, value in pairs(colours) do
+    colors[(string.gsub(name, "grey", "gray"))] = value
+    colors[(string.gsub(name, "Grey", "Gray"))] = value
+end
+
+keys = {
+    enter = 28, backspace = 14, delete = 211, left = 203, right = 205, up = 200, down = 208,
+    home = 199, ["end"] = 207,
+}
+
+-- the interactive prompt
+term.clear()
+term.setCursorPos(1, 1)
+if term.isColour() then
+    term.setTextColour(colours.yellow)
+end
+print(os.version())
+term.setTextColour(colours.white)
+
+local history = {}
+local environment = setmetatable({}, { __index = _G })
+
+local function prompt()
+    if term.isColour() then
+        term.setTextColour(colours.yellow)
+    end
+    write("lua> ")
+    term.setTextColour(colours.white)
+
+    local input = read(nil, history)
+    if not string.match(input, "%S") then
+        return
+    end
+    if history[#history] ~= input then
+        history[#history + 1] = input
+    end
+
+    -- try the input as an expression first, so that its values are printed
+    local func, err = loadstring("return " .. input, "=lua")
+    if not func then
+        func, err = loadstring(input, "=lua")
+    end
+    if not func then
+        printError(err)
+        return
+    end
+
+    setfenv(func, environment)
+    local results = { pcall(func) }
+    if not results[1] then
+        printError(results[2])
+    elseif table.maxn(results) > 1 then
+        print(unpack(results, 2, table.maxn(results)))
+    end
+end
+
+while true do
+    -- a terminated read only abandons the current line
+    local ok, err = pcall(prompt)
+    if not ok then
+        printError(err)
+    end
+end
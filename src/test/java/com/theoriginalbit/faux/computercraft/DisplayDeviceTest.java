@@ -0,0 +1,80 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft;
+
+import com.theoriginalbit.faux.Emulator;
+import com.theoriginalbit.faux.FleetEmulator;
+import com.theoriginalbit.faux.computercraft.device.Computer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Draws a device without a display, as the fleet emulator does for its snapshots, and compares
+ * the result pixel for pixel with an image known to be right. Glyphs come from the bundled font,
+ * so the image is the same on every platform.
+ *
+ * @author theoriginalbit
+ */
+public class DisplayDeviceTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void snapshotMatchesGoldenImage() throws Exception {
+        Emulator.getEmulatorSettings().setGuiScale(2.0f);
+        final FleetEmulator fleet = new FleetEmulator();
+        final Computer device = new Computer(DeviceFamily.ADVANCED, 7, fleet);
+        fleet.addDevice(device);
+
+        final Terminal terminal = device.terminal;
+        terminal.setCursorBlink(false);
+        for (int y = 0; y < terminal.getHeight(); ++y) {
+            terminal.setCursorPos(y % 5, y);
+            terminal.setTextColour(y % 16);
+            terminal.setBackgroundColour(15 - y % 16);
+            terminal.write("Row " + y + ": The quick brown fox jumps over the lazy dog!");
+        }
+
+        final File directory = folder.getRoot();
+        fleet.writeSnapshots(directory);
+        final BufferedImage actual = ImageIO.read(new File(directory, "7.png"));
+        final BufferedImage expected;
+        final InputStream in = getClass().getResourceAsStream("/golden/advanced-computer.png");
+        assertNotNull("The golden image is missing", in);
+        try {
+            expected = ImageIO.read(in);
+        } finally {
+            in.close();
+        }
+
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); ++y) {
+            for (int x = 0; x < expected.getWidth(); ++x) {
+                assertEquals("Pixel " + x + ", " + y, expected.getRGB(x, y) & 0xFFFFFF, actual.getRGB(x, y) & 0xFFFFFF);
+            }
+        }
+    }
+}
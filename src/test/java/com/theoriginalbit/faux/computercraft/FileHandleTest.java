@@ -0,0 +1,85 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft;
+
+import com.theoriginalbit.faux.computercraft.filesystem.FileMount;
+import com.theoriginalbit.faux.computercraft.filesystem.FileSystem;
+import com.theoriginalbit.faux.computercraft.filesystem.FileSystemException;
+import com.theoriginalbit.faux.lua.LibFunction;
+import com.theoriginalbit.faux.lua.LuaError;
+import com.theoriginalbit.faux.lua.LuaTable;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Writes and reads files through the handles {@code fs.open} returns.
+ *
+ * @author theoriginalbit
+ */
+public class FileHandleTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private final DeviceStatistics stats = new DeviceStatistics(new EventQueue());
+    private FileSystem fs;
+
+    @Before
+    public void setUp() {
+        fs = new FileSystem(new FileMount(folder.getRoot(), 1000000L));
+    }
+
+    @Test
+    public void readsWhatWasWritten() throws FileSystemException {
+        final LuaTable out = FileHandle.writer(fs, stats, fs.openForWrite("notes", false), false);
+        call(out, "writeLine", "first");
+        call(out, "write", "second");
+        call(out, "close");
+
+        final LuaTable in = FileHandle.reader(fs, stats, fs.openForRead("notes"), false);
+        assertEquals("first", call(in, "readLine"));
+        assertEquals("second", call(in, "readLine"));
+        assertNull(call(in, "readLine"));
+        call(in, "close");
+    }
+
+    @Test
+    public void closesFilesOpenedForReading() throws FileSystemException {
+        final LuaTable out = FileHandle.writer(fs, stats, fs.openForWrite("notes", false), true);
+        call(out, "write", 65.0);
+        call(out, "close");
+
+        // the file is a FileChannel, which is writable too, but nothing is flushed to it
+        final LuaTable in = FileHandle.reader(fs, stats, fs.openForRead("notes"), true);
+        call(in, "close");
+        try {
+            call(in, "read");
+            fail("Read from a closed handle");
+        } catch (LuaError e) {
+            assertEquals("Stream closed", e.getMessage());
+        }
+        assertEquals(1L, fs.getSize("notes"));
+    }
+
+    private static Object call(LuaTable handle, String name, Object... args) {
+        final Object[] results = ((LibFunction) handle.rawget(name)).invoke(null, args);
+        return results.length > 0 ? results[0] : null;
+    }
+}
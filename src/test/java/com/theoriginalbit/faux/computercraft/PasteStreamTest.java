@@ -0,0 +1,82 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft;
+
+import com.theoriginalbit.faux.FleetEmulator;
+import com.theoriginalbit.faux.computercraft.device.Computer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Types text into a device and checks the events it is typed as.
+ *
+ * @author theoriginalbit
+ */
+public class PasteStreamTest {
+    @Test
+    public void typesEachLineThenEnter() throws IOException {
+        assertEquals(Arrays.asList("paste one", "key 28", "paste two  three!", "key 28", "key 28", "paste four"),
+                type("one\r\ntwo\t three\u2603!\r\n\nfour"));
+    }
+
+    @Test
+    public void dropsCharactersTheDeviceCannotType() throws IOException {
+        assertEquals(Arrays.asList("paste abc", "key 28", "key 28", "paste d\u00e9f"),
+                type("a\u0001b\u007fc\r\r\u00a7d\u00e9f\u20ac"));
+    }
+
+    @Test
+    public void splitsLongLines() throws IOException {
+        final StringBuilder line = new StringBuilder();
+        for (int i = 0; i < PasteStream.MAX_PASTE_LENGTH + 10; ++i) {
+            line.append((char) ('a' + i % 26));
+        }
+        final List<String> events = type(line.toString());
+        assertEquals(2, events.size());
+        assertEquals("paste " + line.substring(0, PasteStream.MAX_PASTE_LENGTH), events.get(0));
+        assertEquals("paste " + line.substring(PasteStream.MAX_PASTE_LENGTH), events.get(1));
+    }
+
+    /**
+     * @param text the text to type
+     * @return each event queued, as its name followed by its argument
+     */
+    private static List<String> type(String text) throws IOException {
+        final Computer device = new Computer(DeviceFamily.NORMAL, 1, new FleetEmulator());
+        final PasteStream stream = new PasteStream(new StringReader(text));
+        final List<String> events = new ArrayList<String>();
+        final EventQueue.Event event = new EventQueue.Event();
+        boolean more = true;
+        while (more) {
+            more = stream.deliver(device, device.eventQueue);
+            while (device.eventQueue.poll(event)) {
+                final Object arg = event.isNumber(0) ? (Object) (int) event.getNumber(0) : event.getArgument(0);
+                events.add(event.getName() + " " + arg);
+            }
+        }
+        assertFalse(stream.deliver(device, device.eventQueue));
+        stream.close();
+        return events;
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft.filesystem;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Packs a directory into an archive and reads it back.
+ *
+ * @author theoriginalbit
+ */
+public class ArchiveMountTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsWhatWasPacked() throws IOException {
+        final File directory = folder.newFolder("rom");
+        write(new File(directory, "programs/hello"), "print('hello')");
+        write(new File(directory, "startup"), "shell.run('hello')");
+        final File archive = new File(folder.getRoot(), "rom.far");
+        ArchiveMount.pack(directory, archive);
+
+        final ArchiveMount mount = ArchiveMount.open(archive);
+        final List<String> names = new ArrayList<String>();
+        mount.list("", names);
+        assertEquals(2, names.size());
+        assertTrue(mount.isDirectory("programs"));
+        assertEquals(14L, mount.getSize("programs/hello"));
+        assertEquals(0L, mount.getSize("programs"));
+    }
+
+    @Test
+    public void changesDeepInTheDirectoryAreSeen() throws IOException {
+        final File directory = folder.newFolder("rom");
+        final File nested = new File(directory, "apis/deep/colours");
+        write(nested, "white = 1");
+        final long packed = 1000000000000L;
+        for (File file = nested; !file.equals(folder.getRoot()); file = file.getParentFile()) {
+            assertTrue(file.setLastModified(packed));
+        }
+        assertEquals(packed, ArchiveMount.getLastModified(directory));
+
+        // editing a file in place changes none of the directories it is in
+        write(nested, "white = 2");
+        assertTrue(nested.setLastModified(packed + 60000L));
+        assertEquals(packed, directory.lastModified());
+        assertEquals(packed + 60000L, ArchiveMount.getLastModified(directory));
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), contents.getBytes(UTF_8));
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.computercraft.filesystem;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the space a mount keeps track of as it changes matches the space it counts by walking
+ * its directory.
+ *
+ * @author theoriginalbit
+ */
+public class FileMountTest {
+    private static final long CAPACITY = 10000L;
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void countsEveryFileAsAtLeastTheMinimum() throws IOException {
+        final FileMount mount = new FileMount(folder.getRoot(), CAPACITY);
+        write(mount, "small", 10);
+        assertEquals(CAPACITY - 500L, mount.getRemainingSpace());
+        mount.makeDirectory("dir/nested");
+        assertEquals(CAPACITY - 1500L, mount.getRemainingSpace());
+        write(mount, "dir/large", 1200);
+        assertEquals(CAPACITY - 2700L, mount.getRemainingSpace());
+        assertEquals(recount(mount), mount.getRemainingSpace());
+    }
+
+    @Test
+    public void releasesSpaceWhenTruncatedOrDeleted() throws IOException {
+        final FileMount mount = new FileMount(folder.getRoot(), CAPACITY);
+        write(mount, "dir/large", 1200);
+        write(mount, "dir/other", 700);
+        assertEquals(CAPACITY - 2400L, mount.getRemainingSpace());
+
+        write(mount, "dir/large", 0);
+        assertEquals(CAPACITY - 1700L, mount.getRemainingSpace());
+        assertEquals(recount(mount), mount.getRemainingSpace());
+
+        mount.delete("dir");
+        assertEquals(CAPACITY, mount.getRemainingSpace());
+        assertEquals(recount(mount), mount.getRemainingSpace());
+    }
+
+    @Test
+    public void refusesWritesBeyondTheCapacity() throws IOException {
+        final FileMount mount = new FileMount(folder.getRoot(), 1000L);
+        final WritableByteChannel channel = mount.openForWrite("file");
+        try {
+            channel.write(ByteBuffer.allocate(2000));
+            fail("Wrote beyond the capacity");
+        } catch (IOException e) {
+            assertEquals("Out of space", e.getMessage());
+        } finally {
+            channel.close();
+        }
+        assertEquals(0L, mount.getSize("file"));
+        assertEquals(500L, mount.getRemainingSpace());
+        assertEquals(recount(mount), mount.getRemainingSpace());
+    }
+
+    /**
+     * @param mount the mount
+     * @return the space remaining as counted by a new mount of the same directory
+     */
+    private long recount(FileMount mount) throws IOException {
+        return new FileMount(folder.getRoot(), mount.getCapacity()).getRemainingSpace();
+    }
+
+    private static void write(FileMount mount, String path, int length) throws IOException {
+        final WritableByteChannel channel = mount.openForWrite(path);
+        try {
+            channel.write(ByteBuffer.allocate(length));
+        } finally {
+            channel.close();
+        }
+    }
+}
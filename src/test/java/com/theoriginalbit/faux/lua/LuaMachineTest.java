@@ -0,0 +1,146 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua;
+
+import com.theoriginalbit.faux.lua.lib.BaseLib;
+import com.theoriginalbit.faux.lua.lib.CoroutineLib;
+import com.theoriginalbit.faux.lua.lib.MathLib;
+import com.theoriginalbit.faux.lua.lib.StringLib;
+import com.theoriginalbit.faux.lua.lib.TableLib;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs scripts on a machine as a device does, checking the results of a few programs and that
+ * scripts which never yield are preempted and eventually aborted.
+ *
+ * @author theoriginalbit
+ */
+public class LuaMachineTest {
+    /**
+     * Long enough that a slice never ends on the clock before it ends on the budget
+     */
+    private static final long NO_TIME_LIMIT = TimeUnit.SECONDS.toNanos(60L);
+
+    @Test
+    public void runsAndYieldsToTheHost() {
+        final LuaMachine machine = load("local a = ... " +
+                "local t = {} for i = 1, 10 do t[#t + 1] = i * a end " +
+                "local b = coroutine.yield(table.concat(t, ','), math.max(3, 7)) " +
+                "return string.upper(b) .. '!', select('#', 1, nil, 3)");
+
+        assertEquals(LuaMachine.State.YIELDED, machine.resume(new Object[]{2.0}, NO_TIME_LIMIT));
+        assertArrayEquals(new Object[]{"2,4,6,8,10,12,14,16,18,20", 7.0}, machine.getYielded());
+        assertEquals(LuaMachine.State.FINISHED, machine.resume(new Object[]{"done"}, NO_TIME_LIMIT));
+        assertArrayEquals(new Object[]{"DONE!", 3.0}, machine.getYielded());
+    }
+
+    @Test
+    public void reportsErrorsWithTheirPosition() {
+        final LuaMachine machine = load("local t = nil\nreturn t.x");
+        assertEquals(LuaMachine.State.ERRORED, machine.resume(Lua.NONE, NO_TIME_LIMIT));
+        final String error = String.valueOf(machine.getError());
+        assertTrue(error, error.startsWith("test:2:"));
+    }
+
+    @Test
+    public void pausesAtTheEndOfTheInstructionBudget() {
+        final LuaMachine machine = load("local n = 0 while true do n = n + 1 end");
+        machine.setInstructionBudget(10000L);
+
+        assertEquals(LuaMachine.State.PAUSED, machine.resume(Lua.NONE, NO_TIME_LIMIT));
+        final long first = machine.getSteps();
+        assertTrue("Took " + first + " steps", first >= 10000L && first < 11000L);
+
+        // each resume is given a whole budget again, and the loop carries on where it was paused
+        assertEquals(LuaMachine.State.PAUSED, machine.resume(Lua.NONE, NO_TIME_LIMIT));
+        final long second = machine.getSteps() - first;
+        assertTrue("Took " + second + " steps", second >= 10000L && second < 11000L);
+    }
+
+    @Test
+    public void abortsScriptsThatDoNotYield() {
+        final LuaMachine machine = load("while true do end");
+        machine.setInstructionBudget(100000L);
+        machine.setTimeout(TimeUnit.MILLISECONDS.toNanos(50L));
+
+        final LuaMachine.State state = runUntilStopped(machine);
+        assertEquals(LuaMachine.State.ERRORED, state);
+        assertEquals("Too long without yielding", String.valueOf(machine.getError()));
+    }
+
+    @Test
+    public void stopsScriptsThatCatchTheAbort() {
+        // the script keeps catching the error, so it is stopped once the grace period runs out
+        final LuaMachine machine = load("local caught = 0 " +
+                "while true do if not pcall(function() while true do end end) then caught = caught + 1 end end");
+        machine.setInstructionBudget(100000L);
+        machine.setTimeout(TimeUnit.MILLISECONDS.toNanos(50L));
+
+        final long start = System.nanoTime();
+        final LuaMachine.State state = runUntilStopped(machine);
+        assertEquals(LuaMachine.State.ERRORED, state);
+        assertEquals("Too long without yielding", String.valueOf(machine.getError()));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(30L));
+    }
+
+    @Test
+    public void yieldingResetsTheTimeout() {
+        final LuaMachine machine = load("for i = 1, 5 do local t = os_time() while os_time() - t < 0.03 do end coroutine.yield() end return 'ok'");
+        machine.getGlobals().rawset("os_time", new LibFunction("os_time") {
+            @Override
+            public Object[] invoke(LuaMachine m, Object[] args) {
+                return new Object[]{System.nanoTime() / 1e9};
+            }
+        });
+        machine.setTimeout(TimeUnit.MILLISECONDS.toNanos(50L));
+
+        // each run between yields is shorter than the timeout, though all of them together are not
+        LuaMachine.State state;
+        do {
+            state = runUntilStopped(machine);
+        } while (state == LuaMachine.State.YIELDED);
+        assertEquals(LuaMachine.State.FINISHED, state);
+        assertArrayEquals(new Object[]{"ok"}, machine.getYielded());
+    }
+
+    private static LuaMachine load(String source) {
+        final LuaMachine machine = new LuaMachine(new LuaTable());
+        BaseLib.install(machine);
+        StringLib.install(machine);
+        TableLib.install(machine);
+        MathLib.install(machine);
+        CoroutineLib.install(machine);
+        machine.load(BaseLib.load(source, "=test", machine.getGlobals()));
+        return machine;
+    }
+
+    /**
+     * Resumes the machine in short slices, as the tick would, until it is no longer paused
+     */
+    private static LuaMachine.State runUntilStopped(LuaMachine machine) {
+        LuaMachine.State state;
+        do {
+            state = machine.resume(Lua.NONE, TimeUnit.MILLISECONDS.toNanos(5L));
+        } while (state == LuaMachine.State.PAUSED);
+        return state;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.lua;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks which chunks the prototype cache persists, that a damaged cache file is only a miss, and
+ * that restored prototypes are shared with compiled ones.
+ *
+ * @author theoriginalbit
+ */
+public class PrototypeCacheTest {
+    private static final String SOURCE = "local a = ... return a * 2";
+    private static final String FUNCTIONS = "local function f() return function() end end return f";
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private final PrototypeCache cache = PrototypeCache.getInstance();
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("cache");
+        cache.setDirectory(directory);
+        cache.clear();
+    }
+
+    @After
+    public void tearDown() {
+        cache.setDirectory(null);
+        cache.clear();
+    }
+
+    @Test
+    public void sharesPrototypesOfTheSameChunk() {
+        final Prototype first = cache.get(SOURCE, "=test");
+        assertSame(first, cache.get(SOURCE, "=test"));
+        assertNotSame(first, cache.get(SOURCE, "=other"));
+    }
+
+    @Test
+    public void onlyPersistsTheBiosAndRom() {
+        cache.get(SOURCE, "@bios");
+        cache.get(SOURCE, "@rom/programs/double");
+        cache.get(SOURCE, "@home/double");
+        cache.get(SOURCE, "=lua");
+        assertEquals(2, list().length);
+    }
+
+    @Test
+    public void replacesDamagedFiles() throws IOException {
+        cache.get(SOURCE, "@rom/programs/double");
+        final File file = list()[0];
+        final long length = file.length();
+
+        // a header followed by a source name claiming to be almost 2GB
+        final DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        out.writeInt(0x46584c43);
+        out.writeInt(1);
+        out.writeInt(Integer.MAX_VALUE - 8);
+        out.close();
+
+        cache.clear();
+        final Prototype prototype = cache.get(SOURCE, "@rom/programs/double");
+        assertEquals("@rom/programs/double", prototype.source);
+        assertEquals(length, file.length());
+    }
+
+    @Test
+    public void sharesRestoredPrototypesWithCompiledOnes() throws IOException {
+        final Prototype main = cache.get(FUNCTIONS, "=test");
+        final Prototype nested = main.prototypes[0].prototypes[0];
+        assertSame(nested, cache.fromBytes(cache.toBytes(nested)));
+
+        final byte[] bytes = cache.toBytes(main);
+        cache.clear();
+        final Prototype restored = cache.fromBytes(bytes);
+        assertNotSame(main, restored);
+        assertSame(restored, cache.get(FUNCTIONS, "=test"));
+    }
+
+    @Test
+    public void onlyRemembersSerialisedPrototypesWhileSaving() {
+        final Prototype main = cache.get(FUNCTIONS, "=test");
+        assertNotSame(cache.toBytes(main), cache.toBytes(main));
+        cache.beginSaving();
+        try {
+            assertSame(cache.toBytes(main), cache.toBytes(main));
+        } finally {
+            cache.endSaving();
+        }
+        assertNotSame(cache.toBytes(main), cache.toBytes(main));
+    }
+
+    private File[] list() {
+        final File[] files = directory.listFiles();
+        return files != null ? files : new File[0];
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.manager;
+
+import com.theoriginalbit.faux.FleetEmulator;
+import com.theoriginalbit.faux.computercraft.DeviceFamily;
+import com.theoriginalbit.faux.computercraft.DisplayDevice;
+import com.theoriginalbit.faux.computercraft.device.Computer;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Runs two emulators in the same JVM, with devices sharing an ID, and checks their statistics
+ * are each published once, and removed once their manager is closed.
+ *
+ * @author theoriginalbit
+ */
+public class DeviceManagerTest {
+    private static final int ID = 31337;
+
+    @Test
+    public void publishesEveryDeviceOnce() throws Exception {
+        final FleetEmulator first = new FleetEmulator();
+        final FleetEmulator second = new FleetEmulator();
+        final DisplayDevice[] devices = {new Computer(DeviceFamily.NORMAL, ID, first),
+                new Computer(DeviceFamily.NORMAL, ID, first), new Computer(DeviceFamily.NORMAL, ID, second)};
+        first.addDevice(devices[0]);
+        first.addDevice(devices[1]);
+        second.addDevice(devices[2]);
+        assertEquals(3, countMBeans());
+
+        final MetricsServer metrics = MetricsServer.start(first, (DeviceManager) first.getDeviceManager(), 0);
+        assertNotNull(metrics);
+        try {
+            final String text = metrics.write(new StringBuilder()).toString();
+            int series = 0;
+            for (String line : text.split("\n")) {
+                if (line.contains("{device=\"" + ID + "\"}")) {
+                    ++series;
+                }
+            }
+            assertEquals(DeviceCounter.values().length, series);
+        } finally {
+            metrics.stop();
+        }
+
+        for (DisplayDevice device : devices) {
+            device.onDestroy();
+        }
+        assertEquals(0, countMBeans());
+        ((DeviceManager) first.getDeviceManager()).close();
+        ((DeviceManager) second.getDeviceManager()).close();
+    }
+
+    @Test
+    public void closeRemovesEveryMBean() throws Exception {
+        final int totals = countTotals();
+        final FleetEmulator fleet = new FleetEmulator();
+        fleet.addDevice(new Computer(DeviceFamily.NORMAL, ID, fleet));
+        assertEquals(1, countMBeans());
+        assertEquals(totals + 1, countTotals());
+
+        ((DeviceManager) fleet.getDeviceManager()).close();
+        assertEquals(0, countMBeans());
+        assertEquals(totals, countTotals());
+    }
+
+    private static int countMBeans() throws Exception {
+        return count("type=Device,id=" + ID + ",*");
+    }
+
+    private static int countTotals() throws Exception {
+        return count("type=Devices,*");
+    }
+
+    private static int count(String properties) throws Exception {
+        final ObjectName pattern = new ObjectName("com.theoriginalbit.faux:" + properties);
+        return ManagementFactory.getPlatformMBeanServer().queryNames(pattern, null).size();
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2014 Joshua Asbury (@theoriginalbit)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.faux.ui;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the bundled font covers the whole ComputerCraft charset.
+ *
+ * @author theoriginalbit
+ */
+public class GlyphAtlasTest {
+    @Test
+    public void everyVisibleCharacterHasAGlyph() {
+        for (int ch = 1; ch < 256; ++ch) {
+            if (ch != ' ' && ch != 128 && ch != 0xA0) {
+                assertTrue("no glyph for " + ch, isDrawn(ch));
+            }
+        }
+    }
+
+    @Test
+    public void blankCharactersHaveNoGlyph() {
+        assertFalse(isDrawn(0));
+        assertFalse(isDrawn(' '));
+        assertFalse(isDrawn(0xA0));
+        assertFalse(isDrawn(128));
+    }
+
+    private static boolean isDrawn(int ch) {
+        final int[] pixels = GlyphAtlas.getPixels();
+        final int left = (ch & 0xF) * GlyphAtlas.GLYPH_WIDTH;
+        final int top = ((ch >> 4) & 0xF) * GlyphAtlas.GLYPH_HEIGHT;
+        for (int y = top; y < top + GlyphAtlas.GLYPH_HEIGHT; ++y) {
+            for (int x = left; x < left + GlyphAtlas.GLYPH_WIDTH; ++x) {
+                if (pixels[y * GlyphAtlas.ATLAS_WIDTH + x] != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}